@@ -1,18 +1,30 @@
 package jp.kt.net.ftp;
 
+import java.io.File;
 import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 
 import jp.kt.exception.KtException;
 import jp.kt.logger.ApplicationLogger;
 
 import org.apache.commons.net.ftp.FTPFile;
+import org.apache.commons.net.ftp.FTPListParseEngine;
 
 /**
  * FTP処理.
  * <p>
  * アクション毎にFTPサーバへの接続ならびに切断を行うクラスです.<br>
- * FTPサーバへの接続ならびに切断は自動的に行われます.
+ * FTPサーバへの接続ならびに切断は自動的に行われます.<br>
+ * 接続は{@link FtpSessionPool}から借りて返却するため、連続したアクションでログインを繰り返すことはありません.
  * </p>
  * <hr>
  *
@@ -24,6 +36,10 @@ import org.apache.commons.net.ftp.FTPFile;
  * 	ftp.setNoPassiveMode();
  * 	// プロキシ経由で接続する場合は下記メソッドを実行する
  * 	ftp.setProxy(PROXY_HOST, PROXY_PORT);
+ * 	// アクション毎にログイン、ログアウトしたい場合は下記メソッドを実行する
+ * 	ftp.setNoSessionPool();
+ * 	// 転送中の入出力エラー時に、接続し直して続きから転送したい場合は下記メソッドを実行する
+ * 	ftp.setRetrySetting(3, 1000);
  * </pre>
  * <hr>
  *
@@ -33,6 +49,19 @@ import org.apache.commons.net.ftp.FTPFile;
  * 	for (FTPFile file : fileList) {
  * 		System.out.println(file.toString());
  * 	}
+ * 	// 件数が多い場合は、1000件ずつ解析しながら処理する
+ * 	ftp.listFiles(remoteDirectory, 1000, new FtpFileProcessor() {
+ * 		public boolean processFiles(FTPFile[] files) {
+ * 			for (FTPFile file : files) {
+ * 				System.out.println(file.getName());
+ * 			}
+ * 			return true;
+ * 		}
+ * 	});
+ * 	// 同じディレクトリのリストやファイルの存在を繰り返し問い合わせる場合は、キャッシュを使用する
+ * 	ftp.setUseListCache();
+ * 	System.out.println(ftp.existFile(remoteDirectory + &quot;/a.txt&quot;));
+ * 	System.out.println(ftp.getFileSize(remoteDirectory + &quot;/b.txt&quot;));
  * </pre>
  * <hr>
  *
@@ -52,6 +81,8 @@ import org.apache.commons.net.ftp.FTPFile;
  * 	list.add(new PutData(localFilePath1, remoteDirPath1));
  * 	list.add(new PutData(localFilePath2, remoteDirPath2));
  * 	list.add(new PutData(localFilePath3, remoteDirPath3));
+ * 	// リモートディレクトリが存在しない場合に作成する場合は下記メソッドを実行する
+ * 	ftp.setMakeRemoteDirectory();
  * 	ftp.put(list);
  * 	// PUT結果を出力
  * 	for (PutData putData : list) {
@@ -61,10 +92,68 @@ import org.apache.commons.net.ftp.FTPFile;
  * 		System.out.println(putData.getErrorMessage());
  * 	}
  * </pre>
+ * <hr>
+ *
+ * <pre>
+ * 【サンプル4】ハッシュ値を計算しながらPUTし、FTPサーバ上のファイルと照合する
+ * 	ftp.addDigestAlgorithm(&quot;SHA-256&quot;);
+ * 	ftp.addDigestAlgorithm(&quot;MD5&quot;);
+ * 	ftp.setVerifyByServer();
+ * 	ftp.put(list);
+ * 	for (PutData putData : list) {
+ * 		System.out.println(putData.getDigest(&quot;SHA-256&quot;));
+ * 		System.out.println(putData.isServerVerified());
+ * 	}
+ * </pre>
+ * <hr>
+ *
+ * <pre>
+ * 【サンプル5】4つの接続で並列にPUTし、進捗と転送速度を出力する
+ * 	ftp.setTransferListener(new TransferListener() {
+ * 		public void onProgress(TransferReport report) {
+ * 			System.out.println(report.getCompletedCount() + &quot;/&quot; + report.getTotalCount());
+ * 		}
+ * 	});
+ * 	TransferReport report = ftp.put(list, 4);
+ * 	System.out.println(report.getBytesPerSecond());
+ * </pre>
+ * <hr>
+ *
+ * <pre>
+ * 【サンプル6】ファイルのGET（4つの接続で並列に転送する場合）
+ * 	List&lt;GetData&gt; getList = new ArrayList&lt;GetData&gt;();
+ * 	getList.add(new GetData(remoteFilePath1, localFilePath1));
+ * 	getList.add(new GetData(remoteFilePath2, localFilePath2));
+ * 	TransferReport report = ftp.get(getList, 4);
+ * 	for (GetData getData : getList) {
+ * 		System.out.println(getData.getRemoteFilePath());
+ * 		System.out.println(getData.isSuccess());
+ * 		System.out.println(getData.getSize());
+ * 		System.out.println(getData.getErrorMessage());
+ * 	}
+ * </pre>
+ * <hr>
+ *
+ * <pre>
+ * 【サンプル7】1つの大きなファイルを、4つの接続で範囲を分割して並列にGETする
+ * 	GetData getData = new GetData(remoteFilePath, localFilePath);
+ * 	ftp.getSegmented(getData, 4);
+ * 	System.out.println(getData.isSuccess());
+ * </pre>
+ * <hr>
+ *
+ * <pre>
+ * 【サンプル8】ファイル数の多いディレクトリを、4つの接続で並列に削除する
+ * 	TransferReport report = ftp.deleteDirectory(remoteDirectory, 4);
+ * 	System.out.println(report.getSuccessCount() + &quot;/&quot; + report.getTotalCount());
+ * </pre>
  *
  * @author tatsuya.kumon
  */
 public class FtpAction extends FtpBaseAction {
+	/** 分割GETで1つの範囲とする最小サイズ（バイト） */
+	private static final long MIN_SEGMENT_SIZE = 1024 * 1024;
+
 	/**
 	 * コンストラクタ.
 	 * <p>
@@ -104,6 +193,19 @@ public class FtpAction extends FtpBaseAction {
 		super(hostname, username, password, logger);
 	}
 
+	/**
+	 * コンストラクタ.
+	 * <p>
+	 * 並列で転送する際に、接続先と各種設定を引き継いだ別の接続を作るために使用します.
+	 * </p>
+	 *
+	 * @param source
+	 *            引き継ぎ元
+	 */
+	private FtpAction(FtpAction source) {
+		super(source);
+	}
+
 	/**
 	 * 指定パスのファイルリストを取得.
 	 *
@@ -114,11 +216,163 @@ public class FtpAction extends FtpBaseAction {
 	 *             入出力エラーが発生した場合
 	 */
 	public FTPFile[] listFiles(String path) throws IOException {
+		FTPFile[] files = super.getCachedList(path);
+		if (files != null) {
+			return files;
+		}
 		try {
 			// 接続
 			super.connectBase();
 			// リスト取得
 			return super.listFilesBase(path);
+		} catch (IOException e) {
+			// 入出力エラーが発生した接続は再利用しない
+			super.discardBase();
+			throw e;
+		} finally {
+			// 切断
+			super.disconnectBase();
+		}
+	}
+
+	/**
+	 * 指定パスのファイルリストを、ページ単位で解析しながら処理する.
+	 * <p>
+	 * 受信したファイルリストは、指定件数ずつ解析して{@link FtpFileProcessor}へ渡されます.<br>
+	 * ファイルリスト全体のFTPFileを生成しないため、件数の多いディレクトリでもメモリ使用量を抑えられます.<br>
+	 * ただし{@link #setUseListCache()}を実行している場合は、キャッシュに記録するため全件を解析します.<br>
+	 * 受信が完了した時点で切断するため、処理中に接続を使用し続けることはありません.<br>
+	 * {@link #setNoDirectoryCheck()}を実行しておくと、ディレクトリの存在チェックの往復を省略します.
+	 * </p>
+	 *
+	 * @param path
+	 *            パス
+	 * @param pageSize
+	 *            1回の呼び出しで渡す件数
+	 * @param processor
+	 *            ファイルリストを処理する{@link FtpFileProcessor}
+	 * @throws Exception
+	 *             入出力エラーが発生した場合、もしくは{@link FtpFileProcessor}で例外が発生した場合
+	 */
+	public void listFiles(String path, int pageSize, FtpFileProcessor processor)
+			throws Exception {
+		if (pageSize <= 0) {
+			throw new KtException("B004", "ページサイズの設定が不正な値です。[pageSize:"
+					+ pageSize + "]");
+		}
+		if (super.isListCache()) {
+			// キャッシュに記録するため、全件を解析する
+			FTPFile[] files = listFiles(path);
+			for (int i = 0; i < files.length; i += pageSize) {
+				if (!processor.processFiles(Arrays.copyOfRange(files, i, Math
+						.min(files.length, i + pageSize)))) {
+					break;
+				}
+			}
+			return;
+		}
+		FTPListParseEngine engine;
+		try {
+			// 接続
+			super.connectBase();
+			// リスト受信
+			engine = super.initiateListParsingBase(path);
+		} catch (IOException e) {
+			// 入出力エラーが発生した接続は再利用しない
+			super.discardBase();
+			throw e;
+		} finally {
+			// 切断
+			super.disconnectBase();
+		}
+		// ページごとに解析して処理
+		while (engine.hasNext()) {
+			FTPFile[] files = filter(engine.getNext(pageSize));
+			if (files.length > 0 && !processor.processFiles(files)) {
+				break;
+			}
+		}
+	}
+
+	/**
+	 * ファイルリストから、解析できなかった行などを除外する.
+	 *
+	 * @param files
+	 *            解析したファイルリスト
+	 * @return 除外後のファイルリスト
+	 */
+	private static FTPFile[] filter(FTPFile[] files) {
+		List<FTPFile> list = new ArrayList<FTPFile>(files.length);
+		for (FTPFile file : files) {
+			if (ENTRY_FILTER.accept(file)) {
+				list.add(file);
+			}
+		}
+		return list.toArray(new FTPFile[list.size()]);
+	}
+
+	/**
+	 * ファイルのサイズを取得する.
+	 * <p>
+	 * {@link #setUseListCache()}を実行している場合、親ディレクトリのファイルリストか、<br>
+	 * 以前に問い合わせた結果が記録されていれば、FTPサーバへ接続せずに記録から返します.
+	 * </p>
+	 *
+	 * @param path
+	 *            ファイルの絶対パス
+	 * @return ファイルサイズ（バイト）、ファイルが存在しない場合は-1
+	 * @throws IOException
+	 *             入出力エラーが発生した場合
+	 */
+	public long getFileSize(String path) throws IOException {
+		FTPFile file = getFile(path);
+		if (file == null || !file.isFile()) {
+			return -1;
+		}
+		return file.getSize();
+	}
+
+	/**
+	 * ファイル存在チェック.
+	 * <p>
+	 * {@link #setUseListCache()}を実行している場合、親ディレクトリのファイルリストか、<br>
+	 * 以前に問い合わせた結果が記録されていれば、FTPサーバへ接続せずに記録から判定します.
+	 * </p>
+	 *
+	 * @param path
+	 *            ファイルの絶対パス
+	 * @return 存在していればtrue（ディレクトリの場合はfalse）
+	 * @throws IOException
+	 *             入出力エラーが発生した場合
+	 */
+	public boolean existFile(String path) throws IOException {
+		FTPFile file = getFile(path);
+		return file != null && file.isFile();
+	}
+
+	/**
+	 * ファイル情報を取得する.
+	 *
+	 * @param path
+	 *            ファイルの絶対パス
+	 * @return ファイル情報（存在しない場合はnull）
+	 * @throws IOException
+	 *             入出力エラーが発生した場合
+	 */
+	private FTPFile getFile(String path) throws IOException {
+		FTPFile[] cached = super.getCachedFile(path);
+		if (cached != null) {
+			return (cached.length == 0) ? null : cached[0];
+		}
+		try {
+			// 接続
+			super.connectBase();
+			// ファイル情報取得
+			return super.getFileBase(path);
+		} catch (IOException e) {
+			// 入出力エラーが発生した接続は再利用しない
+			super.discardBase();
+			throw e;
 		} finally {
 			// 切断
 			super.disconnectBase();
@@ -144,6 +398,10 @@ public class FtpAction extends FtpBaseAction {
 			super.connectBase();
 			// ディレクトリ作成
 			super.makeDirectoryBase(path);
+		} catch (IOException e) {
+			// 入出力エラーが発生した接続は再利用しない
+			super.discardBase();
+			throw e;
 		} finally {
 			// 切断
 			super.disconnectBase();
@@ -165,6 +423,10 @@ public class FtpAction extends FtpBaseAction {
 			super.connectBase();
 			// ディレクトリ存在チェック
 			return super.existDirectoryBase(path);
+		} catch (IOException e) {
+			// 入出力エラーが発生した接続は再利用しない
+			super.discardBase();
+			throw e;
 		} finally {
 			// 切断
 			super.disconnectBase();
@@ -174,7 +436,8 @@ public class FtpAction extends FtpBaseAction {
 	/**
 	 * ディレクトリの削除.
 	 * <p>
-	 * 強制的にディレクトリ配下のサブディレクトリやファイルも全て削除します.
+	 * 強制的にディレクトリ配下のサブディレクトリやファイルも全て削除します.<br>
+	 * ファイル数が多い場合は{@link #deleteDirectory(String, int)}を使用してください.
 	 * </p>
 	 *
 	 * @param path
@@ -188,12 +451,110 @@ public class FtpAction extends FtpBaseAction {
 			super.connectBase();
 			// ディレクトリ削除
 			super.deleteDirectoryBase(path);
+		} catch (IOException e) {
+			// 入出力エラーが発生した接続は再利用しない
+			super.discardBase();
+			throw e;
 		} finally {
 			// 切断
 			super.disconnectBase();
 		}
 	}
 
+	/**
+	 * ディレクトリを複数の接続で並列に削除する.
+	 * <p>
+	 * 強制的にディレクトリ配下のサブディレクトリやファイルも全て削除します.<br>
+	 * ディレクトリ配下を階層ごとに並列にリスト取得し（MLSDに対応したFTPサーバではMLSD）、<br>
+	 * 全てのファイルを空いた接続で並列に削除した後、深い階層から順にディレクトリを並列に削除します.<br>
+	 * workディレクトリは移動しないため、{@link #deleteDirectory(String)}より往復の回数が少なくなります.<br>
+	 * 接続プールを使用する場合、接続数は{@link FtpSessionPool#getMaxSize()}までとなります.<br>
+	 * 接続プールを使用しない場合は、階層ごとに接続し直します.<br>
+	 * 削除できなかったファイルやディレクトリがあっても残りの削除を続け、<br>
+	 * 最後に {@link KtException}がthrowされます.<br>
+	 * 進捗は{@link #setTransferListener(TransferListener)}のリスナーに、ファイルとディレクトリ1つごとに通知されます.
+	 * </p>
+	 *
+	 * @param path
+	 *            ディレクトリの絶対パス
+	 * @param sessionCount
+	 *            同時に使用する接続数
+	 * @return 削除結果（件数はファイルとディレクトリの合計、サイズはファイルの合計）
+	 * @throws IOException
+	 *             入出力エラーが発生した場合
+	 */
+	public TransferReport deleteDirectory(String path, int sessionCount)
+			throws IOException {
+		checkSessionCount(sessionCount);
+		if (!existDirectory(path)) {
+			throw new KtException("A048", "ディレクトリが存在しません [" + path + "]");
+		}
+		// 階層ごとにリストを取得
+		final List<DeleteEntry> fileList = Collections
+				.synchronizedList(new ArrayList<DeleteEntry>());
+		List<List<DeleteEntry>> levelList = new ArrayList<List<DeleteEntry>>();
+		List<DeleteEntry> dirList = new ArrayList<DeleteEntry>();
+		dirList.add(new DeleteEntry(path, 0, true));
+		int dirCount = 0;
+		while (!dirList.isEmpty()) {
+			levelList.add(dirList);
+			dirCount += dirList.size();
+			final TransferQueue<DeleteEntry> queue = new TransferQueue<DeleteEntry>(
+					dirList);
+			final List<DeleteEntry> subDirList = Collections
+					.synchronizedList(new ArrayList<DeleteEntry>());
+			Throwable error = runTask(
+					getWorkerCount(sessionCount, dirList.size()),
+					"delete-scan", new BatchTask() {
+						@Override
+						public void execute(FtpAction worker)
+								throws IOException {
+							worker.scanAll(queue, fileList, subDirList);
+						}
+					});
+			if (error != null) {
+				rethrow(error);
+			}
+			dirList = new ArrayList<DeleteEntry>(subDirList);
+		}
+		long totalBytes = 0;
+		for (DeleteEntry entry : fileList) {
+			totalBytes += entry.size;
+		}
+		TransferReport report = new TransferReport(fileList.size() + dirCount,
+				totalBytes);
+		getLogger().debugLog(
+				"ディレクトリ削除を開始します [" + path + "][files=" + fileList.size()
+						+ "][directories=" + dirCount + "]");
+		try {
+			// ファイルを削除してから、深い階層から順にディレクトリを削除
+			levelList.add(fileList);
+			Throwable error = null;
+			for (int i = levelList.size() - 1; i >= 0; i--) {
+				List<DeleteEntry> entryList = levelList.get(i);
+				if (error == null) {
+					error = deleteAll(entryList, sessionCount, report);
+				} else {
+					// 入出力エラーの後は削除しない
+					for (DeleteEntry entry : entryList) {
+						report.add(entry.size, false);
+					}
+				}
+			}
+			if (error != null) {
+				rethrow(error);
+			}
+		} finally {
+			report.finish();
+		}
+		getLogger().debugLog("ディレクトリ削除が終了しました " + report);
+		if (report.getFailureCount() > 0) {
+			throw new KtException("A048", "ディレクトリ削除に失敗しました [" + path + "] "
+					+ report);
+		}
+		return report;
+	}
+
 	/**
 	 * ファイルの削除.
 	 *
@@ -208,6 +569,10 @@ public class FtpAction extends FtpBaseAction {
 			super.connectBase();
 			// ファイル削除
 			super.deleteFileBase(path);
+		} catch (IOException e) {
+			// 入出力エラーが発生した接続は再利用しない
+			super.discardBase();
+			throw e;
 		} finally {
 			// 切断
 			super.disconnectBase();
@@ -218,8 +583,10 @@ public class FtpAction extends FtpBaseAction {
 	 * ファイルをFTPサーバへPUTする.
 	 * <p>
 	 * 複数ファイルのPUTを1回の接続で行います.<br>
+	 * リモートディレクトリごとにまとめて転送するため、workディレクトリの移動はディレクトリごとに1回となります.<br>
 	 * 既に存在する場合も上書きします.<br>
-	 * 失敗した場合でもExceptionはthrowされず {@link PutData}オブジェクトに結果ならびにエラーメッセージがセットされます.
+	 * 失敗した場合でもExceptionはthrowされず {@link PutData}オブジェクトに結果ならびにエラーメッセージがセットされます.<br>
+	 * リモートディレクトリが存在しない場合も失敗となりますが、{@link #setMakeRemoteDirectory()}を実行しておくと作成してから転送します.
 	 * </p>
 	 *
 	 * @param putList
@@ -228,16 +595,816 @@ public class FtpAction extends FtpBaseAction {
 	 *             入出力エラーが発生した場合
 	 */
 	public void put(List<PutData> putList) throws IOException {
+		put(putList, 1);
+	}
+
+	/**
+	 * ファイルをFTPサーバへ複数の接続で並列にPUTする.
+	 * <p>
+	 * 指定数の接続を同時に使用し、サイズの大きいファイルから順に、空いた接続で転送します.<br>
+	 * 小さいファイルが多い場合は往復の待ち時間が、大きいファイルの場合は1接続あたりの転送速度が分散されます.<br>
+	 * 接続プールを使用する場合、接続数は{@link FtpSessionPool#getMaxSize()}までとなります.<br>
+	 * 接続数が1の場合は{@link #put(List)}と同じく、リモートディレクトリごとにまとめて1回の接続で転送します.<br>
+	 * 既に存在する場合も上書きします.<br>
+	 * 失敗した場合でもExceptionはthrowされず {@link PutData}オブジェクトに結果ならびにエラーメッセージがセットされます.<br>
+	 * 入出力エラーが発生した接続はそこで転送を終え、残りのファイルは他の接続で転送します.<br>
+	 * 全ての接続が入出力エラーとなり、転送できなかったファイルが残った場合はExceptionがthrowされます.
+	 * </p>
+	 *
+	 * @param putList
+	 *            PUT処理情報のリスト
+	 * @param sessionCount
+	 *            同時に使用する接続数
+	 * @return 転送結果
+	 * @throws IOException
+	 *             入出力エラーが発生した場合
+	 */
+	public TransferReport put(List<PutData> putList, int sessionCount)
+			throws IOException {
+		checkSessionCount(sessionCount);
+		// ファイルサイズを取得
+		final Map<PutData, Long> sizeMap = new HashMap<PutData, Long>();
+		long totalBytes = 0;
+		for (PutData putData : putList) {
+			long size = putData.getLocalFileSize();
+			sizeMap.put(putData, Long.valueOf(size));
+			totalBytes += size;
+		}
+		final TransferReport report = new TransferReport(putList.size(),
+				totalBytes);
+		int workerCount = getWorkerCount(sessionCount, putList.size());
+		try {
+			if (workerCount <= 1) {
+				// 1回の接続でリモートディレクトリごとに転送
+				putAll(new TransferQueue<PutData>(groupByDirectory(putList)),
+						sizeMap, report);
+			} else {
+				// サイズの大きい順（同じサイズはリモートディレクトリごと）に、空いた接続で転送
+				List<PutData> sortedList = groupByDirectory(putList);
+				Collections.sort(sortedList, new Comparator<PutData>() {
+					@Override
+					public int compare(PutData o1, PutData o2) {
+						return sizeMap.get(o2).compareTo(sizeMap.get(o1));
+					}
+				});
+				final TransferQueue<PutData> queue = new TransferQueue<PutData>(
+						sortedList);
+				Throwable error = runParallel(workerCount, "put",
+						new BatchTask() {
+							@Override
+							public void execute(FtpAction worker)
+									throws IOException {
+								worker.putAll(queue, sizeMap, report);
+							}
+						});
+				if (error != null && !queue.isEmpty()) {
+					// 転送できなかったファイルを失敗にする
+					for (PutData putData = queue.next(); putData != null; putData = queue
+							.next()) {
+						putData.fail("接続エラーのためPUT処理を行いませんでした");
+						report.add(sizeMap.get(putData).longValue(), false);
+					}
+					rethrow(error);
+				}
+			}
+		} finally {
+			report.finish();
+		}
+		getLogger().debugLog("PUT処理が終了しました " + report);
+		return report;
+	}
+
+	/**
+	 * ファイルをFTPサーバからGETする.
+	 * <p>
+	 * 複数ファイルのGETを1回の接続で行います.<br>
+	 * 保存先のローカルファイルが既に存在する場合も上書きします.<br>
+	 * 失敗した場合でもExceptionはthrowされず {@link GetData}オブジェクトに結果ならびにエラーメッセージがセットされます.
+	 * </p>
+	 *
+	 * @param getList
+	 *            GET処理情報のリスト
+	 * @throws IOException
+	 *             入出力エラーが発生した場合
+	 */
+	public void get(List<GetData> getList) throws IOException {
+		get(getList, 1);
+	}
+
+	/**
+	 * ファイルをFTPサーバから複数の接続で並列にGETする.
+	 * <p>
+	 * 指定数の接続を同時に使用し、リストの順に、空いた接続で転送します.<br>
+	 * 接続プールを使用する場合、接続数は{@link FtpSessionPool#getMaxSize()}までとなります.<br>
+	 * 保存先のローカルファイルが既に存在する場合も上書きします.<br>
+	 * 失敗した場合でもExceptionはthrowされず {@link GetData}オブジェクトに結果ならびにエラーメッセージがセットされます.<br>
+	 * 入出力エラーが発生した接続はそこで転送を終え、残りのファイルは他の接続で転送します.<br>
+	 * 全ての接続が入出力エラーとなり、転送できなかったファイルが残った場合はExceptionがthrowされます.<br>
+	 * 転送前にはファイルサイズを問い合わせないため、{@link TransferReport#getTotalBytes()}は-1となります.
+	 * </p>
+	 *
+	 * @param getList
+	 *            GET処理情報のリスト
+	 * @param sessionCount
+	 *            同時に使用する接続数
+	 * @return 転送結果
+	 * @throws IOException
+	 *             入出力エラーが発生した場合
+	 */
+	public TransferReport get(List<GetData> getList, int sessionCount)
+			throws IOException {
+		checkSessionCount(sessionCount);
+		final TransferReport report = new TransferReport(getList.size(), -1);
+		final TransferQueue<GetData> queue = new TransferQueue<GetData>(
+				new ArrayList<GetData>(getList));
+		int workerCount = getWorkerCount(sessionCount, getList.size());
+		try {
+			if (workerCount <= 1) {
+				getAll(queue, report);
+			} else {
+				Throwable error = runParallel(workerCount, "get",
+						new BatchTask() {
+							@Override
+							public void execute(FtpAction worker)
+									throws IOException {
+								worker.getAll(queue, report);
+							}
+						});
+				if (error != null && !queue.isEmpty()) {
+					// 転送できなかったファイルを失敗にする
+					for (GetData getData = queue.next(); getData != null; getData = queue
+							.next()) {
+						getData.fail("接続エラーのためGET処理を行いませんでした");
+						report.add(0, false);
+					}
+					rethrow(error);
+				}
+			}
+		} finally {
+			report.finish();
+		}
+		getLogger().debugLog("GET処理が終了しました " + report);
+		return report;
+	}
+
+	/**
+	 * 1つの大きなファイルを、複数の接続で範囲を分割して並列にGETする.
+	 * <p>
+	 * FTPサーバ上のファイルサイズを接続数で分割し、各接続がREST+RETRでそれぞれの範囲を受信して、<br>
+	 * あらかじめファイルサイズを確保したローカルファイルの同じ位置に書き込みます.<br>
+	 * 1接続あたりの転送速度が回線速度に届かない、遅延の大きい回線で有効です.<br>
+	 * 範囲の終端で受信を中断した接続は、応答の状態が不確かなため再利用せずに切断します.<br>
+	 * 1つの範囲は1MB以上とし、接続プールを使用する場合、接続数は{@link FtpSessionPool#getMaxSize()}までとなります.<br>
+	 * 分割できない場合やFTPサーバ上のファイルサイズが取得できない場合、FTPサーバがRESTに対応していない場合は、1回の接続でGETします.<br>
+	 * 失敗した場合でもExceptionはthrowされず {@link GetData}オブジェクトに結果ならびにエラーメッセージがセットされます.<br>
+	 * ただし、入出力エラーが発生した場合は、書き込み途中のローカルファイルを削除してExceptionがthrowされます.
+	 * </p>
+	 *
+	 * @param getData
+	 *            GET処理情報
+	 * @param sessionCount
+	 *            同時に使用する接続数
+	 * @return 転送結果
+	 * @throws IOException
+	 *             入出力エラーが発生した場合
+	 */
+	public TransferReport getSegmented(GetData getData, int sessionCount)
+			throws IOException {
+		checkSessionCount(sessionCount);
+		final String remotePath = getData.getRemoteFilePath();
+		// FTPサーバ上のファイルサイズを取得
+		long size;
+		try {
+			// 接続
+			super.connectBase();
+			size = super.getRemoteSize(remotePath);
+		} catch (IOException e) {
+			// 入出力エラーが発生した接続は再利用しない
+			super.discardBase();
+			throw e;
+		} finally {
+			// 切断
+			super.disconnectBase();
+		}
+		int segmentCount = getWorkerCount(sessionCount, (int) Math.min(
+				Integer.MAX_VALUE, size / MIN_SEGMENT_SIZE));
+		if (segmentCount <= 1) {
+			// 分割しない
+			return getSingle(getData);
+		}
+		TransferReport report = new TransferReport(1, size);
+		// 範囲に分割
+		List<Segment> segmentList = new ArrayList<Segment>(segmentCount);
+		long segmentSize = size / segmentCount;
+		for (int i = 0; i < segmentCount; i++) {
+			boolean isLast = (i == segmentCount - 1);
+			segmentList.add(new Segment(i * segmentSize, isLast ? size
+					: (i + 1) * segmentSize, isLast));
+		}
+		final TransferQueue<Segment> queue = new TransferQueue<Segment>(
+				segmentList);
+		Throwable error = null;
+		// 1回の接続でGETし直す場合はtrue
+		boolean fallback = false;
+		RandomAccessFile file = new RandomAccessFile(getData.getLocalFilePath(),
+				"rw");
+		try {
+			// ファイルサイズを確保
+			file.setLength(size);
+			final FileChannel channel = file.getChannel();
+			getLogger().debugLog(
+					"分割GETを開始します [" + remotePath + "][size=" + size
+							+ "][segments=" + segmentCount + "]");
+			error = runParallel(segmentCount, "segment", new BatchTask() {
+				@Override
+				public void execute(FtpAction worker) throws IOException {
+					worker.getSegments(remotePath, channel, queue);
+				}
+			});
+			if (error == null && queue.isCancelled()) {
+				// 範囲を指定して受信を開始できなかった
+				fallback = true;
+				getLogger().debugLog("分割GETを開始できないため、1回の接続でGETします [" + remotePath
+						+ "]");
+			} else if (error == null) {
+				// 全ての範囲を受信し、ファイルサイズが一致することを確認
+				boolean isCompleted = (channel.size() == size);
+				for (Segment segment : segmentList) {
+					isCompleted &= segment.isCompleted();
+				}
+				if (isCompleted) {
+					getData.success(size);
+				} else {
+					getData.fail("受信したファイルサイズが一致しませんでした");
+				}
+			} else {
+				getData.fail("分割GET処理中にエラーが発生しました [" + error.getMessage()
+						+ "]");
+			}
+		} finally {
+			file.close();
+			if (!fallback) {
+				if (!getData.isDone() || !getData.isSuccess()) {
+					new File(getData.getLocalFilePath()).delete();
+				}
+				if (getData.isDone()) {
+					progress(report, size, getData.isSuccess());
+				}
+				report.finish();
+			}
+		}
+		if (fallback) {
+			return getSingle(getData);
+		}
+		getLogger().debugLog("分割GET処理が終了しました " + report);
+		if (error != null) {
+			rethrow(error);
+		}
+		return report;
+	}
+
+	/**
+	 * 1つのファイルを分割せずに1回の接続でGETする.
+	 *
+	 * @param getData
+	 *            GET処理情報
+	 * @return 転送結果
+	 * @throws IOException
+	 *             入出力エラーが発生した場合
+	 */
+	private TransferReport getSingle(GetData getData) throws IOException {
+		List<GetData> getList = new ArrayList<GetData>();
+		getList.add(getData);
+		return get(getList, 1);
+	}
+
+	/**
+	 * キューが空になるまで、範囲ごとに接続して分割GETする.
+	 *
+	 * @param remotePath
+	 *            FTPサーバ上のファイルパス
+	 * @param channel
+	 *            書き込み先のローカルファイル
+	 * @param queue
+	 *            GETする範囲のキュー
+	 * @throws IOException
+	 *             入出力エラーが発生した場合
+	 */
+	private void getSegments(String remotePath, FileChannel channel,
+			TransferQueue<Segment> queue) throws IOException {
+		for (Segment segment = queue.next(); segment != null; segment = queue
+				.next()) {
+			try {
+				// 接続
+				super.connectBase();
+				// 範囲のGET
+				if (!super.getSegment(remotePath, channel, segment)) {
+					// 範囲を指定して受信を開始できないので分割をやめる
+					queue.cancel();
+				}
+			} catch (IOException e) {
+				// 入出力エラーが発生した接続は再利用しない
+				super.discardBase();
+				throw e;
+			} finally {
+				// 切断
+				super.disconnectBase();
+			}
+		}
+	}
+
+	/**
+	 * 接続数の指定をチェックする.
+	 *
+	 * @param sessionCount
+	 *            同時に使用する接続数
+	 */
+	private static void checkSessionCount(int sessionCount) {
+		if (sessionCount <= 0) {
+			throw new KtException("B004", "接続数の設定が不正な値です。[sessionCount:"
+					+ sessionCount + "]");
+		}
+	}
+
+	/**
+	 * 実際に使用する接続数を返す.
+	 * <p>
+	 * ファイル数と、接続プールを使用する場合はプールの最大接続数を上限とします.
+	 * </p>
+	 *
+	 * @param sessionCount
+	 *            指定された接続数
+	 * @param fileCount
+	 *            ファイル数
+	 * @return 接続数
+	 */
+	private int getWorkerCount(int sessionCount, int fileCount) {
+		int workerCount = Math.min(sessionCount, fileCount);
+		if (isSessionPool()) {
+			workerCount = Math.min(workerCount, FtpSessionPool.getInstance()
+					.getMaxSize());
+		}
+		return workerCount;
+	}
+
+	/**
+	 * リモートディレクトリごとにまとめて並べ替える.
+	 * <p>
+	 * ディレクトリの順は最初に現れた順、ディレクトリ内はリストの順となります.
+	 * </p>
+	 *
+	 * @param putList
+	 *            PUT処理情報のリスト
+	 * @return 並べ替えたリスト
+	 */
+	private static List<PutData> groupByDirectory(List<PutData> putList) {
+		Map<String, List<PutData>> groupMap = new LinkedHashMap<String, List<PutData>>();
+		for (PutData putData : putList) {
+			List<PutData> group = groupMap.get(putData.getRemoteDirPath());
+			if (group == null) {
+				group = new ArrayList<PutData>();
+				groupMap.put(putData.getRemoteDirPath(), group);
+			}
+			group.add(putData);
+		}
+		List<PutData> groupedList = new ArrayList<PutData>(putList.size());
+		for (List<PutData> group : groupMap.values()) {
+			groupedList.addAll(group);
+		}
+		return groupedList;
+	}
+
+	/**
+	 * 複数のスレッドで並列に転送する.
+	 * <p>
+	 * スレッドごとに、接続先と各種設定を引き継いだ別の{@link FtpAction}で処理を実行し、全ての終了を待ちます.
+	 * </p>
+	 *
+	 * @param workerCount
+	 *            スレッド数（接続数）
+	 * @param name
+	 *            スレッド名に付加する処理名
+	 * @param task
+	 *            スレッドごとに実行する処理
+	 * @return 最初に発生したエラー（エラーが無い場合はnull）
+	 */
+	private Throwable runParallel(int workerCount, String name,
+			final BatchTask task) {
+		final List<Throwable> errorList = Collections
+				.synchronizedList(new ArrayList<Throwable>());
+		Thread[] threads = new Thread[workerCount];
+		for (int i = 0; i < workerCount; i++) {
+			final FtpAction worker = new FtpAction(this);
+			worker.setTransferListener(getTransferListener());
+			threads[i] = new Thread(new Runnable() {
+				@Override
+				public void run() {
+					try {
+						task.execute(worker);
+					} catch (Throwable e) {
+						errorList.add(e);
+					}
+				}
+			}, "kt-net-ftp-" + name + "-" + i);
+			threads[i].start();
+		}
+		// 全てのスレッドの終了を待つ
+		boolean interrupted = false;
+		for (Thread thread : threads) {
+			while (thread.isAlive()) {
+				try {
+					thread.join();
+				} catch (InterruptedException e) {
+					interrupted = true;
+				}
+			}
+		}
+		if (interrupted) {
+			Thread.currentThread().interrupt();
+		}
+		return errorList.isEmpty() ? null : errorList.get(0);
+	}
+
+	/**
+	 * 別スレッドで発生したエラーをthrowする.
+	 *
+	 * @param e
+	 *            エラー
+	 * @throws IOException
+	 *             入出力エラーの場合
+	 */
+	private static void rethrow(Throwable e) throws IOException {
+		if (e instanceof IOException) {
+			throw (IOException) e;
+		} else if (e instanceof RuntimeException) {
+			throw (RuntimeException) e;
+		} else if (e instanceof Error) {
+			throw (Error) e;
+		}
+		throw new IOException(e);
+	}
+
+	/**
+	 * 1回の接続で、キューが空になるまでPUTする.
+	 *
+	 * @param queue
+	 *            PUTするファイルのキュー
+	 * @param sizeMap
+	 *            ファイルサイズ
+	 * @param report
+	 *            転送結果
+	 * @throws IOException
+	 *             入出力エラーが発生した場合
+	 */
+	private void putAll(TransferQueue<PutData> queue,
+			Map<PutData, Long> sizeMap, TransferReport report)
+			throws IOException {
 		try {
 			// 接続
 			super.connectBase();
 			// ファイルのPUT
-			for (PutData putData : putList) {
-				super.put(putData);
+			for (PutData putData = queue.next(); putData != null; putData = queue
+					.next()) {
+				try {
+					super.put(putData);
+				} catch (IOException e) {
+					putData.fail("PUT処理中に入出力エラーが発生しました [" + e.getMessage()
+							+ "]");
+					throw e;
+				} finally {
+					// 入出力エラー以外の例外で中断した場合は加算しない
+					if (putData.isDone()) {
+						progress(report, sizeMap.get(putData).longValue(),
+								putData.isSuccess());
+					}
+				}
+			}
+		} catch (IOException e) {
+			// 入出力エラーが発生した接続は再利用しない
+			super.discardBase();
+			throw e;
+		} finally {
+			// 切断
+			super.disconnectBase();
+		}
+	}
+
+	/**
+	 * 1回の接続で、キューが空になるまでGETする.
+	 *
+	 * @param queue
+	 *            GETするファイルのキュー
+	 * @param report
+	 *            転送結果
+	 * @throws IOException
+	 *             入出力エラーが発生した場合
+	 */
+	private void getAll(TransferQueue<GetData> queue, TransferReport report)
+			throws IOException {
+		try {
+			// 接続
+			super.connectBase();
+			// ファイルのGET
+			for (GetData getData = queue.next(); getData != null; getData = queue
+					.next()) {
+				try {
+					super.get(getData);
+				} catch (IOException e) {
+					getData.fail("GET処理中に入出力エラーが発生しました [" + e.getMessage()
+							+ "]");
+					throw e;
+				} finally {
+					// 入出力エラー以外の例外で中断した場合は加算しない
+					if (getData.isDone()) {
+						progress(report, getData.getSize(), getData.isSuccess());
+					}
+				}
+			}
+		} catch (IOException e) {
+			// 入出力エラーが発生した接続は再利用しない
+			super.discardBase();
+			throw e;
+		} finally {
+			// 切断
+			super.disconnectBase();
+		}
+	}
+
+	/**
+	 * 指定数の接続で処理を実行する.
+	 * <p>
+	 * 接続数が1の場合は、このスレッドで実行します.
+	 * </p>
+	 *
+	 * @param workerCount
+	 *            接続数
+	 * @param name
+	 *            スレッド名に付加する処理名
+	 * @param task
+	 *            接続ごとに実行する処理
+	 * @return 最初に発生したエラー（エラーが無い場合はnull）
+	 */
+	private Throwable runTask(int workerCount, String name, BatchTask task) {
+		if (workerCount > 1) {
+			return runParallel(workerCount, name, task);
+		}
+		try {
+			task.execute(this);
+		} catch (Throwable e) {
+			return e;
+		}
+		return null;
+	}
+
+	/**
+	 * 1回の接続で、キューが空になるまでディレクトリのリストを取得する.
+	 *
+	 * @param queue
+	 *            リストを取得するディレクトリのキュー
+	 * @param fileList
+	 *            ディレクトリ以外のファイルを追加するリスト
+	 * @param subDirList
+	 *            サブディレクトリを追加するリスト
+	 * @throws IOException
+	 *             入出力エラーが発生した場合
+	 */
+	private void scanAll(TransferQueue<DeleteEntry> queue,
+			List<DeleteEntry> fileList, List<DeleteEntry> subDirList)
+			throws IOException {
+		try {
+			// 接続
+			super.connectBase();
+			// ファイルリスト取得
+			for (DeleteEntry dir = queue.next(); dir != null; dir = queue
+					.next()) {
+				String dirPath = dir.path.endsWith("/") ? dir.path : dir.path
+						+ "/";
+				for (FTPFile file : super.listDirectoryBase(dir.path)) {
+					String name = file.getName();
+					if (name.equals(".") || name.equals("..")) {
+						continue;
+					}
+					if (file.isDirectory()) {
+						subDirList.add(new DeleteEntry(dirPath + name, 0, true));
+					} else {
+						// シンボリックリンクはリンク自体を削除する
+						fileList.add(new DeleteEntry(dirPath + name, Math.max(0,
+								file.getSize()), false));
+					}
+				}
+			}
+		} catch (IOException e) {
+			// 入出力エラーが発生した接続は再利用しない
+			super.discardBase();
+			throw e;
+		} finally {
+			// 切断
+			super.disconnectBase();
+		}
+	}
+
+	/**
+	 * ファイルもしくはディレクトリを、指定数の接続で並列に削除する.
+	 * <p>
+	 * 入出力エラーが発生した場合、削除できなかったものは失敗として加算します.
+	 * </p>
+	 *
+	 * @param entryList
+	 *            削除するファイルもしくはディレクトリ
+	 * @param sessionCount
+	 *            同時に使用する接続数
+	 * @param report
+	 *            削除結果
+	 * @return 最初に発生したエラー（エラーが無い場合はnull）
+	 */
+	private Throwable deleteAll(List<DeleteEntry> entryList, int sessionCount,
+			final TransferReport report) {
+		final TransferQueue<DeleteEntry> queue = new TransferQueue<DeleteEntry>(
+				entryList);
+		Throwable error = runTask(getWorkerCount(sessionCount, entryList
+				.size()), "delete", new BatchTask() {
+			@Override
+			public void execute(FtpAction worker) throws IOException {
+				worker.deleteEntries(queue, report);
+			}
+		});
+		if (error != null) {
+			// 削除できなかったものを失敗にする
+			for (DeleteEntry entry = queue.next(); entry != null; entry = queue
+					.next()) {
+				report.add(entry.size, false);
+			}
+		}
+		return error;
+	}
+
+	/**
+	 * 1回の接続で、キューが空になるまでファイルもしくはディレクトリを削除する.
+	 *
+	 * @param queue
+	 *            削除するファイルもしくはディレクトリのキュー
+	 * @param report
+	 *            削除結果
+	 * @throws IOException
+	 *             入出力エラーが発生した場合
+	 */
+	private void deleteEntries(TransferQueue<DeleteEntry> queue,
+			TransferReport report) throws IOException {
+		try {
+			// 接続
+			super.connectBase();
+			// 削除
+			for (DeleteEntry entry = queue.next(); entry != null; entry = queue
+					.next()) {
+				boolean success = false;
+				try {
+					success = super.deleteEntryBase(entry.path,
+							entry.isDirectory);
+					if (!success) {
+						getLogger().debugLog("削除に失敗しました [" + entry.path + "]");
+					}
+				} finally {
+					progress(report, entry.size, success);
+				}
 			}
+		} catch (IOException e) {
+			// 入出力エラーが発生した接続は再利用しない
+			super.discardBase();
+			throw e;
 		} finally {
 			// 切断
 			super.disconnectBase();
 		}
 	}
+
+	/**
+	 * 1ファイルの結果を転送結果に加算し、リスナーに通知する.
+	 *
+	 * @param report
+	 *            転送結果
+	 * @param size
+	 *            ファイルサイズ
+	 * @param success
+	 *            成功した場合はtrue
+	 */
+	private void progress(TransferReport report, long size, boolean success) {
+		report.add(size, success);
+		TransferListener listener = getTransferListener();
+		if (listener != null) {
+			// 並列の場合も同時に呼び出さない
+			synchronized (report) {
+				listener.onProgress(report);
+			}
+		}
+	}
+
+	/**
+	 * 並列転送でスレッドごとに実行する処理.
+	 */
+	private interface BatchTask {
+		/**
+		 * 処理を実行する.
+		 *
+		 * @param worker
+		 *            スレッドごとの{@link FtpAction}
+		 * @throws IOException
+		 *             入出力エラーが発生した場合
+		 */
+		void execute(FtpAction worker) throws IOException;
+	}
+
+	/**
+	 * 削除するファイルもしくはディレクトリ.
+	 */
+	private static class DeleteEntry {
+		/** 絶対パス */
+		private final String path;
+
+		/** ファイルサイズ（ディレクトリの場合は0） */
+		private final long size;
+
+		/** ディレクトリの場合はtrue */
+		private final boolean isDirectory;
+
+		/**
+		 * コンストラクタ.
+		 *
+		 * @param path
+		 *            絶対パス
+		 * @param size
+		 *            ファイルサイズ
+		 * @param isDirectory
+		 *            ディレクトリの場合はtrue
+		 */
+		private DeleteEntry(String path, long size, boolean isDirectory) {
+			this.path = path;
+			this.size = size;
+			this.isDirectory = isDirectory;
+		}
+	}
+
+	/**
+	 * 複数の接続で共有する、転送するファイルのキュー.
+	 *
+	 * @param <T>
+	 *            転送処理情報の型
+	 */
+	private static class TransferQueue<T> {
+		/** 転送するファイル */
+		private final List<T> list;
+
+		/** 次に取り出す位置 */
+		private int index;
+
+		/** 取り出しを打ち切った場合はtrue */
+		private boolean cancelled;
+
+		/**
+		 * コンストラクタ.
+		 *
+		 * @param list
+		 *            転送するファイル（取り出す順）
+		 */
+		private TransferQueue(List<T> list) {
+			this.list = list;
+		}
+
+		/**
+		 * 次のファイルを取り出す.
+		 *
+		 * @return 転送するファイル（空の場合はnull）
+		 */
+		private synchronized T next() {
+			if (index >= list.size()) {
+				return null;
+			}
+			return list.get(index++);
+		}
+
+		/**
+		 * 空であるかを返す.
+		 *
+		 * @return 全て取り出し済みであればtrue
+		 */
+		private synchronized boolean isEmpty() {
+			return index >= list.size();
+		}
+
+		/**
+		 * 残りのファイルの取り出しを打ち切る.
+		 */
+		private synchronized void cancel() {
+			index = list.size();
+			cancelled = true;
+		}
+
+		/**
+		 * 取り出しを打ち切ったかを返す.
+		 *
+		 * @return 打ち切った場合はtrue
+		 */
+		private synchronized boolean isCancelled() {
+			return cancelled;
+		}
+	}
 }
@@ -1,16 +1,32 @@
 package jp.kt.net.ftp;
 
-import java.io.BufferedInputStream;
+import java.io.File;
 import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
 
 import jp.kt.exception.KtException;
 import jp.kt.logger.ApplicationLogger;
+import jp.kt.net.io.BufferPool;
+import jp.kt.net.io.TransferDigest;
 
 import org.apache.commons.net.ftp.FTP;
 import org.apache.commons.net.ftp.FTPClient;
 import org.apache.commons.net.ftp.FTPFile;
+import org.apache.commons.net.ftp.FTPFileFilter;
+import org.apache.commons.net.ftp.FTPListParseEngine;
 import org.apache.commons.net.ftp.FTPReply;
 
 /**
@@ -20,7 +36,7 @@ import org.apache.commons.net.ftp.FTPReply;
  */
 abstract class FtpBaseAction {
 	/** FTP接続 */
-	private FTPClient ftpClient;
+	private KtFtpClient ftpClient;
 
 	/** FTPサーバ名 */
 	private String host;
@@ -37,12 +53,68 @@ abstract class FtpBaseAction {
 	/** PASVモードフラグ */
 	private boolean isPassiveMode = true;
 
+	/** {@link FtpSessionPool}の使用フラグ */
+	private boolean isSessionPool = true;
+
+	/** プールから借りている接続（プールを使用しない場合はnull） */
+	private FtpSession session;
+
+	/** 複数ファイルの転送の進捗を受け取るリスナー */
+	private TransferListener transferListener;
+
+	/** ファイルリスト取得前にディレクトリの存在をチェックするフラグ */
+	private boolean isDirectoryCheck = true;
+
+	/** {@link FtpListCache}の使用フラグ */
+	private boolean isListCache;
+
+	/** PUT時にリモートディレクトリが存在しない場合に作成するフラグ */
+	private boolean isMakeRemoteDirectory;
+
+	/** 現在のworkディレクトリ（不明な場合はnull） */
+	private String currentDirectory;
+
+	/** 接続してから存在しないことを確認したリモートディレクトリ */
+	private Set<String> missingDirectorySet;
+
+	/** 存在を確認したディレクトリのキャッシュ（使用しない場合はnull） */
+	private RemoteDirectoryCache directoryCache;
+
 	/** Logger */
 	private ApplicationLogger logger;
 
+	/** PUT時にハッシュ値を計算するアルゴリズム群 */
+	private List<String> digestAlgorithmList;
+
+	/** PUT後にFTPサーバ上のハッシュ値と照合するフラグ */
+	private boolean isVerifyByServer;
+
+	/** 転送中に入出力エラーが発生した場合の最大リトライ回数 */
+	private int retryTimes = 0;
+
+	/** リトライ時の間隔（ミリ秒） */
+	private int retryIntervalMillis = 0;
+
+	/** FTPサーバのHASHコマンドで指定するアルゴリズム名 */
+	private static final String[] HASH_ALGORITHMS = { "SHA-512", "SHA-256",
+			"SHA-1", "MD5", TransferDigest.CRC32 };
+
 	/** デフォルトタイムアウト（ミリ秒） */
 	private static final int TIMEOUT_MILLIS = 10000;
 
+	/** ファイルリストから解析できなかった行と、MLSDのカレントディレクトリ、親ディレクトリを除外するフィルタ */
+	static final FTPFileFilter ENTRY_FILTER = new FTPFileFilter() {
+		@Override
+		public boolean accept(FTPFile file) {
+			if (file == null) {
+				return false;
+			}
+			String raw = file.getRawListing();
+			return raw == null
+					|| !raw.matches("(?is)(.*;)?type=(cdir|pdir);.*");
+		}
+	};
+
 	/**
 	 * コンストラクタ.
 	 * <p>
@@ -86,6 +158,33 @@ abstract class FtpBaseAction {
 		this.logger = logger;
 	}
 
+	/**
+	 * コンストラクタ.
+	 * <p>
+	 * 並列で転送する際に、接続先と各種設定を引き継いだ別の接続を作るために使用します.<br>
+	 * 進捗のリスナーは引き継ぎません.
+	 * </p>
+	 *
+	 * @param source
+	 *            引き継ぎ元
+	 */
+	FtpBaseAction(FtpBaseAction source) {
+		this.host = source.host;
+		this.port = source.port;
+		this.user = source.user;
+		this.password = source.password;
+		this.logger = source.logger;
+		this.isPassiveMode = source.isPassiveMode;
+		this.isSessionPool = source.isSessionPool;
+		this.isMakeRemoteDirectory = source.isMakeRemoteDirectory;
+		this.isDirectoryCheck = source.isDirectoryCheck;
+		this.isListCache = source.isListCache;
+		this.digestAlgorithmList = source.digestAlgorithmList;
+		this.isVerifyByServer = source.isVerifyByServer;
+		this.retryTimes = source.retryTimes;
+		this.retryIntervalMillis = source.retryIntervalMillis;
+	}
+
 	/**
 	 * プロキシ設定.
 	 * <p>
@@ -113,51 +212,273 @@ abstract class FtpBaseAction {
 		this.isPassiveMode = false;
 	}
 
+	/**
+	 * 接続プール未使用設定.
+	 * <p>
+	 * デフォルトでは{@link FtpSessionPool}の接続を再利用するため、<br>
+	 * 処理ごとに接続、ログイン、ログアウトを行う場合はこのメソッドを実行する.
+	 * </p>
+	 */
+	public void setNoSessionPool() {
+		this.isSessionPool = false;
+	}
+
+	/**
+	 * ファイルリスト取得前のディレクトリ存在チェック未使用設定.
+	 * <p>
+	 * デフォルトではファイルリストを取得する前にworkディレクトリの移動でディレクトリの存在をチェックするため、<br>
+	 * その往復を省略したい場合はこのメソッドを実行する.<br>
+	 * 未使用の場合、FTPサーバがエラーを応答した場合に {@link KtException}がthrowされます.<br>
+	 * ファイルのパスを指定した場合、LISTではエラーとならずにそのファイルのみのリストとなり、MLSDではエラーとなります.
+	 * </p>
+	 */
+	public void setNoDirectoryCheck() {
+		this.isDirectoryCheck = false;
+	}
+
+	/**
+	 * ファイルリストのキャッシュ使用設定.
+	 * <p>
+	 * デフォルトでは使用しないため、同じディレクトリのファイルリストやファイルの存在、サイズを繰り返し問い合わせる場合はこのメソッドを実行する.<br>
+	 * 記録は{@link FtpListCache}で全ての{@link FtpAction}と共有し、有効期間内はFTPサーバへ接続せずに記録から返します.<br>
+	 * 他のクライアントによる変更は、有効期間が過ぎるまで反映されません.
+	 * </p>
+	 */
+	public void setUseListCache() {
+		this.isListCache = true;
+	}
+
+	/**
+	 * PUT時にハッシュ値を計算するアルゴリズムを追加する.
+	 * <p>
+	 * 転送中のデータから計算するため、転送後にファイルを読み直すことはありません.<br>
+	 * 計算結果は{@link PutData#getDigest(String)}で取得します.
+	 * </p>
+	 *
+	 * @param algorithm
+	 *            アルゴリズム名（MD5、SHA-256、CRC32など）
+	 */
+	public void addDigestAlgorithm(String algorithm) {
+		if (digestAlgorithmList == null) {
+			digestAlgorithmList = new ArrayList<String>();
+		}
+		digestAlgorithmList.add(algorithm);
+	}
+
+	/**
+	 * PUT後にFTPサーバ上のファイルのハッシュ値と照合したい場合に実行する.
+	 * <p>
+	 * FTPサーバがFEATで通知しているHASH、XMD5、XCRCコマンドのいずれかを使用します.<br>
+	 * HASHコマンド以外は、それぞれMD5、CRC32を{@link #addDigestAlgorithm(String)}で追加しておく必要があります.<br>
+	 * 一致しない場合はPUT失敗となります.
+	 * </p>
+	 */
+	public void setVerifyByServer() {
+		this.isVerifyByServer = true;
+	}
+
+	/**
+	 * PUT時にリモートディレクトリが存在しない場合、作成したい場合に実行する.
+	 * <p>
+	 * デフォルトでは作成せず、そのディレクトリへのPUTは失敗となります.<br>
+	 * サブディレクトリも強制的に作成します.
+	 * </p>
+	 */
+	public void setMakeRemoteDirectory() {
+		this.isMakeRemoteDirectory = true;
+	}
+
+	/**
+	 * 転送中に入出力エラーが発生した場合に、リトライを行う場合は実行する.
+	 * <p>
+	 * デフォルトはリトライ無し.<br>
+	 * リトライ時は接続し直し、途中まで転送済みの部分は送り直さずに続きから転送します.<br>
+	 * PUTはFTPサーバ上のファイルサイズ（SIZE、MLST）を問い合わせ、REST+STOR（REST STREAM非対応の場合はAPPE）で、<br>
+	 * GETはローカルに書き込み済みのサイズからREST+RETRで再開します.
+	 * </p>
+	 *
+	 * @param retryTimes
+	 *            最大リトライ回数
+	 * @param intervalMillis
+	 *            リトライ時の間隔（ミリ秒）
+	 */
+	public void setRetrySetting(int retryTimes, int intervalMillis) {
+		if (retryTimes < 0 || intervalMillis < 0) {
+			throw new KtException("B004", "リトライの設定が不正な値です。[retryTimes:"
+					+ retryTimes + "][intervalMillis:" + intervalMillis + "]");
+		}
+		this.retryTimes = retryTimes;
+		this.retryIntervalMillis = intervalMillis;
+	}
+
+	/**
+	 * 複数ファイルの転送の進捗を受け取るリスナーを設定する.
+	 * <p>
+	 * 1ファイルの転送が終わるごとに{@link TransferListener#onProgress(TransferReport)}が呼び出されます.
+	 * </p>
+	 *
+	 * @param transferListener
+	 *            リスナー
+	 */
+	public void setTransferListener(TransferListener transferListener) {
+		this.transferListener = transferListener;
+	}
+
+	/**
+	 * 複数ファイルの転送の進捗を受け取るリスナーを返す.
+	 *
+	 * @return リスナー（未設定の場合はnull）
+	 */
+	TransferListener getTransferListener() {
+		return transferListener;
+	}
+
+	/**
+	 * 接続プールを使用するかを返す.
+	 *
+	 * @return 使用する場合はtrue
+	 */
+	boolean isSessionPool() {
+		return isSessionPool;
+	}
+
+	/**
+	 * Loggerを返す.
+	 *
+	 * @return {@link ApplicationLogger}オブジェクト
+	 */
+	ApplicationLogger getLogger() {
+		return logger;
+	}
+
 	/**
 	 * FTPサーバへ接続.
+	 * <p>
+	 * 接続プールを使用する場合は、プールから接続を借ります.<br>
+	 * 未使用の接続が無い場合は、新しく接続してログインします.
+	 * </p>
 	 *
 	 * @throws IOException
 	 */
 	void connectBase() throws IOException {
-		ftpClient = new FTPClient();
-		// タイムアウト設定１
-		ftpClient.setConnectTimeout(TIMEOUT_MILLIS);
-		ftpClient.setDefaultTimeout(TIMEOUT_MILLIS);
-		// サーバ接続
-		ftpClient.connect(host, port);
-		// 応答
-		int reply = ftpClient.getReplyCode();
-		if (!FTPReply.isPositiveCompletion(reply)) {
-			// コードが200番台以外ならエラー
-			throw new KtException("A043", createMessage("FTPサーバへの接続に失敗しました"));
-		}
-		// ログイン
-		if (!ftpClient.login(user, password)) {
-			// ログイン失敗
-			throw new KtException("A044", createMessage("FTPサーバへのログインに失敗しました"));
-		}
-		// タイムアウト設定２
-		ftpClient.setSoTimeout(TIMEOUT_MILLIS);
-		ftpClient.setDataTimeout(TIMEOUT_MILLIS);
-		// PASVモードに設定
+		currentDirectory = null;
+		missingDirectorySet = null;
+		if (!isSessionPool) {
+			ftpClient = login();
+			directoryCache = FtpSessionPool.getInstance().createDirectoryCache(
+					null);
+			return;
+		}
+		FtpSessionPool pool = FtpSessionPool.getInstance();
+		FtpSessionKey key = new FtpSessionKey(host, port, user, password);
+		session = pool.borrow(key);
+		if (session == null) {
+			// 新しく接続する（失敗した場合は確保した枠を解放する）
+			KtFtpClient client = null;
+			try {
+				client = login();
+				session = new FtpSession(key, client, pool
+						.createDirectoryCache(key));
+			} catch (IOException e) {
+				abort(client);
+				pool.cancel(key);
+				throw e;
+			} catch (RuntimeException e) {
+				abort(client);
+				pool.cancel(key);
+				throw e;
+			}
+		} else {
+			logger.debugLog(createMessage("FTP接続を再利用します"));
+		}
+		ftpClient = session.getFtpClient();
+		directoryCache = session.getDirectoryCache();
+		// PASVモードは接続ごとではなくクライアント側の設定なので、毎回設定する
 		if (isPassiveMode) {
 			ftpClient.enterLocalPassiveMode();
+		} else {
+			ftpClient.enterLocalActiveMode();
+		}
+	}
+
+	/**
+	 * FTPサーバへ接続してログインする.
+	 *
+	 * @return ログイン済みのFTP接続
+	 * @throws IOException
+	 */
+	private KtFtpClient login() throws IOException {
+		KtFtpClient client = new KtFtpClient();
+		try {
+			// タイムアウト設定１
+			client.setConnectTimeout(TIMEOUT_MILLIS);
+			client.setDefaultTimeout(TIMEOUT_MILLIS);
+			// サーバ接続
+			client.connect(host, port);
+			// 応答
+			int reply = client.getReplyCode();
+			if (!FTPReply.isPositiveCompletion(reply)) {
+				// コードが200番台以外ならエラー
+				throw new KtException("A043",
+						createMessage("FTPサーバへの接続に失敗しました"));
+			}
+			// ログイン
+			if (!client.login(user, password)) {
+				// ログイン失敗
+				throw new KtException("A044",
+						createMessage("FTPサーバへのログインに失敗しました"));
+			}
+			// タイムアウト設定２
+			client.setSoTimeout(TIMEOUT_MILLIS);
+			client.setDataTimeout(TIMEOUT_MILLIS);
+			// PASVモードに設定
+			if (isPassiveMode) {
+				client.enterLocalPassiveMode();
+			}
+			// バイナリモード
+			client.setFileType(FTP.BINARY_FILE_TYPE);
+		} catch (IOException e) {
+			abort(client);
+			throw e;
+		} catch (RuntimeException e) {
+			abort(client);
+			throw e;
 		}
-		// バイナリモード
-		ftpClient.setFileType(FTP.BINARY_FILE_TYPE);
 		logger.infoLog("A045", createMessage("FTPサーバへ正常に接続/ログインしました"));
+		return client;
+	}
+
+	/**
+	 * ログイン途中のFTP接続を切断する.
+	 *
+	 * @param client
+	 *            FTP接続（未生成の場合はnull）
+	 */
+	private static void abort(FTPClient client) {
+		if (client != null && client.isConnected()) {
+			try {
+				client.disconnect();
+			} catch (IOException e) {
+				// 接続失敗の例外を優先するので無視する
+			}
+		}
 	}
 
 	/**
 	 * FTPサーバから切断.
 	 * <p>
+	 * 接続プールを使用する場合は、ログアウトせずにプールへ返却します.<br>
 	 * 未接続状態でこのメソッドを呼んでもExceptionは発生しません.
 	 * </p>
 	 *
 	 * @throws IOException
 	 */
 	void disconnectBase() throws IOException {
-		if (ftpClient != null) {
+		if (session != null) {
+			FtpSessionPool.getInstance().giveBack(session);
+			session = null;
+			ftpClient = null;
+		} else if (ftpClient != null) {
 			// ログアウト
 			ftpClient.logout();
 			// 切断
@@ -165,6 +486,23 @@ abstract class FtpBaseAction {
 				ftpClient.disconnect();
 			}
 			logger.infoLog("A046", createMessage("FTPサーバから正常にログアウト/切断されました"));
+			ftpClient = null;
+		}
+	}
+
+	/**
+	 * 入出力エラーが発生した接続を破棄する.
+	 * <p>
+	 * 応答の途中で中断している可能性があるため、プールへは返却せずに切断します.<br>
+	 * 接続プールを使用しない場合は何もしません（{@link #disconnectBase()}で切断します）.
+	 * </p>
+	 */
+	void discardBase() {
+		if (session != null) {
+			FtpSessionPool.getInstance().invalidate(session);
+			session = null;
+			ftpClient = null;
+			logger.infoLog("A046", createMessage("FTPサーバから切断しました"));
 		}
 	}
 
@@ -177,14 +515,101 @@ abstract class FtpBaseAction {
 	 * @throws IOException
 	 */
 	FTPFile[] listFilesBase(String path) throws IOException {
+		FTPFile[] files = initiateListParsingBase(path).getFiles(ENTRY_FILTER);
+		if (isListCache) {
+			FtpListCache.getInstance().putList(getServerName(), path, files);
+		}
+		return files;
+	}
+
+	/**
+	 * キャッシュからファイルリストを取得する.
+	 *
+	 * @param path
+	 *            パス
+	 * @return ファイルリスト（キャッシュを使用しないか、記録が無い場合はnull）
+	 */
+	FTPFile[] getCachedList(String path) {
+		if (!isListCache) {
+			return null;
+		}
+		return FtpListCache.getInstance().getList(getServerName(), path);
+	}
+
+	/**
+	 * ファイルリストのキャッシュを使用するかを返す.
+	 *
+	 * @return 使用する場合はtrue
+	 */
+	boolean isListCache() {
+		return isListCache;
+	}
+
+	/**
+	 * 指定パスのファイルリストを受信し、解析の準備をする.
+	 * <p>
+	 * 受信が完了した状態で返すため、解析中に接続を使用することはありません.<br>
+	 * 解析は{@link FTPListParseEngine#getNext(int)}などで必要な分だけ行います.<br>
+	 * FTPサーバがFEATでMLSTを通知している場合はMLSD、通知していない場合はLISTで取得します.<br>
+	 * 解析結果には{@link #ENTRY_FILTER}で除外する項目が含まれます.
+	 * </p>
+	 *
+	 * @param path
+	 *            パス
+	 * @return 受信済みのファイルリスト
+	 * @throws IOException
+	 */
+	FTPListParseEngine initiateListParsingBase(String path) throws IOException {
+		return initiateListParsing(path, isDirectoryCheck);
+	}
+
+	/**
+	 * 指定パスのファイルリストを、ディレクトリの存在チェックを行わずに取得する.
+	 * <p>
+	 * workディレクトリは移動せず、FTPサーバがエラーを応答した場合は {@link KtException}がthrowされます.<br>
+	 * 解析できなかった行などは{@link #ENTRY_FILTER}で除外します.
+	 * </p>
+	 *
+	 * @param path
+	 *            ディレクトリの絶対パス
+	 * @return ファイルリスト
+	 * @throws IOException
+	 */
+	FTPFile[] listDirectoryBase(String path) throws IOException {
+		return initiateListParsing(path, false).getFiles(ENTRY_FILTER);
+	}
+
+	/**
+	 * 指定パスのファイルリストを受信し、解析の準備をする.
+	 *
+	 * @param path
+	 *            パス
+	 * @param isCheck
+	 *            ディレクトリの存在チェックを行う場合はtrue
+	 * @return 受信済みのファイルリスト
+	 * @throws IOException
+	 */
+	private FTPListParseEngine initiateListParsing(String path, boolean isCheck)
+			throws IOException {
 		// 絶対パスであることをチェック
 		new FtpPath(path);
 		// ディレクトリであることをチェック
-		if (!existDirectoryBase(path)) {
+		if (isCheck && !existDirectoryBase(path)) {
 			throw new KtException("A048", "ディレクトリが存在しません [" + path + "]");
 		}
-		// リスト取得
-		return ftpClient.listFiles(path);
+		// リスト取得（MLSDに対応している場合は、書式が決まっていて時刻も正確なMLSDを使用する）
+		FTPListParseEngine engine;
+		if (ftpClient.hasFeature("MLST")) {
+			engine = ftpClient.initiateMListParsing(path);
+		} else {
+			engine = ftpClient.initiateListParsing(path);
+		}
+		// 受信が途中で打ち切られた場合も、不完全なリストを返さない（キャッシュにも記録しない）
+		if (!FTPReply.isPositiveCompletion(ftpClient.getReplyCode())) {
+			throw new KtException("A048", "ファイルリストの取得に失敗しました [" + path
+					+ "] [" + ftpClient.getReplyString().trim() + "]");
+		}
+		return engine;
 	}
 
 	/**
@@ -192,7 +617,8 @@ abstract class FtpBaseAction {
 	 * <p>
 	 * サブディレクトリも強制的に作成します.<br>
 	 * パーミッションが無かったり、既にディレクトリが存在するなどの要因で<br>
-	 * ディレクトリ作成に失敗した場合は {@link KtException}がthrowされます.
+	 * ディレクトリ作成に失敗した場合は {@link KtException}がthrowされます.<br>
+	 * 存在を確認済みの祖先ディレクトリがキャッシュにある場合は、その1つ下から順に作成します.
 	 * </p>
 	 *
 	 * @param path
@@ -201,7 +627,24 @@ abstract class FtpBaseAction {
 	 */
 	void makeDirectoryBase(String path) throws IOException {
 		FtpPath ftpPath = new FtpPath(path);
-		int allPathCount = ftpPath.getCurrentCount();
+		int allPathCount = ftpPath.getCount();
+		int knownCount = (directoryCache == null) ? 0 : directoryCache
+				.getKnownCount(ftpPath);
+		if (knownCount > 0) {
+			// 存在を確認済みの最も深い祖先の1つ下から作成する
+			ftpPath.moveTo(knownCount + 1);
+			if (ftpClient.makeDirectory(ftpPath.getCurrentPath())) {
+				makeSubDirectories(ftpPath);
+				return;
+			}
+			if (knownCount == allPathCount) {
+				// 既にディレクトリが存在していた
+				throw new KtException("A048", "ディレクトリ作成に失敗しました [" + path
+						+ "]");
+			}
+			// キャッシュに無いディレクトリが存在するか、記録が古いので通常の手順で作成する
+			ftpPath.moveTo(allPathCount);
+		}
 		// まずひとつディレクトリ作成できるところを探して作成
 		boolean isSuccess = false;
 		for (int i = 0; i < allPathCount; i++) {
@@ -219,17 +662,36 @@ abstract class FtpBaseAction {
 			throw new KtException("A048", "ディレクトリ作成に失敗しました [" + path + "]");
 		}
 		// サブディレクトリを作成する
-		int pathCount = ftpPath.getCurrentCount();
-		for (int i = 0; i < allPathCount - pathCount; i++) {
+		makeSubDirectories(ftpPath);
+	}
+
+	/**
+	 * 現在のパスより下のサブディレクトリを作成し、キャッシュに記録する.
+	 *
+	 * @param ftpPath
+	 *            作成済みのディレクトリを現在のパスとしたパス
+	 * @throws IOException
+	 */
+	private void makeSubDirectories(FtpPath ftpPath) throws IOException {
+		// 作成したディレクトリの親のファイルリストは変わるので破棄する
+		FtpListCache.getInstance().invalidateTree(getServerName(),
+				ftpPath.getCurrentPath());
+		while (ftpPath.getCurrentCount() < ftpPath.getCount()) {
 			// 一つ下のディレクトリへ移動
 			ftpPath.moveChild();
 			// ディレクトリ作成（これは成功するはず）
 			ftpClient.makeDirectory(ftpPath.getCurrentPath());
 		}
+		if (directoryCache != null) {
+			directoryCache.add(ftpPath);
+		}
 	}
 
 	/**
 	 * ディレクトリ存在チェック.
+	 * <p>
+	 * 存在を確認済みのディレクトリはキャッシュから判定し、FTPサーバへ問い合わせません.
+	 * </p>
 	 *
 	 * @param path
 	 *            ディレクトリの絶対パス
@@ -238,9 +700,105 @@ abstract class FtpBaseAction {
 	 */
 	boolean existDirectoryBase(String path) throws IOException {
 		// 絶対パスであることをチェック
-		new FtpPath(path);
+		FtpPath ftpPath = new FtpPath(path);
+		if (directoryCache != null
+				&& directoryCache.getKnownCount(ftpPath) == ftpPath.getCount()) {
+			return true;
+		}
 		// workディレクトリを移動して成功したら存在するということ
-		return ftpClient.changeWorkingDirectory(path);
+		boolean exists = changeWorkingDirectory(path);
+		currentDirectory = exists ? path : null;
+		recordDirectory(ftpPath, exists);
+		return exists;
+	}
+
+	/**
+	 * workディレクトリを移動する.
+	 * <p>
+	 * プールへ返却する際にworkディレクトリを戻す必要があることを記録します.
+	 * </p>
+	 *
+	 * @param path
+	 *            ディレクトリパス
+	 * @return 移動できた場合はtrue
+	 * @throws IOException
+	 */
+	private boolean changeWorkingDirectory(String path) throws IOException {
+		boolean result = ftpClient.changeWorkingDirectory(path);
+		if (result && session != null) {
+			session.markDirectoryChanged();
+		}
+		return result;
+	}
+
+	/**
+	 * ディレクトリの存在有無をキャッシュに記録する.
+	 *
+	 * @param ftpPath
+	 *            ディレクトリパス
+	 * @param exists
+	 *            存在していればtrue
+	 */
+	private void recordDirectory(FtpPath ftpPath, boolean exists) {
+		if (directoryCache == null) {
+			return;
+		}
+		if (exists) {
+			directoryCache.add(ftpPath);
+		} else {
+			directoryCache.remove(ftpPath);
+		}
+	}
+
+	/**
+	 * キャッシュからファイル情報を取得する.
+	 *
+	 * @param path
+	 *            ファイルの絶対パス
+	 * @return 存在する場合はファイル情報のみの配列、存在しない場合は空の配列、キャッシュを使用しないか記録が無い場合はnull
+	 */
+	FTPFile[] getCachedFile(String path) {
+		if (!isListCache) {
+			return null;
+		}
+		return FtpListCache.getInstance().getFile(getServerName(), path);
+	}
+
+	/**
+	 * ファイル情報を取得する.
+	 * <p>
+	 * FTPサーバがFEATでMLSTを通知している場合はMLST、通知していない場合はSIZEで問い合わせます.<br>
+	 * SIZEの場合、ファイル情報はファイル名、サイズ、種別のみとなり、ディレクトリは存在しないものとして扱います.
+	 * </p>
+	 *
+	 * @param path
+	 *            ファイルの絶対パス
+	 * @return ファイル情報（存在しない場合はnull）
+	 * @throws IOException
+	 */
+	FTPFile getFileBase(String path) throws IOException {
+		// 絶対パスであることをチェック
+		new FtpPath(path);
+		FTPFile file = null;
+		if (ftpClient.hasFeature("MLST")) {
+			file = ftpClient.mlistFile(path);
+		} else if (FTPReply.isPositiveCompletion(ftpClient.sendCommand("SIZE",
+				path))) {
+			try {
+				long size = Long.parseLong(lastToken(ftpClient
+						.getReplyString()));
+				file = new FTPFile();
+				file.setName(path.substring(path.lastIndexOf('/') + 1));
+				file.setType(FTPFile.FILE_TYPE);
+				file.setSize(size);
+			} catch (NumberFormatException e) {
+				// 不明な応答は存在しないものとする
+			}
+		}
+		if (isListCache) {
+			FtpListCache.getInstance().putFile(getServerName(), path, file);
+		}
+		return file;
 	}
 
 	/**
@@ -255,9 +813,13 @@ abstract class FtpBaseAction {
 	 */
 	void deleteDirectoryBase(String path) throws IOException {
 		// 絶対パスであることをチェック
-		new FtpPath(path);
+		FtpPath ftpPath = new FtpPath(path);
+		// 削除に失敗した場合も一部は削除されている可能性があるので、先にキャッシュから破棄する
+		recordDirectory(ftpPath, false);
+		FtpListCache.getInstance().invalidateTree(getServerName(), path);
 		// workディレクトリ移動
-		if (!ftpClient.changeWorkingDirectory(path)) {
+		currentDirectory = null;
+		if (!changeWorkingDirectory(path)) {
 			throw new KtException("A048", "ディレクトリが存在しません [" + path + "]");
 		}
 		// ディレクトリ削除
@@ -298,6 +860,30 @@ abstract class FtpBaseAction {
 		}
 	}
 
+	/**
+	 * ファイルもしくは空のディレクトリを1つ削除する.
+	 * <p>
+	 * 失敗した場合でもExceptionはthrowされません.<br>
+	 * workディレクトリは移動しません.
+	 * </p>
+	 *
+	 * @param path
+	 *            絶対パス
+	 * @param isDirectory
+	 *            ディレクトリの場合はtrue
+	 * @return 削除できた場合はtrue
+	 * @throws IOException
+	 */
+	boolean deleteEntryBase(String path, boolean isDirectory)
+			throws IOException {
+		FtpListCache.getInstance().invalidate(getServerName(), path);
+		if (!isDirectory) {
+			return ftpClient.deleteFile(path);
+		}
+		recordDirectory(new FtpPath(path), false);
+		return ftpClient.removeDirectory(path);
+	}
+
 	/**
 	 * ファイルを削除する.
 	 *
@@ -308,6 +894,7 @@ abstract class FtpBaseAction {
 	void deleteFileBase(String path) throws IOException {
 		// 絶対パスであることをチェック
 		new FtpPath(path);
+		FtpListCache.getInstance().invalidate(getServerName(), path);
 		// workディレクトリ移動
 		if (!ftpClient.deleteFile(path)) {
 			throw new KtException("A048", "ファイル削除に失敗しました [" + path + "]");
@@ -318,7 +905,11 @@ abstract class FtpBaseAction {
 	 * 1ファイルのPUT.
 	 * <p>
 	 * 既に存在する場合も上書きします.<br>
-	 * 失敗した場合でもExceptionはthrowされず {@link PutData}オブジェクトに結果ならびにエラーメッセージがセットされます.
+	 * 失敗した場合でもExceptionはthrowされず {@link PutData}オブジェクトに結果ならびにエラーメッセージがセットされます.<br>
+	 * 転送には{@link BufferPool}のバッファを使用します.<br>
+	 * 直前のPUTと同じリモートディレクトリの場合は、workディレクトリの移動を省略します.<br>
+	 * 入出力エラーが発生した場合、{@link #setRetrySetting(int, int)}の回数まで接続し直して続きから転送します.<br>
+	 * ローカルファイルを読み込めない場合は、接続し直しても解決しないため、リトライせずに失敗とします.
 	 * </p>
 	 *
 	 * @param putData
@@ -326,31 +917,720 @@ abstract class FtpBaseAction {
 	 * @throws IOException
 	 */
 	void put(PutData putData) throws IOException {
-		InputStream is = null;
+		FileInputStream fis;
+		try {
+			fis = new FileInputStream(putData.getLocalFilePath());
+		} catch (FileNotFoundException e) {
+			putData.fail("ローカルファイルを読み込めませんでした [" + e.getMessage() + "]");
+			return;
+		}
+		putData.setPartial(false);
 		try {
-			is = new BufferedInputStream(new FileInputStream(
-					putData.getLocalFilePath()));
-			// workディレクトリを移動
-			boolean result = ftpClient.changeWorkingDirectory(putData
-					.getRemoteDirPath());
-			if (!result) {
-				// FTPサーバ上にディレクトリが存在しない
-				putData.fail("リモートディレクトリが存在しませんでした");
+			for (int i = 0;; i++) {
+				try {
+					if (i > 0) {
+						connectBase();
+					}
+					// 前回の転送でSTOR（APPE）を開始していた場合のみ続きから転送する
+					putOnce(putData, fis, putData.isPartial());
+					return;
+				} catch (IOException e) {
+					if (!retry(i + 1, putData.getRemoteFilePath(), e)) {
+						throw e;
+					}
+				}
+			}
+		} finally {
+			fis.close();
+			putData.setPartial(false);
+			// 失敗した場合も途中まで転送されている可能性があるので破棄する
+			FtpListCache.getInstance().invalidate(getServerName(),
+					putData.getRemoteFilePath());
+		}
+	}
+
+	/**
+	 * 1ファイルのPUTを1回行う.
+	 *
+	 * @param putData
+	 *            PUT処理情報
+	 * @param fis
+	 *            転送するローカルファイル
+	 * @param isResume
+	 *            このPUTで転送済みの部分の続きから転送する場合はtrue
+	 * @throws IOException
+	 */
+	private void putOnce(PutData putData, FileInputStream fis,
+			boolean isResume) throws IOException {
+		// workディレクトリを移動
+		if (!changeRemoteDirectory(putData.getRemoteDirPath())) {
+			// FTPサーバ上にディレクトリが存在しない
+			putData.fail("リモートディレクトリが存在しませんでした");
+			return;
+		}
+		// 再開位置
+		long localSize = fis.getChannel().size();
+		long offset = 0;
+		if (isResume) {
+			offset = getRemoteSize(putData.getRemoteFilePath());
+			if (offset < 0 || offset >= localSize) {
+				// 転送済みの部分が無いか、完了したかを確認できないので最初から転送する
+				offset = 0;
+			}
+		}
+		// 前回の転送で読み込んだ位置から戻す
+		fis.getChannel().position(0);
+		InputStream is = fis;
+		// ハッシュ値の計算設定
+		TransferDigest digest = createTransferDigest(putData);
+		if (digest != null) {
+			is = digest.wrap(is);
+		}
+		if (offset > 0) {
+			logger.debugLog(createMessage("PUTを再開します ["
+					+ putData.getRemoteFilePath() + "][offset=" + offset + "]"));
+			if (digest == null) {
+				fis.getChannel().position(offset);
 			} else {
-				// PUT実行
-				result = ftpClient.storeFile(putData.getFileName(), is);
-				if (!result) {
-					putData.fail("PUT処理が失敗しました");
-				} else {
-					// PUT成功
-					putData.success();
+				// 転送済みの部分もハッシュ値の計算対象にするため読み飛ばす
+				skipFully(is, offset);
+			}
+		}
+		// PUT実行
+		if (!storeFile(putData, is, offset)) {
+			putData.fail("PUT処理が失敗しました");
+		} else if (digest != null) {
+			// ハッシュ値の検証
+			verifyDigest(putData, digest);
+		} else {
+			// PUT成功
+			putData.success();
+		}
+	}
+
+	/**
+	 * 転送中に入出力エラーが発生した場合に、リトライするかを判定して準備する.
+	 * <p>
+	 * リトライする場合は、エラーが発生した接続を切断し、リトライ間隔の時間だけ待機します.
+	 * </p>
+	 *
+	 * @param time
+	 *            何回目か
+	 * @param remotePath
+	 *            転送中だったFTPサーバ上のファイルパス
+	 * @param cause
+	 *            発生した入出力エラー
+	 * @return リトライする場合はtrue
+	 */
+	private boolean retry(int time, String remotePath, IOException cause) {
+		if (time > retryTimes) {
+			return false;
+		}
+		logger.warnLog("A065", createMessage("FTP転送にてエラー発生のためリトライ開始 [回数]"
+				+ time + "/" + retryTimes + " [path]" + remotePath + " [原因]"
+				+ cause));
+		// 応答の途中で中断している可能性があるため、エラーが発生した接続は再利用しない
+		if (session != null) {
+			FtpSessionPool.getInstance().invalidate(session);
+			session = null;
+		} else {
+			abort(ftpClient);
+		}
+		ftpClient = null;
+		try {
+			Thread.sleep(retryIntervalMillis);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			return false;
+		}
+		return true;
+	}
+
+	/**
+	 * FTPサーバ上のファイルサイズを取得する.
+	 * <p>
+	 * SIZEコマンド、MLSTコマンドの順に、FTPサーバが対応しているコマンドを使用します.
+	 * </p>
+	 *
+	 * @param remotePath
+	 *            FTPサーバ上のファイルパス
+	 * @return ファイルサイズ（バイト）、ファイルが存在しないか取得できない場合は-1
+	 * @throws IOException
+	 */
+	long getRemoteSize(String remotePath) throws IOException {
+		if (FTPReply.isPositiveCompletion(ftpClient.sendCommand("SIZE",
+				remotePath))) {
+			try {
+				return Long.parseLong(lastToken(ftpClient.getReplyString()));
+			} catch (NumberFormatException e) {
+				// MLSTで取得する
+			}
+		}
+		if (ftpClient.hasFeature("MLST")) {
+			FTPFile file = ftpClient.mlistFile(remotePath);
+			if (file != null && file.isFile() && file.getSize() >= 0) {
+				return file.getSize();
+			}
+		}
+		return -1;
+	}
+
+	/**
+	 * 指定バイト数を読み飛ばす.
+	 *
+	 * @param is
+	 *            入力ストリーム
+	 * @param length
+	 *            読み飛ばすバイト数
+	 * @throws IOException
+	 */
+	private static void skipFully(InputStream is, long length)
+			throws IOException {
+		BufferPool pool = BufferPool.getInstance();
+		byte[] buffer = pool.acquire(BufferPool.TRANSFER_BUFFER_SIZE);
+		try {
+			long remain = length;
+			while (remain > 0) {
+				int read = is.read(buffer, 0, (int) Math.min(buffer.length,
+						remain));
+				if (read == -1) {
+					throw new IOException("ファイルの終端に達しました [length=" + length
+							+ "]");
 				}
+				remain -= read;
 			}
 		} finally {
-			if (is != null) {
-				is.close();
+			pool.release(buffer);
+		}
+	}
+
+	/**
+	 * PUT先のリモートディレクトリへworkディレクトリを移動する.
+	 * <p>
+	 * 既にそのディレクトリにいる場合や、接続後に存在しないことを確認済みの場合は、FTPサーバへ問い合わせません.<br>
+	 * {@link #setMakeRemoteDirectory()}が実行されている場合は、存在しなければ作成します.
+	 * </p>
+	 *
+	 * @param path
+	 *            リモートディレクトリの絶対パス
+	 * @return 移動できた場合はtrue
+	 * @throws IOException
+	 */
+	private boolean changeRemoteDirectory(String path) throws IOException {
+		if (path.equals(currentDirectory)) {
+			return true;
+		}
+		if (missingDirectorySet != null && missingDirectorySet.contains(path)) {
+			return false;
+		}
+		currentDirectory = null;
+		boolean result = changeWorkingDirectory(path);
+		if (!result && directoryCache != null) {
+			directoryCache.remove(new FtpPath(path));
+		}
+		if (!result && isMakeRemoteDirectory) {
+			try {
+				makeDirectoryBase(path);
+			} catch (KtException e) {
+				// 並列でPUTしている他の接続が作成した場合も失敗するので、移動できるかで判定する
+				logger.debugLog(e.getMessage());
+			}
+			result = changeWorkingDirectory(path);
+		}
+		if (result) {
+			currentDirectory = path;
+			if (directoryCache != null) {
+				directoryCache.add(new FtpPath(path));
 			}
+		} else {
+			if (missingDirectorySet == null) {
+				missingDirectorySet = new HashSet<String>();
+			}
+			missingDirectorySet.add(path);
+		}
+		return result;
+	}
+
+	/**
+	 * PUT時のハッシュ値を計算するオブジェクトを生成する.
+	 *
+	 * @param putData
+	 *            PUT処理情報
+	 * @return ハッシュ値の計算（計算対象のアルゴリズムが無い場合はnull）
+	 */
+	private TransferDigest createTransferDigest(PutData putData) {
+		Set<String> algorithms = new LinkedHashSet<String>();
+		if (digestAlgorithmList != null) {
+			algorithms.addAll(digestAlgorithmList);
+		}
+		if (putData.getExpectedDigestMap() != null) {
+			algorithms.addAll(putData.getExpectedDigestMap().keySet());
+		}
+		if (algorithms.isEmpty()) {
+			return null;
 		}
+		return new TransferDigest(algorithms);
+	}
+
+	/**
+	 * PUTしたファイルのハッシュ値を検証し、結果をセットする.
+	 *
+	 * @param putData
+	 *            PUT処理情報
+	 * @param digest
+	 *            転送時に計算したハッシュ値
+	 * @throws IOException
+	 */
+	private void verifyDigest(PutData putData, TransferDigest digest)
+			throws IOException {
+		putData.setDigests(digest.getHexDigests());
+		// 期待値の検証
+		Map<String, String> expectedMap = putData.getExpectedDigestMap();
+		if (expectedMap != null) {
+			for (Map.Entry<String, String> entry : expectedMap.entrySet()) {
+				if (!entry.getValue().equalsIgnoreCase(
+						digest.getHexDigest(entry.getKey()))) {
+					putData.fail("ハッシュ値が期待値と一致しませんでした [" + entry.getKey()
+							+ "]");
+					return;
+				}
+			}
+		}
+		// FTPサーバ上のハッシュ値との照合
+		if (isVerifyByServer) {
+			Boolean matched = verifyByServer(putData.getRemoteFilePath(),
+					digest);
+			if (matched == null) {
+				logger.debugLog("FTPサーバがハッシュ値の計算に対応していないため照合しませんでした ["
+						+ putData.getRemoteFilePath() + "]");
+			} else if (!matched) {
+				putData.fail("FTPサーバ上のファイルのハッシュ値が一致しませんでした");
+				return;
+			} else {
+				putData.serverVerified();
+			}
+		}
+		// PUT成功
+		putData.success();
+	}
+
+	/**
+	 * FTPサーバ上でファイルのハッシュ値を計算させて照合する.
+	 * <p>
+	 * HASH、XMD5、XCRCの順に、FTPサーバが対応しているコマンドを使用します.
+	 * </p>
+	 *
+	 * @param remotePath
+	 *            FTPサーバ上のファイルパス
+	 * @param digest
+	 *            転送時に計算したハッシュ値
+	 * @return 一致すればtrue、一致しなければfalse、照合できなかった場合はnull
+	 * @throws IOException
+	 */
+	private Boolean verifyByServer(String remotePath, TransferDigest digest)
+			throws IOException {
+		if (ftpClient.hasFeature("HASH")) {
+			for (String algorithm : HASH_ALGORITHMS) {
+				if (!digest.contains(algorithm)
+						|| !FTPReply.isPositiveCompletion(ftpClient
+								.sendCommand("OPTS", "HASH " + algorithm))) {
+					continue;
+				}
+				if (FTPReply.isPositiveCompletion(ftpClient.sendCommand("HASH",
+						remotePath))) {
+					// 「213 アルゴリズム 範囲 ハッシュ値 ファイル名」の形式
+					String[] tokens = ftpClient.getReplyString().trim()
+							.split(" +");
+					if (tokens.length >= 4) {
+						return equalsHex(tokens[3],
+								digest.getHexDigest(algorithm));
+					}
+				}
+			}
+		}
+		if (digest.contains("MD5") && ftpClient.hasFeature("XMD5")) {
+			if (FTPReply.isPositiveCompletion(ftpClient.sendCommand("XMD5",
+					remotePath))) {
+				return equalsHex(lastToken(ftpClient.getReplyString()),
+						digest.getHexDigest("MD5"));
+			}
+		}
+		if (digest.contains(TransferDigest.CRC32)
+				&& ftpClient.hasFeature("XCRC")) {
+			if (FTPReply.isPositiveCompletion(ftpClient.sendCommand("XCRC",
+					remotePath))) {
+				return equalsHex(lastToken(ftpClient.getReplyString()),
+						digest.getHexDigest(TransferDigest.CRC32));
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * 応答文字列の最後の項目を返す.
+	 *
+	 * @param reply
+	 *            応答文字列
+	 * @return 最後の項目
+	 */
+	private static String lastToken(String reply) {
+		String[] tokens = reply.trim().split(" +");
+		return tokens[tokens.length - 1];
+	}
+
+	/**
+	 * 16進数文字列を比較する.
+	 * <p>
+	 * 大文字小文字ならびに先頭の0は区別しません.
+	 * </p>
+	 *
+	 * @param hex1
+	 *            16進数文字列
+	 * @param hex2
+	 *            16進数文字列
+	 * @return 一致すればtrue
+	 */
+	private static boolean equalsHex(String hex1, String hex2) {
+		return hex1.replaceFirst("^0+", "").equalsIgnoreCase(
+				hex2.replaceFirst("^0+", ""));
+	}
+
+	/**
+	 * ファイルの転送.
+	 * <p>
+	 * {@link FTPClient#storeFile(String, InputStream)}の代わりに、{@link BufferPool}
+	 * のバッファを使用して転送します.<br>
+	 * 再開位置を指定した場合は、FTPサーバがREST STREAMに対応していればREST+STOR、対応していなければAPPEで転送します.<br>
+	 * データ接続を開始してから転送完了の応答を受け取るまでは、{@link PutData}を転送途中にします.
+	 * </p>
+	 *
+	 * @param putData
+	 *            PUT処理情報
+	 * @param is
+	 *            転送するデータ（再開位置まで読み込み済みのもの）
+	 * @param offset
+	 *            再開位置（最初から転送する場合は0）
+	 * @return 成功した場合はtrue
+	 * @throws IOException
+	 */
+	private boolean storeFile(PutData putData, InputStream is, long offset)
+			throws IOException {
+		String remoteName = putData.getFileName();
+		OutputStream os;
+		if (offset <= 0) {
+			os = ftpClient.storeFileStream(remoteName);
+		} else if (ftpClient.hasFeature("REST", "STREAM")) {
+			ftpClient.setRestartOffset(offset);
+			os = ftpClient.storeFileStream(remoteName);
+		} else {
+			os = ftpClient.appendFileStream(remoteName);
+		}
+		if (os == null) {
+			// データ接続を開始できなかった（再開位置が次の転送に引き継がれないよう破棄する）
+			ftpClient.setRestartOffset(0);
+			return false;
+		}
+		// ここで入出力エラーが発生した場合は、FTPサーバ上のファイルが書き込み途中となる
+		putData.setPartial(true);
+		try {
+			BufferPool.getInstance().copy(is, os);
+		} finally {
+			os.close();
+		}
+		// 転送完了の応答
+		boolean result = ftpClient.completePendingCommand();
+		putData.setPartial(false);
+		return result;
+	}
+
+	/**
+	 * 1ファイルのGET.
+	 * <p>
+	 * 保存先のローカルファイルが既に存在する場合も上書きします.<br>
+	 * 失敗した場合でもExceptionはthrowされず {@link GetData}オブジェクトに結果ならびにエラーメッセージがセットされます.<br>
+	 * 絶対パスで指定するため、workディレクトリは移動しません.<br>
+	 * 入出力エラーが発生した場合、{@link #setRetrySetting(int, int)}の回数まで接続し直して続きから転送します.<br>
+	 * ローカルファイルに書き込めない場合は、接続し直しても解決しないため、リトライせずに失敗とします.<br>
+	 * 最終的に失敗した場合、書き込み途中のローカルファイルは削除します.
+	 * </p>
+	 *
+	 * @param getData
+	 *            GET処理情報
+	 * @throws IOException
+	 */
+	void get(GetData getData) throws IOException {
+		for (int i = 0;; i++) {
+			try {
+				if (i > 0) {
+					connectBase();
+				}
+				getOnce(getData);
+				return;
+			} catch (LocalFileException e) {
+				getData.fail("ローカルファイルに書き込めませんでした [" + e.getCause() + "]");
+				if (getData.isPartial()) {
+					new File(getData.getLocalFilePath()).delete();
+					getData.setPartial(false);
+				}
+				return;
+			} catch (IOException e) {
+				if (!retry(i + 1, getData.getRemoteFilePath(), e)) {
+					if (getData.isPartial()) {
+						// 書き込み途中のローカルファイルを残さない
+						new File(getData.getLocalFilePath()).delete();
+						getData.setPartial(false);
+					}
+					throw e;
+				}
+			}
+		}
+	}
+
+	/**
+	 * 1ファイルのGETを1回行う.
+	 * <p>
+	 * 前回の転送で書き込み途中のローカルファイルがある場合は、その続きから転送します.
+	 * </p>
+	 *
+	 * @param getData
+	 *            GET処理情報
+	 * @throws IOException
+	 */
+	private void getOnce(GetData getData) throws IOException {
+		String remotePath = getData.getRemoteFilePath();
+		File localFile = new File(getData.getLocalFilePath());
+		// 再開位置
+		long offset = 0;
+		if (getData.isPartial() && localFile.isFile()) {
+			offset = localFile.length();
+			if (offset > 0 && getRemoteSize(remotePath) < offset) {
+				// FTPサーバ上のファイルが変わったので最初から転送する
+				offset = 0;
+			}
+		}
+		InputStream is = null;
+		if (offset > 0) {
+			logger.debugLog(createMessage("GETを再開します [" + remotePath
+					+ "][offset=" + offset + "]"));
+			ftpClient.setRestartOffset(offset);
+			is = ftpClient.retrieveFileStream(remotePath);
+			if (is == null) {
+				// RESTに対応していない場合は最初から転送する
+				offset = 0;
+				ftpClient.setRestartOffset(0);
+			}
+		}
+		if (is == null) {
+			is = ftpClient.retrieveFileStream(remotePath);
+		}
+		if (is == null) {
+			// ファイルが存在しないなどの理由でデータ接続を開始できなかった
+			getData.fail("GET処理を開始できませんでした ["
+					+ ftpClient.getReplyString().trim() + "]");
+			if (getData.isPartial()) {
+				localFile.delete();
+				getData.setPartial(false);
+			}
+			return;
+		}
+		long size;
+		getData.setPartial(true);
+		try {
+			size = offset + writeFile(is, localFile.getPath(), offset);
+		} catch (LocalFileException e) {
+			// 受信を中断し、中断の応答を受け取って接続を引き続き使用できる状態にする
+			is.close();
+			ftpClient.completePendingCommand();
+			throw e;
+		} finally {
+			is.close();
+		}
+		// 転送完了の応答
+		if (ftpClient.completePendingCommand()) {
+			// GET成功
+			getData.success(size);
+		} else {
+			getData.fail("GET処理が失敗しました");
+			localFile.delete();
+		}
+		getData.setPartial(false);
+	}
+
+	/**
+	 * 1ファイルのうち、指定した範囲のみをGETする.
+	 * <p>
+	 * REST+RETRで範囲の先頭から受信し、範囲の終端に達した時点で受信を中断します.<br>
+	 * 受信したデータは、ローカルファイルの同じ位置に書き込みます.<br>
+	 * 入出力エラーが発生した場合、{@link #setRetrySetting(int, int)}の回数まで接続し直して続きから転送します.<br>
+	 * 途中で中断した接続は応答の状態が不確かなため、プールへは返却せずに切断します.<br>
+	 * FTPサーバがRESTに対応していないなどの理由で受信を開始できなかった場合はfalseを返します.
+	 * </p>
+	 *
+	 * @param remotePath
+	 *            FTPサーバ上のファイルパス
+	 * @param channel
+	 *            書き込み先のローカルファイル
+	 * @param segment
+	 *            GETする範囲（受信した位置を記録します）
+	 * @return 受信を開始できた場合はtrue
+	 * @throws IOException
+	 */
+	boolean getSegment(String remotePath, FileChannel channel, Segment segment)
+			throws IOException {
+		for (int i = 0;; i++) {
+			try {
+				if (i > 0) {
+					connectBase();
+				}
+				return getSegmentOnce(remotePath, channel, segment);
+			} catch (LocalFileException e) {
+				// ローカルファイルの入出力エラーは接続し直しても解決しない
+				throw e;
+			} catch (IOException e) {
+				if (!retry(i + 1, remotePath, e)) {
+					throw e;
+				}
+			}
+		}
+	}
+
+	/**
+	 * 1ファイルのうち、指定した範囲の残りのGETを1回行う.
+	 *
+	 * @param remotePath
+	 *            FTPサーバ上のファイルパス
+	 * @param channel
+	 *            書き込み先のローカルファイル
+	 * @param segment
+	 *            GETする範囲
+	 * @return 受信を開始できた場合はtrue
+	 * @throws IOException
+	 */
+	private boolean getSegmentOnce(String remotePath, FileChannel channel,
+			Segment segment) throws IOException {
+		if (segment.position > 0) {
+			ftpClient.setRestartOffset(segment.position);
+		}
+		InputStream is = ftpClient.retrieveFileStream(remotePath);
+		if (is == null) {
+			// 再開位置が次の転送に引き継がれないよう破棄する
+			ftpClient.setRestartOffset(0);
+			logger.debugLog(createMessage("分割GETを開始できませんでした [" + remotePath
+					+ "][offset=" + segment.position + "] ["
+					+ ftpClient.getReplyString().trim() + "]"));
+			return false;
+		}
+		BufferPool pool = BufferPool.getInstance();
+		byte[] buffer = pool.acquire(BufferPool.TRANSFER_BUFFER_SIZE);
+		try {
+			ByteBuffer byteBuffer = ByteBuffer.wrap(buffer);
+			while (segment.position < segment.end) {
+				int read = is.read(buffer, 0, (int) Math.min(buffer.length,
+						segment.end - segment.position));
+				if (read == -1) {
+					break;
+				}
+				byteBuffer.clear();
+				byteBuffer.limit(read);
+				long position = segment.position;
+				try {
+					while (byteBuffer.hasRemaining()) {
+						position += channel.write(byteBuffer, position);
+					}
+				} catch (IOException e) {
+					throw new LocalFileException(e);
+				}
+				segment.position = position;
+			}
+		} finally {
+			pool.release(buffer);
+			is.close();
+		}
+		if (!segment.isLast) {
+			// 範囲の終端で中断したので、中断の応答を受け取って接続を破棄する
+			try {
+				ftpClient.completePendingCommand();
+			} catch (IOException e) {
+				// 範囲は受信済みで、接続も破棄するので無視する
+			}
+			discardBase();
+		} else if (!ftpClient.completePendingCommand()) {
+			throw new KtException("A066", "分割GETが失敗しました [" + remotePath
+					+ "][offset=" + segment.start + "]");
+		}
+		if (segment.position < segment.end) {
+			// 転送中にFTPサーバ上のファイルが短くなった
+			throw new KtException("A066", "分割GETで受信したサイズが不足しています ["
+					+ remotePath + "][position=" + segment.position + "][end="
+					+ segment.end + "]");
+		}
+		return true;
+	}
+
+	/**
+	 * 受信したデータをローカルファイルに書き込む.
+	 * <p>
+	 * {@link BufferPool}のバッファから{@link FileChannel}へ直接書き込みます.<br>
+	 * 書き込み位置より後ろの部分は切り捨てます.<br>
+	 * ローカルファイルの入出力エラーは、受信のエラーと区別するため{@link LocalFileException}とします.
+	 * </p>
+	 *
+	 * @param is
+	 *            受信するデータ
+	 * @param localPath
+	 *            ローカルファイルのパス
+	 * @param offset
+	 *            書き込み位置
+	 * @return 書き込んだバイト数
+	 * @throws IOException
+	 */
+	private static long writeFile(InputStream is, String localPath,
+			long offset) throws IOException {
+		BufferPool pool = BufferPool.getInstance();
+		RandomAccessFile file;
+		try {
+			file = new RandomAccessFile(localPath, "rw");
+		} catch (IOException e) {
+			throw new LocalFileException(e);
+		}
+		byte[] buffer = pool.acquire(BufferPool.TRANSFER_BUFFER_SIZE);
+		try {
+			FileChannel channel = file.getChannel();
+			ByteBuffer byteBuffer = ByteBuffer.wrap(buffer);
+			long total = 0;
+			try {
+				channel.truncate(offset);
+				channel.position(offset);
+			} catch (IOException e) {
+				throw new LocalFileException(e);
+			}
+			int read;
+			while ((read = is.read(buffer)) != -1) {
+				byteBuffer.clear();
+				byteBuffer.limit(read);
+				try {
+					while (byteBuffer.hasRemaining()) {
+						channel.write(byteBuffer);
+					}
+				} catch (IOException e) {
+					throw new LocalFileException(e);
+				}
+				total += read;
+			}
+			return total;
+		} finally {
+			pool.release(buffer);
+			file.close();
+		}
+	}
+
+	/**
+	 * {@link FtpListCache}の記録で使用するFTPサーバ名を返す.
+	 *
+	 * @return ユーザ、ホスト、ポート番号
+	 */
+	private String getServerName() {
+		return user + "@" + host + ":" + port;
 	}
 
 	/**
@@ -372,4 +1652,64 @@ abstract class FtpBaseAction {
 		msg.append("]");
 		return msg.toString();
 	}
+
+	/**
+	 * 分割GETする1つの範囲.
+	 */
+	static class Segment {
+		/** 範囲の先頭位置 */
+		private final long start;
+
+		/** 範囲の終端位置（この位置は含まない） */
+		private final long end;
+
+		/** ファイルの最後の範囲であればtrue */
+		private final boolean isLast;
+
+		/** 受信済みの位置 */
+		private long position;
+
+		/**
+		 * コンストラクタ.
+		 *
+		 * @param start
+		 *            範囲の先頭位置
+		 * @param end
+		 *            範囲の終端位置（この位置は含まない）
+		 * @param isLast
+		 *            ファイルの最後の範囲であればtrue
+		 */
+		Segment(long start, long end, boolean isLast) {
+			this.start = start;
+			this.end = end;
+			this.isLast = isLast;
+			this.position = start;
+		}
+
+		/**
+		 * 範囲の全てを受信済みかを返す.
+		 *
+		 * @return 受信済みであればtrue
+		 */
+		boolean isCompleted() {
+			return position >= end;
+		}
+	}
+
+	/**
+	 * ローカルファイルの入出力エラーを、FTPサーバとの通信エラーと区別するためのException.
+	 */
+	private static class LocalFileException extends IOException {
+		private static final long serialVersionUID = 1L;
+
+		/**
+		 * コンストラクタ.
+		 *
+		 * @param cause
+		 *            ローカルファイルの入出力エラー
+		 */
+		private LocalFileException(IOException cause) {
+			super(cause);
+		}
+	}
 }
@@ -0,0 +1,25 @@
+package jp.kt.net.ftp;
+
+import org.apache.commons.net.ftp.FTPFile;
+
+/**
+ * ファイルリストをページ単位で処理するインターフェース.
+ * <p>
+ * {@link FtpAction#listFiles(String, int, FtpFileProcessor)}で使用します.<br>
+ * ページごとに解析しながら呼び出されるため、ファイルリスト全体のFTPFileを生成して保持する必要はありません.
+ * </p>
+ *
+ * @author tatsuya.kumon
+ */
+public interface FtpFileProcessor {
+	/**
+	 * 1ページ分のファイルリストを処理する.
+	 *
+	 * @param files
+	 *            ファイルリスト（ページサイズ以下の件数）
+	 * @return 続けて処理する場合はtrue、以降を処理せずに終了する場合はfalse
+	 * @throws Exception
+	 *             処理中に例外が発生した場合
+	 */
+	boolean processFiles(FTPFile[] files) throws Exception;
+}
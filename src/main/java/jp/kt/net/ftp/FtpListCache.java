@@ -0,0 +1,393 @@
+package jp.kt.net.ftp;
+
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import jp.kt.exception.KtException;
+
+import org.apache.commons.net.ftp.FTPFile;
+
+/**
+ * FTPサーバ上のファイルリストとファイル情報を保持するクラス.
+ * <p>
+ * {@link FtpAction#setUseListCache()}を実行した場合、取得したディレクトリのファイルリストと、<br>
+ * 存在チェックやサイズ取得で問い合わせたファイルの情報を記録し、<br>
+ * 以降の同じFTPサーバ（ホスト、ポート番号、ユーザ）への問い合わせはFTPサーバへ接続せずに記録から返します.<br>
+ * PUTや削除など、このライブラリで行った変更の対象は記録から破棄します（他のクライアントによる変更は、有効期間が過ぎるまで反映されません）.<br>
+ * 記録は有効期間（デフォルト30秒）を過ぎると破棄されます.<br>
+ * 記録するファイル数の合計には上限（デフォルト100000）があり、超えた場合は最も古く参照されたものから破棄します.
+ * </p>
+ *
+ * @author tatsuya.kumon
+ */
+public class FtpListCache {
+	/** シングルトンインスタンス */
+	private static final FtpListCache instance = new FtpListCache();
+
+	/** ファイルリストの記録のキーの接頭辞 */
+	private static final String LIST_PREFIX = "L ";
+
+	/** ファイル情報の記録のキーの接頭辞 */
+	private static final String FILE_PREFIX = "F ";
+
+	/** 記録の有効期間（ミリ秒） */
+	private volatile long ttlMillis = 30 * 1000L;
+
+	/** 記録するファイル数の合計の上限 */
+	private int maxFiles = 100000;
+
+	/** 記録しているファイル数の合計 */
+	private int fileCount;
+
+	/** 接頭辞、FTPサーバ、パスごとの記録（アクセス順） */
+	private final Map<String, ListEntry> entryMap = new LinkedHashMap<String, ListEntry>(
+			16, 0.75f, true);
+
+	/**
+	 * コンストラクタ.
+	 */
+	private FtpListCache() {
+	}
+
+	/**
+	 * インスタンスを取得する.
+	 *
+	 * @return {@link FtpListCache}オブジェクト
+	 */
+	public static FtpListCache getInstance() {
+		return instance;
+	}
+
+	/**
+	 * 記録の有効期間を設定する.
+	 * <p>
+	 * デフォルトは30秒.
+	 * </p>
+	 *
+	 * @param ttlMillis
+	 *            有効期間（ミリ秒）
+	 */
+	public void setTtlMillis(long ttlMillis) {
+		if (ttlMillis <= 0) {
+			throw new KtException("B004", "有効期間の設定が不正な値です。[ttlMillis:"
+					+ ttlMillis + "]");
+		}
+		this.ttlMillis = ttlMillis;
+	}
+
+	/**
+	 * 記録するファイル数の合計の上限を設定する.
+	 * <p>
+	 * デフォルトは100000.<br>
+	 * 上限を超えるファイル数のディレクトリは記録しません.
+	 * </p>
+	 *
+	 * @param maxFiles
+	 *            上限数
+	 */
+	public synchronized void setMaxFiles(int maxFiles) {
+		if (maxFiles <= 0) {
+			throw new KtException("B004", "上限数の設定が不正な値です。[maxFiles:"
+					+ maxFiles + "]");
+		}
+		this.maxFiles = maxFiles;
+		trim();
+	}
+
+	/**
+	 * 記録しているディレクトリとファイルの数を返す.
+	 *
+	 * @return 記録数
+	 */
+	public synchronized int size() {
+		return entryMap.size();
+	}
+
+	/**
+	 * 記録を全て破棄する.
+	 */
+	public synchronized void clear() {
+		entryMap.clear();
+		fileCount = 0;
+	}
+
+	/**
+	 * ファイルリストを取得する.
+	 *
+	 * @param server
+	 *            FTPサーバ（ユーザ、ホスト、ポート番号）
+	 * @param path
+	 *            ディレクトリパス
+	 * @return ファイルリスト（記録が無い場合はnull）
+	 */
+	synchronized FTPFile[] getList(String server, String path) {
+		ListEntry entry = get(LIST_PREFIX + server + normalize(path));
+		if (entry == null) {
+			return null;
+		}
+		return entry.files.clone();
+	}
+
+	/**
+	 * ファイルリストを記録する.
+	 *
+	 * @param server
+	 *            FTPサーバ（ユーザ、ホスト、ポート番号）
+	 * @param path
+	 *            ディレクトリパス
+	 * @param files
+	 *            ファイルリスト
+	 */
+	synchronized void putList(String server, String path, FTPFile[] files) {
+		put(LIST_PREFIX + server + normalize(path), files.clone());
+	}
+
+	/**
+	 * ファイル情報を取得する.
+	 * <p>
+	 * ファイル情報の記録が無い場合は、親ディレクトリのファイルリストの記録から判定します.
+	 * </p>
+	 *
+	 * @param server
+	 *            FTPサーバ（ユーザ、ホスト、ポート番号）
+	 * @param path
+	 *            ファイルパス
+	 * @return 存在する場合はファイル情報のみの配列、存在しない場合は空の配列、記録が無い場合はnull
+	 */
+	synchronized FTPFile[] getFile(String server, String path) {
+		String normalizedPath = normalize(path);
+		ListEntry entry = get(FILE_PREFIX + server + normalizedPath);
+		if (entry != null) {
+			return entry.files.clone();
+		}
+		int index = normalizedPath.lastIndexOf('/');
+		entry = get(LIST_PREFIX + server + getParent(normalizedPath));
+		if (index < 0 || entry == null) {
+			return null;
+		}
+		FTPFile file = entry.getFile(normalizedPath.substring(index + 1));
+		return (file == null) ? new FTPFile[0] : new FTPFile[] { file };
+	}
+
+	/**
+	 * ファイル情報を記録する.
+	 *
+	 * @param server
+	 *            FTPサーバ（ユーザ、ホスト、ポート番号）
+	 * @param path
+	 *            ファイルパス
+	 * @param file
+	 *            ファイル情報（存在しない場合はnull）
+	 */
+	synchronized void putFile(String server, String path, FTPFile file) {
+		put(FILE_PREFIX + server + normalize(path),
+				(file == null) ? new FTPFile[0] : new FTPFile[] { file });
+	}
+
+	/**
+	 * 変更したファイルもしくはディレクトリの記録を破棄する.
+	 * <p>
+	 * 親ディレクトリのファイルリストも破棄します.
+	 * </p>
+	 *
+	 * @param server
+	 *            FTPサーバ（ユーザ、ホスト、ポート番号）
+	 * @param path
+	 *            パス
+	 */
+	synchronized void invalidate(String server, String path) {
+		if (entryMap.isEmpty()) {
+			return;
+		}
+		String normalizedPath = normalize(path);
+		remove(LIST_PREFIX + server + normalizedPath);
+		remove(FILE_PREFIX + server + normalizedPath);
+		remove(LIST_PREFIX + server + getParent(normalizedPath));
+	}
+
+	/**
+	 * 変更したディレクトリ配下の記録を全て破棄する.
+	 * <p>
+	 * 親ディレクトリのファイルリストも破棄します.
+	 * </p>
+	 *
+	 * @param server
+	 *            FTPサーバ（ユーザ、ホスト、ポート番号）
+	 * @param path
+	 *            ディレクトリパス
+	 */
+	synchronized void invalidateTree(String server, String path) {
+		if (entryMap.isEmpty()) {
+			return;
+		}
+		String normalizedPath = normalize(path);
+		String subPath = normalizedPath.equals("/") ? "/" : normalizedPath
+				+ "/";
+		String[] prefixes = { LIST_PREFIX + server, FILE_PREFIX + server };
+		Iterator<Map.Entry<String, ListEntry>> it = entryMap.entrySet()
+				.iterator();
+		while (it.hasNext()) {
+			Map.Entry<String, ListEntry> mapEntry = it.next();
+			String key = mapEntry.getKey();
+			for (String prefix : prefixes) {
+				if (key.equals(prefix + normalizedPath)
+						|| key.startsWith(prefix + subPath)) {
+					fileCount -= mapEntry.getValue().getWeight();
+					it.remove();
+					break;
+				}
+			}
+		}
+		remove(LIST_PREFIX + server + getParent(normalizedPath));
+	}
+
+	/**
+	 * 有効期間内の記録を取得する.
+	 *
+	 * @param key
+	 *            キー
+	 * @return 記録（無い場合はnull）
+	 */
+	private ListEntry get(String key) {
+		ListEntry entry = entryMap.get(key);
+		if (entry == null) {
+			return null;
+		}
+		if (System.currentTimeMillis() >= entry.expireTime) {
+			remove(key);
+			return null;
+		}
+		return entry;
+	}
+
+	/**
+	 * 記録する.
+	 *
+	 * @param key
+	 *            キー
+	 * @param files
+	 *            ファイルリスト
+	 */
+	private void put(String key, FTPFile[] files) {
+		remove(key);
+		ListEntry entry = new ListEntry(files, System.currentTimeMillis()
+				+ ttlMillis);
+		if (entry.getWeight() > maxFiles) {
+			// 上限を超えるディレクトリは記録しない
+			return;
+		}
+		entryMap.put(key, entry);
+		fileCount += entry.getWeight();
+		trim();
+	}
+
+	/**
+	 * 記録を破棄する.
+	 *
+	 * @param key
+	 *            キー
+	 */
+	private void remove(String key) {
+		ListEntry entry = entryMap.remove(key);
+		if (entry != null) {
+			fileCount -= entry.getWeight();
+		}
+	}
+
+	/**
+	 * ファイル数の合計が上限以下になるまで、最も古く参照された記録から破棄する.
+	 */
+	private void trim() {
+		Iterator<ListEntry> it = entryMap.values().iterator();
+		while (fileCount > maxFiles && it.hasNext()) {
+			fileCount -= it.next().getWeight();
+			it.remove();
+		}
+	}
+
+	/**
+	 * パスの末尾の区切り文字を除去する.
+	 *
+	 * @param path
+	 *            パス
+	 * @return 末尾に区切り文字の無いパス（ルートの場合は「/」）
+	 */
+	private static String normalize(String path) {
+		String normalizedPath = path;
+		while (normalizedPath.length() > 1 && normalizedPath.endsWith("/")) {
+			normalizedPath = normalizedPath.substring(0,
+					normalizedPath.length() - 1);
+		}
+		return normalizedPath;
+	}
+
+	/**
+	 * 親ディレクトリのパスを返す.
+	 *
+	 * @param normalizedPath
+	 *            末尾に区切り文字の無いパス
+	 * @return 親ディレクトリのパス（ルートの場合は「/」）
+	 */
+	private static String getParent(String normalizedPath) {
+		int index = normalizedPath.lastIndexOf('/');
+		if (index <= 0) {
+			return "/";
+		}
+		return normalizedPath.substring(0, index);
+	}
+
+	/**
+	 * ディレクトリもしくはファイルごとの記録.
+	 */
+	private static class ListEntry {
+		/** ファイルリスト（ファイル情報の場合は0件もしくは1件） */
+		private final FTPFile[] files;
+
+		/** 有効期限（エポックミリ秒） */
+		private final long expireTime;
+
+		/** ファイル名ごとのファイル情報（最初に必要になった時点で生成する） */
+		private Map<String, FTPFile> nameMap;
+
+		/**
+		 * コンストラクタ.
+		 *
+		 * @param files
+		 *            ファイルリスト
+		 * @param expireTime
+		 *            有効期限（エポックミリ秒）
+		 */
+		private ListEntry(FTPFile[] files, long expireTime) {
+			this.files = files;
+			this.expireTime = expireTime;
+		}
+
+		/**
+		 * 上限の判定に使用するファイル数を返す.
+		 *
+		 * @return ファイル数（0件の場合も1）
+		 */
+		private int getWeight() {
+			return Math.max(1, files.length);
+		}
+
+		/**
+		 * ファイル名からファイル情報を取得する.
+		 *
+		 * @param name
+		 *            ファイル名
+		 * @return ファイル情報（無い場合はnull）
+		 */
+		private FTPFile getFile(String name) {
+			if (nameMap == null) {
+				nameMap = new HashMap<String, FTPFile>(files.length * 2);
+				for (FTPFile file : files) {
+					nameMap.put(file.getName(), file);
+				}
+			}
+			return nameMap.get(name);
+		}
+	}
+}
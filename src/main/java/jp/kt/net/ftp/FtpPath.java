@@ -19,6 +19,9 @@ class FtpPath {
 	/** 現在のパスの配列数 */
 	private int currentCount;
 
+	/** 配列数ごとのパス（最初に必要になった時点でまとめて生成する） */
+	private String[] pathCache;
+
 	/**
 	 * コンストラクタ.
 	 *
@@ -53,21 +56,34 @@ class FtpPath {
 		}
 	}
 
+	/**
+	 * 指定した配列数のパスへ移動.
+	 *
+	 * @param count
+	 *            配列数（0はルート）
+	 */
+	void moveTo(int count) {
+		this.currentCount = Math.max(0, Math.min(count, pathArray.length));
+	}
+
 	/**
 	 * 現在のパスを返す.
 	 *
 	 * @return 現在のパス
 	 */
 	String getCurrentPath() {
-		if (currentCount == 0) {
-			return DELIM;
-		}
-		StringBuilder path = new StringBuilder();
-		for (int i = 0; i < currentCount; i++) {
-			path.append(DELIM);
-			path.append(pathArray[i]);
+		if (pathCache == null) {
+			// 各階層のパスを1回の走査で生成する
+			pathCache = new String[pathArray.length + 1];
+			pathCache[0] = DELIM;
+			StringBuilder path = new StringBuilder();
+			for (int i = 0; i < pathArray.length; i++) {
+				path.append(DELIM);
+				path.append(pathArray[i]);
+				pathCache[i + 1] = path.toString();
+			}
 		}
-		return path.toString();
+		return pathCache[currentCount];
 	}
 
 	/**
@@ -78,4 +94,24 @@ class FtpPath {
 	int getCurrentCount() {
 		return currentCount;
 	}
+
+	/**
+	 * 全体のパスの配列数を返す.
+	 *
+	 * @return 全体のパスの配列数
+	 */
+	int getCount() {
+		return pathArray.length;
+	}
+
+	/**
+	 * 指定した位置のディレクトリ名を返す.
+	 *
+	 * @param index
+	 *            位置（0がルート直下）
+	 * @return ディレクトリ名
+	 */
+	String getName(int index) {
+		return pathArray[index];
+	}
 }
@@ -0,0 +1,161 @@
+package jp.kt.net.ftp;
+
+import java.io.IOException;
+
+
+/**
+ * {@link FtpSessionPool}で管理する、ログイン済みのFTP接続.
+ *
+ * @author tatsuya.kumon
+ */
+class FtpSession {
+	/** 接続情報 */
+	private final FtpSessionKey key;
+
+	/** FTP接続 */
+	private final KtFtpClient ftpClient;
+
+	/** ログイン直後のworkディレクトリ */
+	private final String initialDirectory;
+
+	/** 最後に使用を終えた時刻（エポックミリ秒） */
+	private long lastUsedTime;
+
+	/** 貸し出し中にworkディレクトリを移動した可能性があればtrue */
+	private boolean directoryChanged;
+
+	/** 存在を確認したディレクトリのキャッシュ（使用しない場合はnull） */
+	private final RemoteDirectoryCache directoryCache;
+
+	/**
+	 * コンストラクタ.
+	 * <p>
+	 * 現在のworkディレクトリを返却時に戻すディレクトリとして記録します.
+	 * </p>
+	 *
+	 * @param key
+	 *            接続情報
+	 * @param ftpClient
+	 *            ログイン済みのFTP接続
+	 * @param directoryCache
+	 *            存在を確認したディレクトリのキャッシュ（使用しない場合はnull）
+	 * @throws IOException
+	 */
+	FtpSession(FtpSessionKey key, KtFtpClient ftpClient,
+			RemoteDirectoryCache directoryCache) throws IOException {
+		this.key = key;
+		this.ftpClient = ftpClient;
+		this.directoryCache = directoryCache;
+		this.initialDirectory = ftpClient.printWorkingDirectory();
+		this.lastUsedTime = System.currentTimeMillis();
+	}
+
+	/**
+	 * 接続情報を取得する.
+	 *
+	 * @return 接続情報
+	 */
+	FtpSessionKey getKey() {
+		return key;
+	}
+
+	/**
+	 * FTP接続を取得する.
+	 *
+	 * @return FTP接続
+	 */
+	KtFtpClient getFtpClient() {
+		return ftpClient;
+	}
+
+	/**
+	 * 存在を確認したディレクトリのキャッシュを取得する.
+	 *
+	 * @return キャッシュ（使用しない場合はnull）
+	 */
+	RemoteDirectoryCache getDirectoryCache() {
+		return directoryCache;
+	}
+
+	/**
+	 * 未使用の時間を返す.
+	 *
+	 * @param now
+	 *            現在時刻（エポックミリ秒）
+	 * @return 未使用の時間（ミリ秒）
+	 */
+	long getIdleMillis(long now) {
+		return now - lastUsedTime;
+	}
+
+	/**
+	 * 接続が使用可能かをNOOPコマンドで確認する.
+	 *
+	 * @return 使用可能であればtrue
+	 */
+	boolean validate() {
+		try {
+			return ftpClient.isConnected() && ftpClient.sendNoOp();
+		} catch (IOException e) {
+			return false;
+		}
+	}
+
+	/**
+	 * workディレクトリを移動したことを記録する.
+	 */
+	void markDirectoryChanged() {
+		directoryChanged = true;
+	}
+
+	/**
+	 * workディレクトリをログイン直後の状態に戻し、使用を終えた時刻を記録する.
+	 * <p>
+	 * 貸し出し中にworkディレクトリを移動していない場合は、FTPサーバへ問い合わせません.<br>
+	 * 送信されずに残った再開位置は、次の貸し出し先の転送に引き継がないよう破棄します.
+	 * </p>
+	 *
+	 * @return 戻せた場合はtrue
+	 */
+	boolean reset() {
+		if (!ftpClient.isConnected()) {
+			return false;
+		}
+		ftpClient.setRestartOffset(0);
+		if (directoryChanged && initialDirectory != null) {
+			try {
+				if (!ftpClient.changeWorkingDirectory(initialDirectory)) {
+					return false;
+				}
+			} catch (IOException e) {
+				return false;
+			}
+		}
+		directoryChanged = false;
+		lastUsedTime = System.currentTimeMillis();
+		return true;
+	}
+
+	/**
+	 * ログアウトして切断する.
+	 * <p>
+	 * 既に切断されている場合や、ログアウトに失敗した場合もExceptionは発生しません.
+	 * </p>
+	 */
+	void close() {
+		try {
+			if (ftpClient.isConnected()) {
+				ftpClient.logout();
+			}
+		} catch (IOException e) {
+			// 切断するので無視する
+		}
+		try {
+			if (ftpClient.isConnected()) {
+				ftpClient.disconnect();
+			}
+		} catch (IOException e) {
+			// 無視する
+		}
+	}
+}
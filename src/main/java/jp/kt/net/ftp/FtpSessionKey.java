@@ -0,0 +1,84 @@
+package jp.kt.net.ftp;
+
+/**
+ * {@link FtpSessionPool}でセッションを共有する単位となる接続情報.
+ * <p>
+ * FTPサーバ名、ポート番号、ログインユーザ名、パスワードが全て一致する場合に同じキーとなります.
+ * </p>
+ *
+ * @author tatsuya.kumon
+ */
+class FtpSessionKey {
+	/** FTPサーバ名 */
+	private final String host;
+
+	/** FTPポート番号 */
+	private final int port;
+
+	/** ログインユーザ名 */
+	private final String user;
+
+	/** ログインパスワード */
+	private final String password;
+
+	/**
+	 * コンストラクタ.
+	 *
+	 * @param host
+	 *            FTPサーバ名
+	 * @param port
+	 *            FTPポート番号
+	 * @param user
+	 *            ログインユーザ名
+	 * @param password
+	 *            ログインパスワード
+	 */
+	FtpSessionKey(String host, int port, String user, String password) {
+		this.host = host;
+		this.port = port;
+		this.user = user;
+		this.password = password;
+	}
+
+	@Override
+	public boolean equals(Object obj) {
+		if (this == obj) {
+			return true;
+		}
+		if (!(obj instanceof FtpSessionKey)) {
+			return false;
+		}
+		FtpSessionKey other = (FtpSessionKey) obj;
+		return port == other.port && equals(host, other.host)
+				&& equals(user, other.user) && equals(password, other.password);
+	}
+
+	@Override
+	public int hashCode() {
+		int result = (host == null) ? 0 : host.hashCode();
+		result = 31 * result + port;
+		result = 31 * result + ((user == null) ? 0 : user.hashCode());
+		return result;
+	}
+
+	/**
+	 * パスワードを含まない文字列を返す.
+	 */
+	@Override
+	public String toString() {
+		return user + "@" + host + ":" + port;
+	}
+
+	/**
+	 * nullを考慮して文字列を比較する.
+	 *
+	 * @param s1
+	 *            文字列
+	 * @param s2
+	 *            文字列
+	 * @return 一致すればtrue
+	 */
+	private static boolean equals(String s1, String s2) {
+		return (s1 == null) ? s2 == null : s1.equals(s2);
+	}
+}
@@ -0,0 +1,538 @@
+package jp.kt.net.ftp;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+import jp.kt.exception.KtException;
+
+/**
+ * ログイン済みのFTP接続を再利用するためのプール.
+ * <p>
+ * {@link FtpAction}は、FTPサーバ名、ポート番号、ログインユーザ名ごとにプールされた接続を借りて処理を行い、<br>
+ * 処理後はログアウトせずにworkディレクトリをログイン直後の状態に戻して返却します.<br>
+ * これにより、連続した処理で接続、ログイン、ログアウトを繰り返すことがなくなります.<br>
+ * </p>
+ * <ul>
+ * <li>一定時間（デフォルト1秒）以上使用されていない接続は、貸し出す前にNOOPコマンドで使用可能か確認します.</li>
+ * <li>未使用の時間が上限（デフォルト60秒）を超えた接続は、最小数（デフォルト0）を残してデーモンスレッドで切断します.</li>
+ * <li>接続数が最大数（デフォルト4）に達している場合は、返却されるまで待機します（デフォルト10秒）.</li>
+ * <li>処理中に入出力エラーが発生した接続は、返却せずに切断します.</li>
+ * <li>存在を確認したFTPサーバ上のディレクトリを、同じ接続先の接続間で共有して一定時間（デフォルト60秒）記録し、<br>
+ * ディレクトリの存在チェックや作成時の問い合わせを省略します.</li>
+ * </ul>
+ * <p>
+ * 設定は全ての接続先に共通です.<br>
+ * 未使用の接続は、未使用時間の上限を超えるまでログインしたまま残るため、<br>
+ * すぐに処理を終える場合は{@link #clear()}メソッドを実行して全ての接続を切断してください.
+ * </p>
+ *
+ * @author tatsuya.kumon
+ */
+public class FtpSessionPool {
+	/** シングルトンインスタンス */
+	private static final FtpSessionPool instance = new FtpSessionPool();
+
+	/** 未使用の接続を確認する間隔の上限（ミリ秒） */
+	private static final long MAX_EVICTION_INTERVAL_MILLIS = 10 * 1000L;
+
+	/** 未使用時間の上限を超えた接続を切断するタイマー */
+	private static final ScheduledExecutorService EVICTION_TIMER = createEvictionTimer();
+
+	/** 接続先ごとの最小接続数（未使用時間の上限を超えても切断しない数） */
+	private int minSize = 0;
+
+	/** 接続先ごとの最大接続数 */
+	private int maxSize = 4;
+
+	/** 未使用時間の上限（ミリ秒） */
+	private long idleTimeoutMillis = 60 * 1000L;
+
+	/** NOOPコマンドで確認する未使用時間（ミリ秒） */
+	private long validationIntervalMillis = 1000L;
+
+	/** 空きを待機する時間の上限（ミリ秒） */
+	private long maxWaitMillis = 10 * 1000L;
+
+	/** ディレクトリのキャッシュの有効期間（ミリ秒、使用しない場合は0） */
+	private long directoryCacheTtlMillis = 60 * 1000L;
+
+	/** ディレクトリのキャッシュを同じ接続先の接続間で共有するフラグ */
+	private boolean isShareDirectoryCache = true;
+
+	/** 接続先ごとの接続 */
+	private final Map<FtpSessionKey, KeySessions> sessionMap = new HashMap<FtpSessionKey, KeySessions>();
+
+	/** 未使用の接続を次に確認する予定（予定が無い場合はnull） */
+	private ScheduledFuture<?> evictionFuture;
+
+	/**
+	 * コンストラクタ.
+	 */
+	private FtpSessionPool() {
+	}
+
+	/**
+	 * 未使用時間の上限を超えた接続を切断するタイマーを生成する.
+	 *
+	 * @return タイマー
+	 */
+	private static ScheduledExecutorService createEvictionTimer() {
+		return new ScheduledThreadPoolExecutor(1, new ThreadFactory() {
+			@Override
+			public Thread newThread(Runnable r) {
+				Thread thread = new Thread(r, "kt-net-ftp-evictor");
+				thread.setDaemon(true);
+				return thread;
+			}
+		});
+	}
+
+	/**
+	 * インスタンスを取得する.
+	 *
+	 * @return {@link FtpSessionPool}オブジェクト
+	 */
+	public static FtpSessionPool getInstance() {
+		return instance;
+	}
+
+	/**
+	 * 接続先ごとの最小接続数と最大接続数を設定する.
+	 * <p>
+	 * デフォルトは最小0、最大4.<br>
+	 * 最小接続数までの未使用の接続は、未使用時間の上限を超えても切断しません.
+	 * </p>
+	 *
+	 * @param minSize
+	 *            最小接続数
+	 * @param maxSize
+	 *            最大接続数
+	 */
+	public synchronized void setSize(int minSize, int maxSize) {
+		if (minSize < 0 || maxSize <= 0 || minSize > maxSize) {
+			throw new KtException("B004", "接続数の設定が不正な値です。[minSize:"
+					+ minSize + "][maxSize:" + maxSize + "]");
+		}
+		this.minSize = minSize;
+		this.maxSize = maxSize;
+		notifyAll();
+	}
+
+	/**
+	 * 未使用時間の上限を設定する.
+	 * <p>
+	 * デフォルトは60秒.
+	 * </p>
+	 *
+	 * @param idleTimeoutMillis
+	 *            未使用時間の上限（ミリ秒）
+	 */
+	public synchronized void setIdleTimeoutMillis(long idleTimeoutMillis) {
+		if (idleTimeoutMillis <= 0) {
+			throw new KtException("B004",
+					"未使用時間の上限の設定が不正な値です。[idleTimeoutMillis:"
+							+ idleTimeoutMillis + "]");
+		}
+		this.idleTimeoutMillis = idleTimeoutMillis;
+		if (evictionFuture != null && evictionFuture.cancel(false)) {
+			// 登録済みの予定は変更前の間隔なので登録し直す
+			evictionFuture = null;
+			scheduleEviction();
+		}
+	}
+
+	/**
+	 * 貸し出す前にNOOPコマンドで確認する未使用時間を設定する.
+	 * <p>
+	 * デフォルトは1秒.0を指定すると毎回確認します.
+	 * </p>
+	 *
+	 * @param validationIntervalMillis
+	 *            未使用時間（ミリ秒）
+	 */
+	public synchronized void setValidationIntervalMillis(
+			long validationIntervalMillis) {
+		if (validationIntervalMillis < 0) {
+			throw new KtException("B004",
+					"確認間隔の設定が不正な値です。[validationIntervalMillis:"
+							+ validationIntervalMillis + "]");
+		}
+		this.validationIntervalMillis = validationIntervalMillis;
+	}
+
+	/**
+	 * 接続数が最大数に達している場合に、空きを待機する時間の上限を設定する.
+	 * <p>
+	 * デフォルトは10秒.
+	 * </p>
+	 *
+	 * @param maxWaitMillis
+	 *            待機時間の上限（ミリ秒）
+	 */
+	public synchronized void setMaxWaitMillis(long maxWaitMillis) {
+		if (maxWaitMillis < 0) {
+			throw new KtException("B004",
+					"待機時間の上限の設定が不正な値です。[maxWaitMillis:" + maxWaitMillis
+							+ "]");
+		}
+		this.maxWaitMillis = maxWaitMillis;
+	}
+
+	/**
+	 * 存在を確認したディレクトリのキャッシュの有効期間を設定する.
+	 * <p>
+	 * デフォルトは60秒.0を指定するとキャッシュを使用しません.<br>
+	 * 他のクライアントがディレクトリを削除した場合、有効期間内は存在するものとして扱われます.<br>
+	 * 設定はこれ以降に接続した接続から有効になります.
+	 * </p>
+	 *
+	 * @param directoryCacheTtlMillis
+	 *            有効期間（ミリ秒）
+	 */
+	public synchronized void setDirectoryCacheTtlMillis(
+			long directoryCacheTtlMillis) {
+		if (directoryCacheTtlMillis < 0) {
+			throw new KtException("B004",
+					"有効期間の設定が不正な値です。[directoryCacheTtlMillis:"
+							+ directoryCacheTtlMillis + "]");
+		}
+		this.directoryCacheTtlMillis = directoryCacheTtlMillis;
+		for (KeySessions sessions : sessionMap.values()) {
+			sessions.directoryCache = null;
+		}
+	}
+
+	/**
+	 * 存在を確認したディレクトリのキャッシュを、同じ接続先の接続間で共有するかを設定する.
+	 * <p>
+	 * デフォルトは共有します.<br>
+	 * 共有しない場合は接続ごとに記録するため、ある接続でディレクトリを削除しても、<br>
+	 * 他の接続では有効期間内は存在するものとして扱われます（並列転送で別の接続が使用される場合に注意してください）.<br>
+	 * 設定はこれ以降に接続した接続から有効になります.
+	 * </p>
+	 *
+	 * @param isShareDirectoryCache
+	 *            共有する場合はtrue
+	 */
+	public synchronized void setShareDirectoryCache(
+			boolean isShareDirectoryCache) {
+		this.isShareDirectoryCache = isShareDirectoryCache;
+		for (KeySessions sessions : sessionMap.values()) {
+			sessions.directoryCache = null;
+		}
+	}
+
+	/**
+	 * 接続先ごとの最大接続数を返す.
+	 *
+	 * @return 最大接続数
+	 */
+	public synchronized int getMaxSize() {
+		return maxSize;
+	}
+
+	/**
+	 * 未使用の接続数を返す.
+	 *
+	 * @return 全ての接続先の未使用の接続数
+	 */
+	public synchronized int getIdleCount() {
+		int count = 0;
+		for (KeySessions sessions : sessionMap.values()) {
+			count += sessions.idleList.size();
+		}
+		return count;
+	}
+
+	/**
+	 * 未使用時間の上限を超えた接続を切断する.
+	 * <p>
+	 * 未使用の接続がある間は、デーモンスレッドで定期的に同じ処理を行います.<br>
+	 * 借りる際と返却する際にも、その接続先について同じ処理を行います.
+	 * </p>
+	 */
+	public void evictIdleSessions() {
+		List<FtpSession> evictList = new ArrayList<FtpSession>();
+		synchronized (this) {
+			long now = System.currentTimeMillis();
+			for (KeySessions sessions : sessionMap.values()) {
+				evict(sessions, now, evictList);
+			}
+			if (!evictList.isEmpty()) {
+				// 空きを待機しているスレッドに通知
+				notifyAll();
+			}
+		}
+		close(evictList);
+	}
+
+	/**
+	 * 未使用の接続を確認する予定が無ければ、次の予定を登録する.
+	 * <p>
+	 * 確認の間隔は、未使用時間の上限と{@link #MAX_EVICTION_INTERVAL_MILLIS}の短い方です.<br>
+	 * 最小接続数を超える未使用の接続が無くなった時点で、予定の登録をやめます.
+	 * </p>
+	 */
+	private synchronized void scheduleEviction() {
+		if (evictionFuture != null || !hasEvictableSession()) {
+			return;
+		}
+		evictionFuture = EVICTION_TIMER.schedule(new Runnable() {
+			@Override
+			public void run() {
+				try {
+					evictIdleSessions();
+				} finally {
+					synchronized (FtpSessionPool.this) {
+						evictionFuture = null;
+						scheduleEviction();
+					}
+				}
+			}
+		}, Math.min(idleTimeoutMillis, MAX_EVICTION_INTERVAL_MILLIS),
+				TimeUnit.MILLISECONDS);
+	}
+
+	/**
+	 * 最小接続数を超える未使用の接続があるかを返す.
+	 *
+	 * @return ある場合はtrue
+	 */
+	private boolean hasEvictableSession() {
+		for (KeySessions sessions : sessionMap.values()) {
+			if (sessions.idleList.size() > minSize) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * 未使用の接続を全て切断する.
+	 * <p>
+	 * 貸し出し中の接続は、返却された時点で再利用されます.
+	 * </p>
+	 */
+	public void clear() {
+		List<FtpSession> closeList = new ArrayList<FtpSession>();
+		synchronized (this) {
+			for (KeySessions sessions : sessionMap.values()) {
+				closeList.addAll(sessions.idleList);
+				sessions.total -= sessions.idleList.size();
+				sessions.idleList.clear();
+				sessions.directoryCache = null;
+			}
+			notifyAll();
+		}
+		close(closeList);
+	}
+
+	/**
+	 * 接続を借りる.
+	 * <p>
+	 * 未使用の接続が無く、最大数に達していない場合はnullを返します.<br>
+	 * この場合、1接続分の枠が確保されているので、呼び出し側で新しく接続してください.<br>
+	 * 接続に失敗した場合は{@link #cancel(FtpSessionKey)}を実行して枠を解放してください.
+	 * </p>
+	 *
+	 * @param key
+	 *            接続情報
+	 * @return 使用可能な接続（新しく接続する必要がある場合はnull）
+	 */
+	FtpSession borrow(FtpSessionKey key) {
+		while (true) {
+			FtpSession session = null;
+			long validationInterval;
+			KtException error = null;
+			List<FtpSession> evictList = new ArrayList<FtpSession>();
+			synchronized (this) {
+				validationInterval = validationIntervalMillis;
+				long waitLimit = System.currentTimeMillis() + maxWaitMillis;
+				KeySessions sessions = sessionMap.get(key);
+				if (sessions == null) {
+					sessions = new KeySessions();
+					sessionMap.put(key, sessions);
+				}
+				while (true) {
+					long now = System.currentTimeMillis();
+					evict(sessions, now, evictList);
+					if (!sessions.idleList.isEmpty()) {
+						// 最後に返却された接続から使用する
+						session = sessions.idleList.removeFirst();
+						break;
+					}
+					if (sessions.total < maxSize) {
+						// 新しく接続する枠を確保
+						sessions.total++;
+						break;
+					}
+					long waitMillis = waitLimit - now;
+					if (waitMillis <= 0) {
+						error = new KtException("A062",
+								"FTP接続数が上限に達しているため接続できませんでした [" + key
+										+ "][maxSize=" + maxSize + "]");
+						break;
+					}
+					try {
+						wait(waitMillis);
+					} catch (InterruptedException e) {
+						Thread.currentThread().interrupt();
+						error = new KtException("A062", "FTP接続の待機中に割り込まれました ["
+								+ key + "]");
+						break;
+					}
+				}
+			}
+			close(evictList);
+			if (error != null) {
+				throw error;
+			}
+			if (session == null) {
+				return null;
+			}
+			if (session.getIdleMillis(System.currentTimeMillis()) < validationInterval
+					|| session.validate()) {
+				return session;
+			}
+			// 使用できない接続は切断して借り直す
+			invalidate(session);
+		}
+	}
+
+	/**
+	 * 新しく接続した接続で使用する、ディレクトリのキャッシュを生成する.
+	 *
+	 * @param key
+	 *            接続情報（接続プールを使用しない場合はnull）
+	 * @return キャッシュ（使用しない場合はnull）
+	 */
+	synchronized RemoteDirectoryCache createDirectoryCache(FtpSessionKey key) {
+		if (directoryCacheTtlMillis == 0) {
+			return null;
+		}
+		if (key == null || !isShareDirectoryCache) {
+			return new RemoteDirectoryCache(directoryCacheTtlMillis);
+		}
+		KeySessions sessions = sessionMap.get(key);
+		if (sessions.directoryCache == null) {
+			sessions.directoryCache = new RemoteDirectoryCache(
+					directoryCacheTtlMillis);
+		}
+		return sessions.directoryCache;
+	}
+
+	/**
+	 * {@link #borrow(FtpSessionKey)}で確保した枠を解放する.
+	 *
+	 * @param key
+	 *            接続情報
+	 */
+	synchronized void cancel(FtpSessionKey key) {
+		KeySessions sessions = sessionMap.get(key);
+		if (sessions != null) {
+			sessions.total--;
+			notifyAll();
+		}
+	}
+
+	/**
+	 * 接続を返却する.
+	 * <p>
+	 * workディレクトリを戻せなかった場合は切断します.
+	 * </p>
+	 *
+	 * @param session
+	 *            接続
+	 */
+	void giveBack(FtpSession session) {
+		if (!session.reset()) {
+			invalidate(session);
+			return;
+		}
+		List<FtpSession> evictList = new ArrayList<FtpSession>();
+		synchronized (this) {
+			KeySessions sessions = sessionMap.get(session.getKey());
+			sessions.idleList.addFirst(session);
+			evict(sessions, System.currentTimeMillis(), evictList);
+			notifyAll();
+			scheduleEviction();
+		}
+		close(evictList);
+	}
+
+	/**
+	 * 貸し出し中の接続を切断し、枠を解放する.
+	 *
+	 * @param session
+	 *            接続
+	 */
+	void invalidate(FtpSession session) {
+		session.close();
+		cancel(session.getKey());
+	}
+
+	/**
+	 * 未使用時間の上限を超えた接続と、最大数を超えた未使用の接続を取り除く.
+	 * <p>
+	 * 取り除いた接続は、ロックの外で切断するためリストに追加します.
+	 * </p>
+	 *
+	 * @param sessions
+	 *            接続先ごとの接続
+	 * @param now
+	 *            現在時刻（エポックミリ秒）
+	 * @param evictList
+	 *            取り除いた接続を追加するリスト
+	 */
+	private void evict(KeySessions sessions, long now,
+			List<FtpSession> evictList) {
+		// 最近返却された順に並んでいるので、後ろから確認する
+		Iterator<FtpSession> it = sessions.idleList.descendingIterator();
+		while (it.hasNext() && sessions.idleList.size() > minSize) {
+			FtpSession session = it.next();
+			if (sessions.total <= maxSize
+					&& session.getIdleMillis(now) < idleTimeoutMillis) {
+				break;
+			}
+			it.remove();
+			sessions.total--;
+			evictList.add(session);
+		}
+	}
+
+	/**
+	 * 接続を切断する.
+	 *
+	 * @param closeList
+	 *            切断する接続のリスト
+	 */
+	private static void close(List<FtpSession> closeList) {
+		for (FtpSession session : closeList) {
+			session.close();
+		}
+		closeList.clear();
+	}
+
+	/**
+	 * 接続先ごとの接続.
+	 */
+	private static class KeySessions {
+		/** 未使用の接続（最近返却された順） */
+		private final LinkedList<FtpSession> idleList = new LinkedList<FtpSession>();
+
+		/** 貸し出し中を含めた接続数 */
+		private int total;
+
+		/** 接続間で共有するディレクトリのキャッシュ */
+		private RemoteDirectoryCache directoryCache;
+	}
+}
@@ -0,0 +1,188 @@
+package jp.kt.net.ftp;
+
+import java.io.File;
+import java.io.Serializable;
+
+import jp.kt.exception.KtException;
+
+/**
+ * GET処理情報クラス.
+ *
+ * @author tatsuya.kumon
+ */
+public class GetData implements Serializable {
+	private static final long serialVersionUID = 1L;
+
+	/** GETするFTP先のファイル */
+	private String remoteFilePath;
+
+	/** 保存先のローカルファイル */
+	private String localFilePath;
+
+	/** GET処理結果（成功ならtrue） */
+	private Boolean result;
+
+	/** エラーメッセージ */
+	private String errorMessage;
+
+	/** 受信したサイズ（バイト） */
+	private long size;
+
+	/** ローカルファイルが書き込み途中であればtrue */
+	private boolean partial;
+
+	/**
+	 * コンストラクタ.
+	 * <p>
+	 * 保存先のローカルファイルが既に存在する場合は上書きします.
+	 * </p>
+	 *
+	 * @param remoteFilePath
+	 *            GETするFTP先のファイルの絶対パス
+	 * @param localFilePath
+	 *            保存先のローカルパス
+	 */
+	public GetData(String remoteFilePath, String localFilePath) {
+		// サーバファイル
+		// この時点で絶対パスであることをチェック
+		new FtpPath(remoteFilePath);
+		this.remoteFilePath = remoteFilePath;
+		// ローカルファイル
+		File dir = new File(localFilePath).getAbsoluteFile().getParentFile();
+		if (dir == null || !dir.isDirectory()
+				|| new File(localFilePath).isDirectory()) {
+			throw new KtException("A063", "GETしたファイルを保存するディレクトリが存在しません ["
+					+ localFilePath + "]");
+		}
+		this.localFilePath = localFilePath;
+	}
+
+	/**
+	 * 処理成功.
+	 *
+	 * @param size
+	 *            受信したサイズ（バイト）
+	 */
+	void success(long size) {
+		this.result = true;
+		this.size = size;
+	}
+
+	/**
+	 * 処理失敗.
+	 *
+	 * @param errorMessage
+	 *            エラーメッセージ
+	 */
+	void fail(String errorMessage) {
+		this.result = false;
+		this.errorMessage = errorMessage;
+	}
+
+	/**
+	 * エラーメッセージを取得.
+	 *
+	 * @return エラーメッセージ
+	 */
+	public String getErrorMessage() {
+		return this.errorMessage;
+	}
+
+	/**
+	 * GET結果を取得する.
+	 * <p>
+	 * GET処理前の場合は {@link KtException} がthrowされます.
+	 * </p>
+	 *
+	 * @return trueなら成功
+	 */
+	public boolean isSuccess() {
+		if (this.result == null) {
+			throw new KtException("A064", "GET処理前です [" + remoteFilePath
+					+ "] [" + localFilePath + "]");
+		}
+		return this.result;
+	}
+
+	/**
+	 * GET処理済みかを返す.
+	 *
+	 * @return 成功もしくは失敗が記録されていればtrue
+	 */
+	boolean isDone() {
+		return this.result != null;
+	}
+
+	/**
+	 * ローカルファイルが書き込み途中であるかを返す.
+	 * <p>
+	 * 入出力エラーで中断した転送を再開する際に、続きから書き込めるかの判定に使用します.
+	 * </p>
+	 *
+	 * @return 書き込み途中であればtrue
+	 */
+	boolean isPartial() {
+		return this.partial;
+	}
+
+	/**
+	 * ローカルファイルが書き込み途中であるかをセットする.
+	 *
+	 * @param partial
+	 *            書き込み途中であればtrue
+	 */
+	void setPartial(boolean partial) {
+		this.partial = partial;
+	}
+
+	/**
+	 * 受信したサイズを返す.
+	 *
+	 * @return サイズ（バイト）、成功していない場合は0
+	 */
+	public long getSize() {
+		return this.size;
+	}
+
+	/**
+	 * FTP先のファイルパスを返す.
+	 *
+	 * @return FTP先のファイルパス
+	 */
+	public String getRemoteFilePath() {
+		return this.remoteFilePath;
+	}
+
+	/**
+	 * 保存先のローカルファイルのパスを返す.
+	 *
+	 * @return ローカルファイルのパス
+	 */
+	public String getLocalFilePath() {
+		return this.localFilePath;
+	}
+
+	/*
+	 * (非 Javadoc)
+	 *
+	 * @see java.lang.Object#toString()
+	 */
+	@Override
+	public String toString() {
+		StringBuilder sb = new StringBuilder();
+		sb.append("[remoteFilePath=");
+		sb.append(this.remoteFilePath);
+		sb.append("] ");
+		sb.append("[localFilePath=");
+		sb.append(this.localFilePath);
+		sb.append("] ");
+		sb.append("[result=");
+		sb.append(this.result);
+		if (this.result != null && !this.result) {
+			sb.append(",");
+			sb.append(this.errorMessage);
+		}
+		sb.append("]");
+		return sb.toString();
+	}
+}
@@ -0,0 +1,62 @@
+package jp.kt.net.ftp;
+
+import java.io.IOException;
+import java.net.Socket;
+
+import jp.kt.exception.KtException;
+
+import org.apache.commons.net.ftp.FTPClient;
+import org.apache.commons.net.ftp.FTPCmd;
+import org.apache.commons.net.ftp.FTPListParseEngine;
+import org.apache.commons.net.ftp.parser.MLSxEntryParser;
+
+/**
+ * {@link FtpBaseAction}で使用するFTPClient.
+ * <p>
+ * MLSDコマンドのファイルリストを、{@link FTPListParseEngine}で必要な分だけ解析できるようにします.<br>
+ * {@link FtpBaseAction}クラスからのみ呼び出される.
+ * </p>
+ *
+ * @author tatsuya.kumon
+ */
+class KtFtpClient extends FTPClient {
+	/**
+	 * コンストラクタ.
+	 */
+	KtFtpClient() {
+		super();
+	}
+
+	/**
+	 * MLSDコマンドで指定パスのファイルリストを受信し、解析の準備をする.
+	 * <p>
+	 * {@link FTPClient#initiateListParsing(String)}のMLSD版です.<br>
+	 * 受信が完了した状態で返します.<br>
+	 * データ接続を開始できなかった場合は、空のファイルリストを返します（応答コードで判定してください）.<br>
+	 * 受信が途中で打ち切られた場合（完了の応答がエラーの場合）は{@link KtException}がthrowされます.
+	 * </p>
+	 *
+	 * @param path
+	 *            パス
+	 * @return 受信済みのファイルリスト
+	 * @throws IOException
+	 */
+	FTPListParseEngine initiateMListParsing(String path) throws IOException {
+		FTPListParseEngine engine = new FTPListParseEngine(MLSxEntryParser
+				.getInstance());
+		Socket socket = _openDataConnection_(FTPCmd.MLSD, path);
+		if (socket == null) {
+			return engine;
+		}
+		try {
+			engine.readServerList(socket.getInputStream(), getControlEncoding());
+		} finally {
+			socket.close();
+		}
+		if (!completePendingCommand()) {
+			throw new KtException("A048", "ファイルリストの受信が完了しませんでした [" + path
+					+ "] [" + getReplyString().trim() + "]");
+		}
+		return engine;
+	}
+}
@@ -1,6 +1,10 @@
 package jp.kt.net.ftp;
 
+import java.io.File;
 import java.io.Serializable;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
 
 import jp.kt.exception.KtException;
 import jp.kt.fileio.FileUtil;
@@ -25,6 +29,18 @@ public class PutData implements Serializable {
 	/** エラーメッセージ */
 	private String errorMessage;
 
+	/** ハッシュ値の期待値（キーは大文字のアルゴリズム名） */
+	private Map<String, String> expectedDigestMap;
+
+	/** 転送時に計算したハッシュ値（キーは大文字のアルゴリズム名） */
+	private Map<String, String> digestMap;
+
+	/** FTPサーバ上のハッシュ値と一致したことを確認済みであればtrue */
+	private boolean serverVerified;
+
+	/** FTPサーバ上のファイルが転送途中であればtrue */
+	private boolean partial;
+
 	/**
 	 * コンストラクタ.
 	 *
@@ -46,6 +62,50 @@ public class PutData implements Serializable {
 		this.remoteDirPath = remoteDirPath;
 	}
 
+	/**
+	 * 転送するファイルのハッシュ値の期待値を設定する.
+	 * <p>
+	 * 転送時に計算したハッシュ値が一致しない場合はPUT失敗となります.
+	 * </p>
+	 *
+	 * @param algorithm
+	 *            アルゴリズム名（MD5、SHA-256、CRC32など）
+	 * @param hexValue
+	 *            期待値（16進数文字列）
+	 */
+	public void setExpectedDigest(String algorithm, String hexValue) {
+		if (this.expectedDigestMap == null) {
+			this.expectedDigestMap = new HashMap<String, String>();
+		}
+		this.expectedDigestMap.put(algorithm.toUpperCase(), hexValue);
+	}
+
+	/**
+	 * ハッシュ値の期待値を返す.
+	 *
+	 * @return キーがアルゴリズム名（大文字）の期待値群（未設定の場合はnull）
+	 */
+	Map<String, String> getExpectedDigestMap() {
+		return this.expectedDigestMap;
+	}
+
+	/**
+	 * 転送時に計算したハッシュ値をセットする.
+	 *
+	 * @param digestMap
+	 *            キーがアルゴリズム名（大文字）のハッシュ値群
+	 */
+	void setDigests(Map<String, String> digestMap) {
+		this.digestMap = new LinkedHashMap<String, String>(digestMap);
+	}
+
+	/**
+	 * FTPサーバ上のハッシュ値と一致したことを確認済みにする.
+	 */
+	void serverVerified() {
+		this.serverVerified = true;
+	}
+
 	/**
 	 * 処理成功.
 	 */
@@ -89,6 +149,32 @@ public class PutData implements Serializable {
 		return this.result;
 	}
 
+	/**
+	 * 転送時に計算したハッシュ値を取得する.
+	 *
+	 * @param algorithm
+	 *            アルゴリズム名
+	 * @return ハッシュ値（16進数文字列）、計算していない場合はnull
+	 */
+	public String getDigest(String algorithm) {
+		if (this.digestMap == null) {
+			return null;
+		}
+		return this.digestMap.get(algorithm.toUpperCase());
+	}
+
+	/**
+	 * FTPサーバ上で計算されたハッシュ値と一致することを確認済みかを返す.
+	 * <p>
+	 * FTPサーバがHASH、XMD5、XCRCコマンドのいずれにも対応していない場合はfalseとなります.
+	 * </p>
+	 *
+	 * @return 確認済みであればtrue
+	 */
+	public boolean isServerVerified() {
+		return this.serverVerified;
+	}
+
 	/**
 	 * ローカルファイルのパスを返す.
 	 *
@@ -98,6 +184,46 @@ public class PutData implements Serializable {
 		return this.localFile.getPath();
 	}
 
+	/**
+	 * ローカルファイルのサイズを返す.
+	 *
+	 * @return ファイルサイズ（バイト）
+	 */
+	long getLocalFileSize() {
+		return new File(this.localFile.getPath()).length();
+	}
+
+	/**
+	 * FTPサーバ上のファイルが転送途中であるかを返す.
+	 * <p>
+	 * 入出力エラーで中断した転送を再開する際に、FTPサーバ上のファイルの続きから転送できるかの判定に使用します.
+	 * </p>
+	 *
+	 * @return このPUTで転送を開始し、完了していなければtrue
+	 */
+	boolean isPartial() {
+		return this.partial;
+	}
+
+	/**
+	 * FTPサーバ上のファイルが転送途中であるかをセットする.
+	 *
+	 * @param partial
+	 *            転送途中であればtrue
+	 */
+	void setPartial(boolean partial) {
+		this.partial = partial;
+	}
+
+	/**
+	 * PUT処理済みかを返す.
+	 *
+	 * @return 成功もしくは失敗が記録されていればtrue
+	 */
+	boolean isDone() {
+		return this.result != null;
+	}
+
 	/**
 	 * PUTするファイル名のみを返す.
 	 *
@@ -116,6 +242,18 @@ public class PutData implements Serializable {
 		return this.remoteDirPath;
 	}
 
+	/**
+	 * FTP先のファイルパスを返す.
+	 *
+	 * @return FTP先のファイルパス
+	 */
+	String getRemoteFilePath() {
+		if (this.remoteDirPath.endsWith("/")) {
+			return this.remoteDirPath + getFileName();
+		}
+		return this.remoteDirPath + "/" + getFileName();
+	}
+
 	/*
 	 * (非 Javadoc)
 	 *
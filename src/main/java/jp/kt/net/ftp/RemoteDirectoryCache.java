@@ -0,0 +1,188 @@
+package jp.kt.net.ftp;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * FTPサーバ上に存在することを確認したディレクトリを記録するキャッシュ.
+ * <p>
+ * ディレクトリ名を1階層ずつ木構造で保持し、あるパスの存在を記録すると祖先のディレクトリも存在するものとして記録します.<br>
+ * 記録は有効期間を過ぎると破棄されます.<br>
+ * 記録したディレクトリ数が上限を超えた場合は、全て破棄します.<br>
+ * 複数の接続で共有できるように、各メソッドは同期化されています.
+ * </p>
+ *
+ * @author tatsuya.kumon
+ */
+class RemoteDirectoryCache {
+	/** 記録するディレクトリ数の上限 */
+	private static final int MAX_DIRECTORIES = 100000;
+
+	/** 記録の有効期間（ミリ秒） */
+	private final long ttlMillis;
+
+	/** ルートディレクトリ */
+	private DirectoryNode root = new DirectoryNode();
+
+	/** 記録しているディレクトリ数 */
+	private int directoryCount;
+
+	/**
+	 * コンストラクタ.
+	 *
+	 * @param ttlMillis
+	 *            記録の有効期間（ミリ秒）
+	 */
+	RemoteDirectoryCache(long ttlMillis) {
+		this.ttlMillis = ttlMillis;
+	}
+
+	/**
+	 * 存在することを確認済みの、最も深い祖先の配列数を返す.
+	 *
+	 * @param path
+	 *            ディレクトリパス
+	 * @return 配列数（ルートのみの場合は0、パス全体が存在する場合は{@link FtpPath#getCount()}）
+	 */
+	synchronized int getKnownCount(FtpPath path) {
+		long now = System.currentTimeMillis();
+		DirectoryNode node = root;
+		for (int i = 0; i < path.getCount(); i++) {
+			DirectoryNode child = node.getChild(path.getName(i));
+			if (child == null) {
+				return i;
+			}
+			if (now >= child.expireTime) {
+				// 期限切れの記録は配下も含めて破棄する
+				node.removeChild(path.getName(i));
+				directoryCount -= child.size();
+				return i;
+			}
+			node = child;
+		}
+		return path.getCount();
+	}
+
+	/**
+	 * ディレクトリが存在することを記録する.
+	 * <p>
+	 * 祖先のディレクトリも存在するものとして記録します.
+	 * </p>
+	 *
+	 * @param path
+	 *            ディレクトリパス
+	 */
+	synchronized void add(FtpPath path) {
+		if (directoryCount + path.getCount() > MAX_DIRECTORIES) {
+			clear();
+		}
+		long expireTime = System.currentTimeMillis() + ttlMillis;
+		DirectoryNode node = root;
+		for (int i = 0; i < path.getCount(); i++) {
+			DirectoryNode child = node.getChild(path.getName(i));
+			if (child == null) {
+				child = node.addChild(path.getName(i));
+				directoryCount++;
+			}
+			child.expireTime = expireTime;
+			node = child;
+		}
+	}
+
+	/**
+	 * ディレクトリとその配下の記録を破棄する.
+	 *
+	 * @param path
+	 *            ディレクトリパス
+	 */
+	synchronized void remove(FtpPath path) {
+		if (path.getCount() == 0) {
+			clear();
+			return;
+		}
+		DirectoryNode node = root;
+		for (int i = 0; i < path.getCount() - 1; i++) {
+			node = node.getChild(path.getName(i));
+			if (node == null) {
+				return;
+			}
+		}
+		DirectoryNode removed = node.removeChild(path
+				.getName(path.getCount() - 1));
+		if (removed != null) {
+			directoryCount -= removed.size();
+		}
+	}
+
+	/**
+	 * 記録を全て破棄する.
+	 */
+	synchronized void clear() {
+		root = new DirectoryNode();
+		directoryCount = 0;
+	}
+
+	/**
+	 * 1階層のディレクトリ.
+	 */
+	private static class DirectoryNode {
+		/** 子ディレクトリ（無い場合はnull） */
+		private Map<String, DirectoryNode> children;
+
+		/** 有効期限（エポックミリ秒） */
+		private long expireTime;
+
+		/**
+		 * 子ディレクトリを返す.
+		 *
+		 * @param name
+		 *            ディレクトリ名
+		 * @return 子ディレクトリ（記録が無い場合はnull）
+		 */
+		private DirectoryNode getChild(String name) {
+			return (children == null) ? null : children.get(name);
+		}
+
+		/**
+		 * 子ディレクトリを追加する.
+		 *
+		 * @param name
+		 *            ディレクトリ名
+		 * @return 追加した子ディレクトリ
+		 */
+		private DirectoryNode addChild(String name) {
+			if (children == null) {
+				children = new HashMap<String, DirectoryNode>();
+			}
+			DirectoryNode child = new DirectoryNode();
+			children.put(name, child);
+			return child;
+		}
+
+		/**
+		 * 子ディレクトリを削除する.
+		 *
+		 * @param name
+		 *            ディレクトリ名
+		 * @return 削除した子ディレクトリ（記録が無い場合はnull）
+		 */
+		private DirectoryNode removeChild(String name) {
+			return (children == null) ? null : children.remove(name);
+		}
+
+		/**
+		 * 自身と配下のディレクトリ数を返す.
+		 *
+		 * @return ディレクトリ数
+		 */
+		private int size() {
+			int size = 1;
+			if (children != null) {
+				for (DirectoryNode child : children.values()) {
+					size += child.size();
+				}
+			}
+			return size;
+		}
+	}
+}
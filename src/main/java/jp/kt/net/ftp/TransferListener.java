@@ -0,0 +1,19 @@
+package jp.kt.net.ftp;
+
+/**
+ * 複数ファイルの転送の進捗を受け取るインターフェース.
+ * <p>
+ * 並列で転送する場合も、同時に呼び出されることはありません.
+ * </p>
+ *
+ * @author tatsuya.kumon
+ */
+public interface TransferListener {
+	/**
+	 * 1ファイルの転送が終わるごとに呼び出される.
+	 *
+	 * @param report
+	 *            その時点の進捗
+	 */
+	void onProgress(TransferReport report);
+}
@@ -0,0 +1,186 @@
+package jp.kt.net.ftp;
+
+/**
+ * 複数ファイルの転送の進捗と結果.
+ * <p>
+ * 転送中も別スレッドから参照できます.<br>
+ * 転送量と転送速度は、成功したファイルのサイズから計算します.
+ * </p>
+ *
+ * @author tatsuya.kumon
+ */
+public class TransferReport {
+	/** 全ファイル数 */
+	private final int totalCount;
+
+	/** 全ファイルの合計サイズ（バイト） */
+	private final long totalBytes;
+
+	/** 開始時刻（エポックミリ秒） */
+	private final long startTime;
+
+	/** 終了時刻（エポックミリ秒、転送中は0） */
+	private long endTime;
+
+	/** 成功したファイル数 */
+	private int successCount;
+
+	/** 失敗したファイル数 */
+	private int failureCount;
+
+	/** 成功したファイルの合計サイズ（バイト） */
+	private long transferredBytes;
+
+	/**
+	 * コンストラクタ.
+	 *
+	 * @param totalCount
+	 *            全ファイル数
+	 * @param totalBytes
+	 *            全ファイルの合計サイズ（バイト、不明な場合は-1）
+	 */
+	TransferReport(int totalCount, long totalBytes) {
+		this.totalCount = totalCount;
+		this.totalBytes = totalBytes;
+		this.startTime = System.currentTimeMillis();
+	}
+
+	/**
+	 * 1ファイルの結果を加算する.
+	 *
+	 * @param bytes
+	 *            ファイルサイズ（バイト）
+	 * @param success
+	 *            成功した場合はtrue
+	 */
+	synchronized void add(long bytes, boolean success) {
+		if (success) {
+			successCount++;
+			transferredBytes += bytes;
+		} else {
+			failureCount++;
+		}
+	}
+
+	/**
+	 * 転送の終了を記録する.
+	 */
+	synchronized void finish() {
+		endTime = System.currentTimeMillis();
+	}
+
+	/**
+	 * 全ファイル数を返す.
+	 *
+	 * @return 全ファイル数
+	 */
+	public int getTotalCount() {
+		return totalCount;
+	}
+
+	/**
+	 * 全ファイルの合計サイズを返す.
+	 * <p>
+	 * GETの場合は転送前にサイズが分からないため、-1を返します.
+	 * </p>
+	 *
+	 * @return 合計サイズ（バイト）
+	 */
+	public long getTotalBytes() {
+		return totalBytes;
+	}
+
+	/**
+	 * 処理済みのファイル数を返す.
+	 *
+	 * @return 成功したファイル数と失敗したファイル数の合計
+	 */
+	public synchronized int getCompletedCount() {
+		return successCount + failureCount;
+	}
+
+	/**
+	 * 成功したファイル数を返す.
+	 *
+	 * @return 成功したファイル数
+	 */
+	public synchronized int getSuccessCount() {
+		return successCount;
+	}
+
+	/**
+	 * 失敗したファイル数を返す.
+	 *
+	 * @return 失敗したファイル数
+	 */
+	public synchronized int getFailureCount() {
+		return failureCount;
+	}
+
+	/**
+	 * 成功したファイルの合計サイズを返す.
+	 *
+	 * @return 転送量（バイト）
+	 */
+	public synchronized long getTransferredBytes() {
+		return transferredBytes;
+	}
+
+	/**
+	 * 転送が終了しているかを返す.
+	 *
+	 * @return 終了していればtrue
+	 */
+	public synchronized boolean isFinished() {
+		return endTime > 0;
+	}
+
+	/**
+	 * 経過時間を返す.
+	 * <p>
+	 * 終了後は、開始から終了までの時間を返します.
+	 * </p>
+	 *
+	 * @return 経過時間（ミリ秒）
+	 */
+	public synchronized long getElapsedMillis() {
+		return ((endTime > 0) ? endTime : System.currentTimeMillis())
+				- startTime;
+	}
+
+	/**
+	 * 転送速度を返す.
+	 *
+	 * @return 1秒あたりの転送量（バイト）
+	 */
+	public synchronized long getBytesPerSecond() {
+		long elapsed = getElapsedMillis();
+		if (elapsed <= 0) {
+			return 0;
+		}
+		return transferredBytes * 1000 / elapsed;
+	}
+
+	@Override
+	public synchronized String toString() {
+		StringBuilder sb = new StringBuilder();
+		sb.append("[files=");
+		sb.append(getCompletedCount());
+		sb.append("/");
+		sb.append(totalCount);
+		sb.append("][success=");
+		sb.append(successCount);
+		sb.append("][failure=");
+		sb.append(failureCount);
+		sb.append("][bytes=");
+		sb.append(transferredBytes);
+		sb.append("/");
+		sb.append(totalBytes);
+		sb.append("][elapsed=");
+		sb.append(getElapsedMillis());
+		sb.append("ms][rate=");
+		sb.append(getBytesPerSecond());
+		sb.append("B/s]");
+		return sb.toString();
+	}
+}
@@ -0,0 +1,288 @@
+package jp.kt.net.http;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import jp.kt.exception.KtException;
+
+/**
+ * 接続先ホストごとの同時実行数の上限を、応答時間とエラーから自動調整するクラス.
+ * <p>
+ * {@link RequestScheduler#setConcurrencyLimit(AdaptiveConcurrencyLimit)}でセットすると、<br>
+ * ホストごとの同時実行数の上限が、固定値ではなく本クラスの算出した値になります.<br>
+ * 応答の速い正常なホストには上限を引き上げ、遅くなったホストやエラーを返すホストには上限を引き下げます.
+ * </p>
+ * <p>
+ * 調整方法は下記から選択します.
+ * </p>
+ * <ul>
+ * <li>{@link Algorithm#AIMD}：成功するごとに「1/上限」ずつ（上限分の成功で1）増やし、エラーもしくは応答時間が閾値を超えると一定の割合で減らす</li>
+ * <li>{@link Algorithm#GRADIENT}：負荷の無い状態の応答時間（一定期間の最小値）と直近の応答時間の比率に応じて増減させる</li>
+ * </ul>
+ * <p>
+ * エラーは、通信時の例外、ステータスコード429、5xxを指します.<br>
+ * 上限を使い切っていない間（実行中が上限の半分未満）は、上限を引き上げません.<br>
+ * 上限を引き下げる前から実行中だったリクエストのエラーは、既に引き下げに反映済みとして無視します.
+ * </p>
+ *
+ * @author tatsuya.kumon
+ */
+public class AdaptiveConcurrencyLimit {
+	/**
+	 * 調整方法.
+	 */
+	public enum Algorithm {
+		/** 加算増加・乗算減少 */
+		AIMD,
+		/** 応答時間の勾配 */
+		GRADIENT;
+	}
+
+	/** 記録するホスト数の上限 */
+	private static final int MAX_HOSTS = 1024;
+
+	/** 応答時間の最小値を測り直す間隔（ミリ秒） */
+	private static final long MIN_RTT_RESET_MILLIS = 30 * 1000L;
+
+	/** 調整方法 */
+	private final Algorithm algorithm;
+
+	/** 上限の初期値 */
+	private int initialLimit = 4;
+
+	/** 上限の最小値 */
+	private int minLimit = 1;
+
+	/** 上限の最大値 */
+	private int maxLimit = 200;
+
+	/** エラー時に上限に掛ける割合 */
+	private double backoffRatio = 0.9;
+
+	/** AIMDでエラーとみなす応答時間（ミリ秒、0は判定しない） */
+	private long latencyThresholdMillis;
+
+	/** GRADIENTで許容する応答時間の増加率 */
+	private double tolerance = 1.5;
+
+	/** GRADIENTで新しい上限に与える重み */
+	private double smoothing = 0.2;
+
+	/** ホストごとの状態（アクセス順） */
+	private final Map<String, HostLimit> hostMap = new LinkedHashMap<String, HostLimit>(
+			16, 0.75f, true) {
+		@Override
+		protected boolean removeEldestEntry(Map.Entry<String, HostLimit> eldest) {
+			return size() > MAX_HOSTS;
+		}
+	};
+
+	/**
+	 * コンストラクタ.
+	 *
+	 * @param algorithm
+	 *            調整方法
+	 */
+	public AdaptiveConcurrencyLimit(Algorithm algorithm) {
+		if (algorithm == null) {
+			throw new KtException("B004", "調整方法の設定が不正な値です。[algorithm:null]");
+		}
+		this.algorithm = algorithm;
+	}
+
+	/**
+	 * 上限の初期値、最小値、最大値を設定する.
+	 * <p>
+	 * デフォルトは初期値4、最小値1、最大値200.<br>
+	 * 既に調整中のホストには、最小値と最大値のみ反映されます.
+	 * </p>
+	 *
+	 * @param initialLimit
+	 *            初期値
+	 * @param minLimit
+	 *            最小値
+	 * @param maxLimit
+	 *            最大値
+	 */
+	public synchronized void setLimitRange(int initialLimit, int minLimit,
+			int maxLimit) {
+		if (minLimit <= 0 || maxLimit < minLimit || initialLimit < minLimit
+				|| initialLimit > maxLimit) {
+			throw new KtException("B004", "同時実行数の上限の設定が不正な値です。[initialLimit:"
+					+ initialLimit + ",minLimit:" + minLimit + ",maxLimit:"
+					+ maxLimit + "]");
+		}
+		this.initialLimit = initialLimit;
+		this.minLimit = minLimit;
+		this.maxLimit = maxLimit;
+	}
+
+	/**
+	 * エラー時に上限に掛ける割合を設定する.
+	 * <p>
+	 * デフォルトは0.9.
+	 * </p>
+	 *
+	 * @param backoffRatio
+	 *            割合（0より大きく1未満）
+	 */
+	public synchronized void setBackoffRatio(double backoffRatio) {
+		if (backoffRatio <= 0 || backoffRatio >= 1) {
+			throw new KtException("B004", "減少率の設定が不正な値です。[backoffRatio:"
+					+ backoffRatio + "]");
+		}
+		this.backoffRatio = backoffRatio;
+	}
+
+	/**
+	 * AIMDでエラーとみなす応答時間を設定する.
+	 * <p>
+	 * デフォルトは0（応答時間では判定しない）.
+	 * </p>
+	 *
+	 * @param latencyThresholdMillis
+	 *            応答時間（ミリ秒）
+	 */
+	public synchronized void setLatencyThresholdMillis(
+			long latencyThresholdMillis) {
+		if (latencyThresholdMillis < 0) {
+			throw new KtException("B004",
+					"応答時間の閾値の設定が不正な値です。[latencyThresholdMillis:"
+							+ latencyThresholdMillis + "]");
+		}
+		this.latencyThresholdMillis = latencyThresholdMillis;
+	}
+
+	/**
+	 * GRADIENTで許容する応答時間の増加率を設定する.
+	 * <p>
+	 * デフォルトは1.5（負荷の無い状態の1.5倍までは上限を引き下げない）.
+	 * </p>
+	 *
+	 * @param tolerance
+	 *            増加率（1以上）
+	 */
+	public synchronized void setTolerance(double tolerance) {
+		if (tolerance < 1) {
+			throw new KtException("B004", "許容する増加率の設定が不正な値です。[tolerance:"
+					+ tolerance + "]");
+		}
+		this.tolerance = tolerance;
+	}
+
+	/**
+	 * 調整方法を取得する.
+	 *
+	 * @return 調整方法
+	 */
+	public Algorithm getAlgorithm() {
+		return algorithm;
+	}
+
+	/**
+	 * ホストの現在の上限を取得する.
+	 *
+	 * @param host
+	 *            接続先ホスト
+	 * @return 同時実行数の上限
+	 */
+	public synchronized int getLimit(String host) {
+		HostLimit hostLimit = hostMap.get(host);
+		if (hostLimit == null) {
+			return initialLimit;
+		}
+		return Math.max(minLimit, (int) hostLimit.limit);
+	}
+
+	/**
+	 * 調整状態を全て破棄する.
+	 */
+	public synchronized void clear() {
+		hostMap.clear();
+	}
+
+	/**
+	 * 1リクエストの結果から上限を調整する.
+	 *
+	 * @param host
+	 *            接続先ホスト
+	 * @param rttMillis
+	 *            実行時間（ミリ秒）
+	 * @param inflight
+	 *            このリクエストを含めた実行中のリクエスト数
+	 * @param dropped
+	 *            エラーの場合はtrue
+	 */
+	synchronized void onSample(String host, long rttMillis, int inflight,
+			boolean dropped) {
+		HostLimit hostLimit = hostMap.get(host);
+		if (hostLimit == null) {
+			hostLimit = new HostLimit(initialLimit);
+			hostMap.put(host, hostLimit);
+		}
+		double rtt = Math.max(1, rttMillis);
+		long now = System.currentTimeMillis();
+		if (algorithm == Algorithm.AIMD) {
+			if (latencyThresholdMillis > 0 && rttMillis > latencyThresholdMillis) {
+				dropped = true;
+			}
+		} else if (!dropped) {
+			// 負荷の無い状態の応答時間（古くなった最小値は測り直す）
+			if (hostLimit.minRtt == 0 || rtt < hostLimit.minRtt
+					|| now >= hostLimit.minRttResetTime) {
+				if (hostLimit.minRtt == 0 || now >= hostLimit.minRttResetTime) {
+					hostLimit.minRttResetTime = now + MIN_RTT_RESET_MILLIS;
+				}
+				hostLimit.minRtt = rtt;
+			}
+		}
+		double limit = hostLimit.limit;
+		if (dropped) {
+			if (now - rttMillis < hostLimit.decreaseTime) {
+				// 前回引き下げた時点で実行中だったリクエストなので、連続して引き下げない
+				return;
+			}
+			limit = limit * backoffRatio;
+			hostLimit.decreaseTime = now;
+		} else if (inflight * 2 < limit) {
+			// 上限を使い切っていないので引き上げない
+			return;
+		} else if (algorithm == Algorithm.AIMD) {
+			limit = limit + 1 / limit;
+		} else {
+			// 直近の応答時間が負荷の無い状態より遅ければ減らし、許容範囲内であれば待ち行列分を加える
+			double gradient = Math.max(0.5,
+					Math.min(1.0, tolerance * hostLimit.minRtt / rtt));
+			double newLimit = limit * gradient + Math.sqrt(limit);
+			limit = limit * (1 - smoothing) + newLimit * smoothing;
+		}
+		hostLimit.limit = Math.min(maxLimit, Math.max(minLimit, limit));
+	}
+
+	/**
+	 * ホストごとの状態.
+	 */
+	private static class HostLimit {
+		/** 同時実行数の上限 */
+		private double limit;
+
+		/** 負荷の無い状態の応答時間（ミリ秒、未測定の場合は0） */
+		private double minRtt;
+
+		/** 応答時間の最小値を測り直す時刻（エポックミリ秒） */
+		private long minRttResetTime;
+
+		/** 最後に上限を引き下げた時刻（エポックミリ秒） */
+		private long decreaseTime;
+
+		/**
+		 * コンストラクタ.
+		 *
+		 * @param limit
+		 *            同時実行数の上限の初期値
+		 */
+		private HostLimit(double limit) {
+			this.limit = limit;
+		}
+	}
+}
@@ -0,0 +1,118 @@
+package jp.kt.net.http;
+
+import java.net.InetAddress;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import jp.kt.exception.KtException;
+
+/**
+ * 接続に失敗したIPアドレスを一定時間記録するクラス.
+ * <p>
+ * {@link HttpConnection}は、1つのホスト名に複数のIPアドレス（A/AAAAレコード）がある場合、<br>
+ * 少しずつ時間をずらして各アドレスへ同時に接続を試み、最初に接続できたものを使用します.<br>
+ * 接続に失敗したアドレスや、後から試みたアドレスに負けたアドレスは本クラスに記録され、<br>
+ * 有効期間（デフォルト60秒）の間は接続を試みる順番が後回しになります.<br>
+ * 記録するアドレス数には上限があり、超えた場合は最も古く参照されたアドレスから破棄します.
+ * </p>
+ *
+ * @author tatsuya.kumon
+ */
+public class AddressPenaltyCache {
+	/** シングルトンインスタンス */
+	private static final AddressPenaltyCache instance = new AddressPenaltyCache();
+
+	/** 記録するアドレス数の上限 */
+	private static final int MAX_ADDRESSES = 1024;
+
+	/** 記録の有効期間（ミリ秒） */
+	private volatile long ttlMillis = 60 * 1000L;
+
+	/** アドレスごとの有効期限（アクセス順） */
+	private final Map<InetAddress, Long> addressMap = new LinkedHashMap<InetAddress, Long>(
+			16, 0.75f, true) {
+		@Override
+		protected boolean removeEldestEntry(Map.Entry<InetAddress, Long> eldest) {
+			return size() > MAX_ADDRESSES;
+		}
+	};
+
+	/**
+	 * コンストラクタ.
+	 */
+	private AddressPenaltyCache() {
+	}
+
+	/**
+	 * インスタンスを取得する.
+	 *
+	 * @return {@link AddressPenaltyCache}オブジェクト
+	 */
+	public static AddressPenaltyCache getInstance() {
+		return instance;
+	}
+
+	/**
+	 * 記録の有効期間を設定する.
+	 * <p>
+	 * デフォルトは60秒.
+	 * </p>
+	 *
+	 * @param ttlMillis
+	 *            有効期間（ミリ秒）
+	 */
+	public void setTtlMillis(long ttlMillis) {
+		if (ttlMillis <= 0) {
+			throw new KtException("B004", "有効期間の設定が不正な値です。[ttlMillis:"
+					+ ttlMillis + "]");
+		}
+		this.ttlMillis = ttlMillis;
+	}
+
+	/**
+	 * 記録を全て破棄する.
+	 */
+	public synchronized void clear() {
+		addressMap.clear();
+	}
+
+	/**
+	 * アドレスが記録されているかを返す.
+	 *
+	 * @param address
+	 *            IPアドレス
+	 * @return 有効期間内の記録がある場合はtrue
+	 */
+	public synchronized boolean isPenalized(InetAddress address) {
+		Long expireTime = addressMap.get(address);
+		if (expireTime == null) {
+			return false;
+		}
+		if (System.currentTimeMillis() >= expireTime.longValue()) {
+			addressMap.remove(address);
+			return false;
+		}
+		return true;
+	}
+
+	/**
+	 * 接続に失敗したアドレスを記録する.
+	 *
+	 * @param address
+	 *            IPアドレス
+	 */
+	synchronized void penalize(InetAddress address) {
+		addressMap.put(address,
+				Long.valueOf(System.currentTimeMillis() + ttlMillis));
+	}
+
+	/**
+	 * 接続に成功したアドレスの記録を破棄する.
+	 *
+	 * @param address
+	 *            IPアドレス
+	 */
+	synchronized void forgive(InetAddress address) {
+		addressMap.remove(address);
+	}
+}
@@ -0,0 +1,85 @@
+package jp.kt.net.http;
+
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * 本体をバイト配列で保持する{@link TransportResponse}.
+ * <p>
+ * 接続を持たないため、{@link #close()}、{@link #abort()}では何もしません.<br>
+ * {@link HttpInterceptor}でキャッシュしたレスポンスを返す場合や、{@link StubTransport}で使用します.<br>
+ * 本体は{@link #getContent()}を実行するたびに先頭から読み込めます.
+ * </p>
+ *
+ * @author tatsuya.kumon
+ */
+public class ByteArrayTransportResponse extends TransportResponse {
+	/** ステータスコード */
+	private final int statusCode;
+
+	/** ステータステキスト */
+	private final String reasonPhrase;
+
+	/** レスポンスヘッダ群 */
+	private final List<TransportHeader> headerList;
+
+	/** レスポンス本体（本体が無い場合はnull） */
+	private final byte[] body;
+
+	/**
+	 * コンストラクタ.
+	 *
+	 * @param statusCode
+	 *            ステータスコード
+	 * @param reasonPhrase
+	 *            ステータステキスト
+	 * @param headerList
+	 *            レスポンスヘッダ群
+	 * @param body
+	 *            レスポンス本体（本体が無い場合はnull）
+	 */
+	public ByteArrayTransportResponse(int statusCode, String reasonPhrase,
+			List<TransportHeader> headerList, byte[] body) {
+		this.statusCode = statusCode;
+		this.reasonPhrase = reasonPhrase;
+		this.headerList = Collections
+				.unmodifiableList(new ArrayList<TransportHeader>(headerList));
+		this.body = body;
+	}
+
+	@Override
+	public int getStatusCode() {
+		return statusCode;
+	}
+
+	@Override
+	public String getReasonPhrase() {
+		return reasonPhrase;
+	}
+
+	@Override
+	public List<TransportHeader> getHeaders() {
+		return headerList;
+	}
+
+	@Override
+	public InputStream getContent() {
+		return (body == null) ? null : new ByteArrayInputStream(body);
+	}
+
+	@Override
+	public long getContentLength() {
+		return (body == null) ? -1 : body.length;
+	}
+
+	@Override
+	public void close() {
+	}
+
+	@Override
+	public void abort() {
+	}
+}
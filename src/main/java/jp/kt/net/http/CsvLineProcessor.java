@@ -0,0 +1,110 @@
+package jp.kt.net.http;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * CSV形式の行をレコードに分割して{@link RecordProcessor}へ渡す{@link LineProcessor}.
+ * <p>
+ * 項目はダブルクォートで囲むことができ、囲まれた項目内の区切り文字、改行、連続したダブルクォート（""）を扱えます.<br>
+ * 改行を含む項目は、複数行を連結して1レコードとします（改行コードはLFに統一されます）.<br>
+ * 区切り文字はデフォルトでカンマです.TSVの場合はタブを指定してください.
+ * </p>
+ *
+ * @author tatsuya.kumon
+ */
+public class CsvLineProcessor implements LineProcessor {
+	/** 囲み文字 */
+	private static final char QUOTE = '"';
+
+	/** レコードの処理 */
+	private final RecordProcessor processor;
+
+	/** 区切り文字 */
+	private final char delimiter;
+
+	/** 処理中のレコードの項目値 */
+	private List<String> fields = new ArrayList<String>();
+
+	/** 処理中の項目値 */
+	private final StringBuilder field = new StringBuilder();
+
+	/** 囲み文字の中であればtrue（次の行へ項目が続く） */
+	private boolean inQuote;
+
+	/**
+	 * コンストラクタ.
+	 * <p>
+	 * 区切り文字はカンマです.
+	 * </p>
+	 *
+	 * @param processor
+	 *            レコードの処理
+	 */
+	public CsvLineProcessor(RecordProcessor processor) {
+		this(processor, ',');
+	}
+
+	/**
+	 * コンストラクタ.
+	 *
+	 * @param processor
+	 *            レコードの処理
+	 * @param delimiter
+	 *            区切り文字
+	 */
+	public CsvLineProcessor(RecordProcessor processor, char delimiter) {
+		this.processor = processor;
+		this.delimiter = delimiter;
+	}
+
+	@Override
+	public boolean processLine(String line) throws Exception {
+		if (inQuote) {
+			// 前の行から項目が続いている
+			field.append('\n');
+		}
+		for (int i = 0; i < line.length(); i++) {
+			char c = line.charAt(i);
+			if (inQuote) {
+				if (c != QUOTE) {
+					field.append(c);
+				} else if (i + 1 < line.length() && line.charAt(i + 1) == QUOTE) {
+					// 連続したダブルクォートは1文字として扱う
+					field.append(QUOTE);
+					i++;
+				} else {
+					inQuote = false;
+				}
+			} else if (c == delimiter) {
+				fields.add(field.toString());
+				field.setLength(0);
+			} else if (c == QUOTE && field.length() == 0) {
+				inQuote = true;
+			} else {
+				field.append(c);
+			}
+		}
+		if (inQuote) {
+			// 囲み文字が閉じていないので次の行を待つ
+			return true;
+		}
+		fields.add(field.toString());
+		field.setLength(0);
+		List<String> record = fields;
+		fields = new ArrayList<String>(record.size());
+		return processor.processRecord(record);
+	}
+
+	/**
+	 * 囲み文字が閉じられず、未処理のレコードが残っているかを返す.
+	 * <p>
+	 * 全行の処理後にtrueの場合、最後のレコードは不正な形式です.
+	 * </p>
+	 *
+	 * @return 未処理のレコードが残っている場合はtrue
+	 */
+	public boolean hasPendingRecord() {
+		return inQuote;
+	}
+}
@@ -0,0 +1,19 @@
+package jp.kt.net.http;
+
+/**
+ * {@link EventStreamClient}で受信したイベントを処理するインターフェース.
+ *
+ * @author tatsuya.kumon
+ */
+public interface EventHandler {
+	/**
+	 * イベントを処理する.
+	 *
+	 * @param event
+	 *            受信したイベント
+	 * @return 受信を続ける場合はtrue、終了する場合はfalse
+	 * @throws Exception
+	 *             処理中に例外が発生した場合（受信は終了します）
+	 */
+	boolean handleEvent(ServerSentEvent event) throws Exception;
+}
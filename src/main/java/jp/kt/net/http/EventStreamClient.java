@@ -0,0 +1,408 @@
+package jp.kt.net.http;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import jp.kt.exception.KtException;
+import jp.kt.logger.ApplicationLogger;
+
+/**
+ * Server-Sent Events（SSE）もしくはロングポーリングでイベントを受信し続けるクライアント.
+ * <p>
+ * 使い方:<br>
+ * １、コンストラクタ実行<br>
+ * ２、各種設定を行う（詳細は下記参照）<br>
+ * ３、run(EventHandler)メソッドを実行（受信が終了するまで戻りません）<br>
+ * ４、別スレッドから終了させる場合はclose()メソッドを実行<br>
+ * </p>
+ * <p>
+ * <b>■Server-Sent Events</b><br>
+ * デフォルトはSSEです.1つの接続でイベントを受信しながら{@link EventHandler}へ渡します.<br>
+ * 接続が切れた場合は、最後に受信したイベントIDをLast-Event-IDヘッダに付加して再接続します.<br>
+ * <br>
+ * <b>■ロングポーリング</b><br>
+ * setLongPoll()メソッドを実行すると、レスポンス本体を1イベントとして受信し、すぐに次のリクエストを送信します.<br>
+ * レスポンス本体が空の場合は、イベントは発生しません.<br>
+ * <br>
+ * <b>■無通信タイムアウト</b><br>
+ * 指定時間（デフォルト60秒）データを受信しない場合は、接続が切れたとみなして再接続します.<br>
+ * ハートビート（コメント行）の間隔より長い時間を、setIdleTimeoutMillis(int)メソッドで指定してください.<br>
+ * <br>
+ * <b>■再接続</b><br>
+ * 再接続までの待機時間は、サーバから指定された値（retryフィールド）、もしくはsetReconnectDelayMillis(long)メソッドの値です.<br>
+ * 接続に連続して失敗した場合は、待機時間を倍にしていきます（最大60秒）.<br>
+ * 接続に連続して失敗できる回数はsetMaxReconnectTimes(int)メソッドで指定します.デフォルトは無制限です.<br>
+ * 204が返ってきた場合は、受信を終了します.<br>
+ * <br>
+ * <b>■終了</b><br>
+ * 下記のいずれかでrun(EventHandler)メソッドは終了します.<br>
+ * </p>
+ * <ul>
+ * <li>{@link EventHandler}がfalseを返した場合</li>
+ * <li>close()メソッドが実行された場合</li>
+ * <li>204が返ってきた場合</li>
+ * <li>{@link EventHandler}で例外が発生した場合（例外をthrowします）</li>
+ * <li>再接続の回数が上限を超えた場合（例外をthrowします）</li>
+ * <li>再接続しても回復しないステータスコード（4xx）が返ってきた場合（例外をthrowします）</li>
+ * </ul>
+ *
+ * @author tatsuya.kumon
+ */
+public class EventStreamClient {
+	/** ログ出力オブジェクト */
+	private final ApplicationLogger logger;
+
+	/** リクエストURL */
+	private final String url;
+
+	/** 任意でセットするリクエストヘッダ */
+	private final Map<String, String> requestHeaderMap = new LinkedHashMap<String, String>();
+
+	/** ロングポーリングの場合はtrue */
+	private boolean isLongPoll;
+
+	/**
+	 * 無通信タイムアウト（ミリ秒）.<br>
+	 * デフォルト60秒.
+	 */
+	private int idleTimeoutMillis = 60 * 1000;
+
+	/**
+	 * 再接続までの待機時間（ミリ秒）.<br>
+	 * デフォルト3秒.
+	 */
+	private long reconnectDelayMillis = 3 * 1000;
+
+	/** 連続して再接続できる回数（無制限の場合は負の値） */
+	private int maxReconnectTimes = -1;
+
+	/** 最後に受信したイベントID */
+	private volatile String lastEventId;
+
+	/** 共有するセッション */
+	private HttpSession session;
+
+	/** 実行中の通信 */
+	private volatile HttpConnection connection;
+
+	/** 実行中のイベント解析 */
+	private volatile EventStreamParser parser;
+
+	/** 終了した場合はtrue */
+	private volatile boolean closed;
+
+	/** 再接続待ちの待機用 */
+	private final Object sleepLock = new Object();
+
+	/** 再接続までの待機時間の上限（ミリ秒） */
+	private static final long MAX_RECONNECT_DELAY_MILLIS = 60 * 1000;
+
+	/** SSEのContent-Type */
+	private static final String EVENT_STREAM_TYPE = "text/event-stream";
+
+	/** SSEの文字コード */
+	private static final String EVENT_STREAM_CHARSET = "UTF-8";
+
+	/**
+	 * コンストラクタ.
+	 *
+	 * @param url
+	 *            リクエストURL
+	 * @param logger
+	 *            ApplicationLoggerオブジェクト
+	 */
+	public EventStreamClient(String url, ApplicationLogger logger) {
+		this.url = url;
+		this.logger = logger;
+	}
+
+	/**
+	 * イベントを受信する.
+	 * <p>
+	 * 受信が終了するまで戻りません.<br>
+	 * {@link EventHandler}はこのメソッドを実行したスレッドで呼び出されます.
+	 * </p>
+	 *
+	 * @param handler
+	 *            イベントの処理
+	 * @throws Exception
+	 *             {@link EventHandler}で例外が発生した場合、もしくは再接続できない場合
+	 */
+	public void run(EventHandler handler) throws Exception {
+		EventStreamParser parser = new EventStreamParser(handler, lastEventId);
+		this.parser = parser;
+		// 連続して接続に失敗した回数
+		int failures = 0;
+		while (!closed) {
+			parser.reset();
+			HttpConnection conn = createConnection(parser.getLastEventId());
+			this.connection = conn;
+			if (closed) {
+				break;
+			}
+			// 再接続する場合の原因
+			Exception cause = null;
+			// 再接続しない場合の例外
+			KtException fatal = null;
+			try {
+				HttpConnection.ResponseData resData;
+				if (isLongPoll) {
+					resData = conn.executeGetMethod();
+				} else {
+					resData = conn.executeGetMethodByLine(parser);
+				}
+				int status = resData.getStatusCode();
+				if (status == 204) {
+					// 終了の指示
+					logger.infoLog("A060", "サーバの指示により受信を終了します [url]" + url);
+					break;
+				}
+				if (resData.isOkResponse()) {
+					failures = 0;
+					if (isLongPoll) {
+						parser.dispatchBody(resData.getResponseText());
+					} else {
+						checkContentType(resData);
+					}
+					if (parser.isStopped()) {
+						break;
+					}
+					if (isLongPoll) {
+						// ロングポーリングはすぐに次のリクエストを送信する
+						continue;
+					}
+					logger.debugLog("SSE:接続が終了したため再接続します");
+				} else if (status >= 500 || status == 429) {
+					cause = new KtException("A060", "イベント受信でエラーが返されました [url]"
+							+ url + " [status]" + status);
+				} else {
+					fatal = new KtException("A060", "イベント受信でエラーが返されました [url]"
+							+ url + " [status]" + status);
+				}
+			} catch (Exception e) {
+				if (parser.getHandlerException() != null) {
+					// イベントの処理で発生した例外はそのままthrow
+					throw parser.getHandlerException();
+				}
+				if (closed || parser.isStopped()) {
+					break;
+				}
+				cause = e;
+			} finally {
+				this.connection = null;
+			}
+			if (fatal != null) {
+				throw fatal;
+			}
+			if (cause != null) {
+				failures++;
+				if (maxReconnectTimes >= 0 && failures > maxReconnectTimes) {
+					throw cause;
+				}
+				logger.warnLog("A060", "イベント受信が中断されたため再接続します [url]" + url
+						+ " [連続失敗回数]" + failures + " [原因]" + cause.toString());
+			}
+			sleep(reconnectDelay(parser, failures));
+		}
+		lastEventId = parser.getLastEventId();
+	}
+
+	/**
+	 * 通信オブジェクトを生成する.
+	 *
+	 * @param eventId
+	 *            最後に受信したイベントID（無い場合はnull）
+	 * @return HttpConnection
+	 */
+	private HttpConnection createConnection(String eventId) {
+		HttpConnection conn = new HttpConnection(url, logger);
+		for (Map.Entry<String, String> entry : requestHeaderMap.entrySet()) {
+			conn.setRequestHeader(entry.getKey(), entry.getValue());
+		}
+		if (!isLongPoll) {
+			conn.setRequestHeader("Accept", EVENT_STREAM_TYPE);
+			conn.setResponseEncode(EVENT_STREAM_CHARSET);
+		}
+		conn.setRequestHeader("Cache-Control", "no-cache");
+		if (eventId != null) {
+			conn.setRequestHeader("Last-Event-ID", eventId);
+		}
+		// 無通信タイムアウトはソケットタイムアウトで検知する
+		conn.setReadTimeoutMillis(idleTimeoutMillis);
+		if (session != null) {
+			conn.setSession(session);
+		}
+		return conn;
+	}
+
+	/**
+	 * Content-Typeがtext/event-streamであるかチェックする.
+	 *
+	 * @param resData
+	 *            レスポンス
+	 */
+	private void checkContentType(HttpConnection.ResponseData resData) {
+		String contentType = resData.getHeader("Content-Type");
+		if (contentType != null
+				&& !contentType.toLowerCase().startsWith(EVENT_STREAM_TYPE)) {
+			logger.warnLog("A060", "Content-Typeがtext/event-streamではありません [url]"
+					+ url + " [Content-Type]" + contentType);
+		}
+	}
+
+	/**
+	 * 再接続までの待機時間を算出する.
+	 *
+	 * @param parser
+	 *            イベント解析
+	 * @param failures
+	 *            連続して接続に失敗した回数
+	 * @return 待機時間（ミリ秒）
+	 */
+	private long reconnectDelay(EventStreamParser parser, int failures) {
+		long delay = (parser.getRetryMillis() >= 0) ? parser.getRetryMillis()
+				: reconnectDelayMillis;
+		for (int i = 1; i < failures && delay < MAX_RECONNECT_DELAY_MILLIS; i++) {
+			delay *= 2;
+		}
+		return Math.min(delay, MAX_RECONNECT_DELAY_MILLIS);
+	}
+
+	/**
+	 * 再接続まで待機する.
+	 * <p>
+	 * close()メソッドが実行された場合は待機を終了します.
+	 * </p>
+	 *
+	 * @param millis
+	 *            待機時間（ミリ秒）
+	 * @throws InterruptedException
+	 */
+	private void sleep(long millis) throws InterruptedException {
+		if (millis <= 0) {
+			return;
+		}
+		long end = System.currentTimeMillis() + millis;
+		synchronized (sleepLock) {
+			long remaining;
+			while (!closed
+					&& (remaining = end - System.currentTimeMillis()) > 0) {
+				sleepLock.wait(remaining);
+			}
+		}
+	}
+
+	/**
+	 * 受信を終了する.
+	 * <p>
+	 * 別スレッドから実行し、run(EventHandler)メソッドを終了させます.
+	 * </p>
+	 */
+	public void close() {
+		closed = true;
+		EventStreamParser p = parser;
+		if (p != null) {
+			p.stop();
+		}
+		HttpConnection conn = connection;
+		if (conn != null) {
+			conn.abort();
+		}
+		synchronized (sleepLock) {
+			sleepLock.notifyAll();
+		}
+	}
+
+	/**
+	 * ロングポーリングで受信する.
+	 */
+	public void setLongPoll() {
+		this.isLongPoll = true;
+	}
+
+	/**
+	 * 無通信タイムアウトを設定する.
+	 * <p>
+	 * デフォルトは60秒.<br>
+	 * ロングポーリングの場合は、サーバがレスポンスを保留する時間より長く指定してください.
+	 * </p>
+	 *
+	 * @param idleTimeoutMillis
+	 *            無通信タイムアウト（ミリ秒）
+	 */
+	public void setIdleTimeoutMillis(int idleTimeoutMillis) {
+		this.idleTimeoutMillis = idleTimeoutMillis;
+	}
+
+	/**
+	 * 再接続までの待機時間を設定する.
+	 * <p>
+	 * デフォルトは3秒.<br>
+	 * サーバからretryフィールドで指定された場合は、そちらが優先されます.
+	 * </p>
+	 *
+	 * @param reconnectDelayMillis
+	 *            待機時間（ミリ秒）
+	 */
+	public void setReconnectDelayMillis(long reconnectDelayMillis) {
+		this.reconnectDelayMillis = reconnectDelayMillis;
+	}
+
+	/**
+	 * 連続して再接続できる回数を設定する.
+	 * <p>
+	 * デフォルトは無制限.
+	 * </p>
+	 *
+	 * @param maxReconnectTimes
+	 *            回数
+	 */
+	public void setMaxReconnectTimes(int maxReconnectTimes) {
+		this.maxReconnectTimes = maxReconnectTimes;
+	}
+
+	/**
+	 * 最後に受信したイベントIDを設定する.
+	 * <p>
+	 * 前回の受信を引き継ぐ場合に、最初の接続からLast-Event-IDヘッダを付加します.
+	 * </p>
+	 *
+	 * @param lastEventId
+	 *            イベントID
+	 */
+	public void setLastEventId(String lastEventId) {
+		this.lastEventId = lastEventId;
+	}
+
+	/**
+	 * 最後に受信したイベントIDを取得する.
+	 *
+	 * @return イベントID（無い場合はnull）
+	 */
+	public String getLastEventId() {
+		EventStreamParser p = parser;
+		return (p == null) ? lastEventId : p.getLastEventId();
+	}
+
+	/**
+	 * 共有するセッションを設定する.
+	 *
+	 * @param session
+	 *            {@link HttpSession}オブジェクト
+	 */
+	public void setSession(HttpSession session) {
+		this.session = session;
+	}
+
+	/**
+	 * リクエストヘッダを設定する.
+	 *
+	 * @param name
+	 *            ヘッダ名
+	 * @param value
+	 *            値
+	 */
+	public void setRequestHeader(String name, String value) {
+		requestHeaderMap.put(name, value);
+	}
+}
@@ -0,0 +1,209 @@
+package jp.kt.net.http;
+
+/**
+ * Server-Sent Events形式（text/event-stream）のレスポンス本体を解析し、イベントを{@link EventHandler}へ渡す.
+ * <p>
+ * 1行ずつ受け取り、空行を受け取った時点でイベントを確定します.<br>
+ * コロンで始まる行（コメント）はハートビートとして読み捨てます.<br>
+ * {@link EventStreamClient}クラスからのみ呼び出される.
+ * </p>
+ *
+ * @author tatsuya.kumon
+ */
+class EventStreamParser implements LineProcessor {
+	/** デフォルトのイベント種別 */
+	private static final String DEFAULT_EVENT = "message";
+
+	/** イベントの処理 */
+	private final EventHandler handler;
+
+	/** 受信中のデータ */
+	private final StringBuilder data = new StringBuilder();
+
+	/** 受信中のイベントにデータがあればtrue */
+	private boolean hasData;
+
+	/** 受信中のイベント種別 */
+	private String eventType;
+
+	/** 最後に受信したイベントID */
+	private String lastEventId;
+
+	/** サーバから指定された再接続までの待機時間（ミリ秒、指定が無い場合は負の値） */
+	private long retryMillis = -1;
+
+	/** 受信を終了する場合はtrue */
+	private volatile boolean stopped;
+
+	/** イベントの処理で発生した例外 */
+	private Exception handlerException;
+
+	/**
+	 * コンストラクタ.
+	 *
+	 * @param handler
+	 *            イベントの処理
+	 * @param lastEventId
+	 *            最後に受信したイベントID（無い場合はnull）
+	 */
+	EventStreamParser(EventHandler handler, String lastEventId) {
+		this.handler = handler;
+		this.lastEventId = lastEventId;
+	}
+
+	@Override
+	public boolean processLine(String line) throws Exception {
+		if (stopped) {
+			return false;
+		}
+		if (line.length() == 0) {
+			// 空行でイベント確定
+			return dispatch();
+		}
+		if (line.charAt(0) == ':') {
+			// コメント（ハートビート）
+			return true;
+		}
+		String field;
+		String value;
+		int colon = line.indexOf(':');
+		if (colon < 0) {
+			field = line;
+			value = "";
+		} else {
+			field = line.substring(0, colon);
+			value = line.substring(colon + 1);
+			if (value.startsWith(" ")) {
+				value = value.substring(1);
+			}
+		}
+		if ("data".equals(field)) {
+			if (hasData) {
+				data.append('\n');
+			}
+			data.append(value);
+			hasData = true;
+		} else if ("event".equals(field)) {
+			eventType = value;
+		} else if ("id".equals(field)) {
+			if (value.indexOf('\0') < 0) {
+				lastEventId = value;
+			}
+		} else if ("retry".equals(field)) {
+			if (value.length() > 0 && value.matches("[0-9]+")) {
+				retryMillis = Long.parseLong(value);
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * 受信中のイベントを確定し、{@link EventHandler}へ渡す.
+	 *
+	 * @return 受信を続ける場合はtrue
+	 * @throws Exception
+	 */
+	private boolean dispatch() throws Exception {
+		if (!hasData) {
+			// データの無いイベントは破棄する
+			eventType = null;
+			return true;
+		}
+		ServerSentEvent event = new ServerSentEvent(lastEventId,
+				(eventType == null || eventType.length() == 0) ? DEFAULT_EVENT
+						: eventType, data.toString());
+		reset();
+		return handle(event);
+	}
+
+	/**
+	 * ロングポーリングのレスポンス本体を1イベントとして{@link EventHandler}へ渡す.
+	 *
+	 * @param body
+	 *            レスポンス本体
+	 * @return 受信を続ける場合はtrue
+	 * @throws Exception
+	 */
+	boolean dispatchBody(String body) throws Exception {
+		if (body.length() == 0) {
+			return true;
+		}
+		return handle(new ServerSentEvent(lastEventId, DEFAULT_EVENT, body));
+	}
+
+	/**
+	 * {@link EventHandler}を呼び出す.
+	 *
+	 * @param event
+	 *            イベント
+	 * @return 受信を続ける場合はtrue
+	 * @throws Exception
+	 */
+	private boolean handle(ServerSentEvent event) throws Exception {
+		try {
+			if (!handler.handleEvent(event)) {
+				stopped = true;
+			}
+		} catch (Exception e) {
+			handlerException = e;
+			stopped = true;
+			throw e;
+		}
+		return !stopped;
+	}
+
+	/**
+	 * 受信中のイベントを破棄する.
+	 * <p>
+	 * 接続が切れた場合、確定していないイベントは破棄します.
+	 * </p>
+	 */
+	void reset() {
+		data.setLength(0);
+		hasData = false;
+		eventType = null;
+	}
+
+	/**
+	 * 受信を終了する.
+	 */
+	void stop() {
+		stopped = true;
+	}
+
+	/**
+	 * 受信を終了するかを返す.
+	 *
+	 * @return 終了する場合はtrue
+	 */
+	boolean isStopped() {
+		return stopped;
+	}
+
+	/**
+	 * イベントの処理で発生した例外を返す.
+	 *
+	 * @return 例外（発生していない場合はnull）
+	 */
+	Exception getHandlerException() {
+		return handlerException;
+	}
+
+	/**
+	 * 最後に受信したイベントIDを返す.
+	 *
+	 * @return イベントID（無い場合はnull）
+	 */
+	String getLastEventId() {
+		return lastEventId;
+	}
+
+	/**
+	 * サーバから指定された再接続までの待機時間を返す.
+	 *
+	 * @return 待機時間（ミリ秒、指定が無い場合は負の値）
+	 */
+	long getRetryMillis() {
+		return retryMillis;
+	}
+}
@@ -0,0 +1,133 @@
+package jp.kt.net.http;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import jp.kt.exception.KtException;
+
+/**
+ * 接続先ホストごとの Expect: 100-Continue 対応状況を保持するクラス.
+ * <p>
+ * {@link HttpConnection}は、100-Continue の応答が返ってきたホストを「対応」、<br>
+ * 417エラーを返したホストや100-Continue の応答を返さなかったホストを「未対応」として記録し、<br>
+ * 未対応のホストに対しては Expect ヘッダを付加せずに送信します.<br>
+ * 記録は有効期間（デフォルト1時間）を過ぎると破棄され、再度判定されます.<br>
+ * 記録するホスト数には上限があり、超えた場合は最も古く参照されたホストから破棄します.
+ * </p>
+ *
+ * @author tatsuya.kumon
+ */
+public class ExpectContinueCache {
+	/** シングルトンインスタンス */
+	private static final ExpectContinueCache instance = new ExpectContinueCache();
+
+	/** 記録するホスト数の上限 */
+	private static final int MAX_HOSTS = 1024;
+
+	/** 記録の有効期間（ミリ秒） */
+	private volatile long ttlMillis = 60 * 60 * 1000L;
+
+	/** ホストごとの記録（アクセス順） */
+	private final Map<String, HostEntry> hostMap = new LinkedHashMap<String, HostEntry>(
+			16, 0.75f, true) {
+		@Override
+		protected boolean removeEldestEntry(Map.Entry<String, HostEntry> eldest) {
+			return size() > MAX_HOSTS;
+		}
+	};
+
+	/**
+	 * コンストラクタ.
+	 */
+	private ExpectContinueCache() {
+	}
+
+	/**
+	 * インスタンスを取得する.
+	 *
+	 * @return {@link ExpectContinueCache}オブジェクト
+	 */
+	public static ExpectContinueCache getInstance() {
+		return instance;
+	}
+
+	/**
+	 * 記録の有効期間を設定する.
+	 * <p>
+	 * デフォルトは1時間.
+	 * </p>
+	 *
+	 * @param ttlMillis
+	 *            有効期間（ミリ秒）
+	 */
+	public void setTtlMillis(long ttlMillis) {
+		if (ttlMillis <= 0) {
+			throw new KtException("B004", "有効期間の設定が不正な値です。[ttlMillis:"
+					+ ttlMillis + "]");
+		}
+		this.ttlMillis = ttlMillis;
+	}
+
+	/**
+	 * 記録を全て破棄する.
+	 */
+	public synchronized void clear() {
+		hostMap.clear();
+	}
+
+	/**
+	 * 対応状況を取得する.
+	 *
+	 * @param host
+	 *            ホスト（スキーム、ホスト名、ポート番号）
+	 * @return 対応していればTRUE、未対応であればFALSE、記録が無い場合はnull
+	 */
+	synchronized Boolean getSupported(String host) {
+		HostEntry entry = hostMap.get(host);
+		if (entry == null) {
+			return null;
+		}
+		if (System.currentTimeMillis() >= entry.expireTime) {
+			hostMap.remove(host);
+			return null;
+		}
+		return Boolean.valueOf(entry.supported);
+	}
+
+	/**
+	 * 対応状況を記録する.
+	 *
+	 * @param host
+	 *            ホスト（スキーム、ホスト名、ポート番号）
+	 * @param supported
+	 *            対応していればtrue
+	 */
+	synchronized void setSupported(String host, boolean supported) {
+		hostMap.put(host, new HostEntry(supported, System.currentTimeMillis()
+				+ ttlMillis));
+	}
+
+	/**
+	 * ホストごとの記録.
+	 */
+	private static class HostEntry {
+		/** 対応していればtrue */
+		private final boolean supported;
+
+		/** 有効期限（エポックミリ秒） */
+		private final long expireTime;
+
+		/**
+		 * コンストラクタ.
+		 *
+		 * @param supported
+		 *            対応していればtrue
+		 * @param expireTime
+		 *            有効期限（エポックミリ秒）
+		 */
+		private HostEntry(boolean supported, long expireTime) {
+			this.supported = supported;
+			this.expireTime = expireTime;
+		}
+	}
+}
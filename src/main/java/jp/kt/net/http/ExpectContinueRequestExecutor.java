@@ -0,0 +1,169 @@
+package jp.kt.net.http;
+
+import java.io.IOException;
+
+import org.apache.http.HttpClientConnection;
+import org.apache.http.HttpConnectionMetrics;
+import org.apache.http.HttpEntityEnclosingRequest;
+import org.apache.http.HttpException;
+import org.apache.http.HttpRequest;
+import org.apache.http.HttpResponse;
+import org.apache.http.HttpStatus;
+import org.apache.http.protocol.ExecutionContext;
+import org.apache.http.protocol.HttpContext;
+import org.apache.http.protocol.HttpRequestExecutor;
+
+/**
+ * Expect: 100-Continue に対するサーバの応答を判定するHttpRequestExecutor.
+ * <p>
+ * Expect ヘッダを付加したリクエストについて、本体の送信前にサーバから返ってきた応答を確認し、<br>
+ * 判定結果を{@link #SUPPORTED_ATTRIBUTE}としてHttpContextにセットします.<br>
+ * {@link HttpConnection}クラスからのみ呼び出される.
+ * </p>
+ *
+ * @author tatsuya.kumon
+ */
+class ExpectContinueRequestExecutor extends HttpRequestExecutor {
+	/** 判定結果をセットするHttpContextの属性名（値はBoolean） */
+	static final String SUPPORTED_ATTRIBUTE = "jp.kt.net.http.expect-continue-supported";
+
+	@Override
+	protected HttpResponse doSendRequest(HttpRequest request,
+			HttpClientConnection conn, HttpContext context) throws IOException,
+			HttpException {
+		if (!(request instanceof HttpEntityEnclosingRequest)
+				|| !((HttpEntityEnclosingRequest) request).expectContinue()) {
+			return super.doSendRequest(request, conn, context);
+		}
+		try {
+			return super.doSendRequest(request, new ObservingConnection(conn,
+					context), context);
+		} finally {
+			// 監視用のコネクションがセットされるので、実際のコネクションに戻す
+			context.setAttribute(ExecutionContext.HTTP_CONNECTION, conn);
+		}
+	}
+
+	/**
+	 * 本体送信前の応答を監視するコネクション.
+	 */
+	private static class ObservingConnection implements HttpClientConnection {
+		/** 実際のコネクション */
+		private final HttpClientConnection conn;
+
+		/** 判定結果をセットするHttpContext */
+		private final HttpContext context;
+
+		/** 判定済みフラグ */
+		private boolean judged;
+
+		/**
+		 * コンストラクタ.
+		 *
+		 * @param conn
+		 *            実際のコネクション
+		 * @param context
+		 *            判定結果をセットするHttpContext
+		 */
+		private ObservingConnection(HttpClientConnection conn,
+				HttpContext context) {
+			this.conn = conn;
+			this.context = context;
+		}
+
+		/**
+		 * 判定結果をセットする.
+		 * <p>
+		 * 最初の判定のみ有効です.
+		 * </p>
+		 *
+		 * @param supported
+		 *            対応していればtrue
+		 */
+		private void judge(boolean supported) {
+			if (!judged) {
+				judged = true;
+				context.setAttribute(SUPPORTED_ATTRIBUTE,
+						Boolean.valueOf(supported));
+			}
+		}
+
+		@Override
+		public boolean isResponseAvailable(int timeout) throws IOException {
+			boolean available = conn.isResponseAvailable(timeout);
+			if (!available) {
+				// 待機時間内に応答が無いので未対応（待機分が無駄になる）
+				judge(false);
+			}
+			return available;
+		}
+
+		@Override
+		public HttpResponse receiveResponseHeader() throws HttpException,
+				IOException {
+			HttpResponse response = conn.receiveResponseHeader();
+			int status = response.getStatusLine().getStatusCode();
+			// 417以外は、100もしくは本体送信前に最終応答を返しているので対応している
+			judge(status != HttpStatus.SC_EXPECTATION_FAILED);
+			return response;
+		}
+
+		@Override
+		public void sendRequestHeader(HttpRequest request)
+				throws HttpException, IOException {
+			conn.sendRequestHeader(request);
+		}
+
+		@Override
+		public void sendRequestEntity(HttpEntityEnclosingRequest request)
+				throws HttpException, IOException {
+			conn.sendRequestEntity(request);
+		}
+
+		@Override
+		public void receiveResponseEntity(HttpResponse response)
+				throws HttpException, IOException {
+			conn.receiveResponseEntity(response);
+		}
+
+		@Override
+		public void flush() throws IOException {
+			conn.flush();
+		}
+
+		@Override
+		public void close() throws IOException {
+			conn.close();
+		}
+
+		@Override
+		public boolean isOpen() {
+			return conn.isOpen();
+		}
+
+		@Override
+		public boolean isStale() {
+			return conn.isStale();
+		}
+
+		@Override
+		public void setSocketTimeout(int timeout) {
+			conn.setSocketTimeout(timeout);
+		}
+
+		@Override
+		public int getSocketTimeout() {
+			return conn.getSocketTimeout();
+		}
+
+		@Override
+		public void shutdown() throws IOException {
+			conn.shutdown();
+		}
+
+		@Override
+		public HttpConnectionMetrics getMetrics() {
+			return conn.getMetrics();
+		}
+	}
+}
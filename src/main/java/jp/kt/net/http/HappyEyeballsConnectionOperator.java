@@ -0,0 +1,412 @@
+package jp.kt.net.http;
+
+import java.io.IOException;
+import java.net.ConnectException;
+import java.net.Inet6Address;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.net.SocketException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+
+import org.apache.http.HttpHost;
+import org.apache.http.conn.ClientConnectionManager;
+import org.apache.http.conn.ClientConnectionOperator;
+import org.apache.http.conn.ConnectTimeoutException;
+import org.apache.http.conn.HttpHostConnectException;
+import org.apache.http.conn.OperatedClientConnection;
+import org.apache.http.conn.scheme.LayeredSocketFactory;
+import org.apache.http.conn.scheme.Scheme;
+import org.apache.http.conn.scheme.SchemeRegistry;
+import org.apache.http.conn.scheme.SocketFactory;
+import org.apache.http.impl.conn.DefaultClientConnectionOperator;
+import org.apache.http.impl.conn.SingleClientConnManager;
+import org.apache.http.impl.conn.tsccm.ThreadSafeClientConnManager;
+import org.apache.http.params.HttpConnectionParams;
+import org.apache.http.params.HttpParams;
+import org.apache.http.protocol.HttpContext;
+
+/**
+ * 複数のIPアドレスへ並行して接続を試みるClientConnectionOperator.
+ * <p>
+ * ホスト名に複数のIPアドレスがある場合、RFC 8305（Happy Eyeballs）に従い、<br>
+ * IPv6とIPv4を交互に並べたアドレスへ{@link #ATTEMPT_DELAY_PARAM}の間隔をずらして接続を開始し、<br>
+ * 最初に接続できたものを使用します（接続に失敗した場合は待たずに次のアドレスへ接続を開始します）.<br>
+ * {@link AddressPenaltyCache}に記録されているアドレスは最後に接続を試みます.<br>
+ * 接続タイムアウトは、全てのアドレスへの接続を合わせた時間に対して適用されます.<br>
+ * {@link HttpConnection}クラスからのみ呼び出される.
+ * </p>
+ *
+ * @author tatsuya.kumon
+ */
+class HappyEyeballsConnectionOperator extends DefaultClientConnectionOperator {
+	/** 次のアドレスへ接続を開始するまでの間隔（ミリ秒）を指定するパラメータ名（値はInteger） */
+	static final String ATTEMPT_DELAY_PARAM = "jp.kt.net.http.connection-attempt-delay";
+
+	/** デフォルトの接続開始間隔（ミリ秒） */
+	static final int DEFAULT_ATTEMPT_DELAY_MILLIS = 250;
+
+	/**
+	 * コンストラクタ.
+	 *
+	 * @param schemeRegistry
+	 *            SchemeRegistry
+	 */
+	HappyEyeballsConnectionOperator(SchemeRegistry schemeRegistry) {
+		super(schemeRegistry);
+	}
+
+	/**
+	 * 本クラスを使用するSingleClientConnManagerを生成する.
+	 *
+	 * @param params
+	 *            パラメータ
+	 * @param schemeRegistry
+	 *            SchemeRegistry
+	 * @return ClientConnectionManager
+	 */
+	static ClientConnectionManager createSingleConnManager(HttpParams params,
+			SchemeRegistry schemeRegistry) {
+		return new SingleClientConnManager(params, schemeRegistry) {
+			@Override
+			protected ClientConnectionOperator createConnectionOperator(
+					SchemeRegistry registry) {
+				return new HappyEyeballsConnectionOperator(registry);
+			}
+		};
+	}
+
+	/**
+	 * 本クラスを使用するThreadSafeClientConnManagerを生成する.
+	 *
+	 * @param params
+	 *            パラメータ
+	 * @param schemeRegistry
+	 *            SchemeRegistry
+	 * @return ClientConnectionManager
+	 */
+	static ClientConnectionManager createThreadSafeConnManager(
+			HttpParams params, SchemeRegistry schemeRegistry) {
+		return new ThreadSafeClientConnManager(params, schemeRegistry) {
+			@Override
+			protected ClientConnectionOperator createConnectionOperator(
+					SchemeRegistry registry) {
+				return new HappyEyeballsConnectionOperator(registry);
+			}
+		};
+	}
+
+	@Override
+	public void openConnection(OperatedClientConnection conn, HttpHost target,
+			InetAddress local, HttpContext context, HttpParams params)
+			throws IOException {
+		InetAddress[] addresses = InetAddress.getAllByName(target
+				.getHostName());
+		if (addresses.length <= 1) {
+			// 競争する相手がいないので通常の接続を行う
+			super.openConnection(conn, target, local, context, params);
+			return;
+		}
+		Scheme scheme = schemeRegistry.getScheme(target.getSchemeName());
+		SocketFactory factory = scheme.getSocketFactory();
+		int port = scheme.resolvePort(target.getPort());
+		// 接続中のリクエスト中断でcloseされるソケット
+		AbortableSocket abortSocket = new AbortableSocket();
+		conn.opening(abortSocket, target);
+		Socket sock = race(sortAddresses(addresses), port, local, params,
+				abortSocket, target);
+		try {
+			conn.opening(sock, target);
+			sock.setSoTimeout(HttpConnectionParams.getSoTimeout(params));
+			if (factory instanceof LayeredSocketFactory) {
+				LayeredSocketFactory layeredFactory = (LayeredSocketFactory) factory;
+				Socket layeredSock = layeredFactory.createSocket(sock,
+						target.getHostName(), port, true);
+				if (layeredSock != sock) {
+					conn.opening(layeredSock, target);
+				}
+				prepareSocket(layeredSock, context, params);
+				conn.openCompleted(layeredFactory.isSecure(layeredSock), params);
+			} else {
+				prepareSocket(sock, context, params);
+				conn.openCompleted(false, params);
+			}
+		} catch (IOException e) {
+			sock.close();
+			throw e;
+		}
+	}
+
+	/**
+	 * 接続を試みる順にアドレスを並べる.
+	 * <p>
+	 * 先頭のアドレス（名前解決で優先されたもの）のアドレスファミリから、IPv6とIPv4を交互に並べます.<br>
+	 * {@link AddressPenaltyCache}に記録されているアドレスは、順番を保ったまま最後に移動します.
+	 * </p>
+	 *
+	 * @param addresses
+	 *            名前解決したアドレス
+	 * @return 並べ替えたアドレスのリスト
+	 */
+	static List<InetAddress> sortAddresses(InetAddress[] addresses) {
+		List<InetAddress> preferred = new ArrayList<InetAddress>();
+		List<InetAddress> other = new ArrayList<InetAddress>();
+		boolean preferV6 = addresses[0] instanceof Inet6Address;
+		for (InetAddress address : addresses) {
+			if ((address instanceof Inet6Address) == preferV6) {
+				preferred.add(address);
+			} else {
+				other.add(address);
+			}
+		}
+		List<InetAddress> interleaved = new ArrayList<InetAddress>(
+				addresses.length);
+		for (int i = 0; i < Math.max(preferred.size(), other.size()); i++) {
+			if (i < preferred.size()) {
+				interleaved.add(preferred.get(i));
+			}
+			if (i < other.size()) {
+				interleaved.add(other.get(i));
+			}
+		}
+		AddressPenaltyCache penaltyCache = AddressPenaltyCache.getInstance();
+		List<InetAddress> sorted = new ArrayList<InetAddress>(
+				addresses.length);
+		List<InetAddress> penalized = new ArrayList<InetAddress>();
+		for (InetAddress address : interleaved) {
+			if (penaltyCache.isPenalized(address)) {
+				penalized.add(address);
+			} else {
+				sorted.add(address);
+			}
+		}
+		sorted.addAll(penalized);
+		return sorted;
+	}
+
+	/**
+	 * アドレスへ順に接続を開始し、最初に接続できたソケットを返す.
+	 *
+	 * @param addresses
+	 *            接続を試みる順に並べたアドレス
+	 * @param port
+	 *            ポート番号
+	 * @param local
+	 *            ローカルアドレス（指定しない場合はnull）
+	 * @param params
+	 *            パラメータ
+	 * @param abortSocket
+	 *            リクエスト中断でcloseされるソケット
+	 * @param target
+	 *            接続先ホスト
+	 * @return 接続済みのソケット（ブロッキングモード）
+	 * @throws IOException
+	 *             全てのアドレスへの接続に失敗した場合
+	 */
+	Socket race(List<InetAddress> addresses, int port, InetAddress local,
+			HttpParams params, AbortableSocket abortSocket, HttpHost target)
+			throws IOException {
+		int attemptDelay = params.getIntParameter(ATTEMPT_DELAY_PARAM,
+				DEFAULT_ATTEMPT_DELAY_MILLIS);
+		int connectTimeout = HttpConnectionParams.getConnectionTimeout(params);
+		long now = System.currentTimeMillis();
+		long deadline = connectTimeout > 0 ? now + connectTimeout : 0;
+		long nextStartTime = now;
+		AddressPenaltyCache penaltyCache = AddressPenaltyCache.getInstance();
+		List<Attempt> attemptList = new ArrayList<Attempt>();
+		Attempt winner = null;
+		IOException lastException = null;
+		Selector selector = Selector.open();
+		try {
+			abortSocket.setSelector(selector);
+			int next = 0;
+			int pending = 0;
+			while (winner == null) {
+				if (abortSocket.isClosed()) {
+					throw new SocketException("Socket closed");
+				}
+				now = System.currentTimeMillis();
+				if (deadline > 0 && now >= deadline) {
+					throw new ConnectTimeoutException("Connect to " + target
+							+ " timed out");
+				}
+				if (next < addresses.size()
+						&& (pending == 0 || now >= nextStartTime)) {
+					// 次のアドレスへ接続を開始する
+					Attempt attempt = new Attempt(addresses.get(next++));
+					attemptList.add(attempt);
+					nextStartTime = now + attemptDelay;
+					try {
+						if (attempt.start(selector, port, local)) {
+							winner = attempt;
+						} else {
+							pending++;
+						}
+					} catch (IOException e) {
+						attempt.close();
+						penaltyCache.penalize(attempt.address);
+						lastException = e;
+					}
+					continue;
+				}
+				if (pending == 0) {
+					// 全てのアドレスへの接続に失敗した
+					ConnectException ce;
+					if (lastException instanceof ConnectException) {
+						ce = (ConnectException) lastException;
+					} else {
+						ce = new ConnectException(lastException == null ? null
+								: lastException.getMessage());
+						ce.initCause(lastException);
+					}
+					throw new HttpHostConnectException(target, ce);
+				}
+				long waitMillis = 0;
+				if (next < addresses.size()) {
+					waitMillis = nextStartTime - now;
+				}
+				if (deadline > 0
+						&& (waitMillis == 0 || deadline - now < waitMillis)) {
+					waitMillis = deadline - now;
+				}
+				selector.select(waitMillis);
+				Iterator<SelectionKey> it = selector.selectedKeys().iterator();
+				while (it.hasNext() && winner == null) {
+					SelectionKey key = it.next();
+					it.remove();
+					Attempt attempt = (Attempt) key.attachment();
+					try {
+						if (attempt.channel.finishConnect()) {
+							key.cancel();
+							pending--;
+							winner = attempt;
+						}
+					} catch (IOException e) {
+						pending--;
+						attempt.close();
+						penaltyCache.penalize(attempt.address);
+						lastException = e;
+					}
+				}
+			}
+		} finally {
+			abortSocket.setSelector(null);
+			for (Attempt attempt : attemptList) {
+				if (attempt != winner) {
+					attempt.close();
+				}
+			}
+			selector.close();
+		}
+		// 後から開始した接続に負けたアドレスは、次回以降後回しにする
+		for (Attempt attempt : attemptList) {
+			if (attempt == winner) {
+				break;
+			}
+			penaltyCache.penalize(attempt.address);
+		}
+		penaltyCache.forgive(winner.address);
+		try {
+			winner.channel.configureBlocking(true);
+		} catch (IOException e) {
+			winner.close();
+			throw e;
+		}
+		return winner.channel.socket();
+	}
+
+	/**
+	 * 1つのアドレスへの接続.
+	 */
+	private static class Attempt {
+		/** 接続先アドレス */
+		private final InetAddress address;
+
+		/** チャネル */
+		private SocketChannel channel;
+
+		/**
+		 * コンストラクタ.
+		 *
+		 * @param address
+		 *            接続先アドレス
+		 */
+		private Attempt(InetAddress address) {
+			this.address = address;
+		}
+
+		/**
+		 * 接続を開始する.
+		 *
+		 * @param selector
+		 *            接続完了を待つSelector
+		 * @param port
+		 *            ポート番号
+		 * @param local
+		 *            ローカルアドレス（指定しない場合はnull）
+		 * @return 即座に接続できた場合はtrue
+		 * @throws IOException
+		 *             接続の開始に失敗した場合
+		 */
+		private boolean start(Selector selector, int port, InetAddress local)
+				throws IOException {
+			channel = SocketChannel.open();
+			channel.configureBlocking(false);
+			if (local != null) {
+				channel.socket().bind(new InetSocketAddress(local, 0));
+			}
+			if (channel.connect(new InetSocketAddress(address, port))) {
+				return true;
+			}
+			channel.register(selector, SelectionKey.OP_CONNECT, this);
+			return false;
+		}
+
+		/**
+		 * 接続を閉じる.
+		 */
+		private void close() {
+			if (channel != null) {
+				try {
+					channel.close();
+				} catch (IOException e) {
+					// 無視する
+				}
+			}
+		}
+	}
+
+	/**
+	 * 接続中にリクエストが中断されたことを検知するソケット.
+	 * <p>
+	 * 接続中のコネクションにはこのソケットをセットし、中断によりcloseされた場合はSelectorの待機を解除します.
+	 * </p>
+	 */
+	static class AbortableSocket extends Socket {
+		/** 待機中のSelector */
+		private Selector selector;
+
+		/**
+		 * 待機中のSelectorをセットする.
+		 *
+		 * @param selector
+		 *            Selector（待機を終える場合はnull）
+		 */
+		synchronized void setSelector(Selector selector) {
+			this.selector = selector;
+		}
+
+		@Override
+		public synchronized void close() throws IOException {
+			super.close();
+			if (selector != null) {
+				selector.wakeup();
+			}
+		}
+	}
+}
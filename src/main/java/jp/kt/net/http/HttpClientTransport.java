@@ -0,0 +1,366 @@
+package jp.kt.net.http;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+
+import jp.kt.exception.KtException;
+import jp.kt.net.io.BufferPool;
+import jp.kt.tool.Validator;
+
+import org.apache.http.Header;
+import org.apache.http.HttpEntity;
+import org.apache.http.HttpHost;
+import org.apache.http.HttpResponse;
+import org.apache.http.auth.AuthScope;
+import org.apache.http.auth.Credentials;
+import org.apache.http.auth.UsernamePasswordCredentials;
+import org.apache.http.client.methods.HttpDelete;
+import org.apache.http.client.methods.HttpEntityEnclosingRequestBase;
+import org.apache.http.client.methods.HttpGet;
+import org.apache.http.client.methods.HttpHead;
+import org.apache.http.client.methods.HttpOptions;
+import org.apache.http.client.methods.HttpPost;
+import org.apache.http.client.methods.HttpPut;
+import org.apache.http.client.methods.HttpRequestBase;
+import org.apache.http.client.methods.HttpTrace;
+import org.apache.http.client.params.AllClientPNames;
+import org.apache.http.conn.ConnectionReleaseTrigger;
+import org.apache.http.entity.ByteArrayEntity;
+import org.apache.http.impl.client.DefaultHttpClient;
+import org.apache.http.protocol.BasicHttpContext;
+import org.apache.http.protocol.HttpContext;
+
+/**
+ * Apache HttpClientで通信を行う{@link HttpTransport}.
+ * <p>
+ * {@link HttpConnection}のデフォルトの通信方式です.<br>
+ * {@link HttpSession}による接続とCookieの共有、Expect: 100-Continue の判定に対応しています.<br>
+ * セッションを使用しない場合は通信ごとに接続を生成し、レスポンスの解放時に閉じます.
+ * </p>
+ *
+ * @author tatsuya.kumon
+ */
+public class HttpClientTransport implements HttpTransport {
+	/** シングルトンインスタンス */
+	private static final HttpClientTransport instance = new HttpClientTransport();
+
+	/** 接続を再利用するために読み捨てるレスポンス本体の上限バイト数 */
+	private static final int MAX_DRAIN_BYTES = 64 * 1024;
+
+	/**
+	 * コンストラクタ.
+	 */
+	private HttpClientTransport() {
+	}
+
+	/**
+	 * インスタンスを取得する.
+	 *
+	 * @return {@link HttpClientTransport}オブジェクト
+	 */
+	public static HttpClientTransport getInstance() {
+		return instance;
+	}
+
+	@Override
+	public TransportResponse execute(TransportRequest request)
+			throws IOException {
+		final HttpRequestBase requestBase = createRequestBase(request);
+		// 各種設定情報を元にHttpClientを生成する
+		DefaultHttpClient httpClient = createHttpClient(request);
+		boolean shutdown = (request.getSession() == null);
+		HttpContext context = new BasicHttpContext();
+		boolean success = false;
+		try {
+			request.setAbortHandler(new Runnable() {
+				@Override
+				public void run() {
+					requestBase.abort();
+				}
+			});
+			HttpResponse response = httpClient.execute(requestBase, context);
+			success = true;
+			return new HttpClientResponse(httpClient, shutdown, response,
+					context);
+		} finally {
+			if (!success && shutdown) {
+				// 接続を解放
+				httpClient.getConnectionManager().shutdown();
+			}
+		}
+	}
+
+	/**
+	 * 設定情報を元にHttpClientオブジェクトを生成する.
+	 *
+	 * @param request
+	 *            リクエスト
+	 * @return DefaultHttpClientオブジェクト
+	 */
+	private static DefaultHttpClient createHttpClient(TransportRequest request) {
+		// HttpClient生成
+		DefaultHttpClient httpClient;
+		HttpSession session = request.getSession();
+		if (session != null) {
+			// セッションを使用する場合は、接続とCookieを共有する
+			httpClient = new KtHttpClient(session.getConnectionManager());
+			httpClient.setCookieStore(session.getCookieStore());
+		} else if (request.isSslVerify()) {
+			// SSL証明書チェックを行う場合（不正証明書の場合はExceptionが発生する）
+			httpClient = new KtHttpClient();
+		} else {
+			// SSL証明書チェックを行わない場合
+			httpClient = new NoneSSLVerifierHttpClient();
+		}
+		// タイムアウト設定
+		httpClient.getParams().setIntParameter(
+				AllClientPNames.CONNECTION_TIMEOUT,
+				request.getConnectTimeoutMillis());
+		httpClient.getParams().setIntParameter(AllClientPNames.SO_TIMEOUT,
+				request.getReadTimeoutMillis());
+		httpClient.getParams().setLongParameter(AllClientPNames.TIMEOUT,
+				request.getTimeoutMillis());
+		httpClient.getParams().setIntParameter(
+				HappyEyeballsConnectionOperator.ATTEMPT_DELAY_PARAM,
+				request.getConnectionAttemptDelayMillis());
+		// ユーザエージェント設定
+		if (!Validator.isEmpty(request.getUserAgent())) {
+			httpClient.getParams().setParameter(AllClientPNames.USER_AGENT,
+					request.getUserAgent());
+		}
+		// プロキシ設定
+		if (!Validator.isEmpty(request.getProxyAddress())
+				&& request.getProxyPort() > 0) {
+			HttpHost proxy = new HttpHost(request.getProxyAddress(),
+					request.getProxyPort());
+			httpClient.getParams().setParameter(AllClientPNames.DEFAULT_PROXY,
+					proxy);
+		}
+		// BASIC認証設定
+		if (!Validator.isEmpty(request.getBasicAuthId())
+				&& !Validator.isEmpty(request.getBasicAuthPassword())) {
+			// 認証情報をセット（スコープはANY）
+			Credentials credentials = new UsernamePasswordCredentials(
+					request.getBasicAuthId(), request.getBasicAuthPassword());
+			httpClient.getCredentialsProvider().setCredentials(AuthScope.ANY,
+					credentials);
+		}
+		// リダイレクトは行わない（追従する設定の場合はHttpConnectionで処理する）
+		httpClient.getParams().setParameter(AllClientPNames.HANDLE_REDIRECTS,
+				false);
+		// リクエストヘッダに「Expect: 100-Continue」を付加するかしないかの設定
+		httpClient.getParams().setParameter(
+				AllClientPNames.USE_EXPECT_CONTINUE, request.isExpectContinue());
+		return httpClient;
+	}
+
+	/**
+	 * リクエストを元にHttpRequestBaseを生成する.
+	 * <p>
+	 * HttpClientが対応していないメソッドや、本体を送信できないメソッドで本体がある場合は{@link KtException}がthrowされます.
+	 * </p>
+	 *
+	 * @param request
+	 *            リクエスト
+	 * @return メソッドに対応するHttpRequestBaseオブジェクト
+	 */
+	private static HttpRequestBase createRequestBase(TransportRequest request) {
+		String method = request.getMethod();
+		HttpRequestBase requestBase;
+		if (HttpHead.METHOD_NAME.equals(method)) {
+			requestBase = new HttpHead(request.getUri());
+		} else if (HttpGet.METHOD_NAME.equals(method)) {
+			requestBase = new HttpGet(request.getUri());
+		} else if (HttpPost.METHOD_NAME.equals(method)) {
+			requestBase = new HttpPost(request.getUri());
+		} else if (HttpPut.METHOD_NAME.equals(method)) {
+			requestBase = new HttpPut(request.getUri());
+		} else if (HttpDelete.METHOD_NAME.equals(method)) {
+			requestBase = new HttpDelete(request.getUri());
+		} else if (HttpOptions.METHOD_NAME.equals(method)) {
+			requestBase = new HttpOptions(request.getUri());
+		} else if (HttpTrace.METHOD_NAME.equals(method)) {
+			requestBase = new HttpTrace(request.getUri());
+		} else {
+			throw new KtException("B004", "対応していないリクエストメソッドです。[method:"
+					+ method + "]");
+		}
+		if (request.getBody() != null) {
+			if (!(requestBase instanceof HttpEntityEnclosingRequestBase)) {
+				throw new KtException("B004", "本体を送信できないリクエストメソッドです。[method:"
+						+ method + "]");
+			}
+			ByteArrayEntity entity = new ByteArrayEntity(request.getBody());
+			entity.setContentType(request.getContentType());
+			((HttpEntityEnclosingRequestBase) requestBase).setEntity(entity);
+		}
+		for (TransportHeader header : request.getHeaders()) {
+			requestBase.setHeader(header.getName(), header.getValue());
+		}
+		return requestBase;
+	}
+
+	/**
+	 * HttpClientのレスポンス.
+	 */
+	private static class HttpClientResponse extends TransportResponse {
+		/** HttpClient */
+		private final DefaultHttpClient httpClient;
+
+		/** 解放時に接続管理を終了する場合はtrue */
+		private final boolean shutdown;
+
+		/** レスポンス */
+		private final HttpResponse response;
+
+		/** 通信時のHttpContext */
+		private final HttpContext context;
+
+		/** 解放済みフラグ */
+		private boolean released;
+
+		/**
+		 * コンストラクタ.
+		 *
+		 * @param httpClient
+		 *            HttpClient
+		 * @param shutdown
+		 *            解放時に接続管理を終了する場合はtrue
+		 * @param response
+		 *            レスポンス
+		 * @param context
+		 *            通信時のHttpContext
+		 */
+		private HttpClientResponse(DefaultHttpClient httpClient,
+				boolean shutdown, HttpResponse response, HttpContext context) {
+			this.httpClient = httpClient;
+			this.shutdown = shutdown;
+			this.response = response;
+			this.context = context;
+		}
+
+		@Override
+		public int getStatusCode() {
+			return response.getStatusLine().getStatusCode();
+		}
+
+		@Override
+		public String getReasonPhrase() {
+			return response.getStatusLine().getReasonPhrase();
+		}
+
+		@Override
+		public List<TransportHeader> getHeaders() {
+			Header[] headers = response.getAllHeaders();
+			List<TransportHeader> headerList = new ArrayList<TransportHeader>(
+					headers.length);
+			for (Header header : headers) {
+				headerList.add(new TransportHeader(header.getName(), header
+						.getValue()));
+			}
+			return headerList;
+		}
+
+		@Override
+		public InputStream getContent() throws IOException {
+			HttpEntity entity = response.getEntity();
+			return (entity == null) ? null : entity.getContent();
+		}
+
+		@Override
+		public long getContentLength() {
+			HttpEntity entity = response.getEntity();
+			return (entity == null) ? -1 : entity.getContentLength();
+		}
+
+		@Override
+		public Boolean getExpectContinueSupported() {
+			return (Boolean) context
+					.getAttribute(ExpectContinueRequestExecutor.SUPPORTED_ATTRIBUTE);
+		}
+
+		/**
+		 * 接続を解放する.
+		 * <p>
+		 * セッションの接続は、本体の残りが{@link HttpClientTransport#MAX_DRAIN_BYTES}以下であれば読み捨てて返却します.<br>
+		 * 残りがそれより多い場合は、最後まで読み込まずに接続を破棄します.
+		 * </p>
+		 */
+		@Override
+		public void close() {
+			release(false);
+		}
+
+		@Override
+		public void abort() {
+			release(true);
+		}
+
+		/**
+		 * 接続を解放する.
+		 *
+		 * @param abort
+		 *            接続を破棄する場合はtrue
+		 */
+		private void release(boolean abort) {
+			if (released) {
+				return;
+			}
+			released = true;
+			HttpEntity entity = response.getEntity();
+			try {
+				if (!abort && !shutdown && entity != null) {
+					// セッションの接続は本体を読み捨てて返却する
+					if (drain(entity)) {
+						entity.consumeContent();
+					} else {
+						abort = true;
+					}
+				}
+				if (abort && entity instanceof ConnectionReleaseTrigger) {
+					// 本体の残りを読み込まないようにしてから接続を破棄する
+					((ConnectionReleaseTrigger) entity).abortConnection();
+				}
+			} catch (IOException e) {
+				// 返却できない接続は破棄されるので無視
+			} finally {
+				if (shutdown) {
+					// 接続を再利用しないので閉じる
+					httpClient.getConnectionManager().shutdown();
+				}
+			}
+		}
+
+		/**
+		 * 本体の残りを上限バイト数まで読み捨てる.
+		 *
+		 * @param entity
+		 *            レスポンス本体
+		 * @return 最後まで読み捨てた場合はtrue
+		 * @throws IOException
+		 */
+		private static boolean drain(HttpEntity entity) throws IOException {
+			InputStream content = entity.getContent();
+			if (content == null) {
+				return true;
+			}
+			BufferPool pool = BufferPool.getInstance();
+			byte[] buffer = pool.acquire(BufferPool.TRANSFER_BUFFER_SIZE);
+			try {
+				long drained = 0;
+				while (drained <= MAX_DRAIN_BYTES) {
+					int read = content.read(buffer);
+					if (read < 0) {
+						return true;
+					}
+					drained += read;
+				}
+				return false;
+			} finally {
+				pool.release(buffer);
+			}
+		}
+	}
+}
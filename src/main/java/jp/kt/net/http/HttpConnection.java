@@ -1,39 +1,42 @@
 package jp.kt.net.http;
 
+import java.io.BufferedReader;
 import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
 import java.io.UnsupportedEncodingException;
+import java.net.URI;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Base64;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
 
 import jp.kt.exception.KtException;
 import jp.kt.fileio.FileUtil;
 import jp.kt.logger.ApplicationLogger;
+import jp.kt.net.io.BufferPool;
+import jp.kt.net.io.TransferDigest;
 import jp.kt.prop.KtProperties;
 import jp.kt.tool.Validator;
 
-import org.apache.http.Header;
-import org.apache.http.HttpHost;
-import org.apache.http.HttpResponse;
 import org.apache.http.HttpStatus;
 import org.apache.http.NameValuePair;
-import org.apache.http.StatusLine;
-import org.apache.http.auth.AuthScope;
-import org.apache.http.auth.Credentials;
-import org.apache.http.auth.UsernamePasswordCredentials;
-import org.apache.http.client.entity.UrlEncodedFormEntity;
-import org.apache.http.client.methods.HttpGet;
-import org.apache.http.client.methods.HttpHead;
-import org.apache.http.client.methods.HttpPost;
-import org.apache.http.client.methods.HttpRequestBase;
-import org.apache.http.client.params.AllClientPNames;
 import org.apache.http.client.utils.URLEncodedUtils;
-import org.apache.http.impl.client.DefaultHttpClient;
 import org.apache.http.message.BasicNameValuePair;
-import org.apache.http.util.EntityUtils;
 
 /**
  * HTTP通信を行い、結果を取得します.
@@ -71,8 +74,14 @@ import org.apache.http.util.EntityUtils;
  * <li>ソケットタイムアウト</li>
  * <li>処理タイムアウト</li>
  * </ul>
+ * 接続タイムアウトとソケットタイムアウト（無通信状態の許容時間）は、<br>
+ * setConnectTimeoutMillis(int)、setReadTimeoutMillis(int)メソッドで個別に設定することも可能です.<br>
+ * これらは1回の通信ごとのタイムアウトのため、リトライを行うと合計の処理時間は長くなります.<br>
+ * リトライも含めた全体の処理時間の上限を設けたい場合は、setTotalTimeoutMillis(long)メソッドを実行してください.<br>
+ * 全体の上限もしくはsetDeadline(long)メソッドで指定した期限を超えた場合は、通信を中断して{@link KtException}がthrowされます.<br>
+ * 各回の接続タイムアウト、ソケットタイムアウトは残り時間以内に短縮されます.<br>
  * <b>■ユーザエージェント設定</b><br>
- * デフォルトはHttpClientのユーザエージェントですが、明示的に指定したい場合は、setUserAgent(String)メソッドを実行してください.
+ * デフォルトは通信方式の標準のユーザエージェントですが、明示的に指定したい場合は、setUserAgent(String)メソッドを実行してください.
  * <br>
  * <br>
  * <b>■リトライ設定</b><br>
@@ -89,7 +98,65 @@ import org.apache.http.util.EntityUtils;
  * デフォルトは、チェックする設定となっています.<br>
  * チェックする設定だと、不正なSSL証明書の場合はExceptionが発生します.<br>
  * チェックしない設定にすると、不正なSSL証明書でも通信が可能となります.<br>
- * チェックしない設定にしたい場合は、setSslVerify(boolean)メソッドを実行してください.
+ * チェックしない設定にしたい場合は、setSslVerify(boolean)メソッドを実行してください.<br>
+ * <br>
+ * <b>■レスポンス本体の保持設定</b><br>
+ * {@link ResponseData}にセットするレスポンス本体は、指定サイズまではメモリ上に保持し、超えた場合は一時ファイルへ退避します.<br>
+ * デフォルトは8MBです.変更したい場合は、setResponseMemoryThreshold(int)メソッドを実行してください.<br>
+ * また、プロセス全体でメモリ上に保持するレスポンス本体の合計は{@link ResponseMemoryBudget}で上限が管理されており、<br>
+ * 上限に達している場合も一時ファイルへ退避します.<br>
+ * 一時ファイルは{@link ResponseData#release()}メソッドを実行すると削除されます.<br>
+ * <br>
+ * <b>■ハッシュ値の計算・検証設定</b><br>
+ * レスポンス本体を受信しながらハッシュ値を計算することができます.ファイル保存後に読み直す必要はありません.<br>
+ * 計算したいアルゴリズムをaddDigestAlgorithm(String)メソッドで指定し、結果は{@link ResponseData#getDigest(String)}で取得します.<br>
+ * setExpectedDigest(String, String)メソッドで期待値を指定した場合や、setVerifyDigestHeader()メソッドを実行して<br>
+ * Content-MD5ヘッダやDigestヘッダを検証する場合、値が一致しなければ{@link KtException}がthrowされます（リトライ設定があればリトライします）.<br>
+ * <br>
+ * <b>■優先度・期限設定</b><br>
+ * setScheduler(RequestScheduler)メソッドで{@link RequestScheduler}を指定すると、同時実行数がスケジューラにより制限されます.<br>
+ * 優先度はsetPriority(RequestPriority)メソッドで指定します.デフォルトは{@link RequestPriority#NORMAL}です.<br>
+ * setDeadline(long)メソッドで期限を指定した場合、期限内に完了できないと判断された時点で{@link KtException}がthrowされます.<br>
+ * 期限はsetTotalTimeoutMillis(long)メソッドで指定した全体のタイムアウトも考慮されます.<br>
+ * スケジューラに{@link AdaptiveConcurrencyLimit}をセットすると、ホストごとの同時実行数が応答時間とエラーから自動調整されます.<br>
+ * <br>
+ * <b>■Expect: 100-Continue 設定</b><br>
+ * POSTの本体がsetExpectContinueThreshold(long)メソッドで指定したサイズ（デフォルト64KB）以上の場合のみ、<br>
+ * Expect: 100-Continue を付加します.<br>
+ * 接続先ホストごとの対応状況は{@link ExpectContinueCache}に記録され、未対応のホストには付加しません.<br>
+ * 417エラーが返ってきた場合は、付加せずに即時再送信します.<br>
+ * 一切付加したくない場合は、setNotUseExpectContinue()メソッドを実行してください.<br>
+ * <br>
+ * <b>■セッション設定</b><br>
+ * setSession(HttpSession)メソッドで{@link HttpSession}を指定すると、同じセッションの通信間でCookieと接続を共有します.<br>
+ * Set-Cookieの値を次のリクエストヘッダへ手動でセットする必要はなく、Keep-Aliveにより接続も再利用されます.<br>
+ * <br>
+ * <b>■リダイレクト設定</b><br>
+ * デフォルトはリダイレクトを追従しません.<br>
+ * 追従したい場合は、setFollowRedirects(int)メソッドで最大回数を指定してください.<br>
+ * 恒久的なリダイレクト（301、308）の転送先は{@link PermanentRedirectCache}に記録され、以降は転送先へ直接送信します.<br>
+ * <br>
+ * <b>■1行ずつの処理</b><br>
+ * NDJSONやCSVなど行単位のレスポンスは、executeGetMethodByLine(LineProcessor)メソッドなどで受信しながら1行ずつ処理できます.<br>
+ * レスポンス全体を保持しないため、サイズに関わらずメモリ使用量は一定で、受信と処理が並行して行われます.<br>
+ * CSVの場合は{@link CsvLineProcessor}を使用すると、レコード単位で処理できます.<br>
+ * <br>
+ * <b>■通信方式設定</b><br>
+ * 実際の通信は{@link HttpTransport}の実装に委譲します.デフォルトは{@link HttpClientTransport}です.<br>
+ * setTransport(HttpTransport)メソッド、もしくはsetDefaultTransport(HttpTransport)メソッドで、<br>
+ * 呼び出し側を変更せずにJDK標準の{@link UrlConnectionTransport}や、テスト用の{@link StubTransport}に切り替えられます.<br>
+ * <br>
+ * <b>■インターセプタ設定</b><br>
+ * 認証トークンの付与、計測、キャッシュなどの処理は{@link HttpInterceptor}として登録すると、全ての送信の前後に実行されます.<br>
+ * addGlobalInterceptor(HttpInterceptor)メソッドで全体に、addInterceptor(HttpInterceptor)メソッドで個別に登録します.<br>
+ * 登録が無い場合は、インターセプタを経由せずに送信します.<br>
+ * <br>
+ * <b>■複数アドレスへの接続</b><br>
+ * {@link HttpClientTransport}では、接続先のホスト名に複数のIPアドレスがある場合、<br>
+ * IPv6とIPv4を交互に、少しずつ時間をずらして（デフォルト250ミリ秒）並行して接続を試み、最初に接続できたものを使用します.<br>
+ * 間隔はsetConnectionAttemptDelayMillis(int)メソッドで変更できます.<br>
+ * 接続に失敗したアドレスは{@link AddressPenaltyCache}に記録され、しばらくの間は最後に接続を試みます.<br>
+ * 接続タイムアウトは、全てのアドレスへの接続を合わせた時間に対して適用されます.
  *
  * @author tatsuya.kumon
  */
@@ -98,11 +165,32 @@ public class HttpConnection {
 	private ApplicationLogger logger;
 
 	/**
-	 * 接続タイムアウト（ミリ秒）.<br>
+	 * 処理タイムアウト（ミリ秒）.<br>
 	 * デフォルト10秒.
 	 */
 	private int timeoutMillis = 10 * 1000;
 
+	/**
+	 * 接続タイムアウト（ミリ秒）.<br>
+	 * デフォルト10秒.
+	 */
+	private int connectTimeoutMillis = 10 * 1000;
+
+	/**
+	 * ソケットタイムアウト（ミリ秒）.<br>
+	 * デフォルト10秒.
+	 */
+	private int readTimeoutMillis = 10 * 1000;
+
+	/**
+	 * 複数のIPアドレスへ接続する際の、次のアドレスへ接続を開始するまでの間隔（ミリ秒）.<br>
+	 * デフォルト250ミリ秒.
+	 */
+	private int connectionAttemptDelayMillis = HappyEyeballsConnectionOperator.DEFAULT_ATTEMPT_DELAY_MILLIS;
+
+	/** リトライを含めた全体のタイムアウト（ミリ秒、上限無しの場合は0） */
+	private long totalTimeoutMillis;
+
 	/** BASIC認証用ID */
 	private String basicAuthId;
 
@@ -152,12 +240,107 @@ public class HttpConnection {
 	/** Expect: 100-Continue の設定有無 */
 	private boolean useExpectContinue = true;
 
+	/**
+	 * Expect: 100-Continue を付加するリクエスト本体の最小バイト数.<br>
+	 * デフォルト64KB.
+	 */
+	private long expectContinueThreshold = 64 * 1024;
+
+	/**
+	 * レスポンス本体をメモリ上に保持する最大バイト数.<br>
+	 * デフォルト8MB.
+	 */
+	private int responseMemoryThreshold = 8 * 1024 * 1024;
+
+	/** レスポンス本体のハッシュ値を計算するアルゴリズム群 */
+	private List<String> digestAlgorithmList;
+
+	/** レスポンス本体のハッシュ値の期待値（キーはアルゴリズム名） */
+	private Map<String, String> expectedDigestMap;
+
+	/** Content-MD5ヘッダ、Digestヘッダを検証するフラグ */
+	private boolean isVerifyDigestHeader;
+
+	/** 実行スケジューラ */
+	private RequestScheduler scheduler;
+
+	/** 優先度 */
+	private RequestPriority priority = RequestPriority.NORMAL;
+
+	/** 期限（エポックミリ秒、期限無しの場合は0） */
+	private long deadline;
+
+	/** 共有するセッション */
+	private HttpSession session;
+
+	/** リダイレクトを追従する最大回数（追従しない場合は0） */
+	private int maxRedirects;
+
+	/** 実行中のリクエスト（通信中でない場合はnull） */
+	private volatile AtomicReference<TransportRequest> runningRequest;
+
+	/** 通信を中断した場合はtrue */
+	private volatile boolean aborted;
+
+	/** 通信方式（未設定の場合はデフォルトの通信方式） */
+	private HttpTransport transport;
+
+	/** デフォルトの通信方式 */
+	private static volatile HttpTransport defaultTransport = HttpClientTransport
+			.getInstance();
+
+	/** 個別に登録したインターセプタ群 */
+	private List<HttpInterceptor> interceptorList;
+
+	/** インターセプタが無い場合の空配列 */
+	private static final HttpInterceptor[] NO_INTERCEPTORS = new HttpInterceptor[0];
+
+	/** 全体に登録したインターセプタ群（登録時に配列ごと置き換える） */
+	private static volatile HttpInterceptor[] globalInterceptors = NO_INTERCEPTORS;
+
 	/** プロキシアドレスのプロパティファイルのキー */
 	private static final String PROXY_ADDRESS_KEY = "kt.net.httpclient.proxy.address";
 
 	/** プロキシポートのプロパティファイルのキー */
 	private static final String PROXY_PORT_KEY = "kt.net.httpclient.proxy.port";
 
+	/** Content-MD5ヘッダ名 */
+	private static final String CONTENT_MD5_HEADER = "Content-MD5";
+
+	/** Digestヘッダ名 */
+	private static final String DIGEST_HEADER = "Digest";
+
+	/** 期限を超えた通信を中断するタイマー */
+	private static final ScheduledExecutorService DEADLINE_TIMER = createDeadlineTimer();
+
+	/** 1行ずつ処理する場合の読み込みバッファサイズ（文字数） */
+	private static final int LINE_BUFFER_SIZE = 16 * 1024;
+
+	/** BOM */
+	private static final char BOM = '\uFEFF';
+
+	/** HEADメソッド */
+	private static final String METHOD_HEAD = "HEAD";
+
+	/** GETメソッド */
+	private static final String METHOD_GET = "GET";
+
+	/** POSTメソッド */
+	private static final String METHOD_POST = "POST";
+
+	/** POSTパラメータのContent-Type */
+	private static final String FORM_CONTENT_TYPE = "application/x-www-form-urlencoded";
+
+	/** ステータスコード 429 Too Many Requests */
+	private static final int SC_TOO_MANY_REQUESTS = 429;
+
+	/** ステータスコード 308 Permanent Redirect */
+	private static final int SC_PERMANENT_REDIRECT = 308;
+
+	/** Digestヘッダで検証するアルゴリズム */
+	private static final List<String> DIGEST_HEADER_ALGORITHMS = Arrays.asList(
+			"MD5", "SHA-1", "SHA-256", "SHA-512");
+
 	/**
 	 * コンストラクタ.
 	 *
@@ -201,144 +384,299 @@ public class HttpConnection {
 	}
 
 	/**
-	 * 設定情報を元にHttpClientオブジェクトを生成する.
+	 * 期限を超えた通信を中断するタイマーを生成する.
+	 *
+	 * @return タイマー
 	 */
-	private DefaultHttpClient createHttpClient() {
-		// HttpClient生成
-		DefaultHttpClient httpClient;
-		if (isSslVerify) {
-			// SSL証明書チェックを行う場合（不正証明書の場合はExceptionが発生する）
-			httpClient = new DefaultHttpClient();
-		} else {
-			// SSL証明書チェックを行わない場合
-			httpClient = new NoneSSLVerifierHttpClient();
+	private static ScheduledExecutorService createDeadlineTimer() {
+		ScheduledThreadPoolExecutor timer = new ScheduledThreadPoolExecutor(1,
+				new ThreadFactory() {
+					@Override
+					public Thread newThread(Runnable r) {
+						Thread thread = new Thread(r, "kt-net-http-deadline");
+						thread.setDaemon(true);
+						return thread;
+					}
+				});
+		timer.setRemoveOnCancelPolicy(true);
+		return timer;
+	}
+
+	/**
+	 * 設定情報を元に通信方式へ渡すリクエストを生成する.
+	 *
+	 * @param method
+	 *            メソッド名
+	 * @param uri
+	 *            リクエストURL
+	 * @param body
+	 *            リクエスト本体（本体が無い場合はnull）
+	 * @param remainingMillis
+	 *            期限までの残り時間（ミリ秒、期限無しの場合は0）
+	 * @param expectContinue
+	 *            Expect: 100-Continue を付加する場合はtrue
+	 * @return リクエスト
+	 */
+	private TransportRequest createTransportRequest(String method, URI uri,
+			byte[] body, long remainingMillis, boolean expectContinue) {
+		// カスタムリクエストヘッダ
+		List<TransportHeader> headerList = new ArrayList<TransportHeader>();
+		if (this.requestHeaderMap != null) {
+			for (Map.Entry<String, String> entry : requestHeaderMap.entrySet()) {
+				headerList.add(new TransportHeader(entry.getKey(), entry
+						.getValue()));
+			}
 		}
-		// タイムアウト設定
-		setTimeoutSetting(httpClient);
-		// ユーザエージェント設定
-		setUserAgentSetting(httpClient);
+		TransportRequest request = new TransportRequest(method, uri,
+				headerList, body, (body == null) ? null : FORM_CONTENT_TYPE
+						+ "; charset=" + requestEncode);
+		// タイムアウト設定（期限がある場合は、各タイムアウトを残り時間以内にする）
+		request.setTimeout(limitTimeout(connectTimeoutMillis, remainingMillis),
+				limitTimeout(readTimeoutMillis, remainingMillis),
+				limitTimeout(timeoutMillis, remainingMillis));
 		// プロキシ設定
-		setProxySetting(httpClient);
+		if (!Validator.isEmpty(proxyAddress) && proxyPort > 0) {
+			request.setProxy(proxyAddress, proxyPort);
+		}
 		// BASIC認証設定
-		setBasicAuthSetting(httpClient);
-		// リダイレクト設定
-		setRedirectSetting(httpClient);
-		// リクエストヘッダに「Expect: 100-Continue」を付加するかしないかの設定
-		httpClient.getParams().setParameter(
-				AllClientPNames.USE_EXPECT_CONTINUE, useExpectContinue);
-		return httpClient;
+		if (!Validator.isEmpty(basicAuthId)
+				&& !Validator.isEmpty(basicAuthPassword)) {
+			request.setBasicAuth(basicAuthId, basicAuthPassword);
+		}
+		request.setUserAgent(userAgent);
+		request.setSslVerify(isSslVerify);
+		request.setConnectionAttemptDelay(connectionAttemptDelayMillis);
+		request.setExpectContinue(expectContinue);
+		request.setSession(session);
+		return request;
 	}
 
 	/**
-	 * プロキシ設定.
+	 * リクエストに Expect: 100-Continue を付加するか判定する.
+	 * <p>
+	 * 本体が閾値未満の場合や、接続先ホストが未対応と記録されている場合は付加しない.
+	 * </p>
 	 *
-	 * @param httpClient
+	 * @param body
+	 *            リクエスト本体（本体が無い場合はnull）
+	 * @param host
+	 *            接続先ホスト
+	 * @return 付加する場合はtrue
 	 */
-	private void setProxySetting(DefaultHttpClient httpClient) {
-		// HttpClientオブジェクトにプロキシ情報をセット
-		if (!Validator.isEmpty(proxyAddress) && proxyPort > 0) {
-			HttpHost proxy = new HttpHost(proxyAddress, proxyPort);
-			httpClient.getParams().setParameter(AllClientPNames.DEFAULT_PROXY,
-					proxy);
+	private boolean isExpectContinue(byte[] body, String host) {
+		if (!useExpectContinue || body == null) {
+			return false;
+		}
+		if (body.length < expectContinueThreshold) {
+			// 本体が小さい場合は待ち合わせの方が無駄になる
+			return false;
 		}
+		return !Boolean.FALSE.equals(ExpectContinueCache.getInstance()
+				.getSupported(host));
 	}
 
 	/**
-	 * タイムアウト設定.
+	 * Expect: 100-Continue の対応状況を記録するためのホスト名を返す.
 	 *
-	 * @param httpClient
+	 * @param uri
+	 *            リクエストURL
+	 * @return スキーム://ホスト名:ポート番号
 	 */
-	private void setTimeoutSetting(DefaultHttpClient httpClient) {
-		// コネクションタイムアウト設定
-		httpClient.getParams().setIntParameter(
-				AllClientPNames.CONNECTION_TIMEOUT, timeoutMillis);
-		// ソケットタイムアウト設定
-		httpClient.getParams().setIntParameter(AllClientPNames.SO_TIMEOUT,
-				timeoutMillis);
-		// 処理タイムアウト設定
-		httpClient.getParams().setLongParameter(AllClientPNames.TIMEOUT,
-				timeoutMillis);
+	private static String expectContinueHost(URI uri) {
+		return uri.getScheme() + "://" + uri.getHost() + ":" + uri.getPort();
 	}
 
 	/**
-	 * ユーザエージェント設定.
+	 * Expect: 100-Continue の判定結果を記録する.
 	 *
-	 * @param httpClient
+	 * @param host
+	 *            接続先ホスト
+	 * @param response
+	 *            レスポンス
 	 */
-	private void setUserAgentSetting(DefaultHttpClient httpClient) {
-		if (!Validator.isEmpty(userAgent)) {
-			// ユーザエージェント設定
-			httpClient.getParams().setParameter(AllClientPNames.USER_AGENT,
-					userAgent);
+	private void recordExpectContinue(String host, TransportResponse response) {
+		Boolean supported = response.getExpectContinueSupported();
+		if (supported != null) {
+			ExpectContinueCache.getInstance().setSupported(host,
+					supported.booleanValue());
+			logger.debugLog("Expect: 100-Continue 対応状況:" + host + " "
+					+ supported);
 		}
 	}
 
 	/**
-	 * BASIC認証設定.
+	 * タイムアウト値を残り時間以内にする.
 	 *
-	 * @param httpClient
+	 * @param timeout
+	 *            タイムアウト（ミリ秒、0は無制限）
+	 * @param remainingMillis
+	 *            期限までの残り時間（ミリ秒、期限無しの場合は0）
+	 * @return タイムアウト（ミリ秒）
 	 */
-	private void setBasicAuthSetting(DefaultHttpClient httpClient) {
-		if (!Validator.isEmpty(basicAuthId)
-				&& !Validator.isEmpty(basicAuthPassword)) {
-			// 認証情報
-			Credentials credentials = new UsernamePasswordCredentials(
-					basicAuthId, basicAuthPassword);
-			// 認証情報をセット（スコープはANY）
-			httpClient.getCredentialsProvider().setCredentials(AuthScope.ANY,
-					credentials);
+	private static int limitTimeout(int timeout, long remainingMillis) {
+		if (remainingMillis <= 0) {
+			return timeout;
+		}
+		if (timeout <= 0 || timeout > remainingMillis) {
+			return (int) Math.min(remainingMillis, Integer.MAX_VALUE);
 		}
+		return timeout;
 	}
 
 	/**
-	 * リダイレクト設定.
+	 * 使用する通信方式を返す.
 	 *
-	 * @param httpClient
+	 * @return 通信方式
 	 */
-	private void setRedirectSetting(DefaultHttpClient httpClient) {
-		httpClient.getParams().setParameter(AllClientPNames.HANDLE_REDIRECTS,
-				false);
+	private HttpTransport getTransport() {
+		return (transport != null) ? transport : defaultTransport;
+	}
+
+	/**
+	 * 実行するインターセプタ群を返す.
+	 * <p>
+	 * 全体に登録したもの、個別に登録したものの順に並べます.<br>
+	 * 個別に登録していない場合は、全体に登録した配列をそのまま返します.
+	 * </p>
+	 *
+	 * @return インターセプタ群
+	 */
+	private HttpInterceptor[] getInterceptors() {
+		HttpInterceptor[] globals = globalInterceptors;
+		if (interceptorList == null) {
+			return globals;
+		}
+		HttpInterceptor[] interceptors = new HttpInterceptor[globals.length
+				+ interceptorList.size()];
+		System.arraycopy(globals, 0, interceptors, 0, globals.length);
+		for (int i = 0; i < interceptorList.size(); i++) {
+			interceptors[globals.length + i] = interceptorList.get(i);
+		}
+		return interceptors;
 	}
 
 	/**
 	 * 通信を実行し、レスポンスデータをセットする.<br>
 	 * 返り値として{@link ResponseData}オブジェクトを返す.
 	 *
-	 * @param requestBase
-	 *            HttpHead or HttpGet or HttpPost オブジェクト
+	 * @param method
+	 *            メソッド名
+	 * @param requestUrl
+	 *            リクエストURL
+	 * @param body
+	 *            リクエスト本体（本体が無い場合はnull）
 	 * @param savePath
 	 *            レスポンスを保存するファイルパス
+	 * @param lineProcessor
+	 *            レスポンス本体を1行ずつ処理する場合に指定
 	 * @return ResponseData
 	 * @throws Exception
 	 */
-	private ResponseData connect(HttpRequestBase requestBase, String savePath)
+	private ResponseData connect(String method, String requestUrl,
+			byte[] body, String savePath, LineProcessor lineProcessor)
 			throws Exception {
-		// カスタムリクエストヘッダ追加
-		if (this.requestHeaderMap != null) {
-			for (String name : requestHeaderMap.keySet()) {
-				requestBase.setHeader(name, requestHeaderMap.get(name));
+		URI uri = URI.create(requestUrl);
+		// リトライを含めた全体の期限
+		long callDeadline = computeDeadline();
+		// 実行中のリクエスト（リトライ、リダイレクト時は新しいリクエストに切り替わる）
+		AtomicReference<TransportRequest> currentRequest = new AtomicReference<TransportRequest>();
+		// 期限を超えた場合は通信を中断する
+		ScheduledFuture<?> abortTask = scheduleAbort(currentRequest,
+				callDeadline);
+		aborted = false;
+		runningRequest = currentRequest;
+		try {
+			return connectWithRetry(method, uri, body, currentRequest,
+					savePath, lineProcessor, callDeadline);
+		} finally {
+			runningRequest = null;
+			if (abortTask != null) {
+				abortTask.cancel(false);
 			}
 		}
+	}
+
+	/**
+	 * リトライしながら通信を実行し、レスポンスデータをセットする.
+	 *
+	 * @param method
+	 *            メソッド名
+	 * @param uri
+	 *            リクエストURL
+	 * @param body
+	 *            リクエスト本体（本体が無い場合はnull）
+	 * @param currentRequest
+	 *            実行中のリクエストをセットする領域
+	 * @param savePath
+	 *            レスポンスを保存するファイルパス
+	 * @param lineProcessor
+	 *            レスポンス本体を1行ずつ処理する場合に指定
+	 * @param callDeadline
+	 *            全体の期限（エポックミリ秒、期限無しの場合は0）
+	 * @return ResponseData
+	 * @throws Exception
+	 */
+	private ResponseData connectWithRetry(String method, URI uri, byte[] body,
+			AtomicReference<TransportRequest> currentRequest, String savePath,
+			LineProcessor lineProcessor, long callDeadline) throws Exception {
 		ResponseData resData = new ResponseData();
+		String host = expectContinueHost(uri);
+		// 417エラーを受けてExpect: 100-Continue を付加せずに再送信する場合はtrue
+		boolean expectRejected = false;
 		for (int i = 0; i < this.retryTimes + 1; i++) {
-			// 各種設定情報を元にHttpClientを生成する
-			DefaultHttpClient httpClient = createHttpClient();
+			// 期限までの残り時間
+			long remainingMillis = remainingMillis(callDeadline);
+			// Expect: 100-Continue の付加判定
+			boolean expectContinue = !expectRejected
+					&& isExpectContinue(body, host);
+			// 各種設定情報を元にリクエストを生成する
+			TransportRequest request = createTransportRequest(method, uri,
+					body, remainingMillis, expectContinue);
 			// 通信直前のログ出力
-			outputConnectLogMessage(requestBase.getMethod(), httpClient);
+			outputConnectLogMessage(method);
+			// スケジューラによる実行許可
+			RequestScheduler.Ticket ticket = acquireTicket(uri, callDeadline);
 			FileOutputStream fos = null;
+			TransportResponse response = null;
+			boolean failed = false;
+			// 接続先に起因する通信エラーの場合はtrue（同時実行数の調整に使用する）
+			boolean dropped = false;
 			try {
 				// 通信する
-				HttpResponse response = httpClient.execute(requestBase);
+				response = execute(request, currentRequest);
+				if (ticket != null) {
+					ticket.responded();
+				}
+				resData.setFinalUrl(currentRequest.get().getUri().toString());
 				// レスポンスのステータス情報を取得
-				StatusLine statusLine = response.getStatusLine();
-				logger.debugLog("responseCode :" + statusLine.getStatusCode());
+				int statusCode = response.getStatusCode();
+				logger.debugLog("responseCode :" + statusCode);
+				if (expectContinue
+						&& statusCode == HttpStatus.SC_EXPECTATION_FAILED) {
+					// Expect: 100-Continue 未対応のため、付加せずに即時再送信する（リトライ回数には含めない）
+					logger.infoLog("A055", "Expect: 100-Continue 未対応のため再送信します:"
+							+ host);
+					expectRejected = true;
+					i--;
+					continue;
+				}
 				// レスポンスデータにセット
-				resData.setStatusLine(statusLine);
+				resData.setStatus(statusCode, response.getReasonPhrase());
 				/*
 				 * HEADリクエスト以外の場合のみ、レスポンス本体取得
 				 */
-				if (!(requestBase instanceof HttpHead)) {
-					if (!Validator.isEmpty(savePath) && resData.isOkResponse()) {
+				if (!METHOD_HEAD.equals(method)) {
+					// ハッシュ値の計算設定
+					TransferDigest digest = createTransferDigest(response);
+					if (lineProcessor != null && resData.isOkResponse()) {
+						// 1行ずつ処理する場合は、受信しながら処理する
+						if (!processLines(response, digest, lineProcessor,
+								resData)) {
+							// 途中で終了した場合はハッシュ値を検証しない
+							digest = null;
+						}
+					} else if (!Validator.isEmpty(savePath)
+							&& resData.isOkResponse()) {
 						// ファイル保存が200で返ってきた場合は、レスポンスをファイルへ出力
 						// 親ディレクトリの存在チェック
 						FileUtil f = new FileUtil(savePath);
@@ -349,18 +687,22 @@ public class HttpConnection {
 						}
 						// ファイル保存処理
 						fos = new FileOutputStream(savePath);
-						response.getEntity().writeTo(fos);
+						copyContent(response, fos, digest);
 					} else {
 						// 保存先パスが指定されていない場合、もしくはファイル保存が200以外だった場合は、レスポンスをResponseDataへセット
-						resData.setResponseData(EntityUtils
-								.toByteArray(response.getEntity()));
+						resData.setResponseBody(readResponseBody(response,
+								digest));
+					}
+					// ハッシュ値の検証
+					resData.setTransferDigest(digest);
+					if (digest != null && resData.isOkResponse()) {
+						verifyDigest(digest, response);
 					}
 				}
 				/*
 				 * レスポンスの文字コード取得
 				 */
-				String responseEncodeTemp = EntityUtils
-						.getContentCharSet(response.getEntity());
+				String responseEncodeTemp = response.getContentCharset();
 				if (!Validator.isEmpty(responseEncodeTemp)) {
 					// レスポンスヘッダに文字コードがセットされている場合は、クラス変数にセットする
 					this.responseEncode = responseEncodeTemp;
@@ -368,8 +710,7 @@ public class HttpConnection {
 				/*
 				 * レスポンスヘッダを取得
 				 */
-				Header[] headers = response.getAllHeaders();
-				for (Header header : headers) {
+				for (TransportHeader header : response.getHeaders()) {
 					resData.addResponseHeader(header.getName(),
 							header.getValue());
 				}
@@ -386,32 +727,594 @@ public class HttpConnection {
 						break;
 					}
 					// 指定間隔をあけてリトライする
-					retry(i + 1,
-							resData.getStatusCode() + " "
-									+ resData.getStatusText());
+					if (!retry(i + 1, resData.getStatusCode() + " "
+							+ resData.getStatusText(), callDeadline)) {
+						// 期限までにリトライできない場合はbreak
+						break;
+					}
 					continue;
 				}
+			} catch (LineProcessingException e) {
+				// 1行ずつの処理でExceptionが発生した場合は、そのままthrowする
+				failed = true;
+				throw e.getCause();
 			} catch (Exception e) {
 				// Exceptionが発生した場合
+				failed = true;
+				if (aborted) {
+					// abort()メソッドにより中断された
+					throw new KtException("A059", "通信を中断しました [url]" + url);
+				}
+				if (callDeadline > 0
+						&& System.currentTimeMillis() >= callDeadline) {
+					// 期限を超えたため中断された
+					throw new KtException("A054", "期限を超えたため通信を中断しました [url]"
+							+ url + " [原因]" + e.getClass().getName());
+				}
+				// ハッシュ値の不一致などは接続先の過負荷とはみなさない
+				dropped = (e instanceof IOException);
 				if (i == this.retryTimes) {
 					// リトライ最後の場合はExceptionをthrow
 					throw e;
 				}
+				if (resData.getLineCount() > 0) {
+					// 処理済みの行があるとリトライで重複するため、Exceptionをthrow
+					throw e;
+				}
 				// 指定間隔をあけてリトライする
-				retry(i + 1, e.getClass().getName());
+				if (!retry(i + 1, e.getClass().getName(), callDeadline)) {
+					// 期限までにリトライできない場合はExceptionをthrow
+					throw e;
+				}
 				continue;
 			} finally {
 				// FileOutputStreamのclose
 				if (fos != null)
 					fos.close();
-				// 接続を解放
-				httpClient.getConnectionManager().shutdown();
-				logger.debugLog("HTTP通信:close処理完了");
+				if (response != null) {
+					// Expect: 100-Continue の判定結果を記録
+					recordExpectContinue(host, response);
+					// 接続を解放（通信に失敗した場合は再利用できないため破棄）
+					if (failed) {
+						response.abort();
+					} else {
+						response.close();
+					}
+					logger.debugLog("HTTP通信:接続解放完了");
+				}
+				// 実行許可を返却（応答時間とエラー有無を同時実行数の調整に使用する）
+				if (ticket != null) {
+					scheduler.release(ticket, dropped
+							|| (response != null && isOverloaded(response
+									.getStatusCode())));
+				}
 			}
 		}
 		return resData;
 	}
 
+	/**
+	 * 通信を実行する.
+	 * <p>
+	 * リダイレクトを追従する設定の場合は、転送先への通信を繰り返し、最終的なレスポンスを返します.<br>
+	 * 恒久的なリダイレクトは{@link PermanentRedirectCache}に記録し、以降は転送先へ直接送信します.
+	 * </p>
+	 *
+	 * @param baseRequest
+	 *            元のリクエスト
+	 * @param currentRequest
+	 *            実行中のリクエストをセットする領域
+	 * @return レスポンス
+	 * @throws IOException
+	 */
+	private TransportResponse execute(TransportRequest baseRequest,
+			AtomicReference<TransportRequest> currentRequest)
+			throws IOException {
+		HttpTransport transport = getTransport();
+		HttpInterceptor[] interceptors = getInterceptors();
+		TransportRequest request = baseRequest;
+		if (maxRedirects > 0) {
+			// 恒久的なリダイレクトの記録があれば転送先へ直接送信する
+			URI location = resolvePermanentRedirect(baseRequest.getUri());
+			if (location != null) {
+				logger.debugLog("リダイレクト（記録済み）:" + location);
+				request = baseRequest.redirect(baseRequest.getMethod(),
+						location);
+			}
+		}
+		// 訪れた転送先（メソッドとURL）
+		Set<String> visitedSet = null;
+		int redirectCount = 0;
+		while (true) {
+			currentRequest.set(request);
+			if (aborted) {
+				// 転送先への切り替え中に中断された
+				request.abort();
+			}
+			TransportResponse response;
+			if (interceptors.length == 0) {
+				response = transport.execute(request);
+			} else {
+				// インターセプタを経由して送信する
+				response = new InterceptorChain(interceptors, 0, transport,
+						request).proceed(request);
+			}
+			if (maxRedirects <= 0) {
+				return response;
+			}
+			int status = response.getStatusCode();
+			String locationHeader = response.getFirstHeader("Location");
+			String method = redirectMethod(request, status);
+			if (locationHeader == null || method == null) {
+				// リダイレクトではない、もしくは追従できない
+				return response;
+			}
+			// 転送元のレスポンス本体を読み捨てて接続を解放
+			response.close();
+			URI location = resolveLocation(request.getUri(), locationHeader);
+			// ループのチェック
+			if (visitedSet == null || isSessionUpdated(request, response)) {
+				// Cookieが更新された場合は、ログイン後に元のURLへ戻る場合があるため再訪を許容する
+				visitedSet = new HashSet<String>();
+				visitedSet.add(request.getMethod() + " " + request.getUri());
+			}
+			if (!visitedSet.add(method + " " + location)) {
+				throw new KtException("A057", "リダイレクトがループしています [url]"
+						+ location);
+			}
+			// 回数のチェック
+			if (++redirectCount > maxRedirects) {
+				throw new KtException("A057", "リダイレクトの回数が上限を超えました [上限]"
+						+ maxRedirects + " [url]" + location);
+			}
+			// 恒久的なリダイレクトを記録（301はメソッドが変わるのでGET、HEADのみ）
+			if ((status == HttpStatus.SC_MOVED_PERMANENTLY && !METHOD_POST
+					.equals(request.getMethod()))
+					|| status == SC_PERMANENT_REDIRECT) {
+				PermanentRedirectCache.getInstance().put(request.getUri(),
+						location);
+			}
+			logger.debugLog("リダイレクト:" + status + " " + location);
+			request = baseRequest.redirect(method, location);
+		}
+	}
+
+	/**
+	 * レスポンスによりセッションのCookieが更新されたか判定する.
+	 *
+	 * @param request
+	 *            リクエスト
+	 * @param response
+	 *            レスポンス
+	 * @return 更新された場合はtrue
+	 */
+	private static boolean isSessionUpdated(TransportRequest request,
+			TransportResponse response) {
+		return request.getSession() != null
+				&& response.getFirstHeader("Set-Cookie") != null;
+	}
+
+	/**
+	 * 恒久的なリダイレクトの記録から最終的な転送先を取得する.
+	 *
+	 * @param uri
+	 *            リクエストURL
+	 * @return 転送先URL（記録が無い場合はnull）
+	 */
+	private URI resolvePermanentRedirect(URI uri) {
+		PermanentRedirectCache cache = PermanentRedirectCache.getInstance();
+		URI location = null;
+		Set<String> visitedSet = new HashSet<String>();
+		visitedSet.add(uri.toString());
+		for (int i = 0; i < maxRedirects; i++) {
+			URI next = cache.get((location == null) ? uri : location);
+			if (next == null || !visitedSet.add(next.toString())) {
+				// 記録の終端、もしくはループしている場合は打ち切る
+				break;
+			}
+			location = next;
+		}
+		return location;
+	}
+
+	/**
+	 * リダイレクト時の転送先へのリクエストメソッドを判定する.
+	 *
+	 * @param request
+	 *            転送元へのリクエスト
+	 * @param status
+	 *            ステータスコード
+	 * @return メソッド名（リダイレクトではない場合はnull）
+	 */
+	private static String redirectMethod(TransportRequest request, int status) {
+		switch (status) {
+		case HttpStatus.SC_MOVED_PERMANENTLY:
+		case HttpStatus.SC_MOVED_TEMPORARILY:
+		case HttpStatus.SC_SEE_OTHER:
+			// POSTはGETに変更する
+			return METHOD_POST.equals(request.getMethod()) ? METHOD_GET
+					: request.getMethod();
+		case HttpStatus.SC_TEMPORARY_REDIRECT:
+		case SC_PERMANENT_REDIRECT:
+			// メソッドを変更せずに本体も再送信する
+			return request.getMethod();
+		default:
+			return null;
+		}
+	}
+
+	/**
+	 * Locationヘッダの値から転送先URLを取得する.
+	 *
+	 * @param base
+	 *            転送元URL
+	 * @param location
+	 *            Locationヘッダの値
+	 * @return 転送先URL
+	 */
+	private static URI resolveLocation(URI base, String location) {
+		try {
+			return base.resolve(location.trim());
+		} catch (IllegalArgumentException e) {
+			throw new KtException("A058", "リダイレクト先のURLが不正です [Location]"
+					+ location);
+		}
+	}
+
+	/**
+	 * レスポンス本体を受信しながら1行ずつ処理する.
+	 * <p>
+	 * 文字コードはレスポンスヘッダ、setResponseEncode(String)メソッドの指定、デフォルト文字コードの順に決定します.<br>
+	 * 処理が途中で終了した場合、残りは読み込まずに接続を破棄します.
+	 * </p>
+	 *
+	 * @param response
+	 *            レスポンス
+	 * @param digest
+	 *            ハッシュ値の計算（計算しない場合はnull）
+	 * @param lineProcessor
+	 *            1行ずつの処理
+	 * @param resData
+	 *            処理した行数をセットするResponseData
+	 * @return 最後まで処理した場合はtrue、途中で終了した場合はfalse
+	 * @throws Exception
+	 */
+	private boolean processLines(TransportResponse response,
+			TransferDigest digest, LineProcessor lineProcessor,
+			ResponseData resData) throws Exception {
+		InputStream is = response.getContent();
+		if (is == null) {
+			return true;
+		}
+		// 文字コード
+		String charset = response.getContentCharset();
+		if (Validator.isEmpty(charset)) {
+			charset = Validator.isEmpty(responseEncode) ? KtProperties
+					.getInstance().getDefaultCharset() : responseEncode;
+		}
+		if (digest != null) {
+			is = digest.wrap(is);
+		}
+		// 受信したバイト列を逐次デコードする
+		BufferedReader reader = new BufferedReader(new InputStreamReader(is,
+				charset), LINE_BUFFER_SIZE);
+		boolean completed = false;
+		try {
+			String line;
+			while ((line = reader.readLine()) != null) {
+				if (resData.getLineCount() == 0 && line.length() > 0
+						&& line.charAt(0) == BOM) {
+					// 先頭のBOMは除去する
+					line = line.substring(1);
+				}
+				resData.countLine();
+				boolean isContinue;
+				try {
+					isContinue = lineProcessor.processLine(line);
+				} catch (Exception e) {
+					// 通信エラーと区別する
+					throw new LineProcessingException(e);
+				}
+				if (!isContinue) {
+					return false;
+				}
+			}
+			completed = true;
+			return true;
+		} finally {
+			if (!completed) {
+				// 途中で終了するので、残りは読み込まずに接続を破棄する
+				response.abort();
+			}
+			reader.close();
+		}
+	}
+
+	/**
+	 * リトライを含めた全体の期限を算出する.
+	 *
+	 * @return 期限（エポックミリ秒、期限無しの場合は0）
+	 */
+	private long computeDeadline() {
+		long callDeadline = deadline;
+		if (totalTimeoutMillis > 0) {
+			long totalDeadline = System.currentTimeMillis() + totalTimeoutMillis;
+			if (callDeadline <= 0 || totalDeadline < callDeadline) {
+				callDeadline = totalDeadline;
+			}
+		}
+		return callDeadline;
+	}
+
+	/**
+	 * 期限までの残り時間を返す.
+	 *
+	 * @param callDeadline
+	 *            期限（エポックミリ秒、期限無しの場合は0）
+	 * @return 残り時間（ミリ秒、期限無しの場合は0）
+	 * @throws KtException
+	 *             期限を超えている場合
+	 */
+	private long remainingMillis(long callDeadline) throws KtException {
+		if (callDeadline <= 0) {
+			return 0;
+		}
+		long remaining = callDeadline - System.currentTimeMillis();
+		if (remaining <= 0) {
+			throw new KtException("A054", "期限を超えたため通信を中断しました [url]" + url);
+		}
+		return remaining;
+	}
+
+	/**
+	 * 期限に通信を中断するタスクを登録する.
+	 *
+	 * @param currentRequest
+	 *            実行中のリクエスト
+	 * @param callDeadline
+	 *            期限（エポックミリ秒、期限無しの場合は0）
+	 * @return 登録したタスク（期限無しの場合はnull）
+	 */
+	private ScheduledFuture<?> scheduleAbort(
+			final AtomicReference<TransportRequest> currentRequest,
+			long callDeadline) {
+		if (callDeadline <= 0) {
+			return null;
+		}
+		return DEADLINE_TIMER.schedule(new Runnable() {
+			@Override
+			public void run() {
+				TransportRequest request = currentRequest.get();
+				if (request != null) {
+					request.abort();
+				}
+			}
+		}, callDeadline - System.currentTimeMillis(), TimeUnit.MILLISECONDS);
+	}
+
+	/**
+	 * スケジューラから実行許可を得る.
+	 *
+	 * @param uri
+	 *            リクエストURL
+	 * @param callDeadline
+	 *            期限（エポックミリ秒、期限無しの場合は0）
+	 * @return 実行許可（スケジューラ未設定の場合はnull）
+	 * @throws InterruptedException
+	 */
+	private RequestScheduler.Ticket acquireTicket(URI uri, long callDeadline)
+			throws InterruptedException {
+		if (scheduler == null) {
+			return null;
+		}
+		RequestScheduler.Ticket ticket = scheduler.acquire(uri.getHost(),
+				priority, callDeadline);
+		logger.debugLog("HTTP通信:実行待ち時間 " + ticket.getWaitMillis() + "ms [priority]"
+				+ ticket.getPriority());
+		return ticket;
+	}
+
+	/**
+	 * 接続先の過負荷を示すステータスコードか判定する.
+	 *
+	 * @param statusCode
+	 *            ステータスコード
+	 * @return 429もしくは5xxの場合はtrue
+	 */
+	private static boolean isOverloaded(int statusCode) {
+		return statusCode == SC_TOO_MANY_REQUESTS
+				|| statusCode >= HttpStatus.SC_INTERNAL_SERVER_ERROR;
+	}
+
+	/**
+	 * レスポンス本体を読み込む.
+	 * <p>
+	 * 閾値を超えた場合は一時ファイルへ退避されます.
+	 * </p>
+	 *
+	 * @param response
+	 *            レスポンス
+	 * @param digest
+	 *            ハッシュ値の計算（計算しない場合はnull）
+	 * @return 読み込んだレスポンス本体（本体が無い場合はnull）
+	 * @throws IOException
+	 */
+	private ResponseBodyStore readResponseBody(TransportResponse response,
+			TransferDigest digest) throws IOException {
+		InputStream is = response.getContent();
+		if (is == null) {
+			return null;
+		}
+		ResponseBodyStore store = new ResponseBodyStore(
+				responseMemoryThreshold, response.getContentLength());
+		try {
+			copyContent(is, store, digest);
+			store.close();
+		} catch (IOException e) {
+			store.release();
+			throw e;
+		}
+		return store;
+	}
+
+	/**
+	 * レスポンス本体を出力先へコピーする.
+	 * <p>
+	 * {@link BufferPool}のバッファを使用します.
+	 * </p>
+	 *
+	 * @param response
+	 *            レスポンス
+	 * @param out
+	 *            出力先
+	 * @param digest
+	 *            ハッシュ値の計算（計算しない場合はnull）
+	 * @throws IOException
+	 */
+	private void copyContent(TransportResponse response, OutputStream out,
+			TransferDigest digest) throws IOException {
+		InputStream is = response.getContent();
+		if (is != null) {
+			copyContent(is, out, digest);
+		}
+	}
+
+	/**
+	 * レスポンス本体を出力先へコピーする.
+	 * <p>
+	 * {@link BufferPool}のバッファを使用します.<br>
+	 * コピー後に入力元を閉じます.
+	 * </p>
+	 *
+	 * @param is
+	 *            レスポンス本体のストリーム
+	 * @param out
+	 *            出力先
+	 * @param digest
+	 *            ハッシュ値の計算（計算しない場合はnull）
+	 * @throws IOException
+	 */
+	private void copyContent(InputStream is, OutputStream out,
+			TransferDigest digest) throws IOException {
+		if (digest != null) {
+			out = digest.wrap(out);
+		}
+		try {
+			BufferPool.getInstance().copy(is, out);
+		} finally {
+			is.close();
+		}
+	}
+
+	/**
+	 * レスポンス本体のハッシュ値を計算するオブジェクトを生成する.
+	 *
+	 * @param response
+	 *            レスポンス
+	 * @return ハッシュ値の計算（計算対象のアルゴリズムが無い場合はnull）
+	 */
+	private TransferDigest createTransferDigest(TransportResponse response) {
+		Set<String> algorithms = new LinkedHashSet<String>();
+		if (digestAlgorithmList != null) {
+			algorithms.addAll(digestAlgorithmList);
+		}
+		if (expectedDigestMap != null) {
+			algorithms.addAll(expectedDigestMap.keySet());
+		}
+		if (isVerifyDigestHeader) {
+			// ヘッダで指定されているアルゴリズムも計算する
+			if (response.getFirstHeader(CONTENT_MD5_HEADER) != null) {
+				algorithms.add("MD5");
+			}
+			algorithms.addAll(parseDigestHeader(response).keySet());
+		}
+		if (algorithms.isEmpty()) {
+			return null;
+		}
+		return new TransferDigest(algorithms);
+	}
+
+	/**
+	 * レスポンス本体のハッシュ値を検証する.
+	 *
+	 * @param digest
+	 *            計算したハッシュ値
+	 * @param response
+	 *            レスポンス
+	 * @throws KtException
+	 *             ハッシュ値が一致しない場合
+	 */
+	private void verifyDigest(TransferDigest digest, TransportResponse response)
+			throws KtException {
+		// 期待値の検証
+		if (expectedDigestMap != null) {
+			for (Map.Entry<String, String> entry : expectedDigestMap.entrySet()) {
+				String actual = digest.getHexDigest(entry.getKey());
+				if (!entry.getValue().equalsIgnoreCase(actual)) {
+					throw new KtException("A052", "レスポンス本体のハッシュ値が期待値と一致しません ["
+							+ entry.getKey() + "][expected]" + entry.getValue()
+							+ " [actual]" + actual + " [url]" + url);
+				}
+			}
+		}
+		if (!isVerifyDigestHeader) {
+			return;
+		}
+		// ヘッダ値の検証（値はBase64）
+		Map<String, String> headerDigestMap = parseDigestHeader(response);
+		String contentMd5 = response.getFirstHeader(CONTENT_MD5_HEADER);
+		if (contentMd5 != null) {
+			headerDigestMap.put("MD5", contentMd5.trim());
+		}
+		for (Map.Entry<String, String> entry : headerDigestMap.entrySet()) {
+			byte[] expected;
+			try {
+				expected = Base64.getDecoder().decode(entry.getValue());
+			} catch (IllegalArgumentException e) {
+				throw new KtException("A052", "レスポンスヘッダのハッシュ値が不正です ["
+						+ entry.getKey() + "]" + entry.getValue() + " [url]"
+						+ url);
+			}
+			if (!Arrays.equals(expected, digest.getDigest(entry.getKey()))) {
+				throw new KtException("A052", "レスポンス本体のハッシュ値がヘッダ値と一致しません ["
+						+ entry.getKey() + "][expected]" + entry.getValue()
+						+ " [actual]" + digest.getHexDigest(entry.getKey())
+						+ " [url]" + url);
+			}
+		}
+	}
+
+	/**
+	 * Digestヘッダ（RFC 3230）を解析する.
+	 * <p>
+	 * 計算可能なアルゴリズムのみを返します.
+	 * </p>
+	 *
+	 * @param response
+	 *            レスポンス
+	 * @return キーがアルゴリズム名、値がBase64のハッシュ値
+	 */
+	private Map<String, String> parseDigestHeader(TransportResponse response) {
+		Map<String, String> map = new LinkedHashMap<String, String>();
+		for (String value : response.getHeaderValues(DIGEST_HEADER)) {
+			for (String item : value.split(",")) {
+				int index = item.indexOf('=');
+				if (index <= 0) {
+					continue;
+				}
+				String name = item.substring(0, index).trim().toUpperCase();
+				if ("SHA".equals(name)) {
+					// RFC 3230ではSHA-1を「SHA」と表記する
+					name = "SHA-1";
+				}
+				if (DIGEST_HEADER_ALGORITHMS.contains(name)) {
+					map.put(name, item.substring(index + 1).trim());
+				}
+			}
+		}
+		return map;
+	}
+
 	/**
 	 * リトライ処理.
 	 *
@@ -419,12 +1322,24 @@ public class HttpConnection {
 	 *            何回目か
 	 * @param causeText
 	 *            エラーの原因
+	 * @param callDeadline
+	 *            期限（エポックミリ秒、期限無しの場合は0）
+	 * @return リトライする場合はtrue、期限までにリトライできない場合はfalse
 	 * @throws InterruptedException
 	 */
-	private void retry(int time, String causeText) throws InterruptedException {
+	private boolean retry(int time, String causeText, long callDeadline)
+			throws InterruptedException {
+		if (callDeadline > 0
+				&& System.currentTimeMillis() + this.intervalMillis >= callDeadline) {
+			logger.warnLog("A023", "HTTP通信にてエラー発生したが期限までにリトライできないため中止 [回数]"
+					+ time + "/" + this.retryTimes + " [url]" + url + " [原因]"
+					+ causeText);
+			return false;
+		}
 		logger.warnLog("A023", "HTTP通信にてエラー発生のためリトライ開始 [回数]" + time + "/"
 				+ this.retryTimes + " [url]" + url + " [原因]" + causeText);
 		Thread.sleep(this.intervalMillis);
+		return true;
 	}
 
 	/**
@@ -437,11 +1352,8 @@ public class HttpConnection {
 	public ResponseData executeHeadMethod() throws Exception {
 		// 設定情報の内容をチェック
 		checkConfiguration();
-		// パラメータセット
-		// HttpHeadを生成
-		HttpHead head = new HttpHead(this.createUrl());
 		// 通信実行
-		return connect(head, null);
+		return connect(METHOD_HEAD, this.createUrl(), null, null, null);
 	}
 
 	/**
@@ -459,21 +1371,42 @@ public class HttpConnection {
 	}
 
 	/**
-	 * GETでHTTP(HTTPS)通信を行い、結果を取得します.
+	 * GETでHTTP(HTTPS)通信を行い、結果を取得します.
+	 *
+	 * @param savePath
+	 *            レスポンスを保存するファイルパス
+	 * @return ResponseData
+	 * @throws Exception
+	 *             接続中に例外発生した場合
+	 */
+	public ResponseData executeGetMethod(String savePath) throws Exception {
+		// 設定情報の内容をチェック
+		checkConfiguration();
+		// 通信実行
+		return connect(METHOD_GET, this.createUrl(), null, savePath, null);
+	}
+
+	/**
+	 * GETでHTTP(HTTPS)通信を行い、レスポンス本体を1行ずつ処理します.
+	 * <p>
+	 * 正常なレスポンスの場合、レスポンス本体は受信しながら1行ずつ{@link LineProcessor}へ渡され、{@link ResponseData}にはセットされません.<br>
+	 * 正常でないレスポンスの場合は、{@link LineProcessor}は呼び出されず、レスポンス本体は{@link ResponseData}にセットされます.<br>
+	 * 1行以上処理した後に例外が発生した場合は、処理の重複を避けるためリトライしません.
+	 * </p>
 	 *
-	 * @param savePath
-	 *            レスポンスを保存するファイルパス
+	 * @param lineProcessor
+	 *            1行ずつの処理
 	 * @return ResponseData
 	 * @throws Exception
-	 *             接続中に例外発生した場合
+	 *             接続中もしくは処理中に例外発生した場合
 	 */
-	public ResponseData executeGetMethod(String savePath) throws Exception {
+	public ResponseData executeGetMethodByLine(LineProcessor lineProcessor)
+			throws Exception {
 		// 設定情報の内容をチェック
 		checkConfiguration();
-		// HttpGetを生成
-		HttpGet get = new HttpGet(this.createUrl());
 		// 通信実行
-		return connect(get, savePath);
+		return connect(METHOD_GET, this.createUrl(), null, null,
+				lineProcessor);
 	}
 
 	/**
@@ -540,14 +1473,43 @@ public class HttpConnection {
 	public ResponseData executePostMethod(String savePath) throws Exception {
 		// 設定情報の内容をチェック
 		checkConfiguration();
-		// HttpPostを生成
-		HttpPost post = new HttpPost(url);
-		// パラメータセット
-		if (paramList != null && paramList.size() > 0) {
-			post.setEntity(new UrlEncodedFormEntity(paramList, requestEncode));
-		}
 		// 通信実行
-		return connect(post, savePath);
+		return connect(METHOD_POST, url, createPostBody(), savePath, null);
+	}
+
+	/**
+	 * POSTでHTTP(HTTPS)通信を行い、レスポンス本体を1行ずつ処理します.
+	 * <p>
+	 * レスポンス本体の扱いは{@link #executeGetMethodByLine(LineProcessor)}と同様です.
+	 * </p>
+	 *
+	 * @param lineProcessor
+	 *            1行ずつの処理
+	 * @return ResponseData
+	 * @throws Exception
+	 *             接続中もしくは処理中に例外発生した場合
+	 */
+	public ResponseData executePostMethodByLine(LineProcessor lineProcessor)
+			throws Exception {
+		// 設定情報の内容をチェック
+		checkConfiguration();
+		// 通信実行
+		return connect(METHOD_POST, url, createPostBody(), null,
+				lineProcessor);
+	}
+
+	/**
+	 * パラメータをURLエンコードしたPOSTの本体を生成する.
+	 *
+	 * @return POSTの本体（パラメータが無い場合はnull）
+	 * @throws UnsupportedEncodingException
+	 */
+	private byte[] createPostBody() throws UnsupportedEncodingException {
+		if (paramList == null || paramList.size() == 0) {
+			return null;
+		}
+		return URLEncodedUtils.format(paramList, requestEncode).getBytes(
+				requestEncode);
 	}
 
 	/**
@@ -555,11 +1517,8 @@ public class HttpConnection {
 	 *
 	 * @param method
 	 *            接続メソッド
-	 * @param httpClient
-	 *            DefaultHttpClientオブジェクト
 	 */
-	private void outputConnectLogMessage(String method,
-			DefaultHttpClient httpClient) {
+	private void outputConnectLogMessage(String method) {
 		StringBuilder msg = new StringBuilder();
 		msg.append("HttpConnection");
 		msg.append(" [method]");
@@ -586,8 +1545,7 @@ public class HttpConnection {
 		}
 		msg.append(" [useragent]");
 		if (Validator.isEmpty(userAgent)) {
-			msg.append(httpClient.getParams().getParameter(
-					AllClientPNames.USER_AGENT));
+			msg.append("(default)");
 		}
 		// ログ出力
 		logger.infoLog("A022", msg.toString());
@@ -660,6 +1618,68 @@ public class HttpConnection {
 	 */
 	public void setTimeoutSecond(int timeoutSecond) {
 		this.timeoutMillis = timeoutSecond * 1000;
+		this.connectTimeoutMillis = this.timeoutMillis;
+		this.readTimeoutMillis = this.timeoutMillis;
+	}
+
+	/**
+	 * 接続タイムアウトを設定する.
+	 * <p>
+	 * 1回の通信ごとの値です.
+	 * </p>
+	 *
+	 * @param connectTimeoutMillis
+	 *            接続タイムアウト（ミリ秒）
+	 */
+	public void setConnectTimeoutMillis(int connectTimeoutMillis) {
+		this.connectTimeoutMillis = connectTimeoutMillis;
+	}
+
+	/**
+	 * ソケットタイムアウト（無通信状態の許容時間）を設定する.
+	 * <p>
+	 * 1回の通信ごとの値です.
+	 * </p>
+	 *
+	 * @param readTimeoutMillis
+	 *            ソケットタイムアウト（ミリ秒）
+	 */
+	public void setReadTimeoutMillis(int readTimeoutMillis) {
+		this.readTimeoutMillis = readTimeoutMillis;
+	}
+
+	/**
+	 * 複数のIPアドレスへ接続する際の、次のアドレスへ接続を開始するまでの間隔を設定する.
+	 * <p>
+	 * デフォルトは250ミリ秒.<br>
+	 * 接続中のアドレスがこの時間内に接続できない場合、次のアドレスへの接続を並行して開始します.<br>
+	 * 0を指定すると、全てのアドレスへ同時に接続を開始します.
+	 * </p>
+	 *
+	 * @param connectionAttemptDelayMillis
+	 *            間隔（ミリ秒）
+	 */
+	public void setConnectionAttemptDelayMillis(int connectionAttemptDelayMillis) {
+		if (connectionAttemptDelayMillis < 0) {
+			throw new KtException("B004",
+					"接続開始間隔の設定が不正な値です。[connectionAttemptDelayMillis:"
+							+ connectionAttemptDelayMillis + "]");
+		}
+		this.connectionAttemptDelayMillis = connectionAttemptDelayMillis;
+	}
+
+	/**
+	 * リトライを含めた全体のタイムアウトを設定する.
+	 * <p>
+	 * 通信開始からこの時間を超えた場合は、通信中であっても中断して{@link KtException}がthrowされます.<br>
+	 * {@link #setDeadline(long)}も指定した場合は、早い方が期限となります.
+	 * </p>
+	 *
+	 * @param totalTimeoutMillis
+	 *            全体のタイムアウト（ミリ秒）
+	 */
+	public void setTotalTimeoutMillis(long totalTimeoutMillis) {
+		this.totalTimeoutMillis = totalTimeoutMillis;
 	}
 
 	/**
@@ -694,7 +1714,7 @@ public class HttpConnection {
 
 	/**
 	 * ユーザエージェントを指定する.<br>
-	 * このメソッドを実行しない場合は、Apache-HttpClient標準のユーザエージェントとなります.
+	 * このメソッドを実行しない場合は、通信方式の標準のユーザエージェントとなります.
 	 *
 	 * @param userAgent
 	 *            ユーザエージェント.
@@ -753,16 +1773,283 @@ public class HttpConnection {
 		this.intervalMillis = intervalMillis;
 	}
 
+	/**
+	 * 実行中の通信を中断する.
+	 * <p>
+	 * 別スレッドから実行し、executeXxxxMethod()メソッドを中断します.<br>
+	 * 中断されたexecuteXxxxMethod()メソッドはリトライせずに{@link KtException}をthrowします.<br>
+	 * 通信中でない場合は何もしません.
+	 * </p>
+	 */
+	public void abort() {
+		AtomicReference<TransportRequest> request = runningRequest;
+		if (request != null) {
+			aborted = true;
+			TransportRequest current = request.get();
+			if (current != null) {
+				current.abort();
+			}
+		}
+	}
+
+	/**
+	 * リダイレクトを追従する設定.
+	 * <p>
+	 * デフォルトは追従しません（3xxのレスポンスをそのまま返します）.<br>
+	 * 追従する場合、POSTは301、302、303ではGETに変更し、307、308ではそのまま転送先へ再送信します.<br>
+	 * 転送先がループしている場合や、最大回数を超えた場合は{@link KtException}がthrowされます.<br>
+	 * ただし、{@link HttpSession}のCookieが更新された転送（ログイン後に元のURLへ戻る場合など）では、同じURLへの再訪を許容します.<br>
+	 * スキーム、ホスト、ポート番号が異なる転送先へは、Authorization、Cookie、Proxy-AuthorizationヘッダとBASIC認証を引き継ぎません.<br>
+	 * 301（GET、HEADのみ）、308の転送先は{@link PermanentRedirectCache}に記録され、以降は転送先へ直接送信します.
+	 * </p>
+	 *
+	 * @param maxRedirects
+	 *            追従する最大回数（0の場合は追従しない）
+	 */
+	public void setFollowRedirects(int maxRedirects) {
+		if (maxRedirects < 0) {
+			throw new KtException("B004", "リダイレクト回数の設定が不正な値です。[maxRedirects:"
+					+ maxRedirects + "]");
+		}
+		this.maxRedirects = maxRedirects;
+	}
+
+	/**
+	 * 共有するセッションを設定する.
+	 * <p>
+	 * セッションを設定すると、Cookieと接続を同じセッションを設定した通信間で共有します.<br>
+	 * SSL証明書チェック可否はセッションの設定に従います.<br>
+	 * セッションは{@link HttpClientTransport}でのみ使用されます.
+	 * </p>
+	 *
+	 * @param session
+	 *            {@link HttpSession}オブジェクト
+	 */
+	public void setSession(HttpSession session) {
+		this.session = session;
+	}
+
 	/**
 	 * ヘッダに Expect: 100-Continue を付加したくない場合に実行する.
 	 * <p>
-	 * 相手先サーバによっては未対応の場合417エラーを返してくるので、その場合は実行すると回避できる.
+	 * 相手先サーバによっては未対応の場合417エラーを返してくるので、その場合は実行すると回避できる.<br>
+	 * 実行しない場合も、417エラーを返したホストは{@link ExpectContinueCache}に記録され、以降は付加せずに送信します.
 	 * </p>
 	 */
 	public void setNotUseExpectContinue() {
 		this.useExpectContinue = false;
 	}
 
+	/**
+	 * Expect: 100-Continue を付加するリクエスト本体の最小バイト数を設定する.
+	 * <p>
+	 * デフォルトは64KB.<br>
+	 * 本体がこのサイズ未満の場合は、100-Continue の応答を待たずに送信します.
+	 * </p>
+	 *
+	 * @param expectContinueThreshold
+	 *            最小バイト数
+	 */
+	public void setExpectContinueThreshold(long expectContinueThreshold) {
+		if (expectContinueThreshold < 0) {
+			throw new KtException("B004",
+					"Expect: 100-Continue の閾値の設定が不正な値です。[expectContinueThreshold:"
+							+ expectContinueThreshold + "]");
+		}
+		this.expectContinueThreshold = expectContinueThreshold;
+	}
+
+	/**
+	 * レスポンス本体をメモリ上に保持する最大バイト数を設定する.
+	 * <p>
+	 * デフォルトは8MB.<br>
+	 * レスポンス本体がこのサイズを超える場合は一時ファイルへ退避します.
+	 * </p>
+	 *
+	 * @param responseMemoryThreshold
+	 *            メモリ上に保持する最大バイト数
+	 */
+	public void setResponseMemoryThreshold(int responseMemoryThreshold) {
+		if (responseMemoryThreshold < 0) {
+			throw new KtException("B004", "レスポンス本体の保持サイズの設定が不正な値です。[size:"
+					+ responseMemoryThreshold + "]");
+		}
+		this.responseMemoryThreshold = responseMemoryThreshold;
+	}
+
+	/**
+	 * レスポンス本体のハッシュ値を計算するアルゴリズムを追加する.
+	 * <p>
+	 * 計算結果は{@link ResponseData#getDigest(String)}で取得します.
+	 * </p>
+	 *
+	 * @param algorithm
+	 *            アルゴリズム名（MD5、SHA-256、CRC32など）
+	 */
+	public void addDigestAlgorithm(String algorithm) {
+		if (digestAlgorithmList == null) {
+			digestAlgorithmList = new ArrayList<String>();
+		}
+		digestAlgorithmList.add(algorithm);
+	}
+
+	/**
+	 * レスポンス本体のハッシュ値の期待値を設定する.
+	 * <p>
+	 * 正常なレスポンスのハッシュ値が一致しない場合は{@link KtException}がthrowされます.
+	 * </p>
+	 *
+	 * @param algorithm
+	 *            アルゴリズム名（MD5、SHA-256、CRC32など）
+	 * @param hexValue
+	 *            期待値（16進数文字列）
+	 */
+	public void setExpectedDigest(String algorithm, String hexValue) {
+		if (expectedDigestMap == null) {
+			expectedDigestMap = new HashMap<String, String>();
+		}
+		expectedDigestMap.put(algorithm, hexValue);
+	}
+
+	/**
+	 * レスポンスヘッダのContent-MD5、Digest（RFC 3230）でハッシュ値を検証したい場合に実行する.
+	 * <p>
+	 * ヘッダが存在する場合のみ検証し、正常なレスポンスのハッシュ値が一致しない場合は{@link KtException}がthrowされます.
+	 * </p>
+	 */
+	public void setVerifyDigestHeader() {
+		this.isVerifyDigestHeader = true;
+	}
+
+	/**
+	 * 実行スケジューラを設定する.
+	 * <p>
+	 * 複数の{@link HttpConnection}で同じスケジューラを共有することで、同時実行数を制限します.
+	 * </p>
+	 *
+	 * @param scheduler
+	 *            実行スケジューラ
+	 */
+	public void setScheduler(RequestScheduler scheduler) {
+		this.scheduler = scheduler;
+	}
+
+	/**
+	 * 優先度を設定する.
+	 * <p>
+	 * デフォルトは{@link RequestPriority#NORMAL}.<br>
+	 * 実行スケジューラが設定されている場合のみ有効です.
+	 * </p>
+	 *
+	 * @param priority
+	 *            優先度
+	 */
+	public void setPriority(RequestPriority priority) {
+		this.priority = priority;
+	}
+
+	/**
+	 * 期限を設定する.
+	 * <p>
+	 * リトライを含めて期限を超えた場合は、通信中であっても中断して{@link KtException}がthrowされます.<br>
+	 * 実行スケジューラが設定されている場合は、期限内に完了できないと判断した時点で{@link KtException}がthrowされます.
+	 * </p>
+	 *
+	 * @param deadline
+	 *            期限（エポックミリ秒）
+	 */
+	public void setDeadline(long deadline) {
+		this.deadline = deadline;
+	}
+
+	/**
+	 * 通信方式を設定する.
+	 * <p>
+	 * 未設定の場合は{@link #setDefaultTransport(HttpTransport)}で設定した通信方式を使用します.
+	 * </p>
+	 *
+	 * @param transport
+	 *            通信方式
+	 */
+	public void setTransport(HttpTransport transport) {
+		this.transport = transport;
+	}
+
+	/**
+	 * 通信方式を設定していない全ての{@link HttpConnection}で使用する通信方式を設定する.
+	 * <p>
+	 * デフォルトは{@link HttpClientTransport}.
+	 * </p>
+	 *
+	 * @param transport
+	 *            通信方式
+	 */
+	public static void setDefaultTransport(HttpTransport transport) {
+		if (transport == null) {
+			throw new KtException("B004", "通信方式の設定が不正な値です。[transport:null]");
+		}
+		defaultTransport = transport;
+	}
+
+	/**
+	 * インターセプタを登録する.
+	 * <p>
+	 * この{@link HttpConnection}の通信のみに適用され、全体に登録したインターセプタの後に実行されます.
+	 * </p>
+	 *
+	 * @param interceptor
+	 *            インターセプタ
+	 */
+	public void addInterceptor(HttpInterceptor interceptor) {
+		if (interceptor == null) {
+			throw new KtException("B004", "インターセプタの設定が不正な値です。[interceptor:null]");
+		}
+		if (interceptorList == null) {
+			interceptorList = new ArrayList<HttpInterceptor>();
+		}
+		interceptorList.add(interceptor);
+	}
+
+	/**
+	 * 全ての{@link HttpConnection}の通信に適用するインターセプタを登録する.
+	 *
+	 * @param interceptor
+	 *            インターセプタ
+	 */
+	public static synchronized void addGlobalInterceptor(
+			HttpInterceptor interceptor) {
+		if (interceptor == null) {
+			throw new KtException("B004", "インターセプタの設定が不正な値です。[interceptor:null]");
+		}
+		HttpInterceptor[] interceptors = Arrays.copyOf(globalInterceptors,
+				globalInterceptors.length + 1);
+		interceptors[interceptors.length - 1] = interceptor;
+		globalInterceptors = interceptors;
+	}
+
+	/**
+	 * 全体に登録したインターセプタを解除する.
+	 *
+	 * @param interceptor
+	 *            インターセプタ
+	 */
+	public static synchronized void removeGlobalInterceptor(
+			HttpInterceptor interceptor) {
+		List<HttpInterceptor> list = new ArrayList<HttpInterceptor>(
+				Arrays.asList(globalInterceptors));
+		if (list.remove(interceptor)) {
+			globalInterceptors = list.isEmpty() ? NO_INTERCEPTORS : list
+					.toArray(new HttpInterceptor[list.size()]);
+		}
+	}
+
+	/**
+	 * 全体に登録したインターセプタを全て解除する.
+	 */
+	public static synchronized void clearGlobalInterceptors() {
+		globalInterceptors = NO_INTERCEPTORS;
+	}
+
 	/**
 	 * リクエストヘッダに任意の値をセットしたい場合に実行する.
 	 *
@@ -784,21 +2071,48 @@ public class HttpConnection {
 	 * @author tatsuya.kumon
 	 */
 	public class ResponseData {
-		/** レスポンスのステータス情報 */
-		private StatusLine statusLine;
+		/** ステータスコード */
+		private int statusCode;
+
+		/** ステータステキスト */
+		private String statusText;
 
 		/** レスポンス本体 */
-		private byte[] responseData;
+		private ResponseBodyStore responseBody;
 
 		/** レスポンスヘッダ群 */
 		private Map<String, String> responseHeaderMap;
 
-		private void setStatusLine(StatusLine statusLine) {
-			this.statusLine = statusLine;
+		/** レスポンス本体のハッシュ値 */
+		private TransferDigest transferDigest;
+
+		/** 最終的なリクエストURL */
+		private String finalUrl;
+
+		/** 1行ずつ処理した行数 */
+		private long lineCount;
+
+		private void setStatus(int statusCode, String statusText) {
+			this.statusCode = statusCode;
+			this.statusText = statusText;
+		}
+
+		private void setFinalUrl(String finalUrl) {
+			this.finalUrl = finalUrl;
+		}
+
+		private void countLine() {
+			this.lineCount++;
+		}
+
+		private void setResponseBody(ResponseBodyStore responseBody) {
+			// リトライ時は前回のレスポンス本体を解放する
+			release();
+			this.responseBody = responseBody;
 		}
 
-		private void setResponseData(byte[] responseData) {
-			this.responseData = responseData;
+		private void setTransferDigest(TransferDigest transferDigest) {
+			this.transferDigest = transferDigest;
 		}
 
 		private void addResponseHeader(String name, String value) {
@@ -808,13 +2122,37 @@ public class HttpConnection {
 			this.responseHeaderMap.put(name, value);
 		}
 
+		/**
+		 * 1行ずつ処理した行数を取得する.
+		 * <p>
+		 * executeXxxxMethodByLine(LineProcessor)メソッドで処理した行数を返します.
+		 * </p>
+		 *
+		 * @return 行数
+		 */
+		public long getLineCount() {
+			return lineCount;
+		}
+
+		/**
+		 * 最終的なリクエストURLを取得する.
+		 * <p>
+		 * リダイレクトを追従した場合は転送先のURLを返します.
+		 * </p>
+		 *
+		 * @return URL
+		 */
+		public String getFinalUrl() {
+			return finalUrl;
+		}
+
 		/**
 		 * レスポンスのステータスコードを取得する.
 		 *
 		 * @return ステータスコード
 		 */
 		public int getStatusCode() {
-			return statusLine.getStatusCode();
+			return statusCode;
 		}
 
 		/**
@@ -823,7 +2161,7 @@ public class HttpConnection {
 		 * @return ステータステキスト
 		 */
 		public String getStatusText() {
-			return statusLine.getReasonPhrase();
+			return statusText;
 		}
 
 		/**
@@ -838,16 +2176,88 @@ public class HttpConnection {
 		public String getResponseText() throws UnsupportedEncodingException,
 				IOException {
 			String responseText = "";
-			if (this.responseData != null) {
+			if (this.responseBody != null) {
 				if (Validator.isEmpty(responseEncode)) {
 					responseEncode = KtProperties.getInstance()
 							.getDefaultCharset();
 				}
-				responseText = new String(responseData, responseEncode);
+				responseText = new String(responseBody.toByteArray(),
+						responseEncode);
 			}
 			return responseText;
 		}
 
+		/**
+		 * レスポンス本体を読み込むストリームを取得する.
+		 * <p>
+		 * メモリ上に保持している場合も一時ファイルへ退避している場合も同じように読み込めます.<br>
+		 * {@link #release()}の後に読み込むと、IOExceptionがthrowされます.<br>
+		 * レスポンス本体が無い場合はnullを返します.
+		 * </p>
+		 *
+		 * @return InputStream
+		 * @throws IOException
+		 *             入出力エラーが発生した場合
+		 */
+		public InputStream getResponseStream() throws IOException {
+			if (this.responseBody == null) {
+				return null;
+			}
+			return responseBody.openStream();
+		}
+
+		/**
+		 * レスポンス本体のバイト数を取得する.
+		 *
+		 * @return バイト数（レスポンス本体が無い場合は0）
+		 */
+		public long getResponseLength() {
+			if (this.responseBody == null) {
+				return 0;
+			}
+			return responseBody.size();
+		}
+
+		/**
+		 * レスポンス本体が一時ファイルへ退避されているかを返す.
+		 *
+		 * @return 退避されていればtrue
+		 */
+		public boolean isResponseSpilled() {
+			return (this.responseBody != null && responseBody.isSpilled());
+		}
+
+		/**
+		 * レスポンス本体を解放する.
+		 * <p>
+		 * 一時ファイルへ退避されている場合はファイルを削除します.<br>
+		 * 実行後はレスポンス本体を参照できません.
+		 * </p>
+		 */
+		public void release() {
+			if (this.responseBody != null) {
+				responseBody.release();
+				this.responseBody = null;
+			}
+		}
+
+		/**
+		 * 受信時に計算したレスポンス本体のハッシュ値を取得する.
+		 * <p>
+		 * ファイル保存した場合も、保存した内容のハッシュ値を返します.
+		 * </p>
+		 *
+		 * @param algorithm
+		 *            アルゴリズム名
+		 * @return ハッシュ値（16進数文字列）、計算していない場合はnull
+		 */
+		public String getDigest(String algorithm) {
+			if (this.transferDigest == null) {
+				return null;
+			}
+			return transferDigest.getHexDigest(algorithm);
+		}
+
 		/**
 		 * HTTPレスポンスコードが200であればtrueを返す.
 		 *
@@ -882,4 +2292,26 @@ public class HttpConnection {
 			return null;
 		}
 	}
+
+	/**
+	 * 1行ずつの処理で発生したExceptionを、通信エラーと区別するためのException.
+	 */
+	private static class LineProcessingException extends Exception {
+		private static final long serialVersionUID = 1L;
+
+		/**
+		 * コンストラクタ.
+		 *
+		 * @param cause
+		 *            1行ずつの処理で発生したException
+		 */
+		private LineProcessingException(Exception cause) {
+			super(cause);
+		}
+
+		@Override
+		public synchronized Exception getCause() {
+			return (Exception) super.getCause();
+		}
+	}
 }
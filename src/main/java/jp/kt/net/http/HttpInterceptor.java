@@ -0,0 +1,64 @@
+package jp.kt.net.http;
+
+import java.io.IOException;
+
+/**
+ * {@link HttpConnection}の通信に処理を差し込むインターセプタ.
+ * <p>
+ * 認証トークンの付与や更新、計測、キャッシュ、署名などを、呼び出し側を変更せずに追加するために使用します.<br>
+ * {@link HttpConnection#addGlobalInterceptor(HttpInterceptor)}で全ての通信に、<br>
+ * {@link HttpConnection#addInterceptor(HttpInterceptor)}で個別の通信に登録し、<br>
+ * 全体に登録したもの、個別に登録したものの順に、登録した順で実行されます.
+ * </p>
+ * <p>
+ * インターセプタはリトライ、リダイレクトを含めた1回の送信ごとに呼び出されます.<br>
+ * {@link Chain#proceed(TransportRequest)}で次のインターセプタもしくは通信方式へ処理を渡し、<br>
+ * 返ってきたレスポンスをそのまま、もしくは差し替えて返します.<br>
+ * {@link Chain#proceed(TransportRequest)}を呼ばずにレスポンスを返すと、以降の処理と通信は行われません.<br>
+ * 差し替える前のレスポンスは{@link TransportResponse#close()}で解放してください.
+ * </p>
+ * <p>
+ * 複数スレッドから同時に使用されるため、スレッドセーフにしてください.
+ * </p>
+ *
+ * @author tatsuya.kumon
+ */
+public interface HttpInterceptor {
+	/**
+	 * 通信に処理を差し込む.
+	 *
+	 * @param chain
+	 *            後続の処理
+	 * @return レスポンス
+	 * @throws IOException
+	 *             通信中にエラーが発生した場合
+	 */
+	public TransportResponse intercept(Chain chain) throws IOException;
+
+	/**
+	 * 後続の処理.
+	 */
+	public interface Chain {
+		/**
+		 * 送信するリクエストを取得する.
+		 *
+		 * @return リクエスト
+		 */
+		public TransportRequest getRequest();
+
+		/**
+		 * 次のインターセプタもしくは通信方式へ処理を渡す.
+		 * <p>
+		 * 複数回実行すると、その回数だけ送信します.
+		 * </p>
+		 *
+		 * @param request
+		 *            送信するリクエスト
+		 * @return レスポンス
+		 * @throws IOException
+		 *             通信中にエラーが発生した場合
+		 */
+		public TransportResponse proceed(TransportRequest request)
+				throws IOException;
+	}
+}
@@ -0,0 +1,178 @@
+package jp.kt.net.http;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import jp.kt.exception.KtException;
+
+import org.apache.http.client.CookieStore;
+import org.apache.http.conn.ClientConnectionManager;
+import org.apache.http.conn.params.ConnManagerParams;
+import org.apache.http.conn.params.ConnPerRouteBean;
+import org.apache.http.conn.scheme.SchemeRegistry;
+import org.apache.http.cookie.Cookie;
+import org.apache.http.impl.client.BasicCookieStore;
+import org.apache.http.params.BasicHttpParams;
+import org.apache.http.params.HttpParams;
+
+/**
+ * 複数回のHTTP通信で共有するセッション.
+ * <p>
+ * ログイン後に複数ページを取得する場合など、一連の通信でCookieと接続を引き継ぐために使用します.<br>
+ * {@link HttpConnection#setSession(HttpSession)}でセットした通信は、下記を共有します.<br>
+ * </p>
+ * <ul>
+ * <li>Cookie（レスポンスのSet-Cookieを保持し、以降のリクエストに付加します）</li>
+ * <li>接続（Keep-Aliveで接続を維持し、以降の通信で再利用します）</li>
+ * </ul>
+ * <p>
+ * 複数スレッドから同時に使用することができます.<br>
+ * 使用後は{@link #close()}メソッドを実行して接続を閉じてください.
+ * </p>
+ *
+ * @author tatsuya.kumon
+ */
+public class HttpSession {
+	/** デフォルトのホストごとの最大接続数 */
+	private static final int DEFAULT_MAX_CONNECTIONS_PER_HOST = 2;
+
+	/** デフォルトの最大接続数 */
+	private static final int DEFAULT_MAX_CONNECTIONS = 20;
+
+	/** 接続管理用のパラメータ */
+	private final HttpParams params;
+
+	/** 接続管理 */
+	private final ClientConnectionManager connectionManager;
+
+	/** Cookie */
+	private final CookieStore cookieStore = new BasicCookieStore();
+
+	/** close済みフラグ */
+	private volatile boolean closed;
+
+	/**
+	 * コンストラクタ.
+	 * <p>
+	 * SSL証明書チェックを行います.
+	 * </p>
+	 */
+	public HttpSession() {
+		this(true);
+	}
+
+	/**
+	 * コンストラクタ.
+	 *
+	 * @param isSslVerify
+	 *            SSL証明書チェックを行う場合はtrue
+	 */
+	public HttpSession(boolean isSslVerify) {
+		params = new BasicHttpParams();
+		ConnManagerParams.setMaxTotalConnections(params,
+				DEFAULT_MAX_CONNECTIONS);
+		ConnManagerParams.setMaxConnectionsPerRoute(params,
+				new ConnPerRouteBean(DEFAULT_MAX_CONNECTIONS_PER_HOST));
+		SchemeRegistry registry;
+		if (isSslVerify) {
+			registry = KtHttpClient.createDefaultSchemeRegistry();
+		} else {
+			registry = NoneSSLVerifierHttpClient.createSchemeRegistry();
+		}
+		connectionManager = HappyEyeballsConnectionOperator
+				.createThreadSafeConnManager(params, registry);
+	}
+
+	/**
+	 * ホストごとの最大接続数を設定する.
+	 * <p>
+	 * デフォルトは2.<br>
+	 * 最初の通信より前に実行してください.
+	 * </p>
+	 *
+	 * @param maxConnectionsPerHost
+	 *            ホストごとの最大接続数
+	 */
+	public void setMaxConnectionsPerHost(int maxConnectionsPerHost) {
+		if (maxConnectionsPerHost <= 0) {
+			throw new KtException("B004",
+					"最大接続数の設定が不正な値です。[maxConnectionsPerHost:"
+							+ maxConnectionsPerHost + "]");
+		}
+		ConnManagerParams.setMaxConnectionsPerRoute(params,
+				new ConnPerRouteBean(maxConnectionsPerHost));
+		if (ConnManagerParams.getMaxTotalConnections(params) < maxConnectionsPerHost) {
+			ConnManagerParams.setMaxTotalConnections(params,
+					maxConnectionsPerHost);
+		}
+	}
+
+	/**
+	 * 保持しているCookieを取得する.
+	 *
+	 * @return Cookieのリスト
+	 */
+	public List<Cookie> getCookies() {
+		return cookieStore.getCookies();
+	}
+
+	/**
+	 * Cookieを追加する.
+	 *
+	 * @param cookie
+	 *            Cookie
+	 */
+	public void addCookie(Cookie cookie) {
+		cookieStore.addCookie(cookie);
+	}
+
+	/**
+	 * 保持しているCookieを全て破棄する.
+	 */
+	public void clearCookies() {
+		cookieStore.clear();
+	}
+
+	/**
+	 * 指定時間以上使用されていない接続を閉じる.
+	 *
+	 * @param idleMillis
+	 *            未使用時間（ミリ秒）
+	 */
+	public void closeIdleConnections(long idleMillis) {
+		connectionManager.closeIdleConnections(idleMillis,
+				TimeUnit.MILLISECONDS);
+	}
+
+	/**
+	 * セッションを終了し、全ての接続を閉じる.
+	 * <p>
+	 * 終了後のセッションは使用できません.
+	 * </p>
+	 */
+	public void close() {
+		closed = true;
+		connectionManager.shutdown();
+	}
+
+	/**
+	 * 接続管理を取得する.
+	 *
+	 * @return ClientConnectionManager
+	 */
+	ClientConnectionManager getConnectionManager() {
+		if (closed) {
+			throw new KtException("A056", "HTTPセッションは終了済みです");
+		}
+		return connectionManager;
+	}
+
+	/**
+	 * Cookieの保持領域を取得する.
+	 *
+	 * @return CookieStore
+	 */
+	CookieStore getCookieStore() {
+		return cookieStore;
+	}
+}
@@ -0,0 +1,44 @@
+package jp.kt.net.http;
+
+import java.io.IOException;
+
+/**
+ * HTTP通信を実際に行う通信方式のインターフェース.
+ * <p>
+ * {@link HttpConnection}は、URL、パラメータ、ヘッダ、本体などから{@link TransportRequest}を組み立て、<br>
+ * 本インターフェースの実装に通信を委譲します.<br>
+ * リトライ、リダイレクトの追従、レスポンス本体の読み込みは{@link HttpConnection}が行うため、<br>
+ * 実装は1回のリクエストの送信とレスポンスの受信のみを行います.
+ * </p>
+ * <p>
+ * 下記の実装があります.
+ * </p>
+ * <ul>
+ * <li>{@link HttpClientTransport}：Apache HttpClientによる通信（デフォルト）</li>
+ * <li>{@link UrlConnectionTransport}：JDK標準のHttpURLConnectionによる通信</li>
+ * <li>{@link StubTransport}：実際には通信せず、登録したレスポンスを返す（テスト用）</li>
+ * </ul>
+ * <p>
+ * 実装は複数スレッドから同時に使用されるため、スレッドセーフにしてください.<br>
+ * リダイレクトは追従せず、3xxのレスポンスをそのまま返してください.
+ * </p>
+ *
+ * @author tatsuya.kumon
+ */
+public interface HttpTransport {
+	/**
+	 * リクエストを送信し、レスポンスを受信する.
+	 * <p>
+	 * レスポンスヘッダを受信した時点で返し、本体は{@link TransportResponse#getContent()}で読み込みます.<br>
+	 * {@link TransportRequest#abort()}が実行された場合は、通信を中断してIOExceptionをthrowしてください.
+	 * </p>
+	 *
+	 * @param request
+	 *            リクエスト
+	 * @return レスポンス
+	 * @throws IOException
+	 *             通信中にエラーが発生した場合
+	 */
+	public TransportResponse execute(TransportRequest request)
+			throws IOException;
+}
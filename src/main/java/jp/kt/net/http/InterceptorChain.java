@@ -0,0 +1,66 @@
+package jp.kt.net.http;
+
+import java.io.IOException;
+
+/**
+ * インターセプタを順に実行し、最後に通信方式で送信する{@link HttpInterceptor.Chain}.
+ * <p>
+ * {@link HttpConnection}クラスからのみ呼び出される.
+ * </p>
+ *
+ * @author tatsuya.kumon
+ */
+class InterceptorChain implements HttpInterceptor.Chain {
+	/** インターセプタ群 */
+	private final HttpInterceptor[] interceptors;
+
+	/** 次に実行するインターセプタの位置 */
+	private final int index;
+
+	/** 通信方式 */
+	private final HttpTransport transport;
+
+	/** 送信するリクエスト */
+	private final TransportRequest request;
+
+	/**
+	 * コンストラクタ.
+	 *
+	 * @param interceptors
+	 *            インターセプタ群
+	 * @param index
+	 *            次に実行するインターセプタの位置
+	 * @param transport
+	 *            通信方式
+	 * @param request
+	 *            送信するリクエスト
+	 */
+	InterceptorChain(HttpInterceptor[] interceptors, int index,
+			HttpTransport transport, TransportRequest request) {
+		this.interceptors = interceptors;
+		this.index = index;
+		this.transport = transport;
+		this.request = request;
+	}
+
+	@Override
+	public TransportRequest getRequest() {
+		return request;
+	}
+
+	@Override
+	public TransportResponse proceed(TransportRequest request)
+			throws IOException {
+		if (index >= interceptors.length) {
+			return transport.execute(request);
+		}
+		TransportResponse response = interceptors[index]
+				.intercept(new InterceptorChain(interceptors, index + 1,
+						transport, request));
+		if (response == null) {
+			throw new IOException("インターセプタがレスポンスを返しませんでした:"
+					+ interceptors[index].getClass().getName());
+		}
+		return response;
+	}
+}
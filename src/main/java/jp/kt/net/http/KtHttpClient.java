@@ -0,0 +1,63 @@
+package jp.kt.net.http;
+
+import org.apache.http.conn.ClientConnectionManager;
+import org.apache.http.conn.scheme.PlainSocketFactory;
+import org.apache.http.conn.scheme.Scheme;
+import org.apache.http.conn.scheme.SchemeRegistry;
+import org.apache.http.conn.ssl.SSLSocketFactory;
+import org.apache.http.impl.client.DefaultHttpClient;
+import org.apache.http.protocol.HttpRequestExecutor;
+
+/**
+ * {@link HttpConnection}で使用するDefaultHttpClient.
+ * <p>
+ * Expect: 100-Continue の応答を判定する{@link ExpectContinueRequestExecutor}を使用します.<br>
+ * 接続は、複数のIPアドレスへ並行して接続を試みる{@link HappyEyeballsConnectionOperator}で行います.<br>
+ * {@link HttpConnection}クラスからのみ呼び出される.
+ * </p>
+ *
+ * @author tatsuya.kumon
+ */
+class KtHttpClient extends DefaultHttpClient {
+	/**
+	 * コンストラクタ.
+	 */
+	KtHttpClient() {
+		super();
+	}
+
+	/**
+	 * コンストラクタ.
+	 *
+	 * @param connectionManager
+	 *            使用するClientConnectionManager
+	 */
+	KtHttpClient(ClientConnectionManager connectionManager) {
+		super(connectionManager, null);
+	}
+
+	@Override
+	protected HttpRequestExecutor createRequestExecutor() {
+		return new ExpectContinueRequestExecutor();
+	}
+
+	@Override
+	protected ClientConnectionManager createClientConnectionManager() {
+		return HappyEyeballsConnectionOperator.createSingleConnManager(
+				getParams(), createDefaultSchemeRegistry());
+	}
+
+	/**
+	 * SSL証明書チェックを行うSchemeRegistryを生成する.
+	 *
+	 * @return SchemeRegistry
+	 */
+	static SchemeRegistry createDefaultSchemeRegistry() {
+		SchemeRegistry registry = new SchemeRegistry();
+		registry.register(new Scheme("http", PlainSocketFactory
+				.getSocketFactory(), 80));
+		registry.register(new Scheme("https", SSLSocketFactory
+				.getSocketFactory(), 443));
+		return registry;
+	}
+}
@@ -0,0 +1,23 @@
+package jp.kt.net.http;
+
+/**
+ * レスポンス本体を1行ずつ処理するインターフェース.
+ * <p>
+ * {@link HttpConnection#executeGetMethodByLine(LineProcessor)}などで使用します.<br>
+ * 受信しながら1行ごとに呼び出されるため、レスポンス全体をメモリやファイルに保持する必要はありません.
+ * </p>
+ *
+ * @author tatsuya.kumon
+ */
+public interface LineProcessor {
+	/**
+	 * 1行を処理する.
+	 *
+	 * @param line
+	 *            行（改行コードは含まない）
+	 * @return 続けて処理する場合はtrue、以降を読み捨てて終了する場合はfalse
+	 * @throws Exception
+	 *             処理中に例外が発生した場合
+	 */
+	boolean processLine(String line) throws Exception;
+}
@@ -10,8 +10,6 @@ import org.apache.http.conn.scheme.PlainSocketFactory;
 import org.apache.http.conn.scheme.Scheme;
 import org.apache.http.conn.scheme.SchemeRegistry;
 import org.apache.http.conn.ssl.SSLSocketFactory;
-import org.apache.http.impl.client.DefaultHttpClient;
-import org.apache.http.impl.conn.SingleClientConnManager;
 import org.apache.http.params.HttpParams;
 
 /**
@@ -22,25 +20,10 @@ import org.apache.http.params.HttpParams;
  *
  * @author tatsuya.kumon
  */
-class NoneSSLVerifierHttpClient extends DefaultHttpClient {
+class NoneSSLVerifierHttpClient extends KtHttpClient {
 	@Override
 	protected ClientConnectionManager createClientConnectionManager() {
-		SchemeRegistry registry = new SchemeRegistry();
-		registry.register(new Scheme("http", PlainSocketFactory
-				.getSocketFactory(), 80));
-
-		SSLSocketFactory sslSocketFactory = null;
-		try {
-			sslSocketFactory = NoneSSLVerifierSSLSocketFactory.create();
-		} catch (KeyManagementException e) {
-			throw new RuntimeException(e);
-		} catch (NoSuchAlgorithmException e) {
-			throw new RuntimeException(e);
-		}
-
-		sslSocketFactory
-				.setHostnameVerifier(SSLSocketFactory.ALLOW_ALL_HOSTNAME_VERIFIER);
-		registry.register(new Scheme("https", sslSocketFactory, 443));
+		SchemeRegistry registry = createSchemeRegistry();
 
 		ClientConnectionManager connManager = null;
 		HttpParams params = getParams();
@@ -65,9 +48,35 @@ class NoneSSLVerifierHttpClient extends DefaultHttpClient {
 		if (factory != null) {
 			connManager = factory.newInstance(params, registry);
 		} else {
-			connManager = new SingleClientConnManager(getParams(), registry);
+			connManager = HappyEyeballsConnectionOperator
+					.createSingleConnManager(getParams(), registry);
 		}
 
 		return connManager;
 	}
+
+	/**
+	 * SSL証明書チェックを行わないSchemeRegistryを生成する.
+	 *
+	 * @return SchemeRegistry
+	 */
+	static SchemeRegistry createSchemeRegistry() {
+		SchemeRegistry registry = new SchemeRegistry();
+		registry.register(new Scheme("http", PlainSocketFactory
+				.getSocketFactory(), 80));
+
+		SSLSocketFactory sslSocketFactory = null;
+		try {
+			sslSocketFactory = NoneSSLVerifierSSLSocketFactory.create();
+		} catch (KeyManagementException e) {
+			throw new RuntimeException(e);
+		} catch (NoSuchAlgorithmException e) {
+			throw new RuntimeException(e);
+		}
+
+		sslSocketFactory
+				.setHostnameVerifier(SSLSocketFactory.ALLOW_ALL_HOSTNAME_VERIFIER);
+		registry.register(new Scheme("https", sslSocketFactory, 443));
+		return registry;
+	}
 }
@@ -0,0 +1,161 @@
+package jp.kt.net.http;
+
+import java.net.URI;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import jp.kt.exception.KtException;
+
+/**
+ * 恒久的なリダイレクト（301、308）の転送先を保持するクラス.
+ * <p>
+ * {@link HttpConnection}でリダイレクトを追従する設定の場合、301、308のレスポンスで返された転送先を記録し、<br>
+ * 以降の同じURLへのリクエストは転送元を経由せずに転送先へ直接送信します.<br>
+ * 記録は有効期間（デフォルト1時間）を過ぎると破棄されます.<br>
+ * 記録するURL数には上限（デフォルト1024）があり、超えた場合は最も古く参照されたURLから破棄します.
+ * </p>
+ *
+ * @author tatsuya.kumon
+ */
+public class PermanentRedirectCache {
+	/** シングルトンインスタンス */
+	private static final PermanentRedirectCache instance = new PermanentRedirectCache();
+
+	/** 記録の有効期間（ミリ秒） */
+	private volatile long ttlMillis = 60 * 60 * 1000L;
+
+	/** 記録するURL数の上限 */
+	private volatile int maxEntries = 1024;
+
+	/** 転送元URLごとの記録（アクセス順） */
+	private final Map<String, RedirectEntry> redirectMap = new LinkedHashMap<String, RedirectEntry>(
+			16, 0.75f, true) {
+		@Override
+		protected boolean removeEldestEntry(
+				Map.Entry<String, RedirectEntry> eldest) {
+			return size() > maxEntries;
+		}
+	};
+
+	/**
+	 * コンストラクタ.
+	 */
+	private PermanentRedirectCache() {
+	}
+
+	/**
+	 * インスタンスを取得する.
+	 *
+	 * @return {@link PermanentRedirectCache}オブジェクト
+	 */
+	public static PermanentRedirectCache getInstance() {
+		return instance;
+	}
+
+	/**
+	 * 記録の有効期間を設定する.
+	 * <p>
+	 * デフォルトは1時間.
+	 * </p>
+	 *
+	 * @param ttlMillis
+	 *            有効期間（ミリ秒）
+	 */
+	public void setTtlMillis(long ttlMillis) {
+		if (ttlMillis <= 0) {
+			throw new KtException("B004", "有効期間の設定が不正な値です。[ttlMillis:"
+					+ ttlMillis + "]");
+		}
+		this.ttlMillis = ttlMillis;
+	}
+
+	/**
+	 * 記録するURL数の上限を設定する.
+	 * <p>
+	 * デフォルトは1024.
+	 * </p>
+	 *
+	 * @param maxEntries
+	 *            上限数
+	 */
+	public synchronized void setMaxEntries(int maxEntries) {
+		if (maxEntries <= 0) {
+			throw new KtException("B004", "上限数の設定が不正な値です。[maxEntries:"
+					+ maxEntries + "]");
+		}
+		this.maxEntries = maxEntries;
+	}
+
+	/**
+	 * 記録しているURL数を返す.
+	 *
+	 * @return URL数
+	 */
+	public synchronized int size() {
+		return redirectMap.size();
+	}
+
+	/**
+	 * 記録を全て破棄する.
+	 */
+	public synchronized void clear() {
+		redirectMap.clear();
+	}
+
+	/**
+	 * 転送先を取得する.
+	 *
+	 * @param uri
+	 *            転送元URL
+	 * @return 転送先URL（記録が無い場合はnull）
+	 */
+	synchronized URI get(URI uri) {
+		String key = uri.toString();
+		RedirectEntry entry = redirectMap.get(key);
+		if (entry == null) {
+			return null;
+		}
+		if (System.currentTimeMillis() >= entry.expireTime) {
+			redirectMap.remove(key);
+			return null;
+		}
+		return entry.location;
+	}
+
+	/**
+	 * 転送先を記録する.
+	 *
+	 * @param uri
+	 *            転送元URL
+	 * @param location
+	 *            転送先URL
+	 */
+	synchronized void put(URI uri, URI location) {
+		redirectMap.put(uri.toString(), new RedirectEntry(location,
+				System.currentTimeMillis() + ttlMillis));
+	}
+
+	/**
+	 * 転送元URLごとの記録.
+	 */
+	private static class RedirectEntry {
+		/** 転送先URL */
+		private final URI location;
+
+		/** 有効期限（エポックミリ秒） */
+		private final long expireTime;
+
+		/**
+		 * コンストラクタ.
+		 *
+		 * @param location
+		 *            転送先URL
+		 * @param expireTime
+		 *            有効期限（エポックミリ秒）
+		 */
+		private RedirectEntry(URI location, long expireTime) {
+			this.location = location;
+			this.expireTime = expireTime;
+		}
+	}
+}
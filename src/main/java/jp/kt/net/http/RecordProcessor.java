@@ -0,0 +1,24 @@
+package jp.kt.net.http;
+
+import java.util.List;
+
+/**
+ * CSVなどの区切り文字形式のレスポンス本体を1レコードずつ処理するインターフェース.
+ * <p>
+ * {@link CsvLineProcessor}に指定して使用します.
+ * </p>
+ *
+ * @author tatsuya.kumon
+ */
+public interface RecordProcessor {
+	/**
+	 * 1レコードを処理する.
+	 *
+	 * @param fields
+	 *            項目値のリスト（囲み文字は除去済み）
+	 * @return 続けて処理する場合はtrue、以降を読み捨てて終了する場合はfalse
+	 * @throws Exception
+	 *             処理中に例外が発生した場合
+	 */
+	boolean processRecord(List<String> fields) throws Exception;
+}
@@ -0,0 +1,18 @@
+package jp.kt.net.http;
+
+/**
+ * {@link RequestScheduler}でのリクエストの優先度.
+ * <p>
+ * 同時実行数に空きが無い場合、優先度の高いリクエストから実行されます.
+ * </p>
+ *
+ * @author tatsuya.kumon
+ */
+public enum RequestPriority {
+	/** 高（応答速度が重要なリクエスト） */
+	HIGH,
+	/** 通常 */
+	NORMAL,
+	/** 低（バッチ処理などのリクエスト） */
+	LOW;
+}
@@ -0,0 +1,673 @@
+package jp.kt.net.http;
+
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.TreeSet;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+import jp.kt.exception.KtException;
+
+/**
+ * HTTPリクエストの実行スケジューラ.
+ * <p>
+ * 複数の{@link HttpConnection}で共有し、同時に実行するリクエスト数を制限します.<br>
+ * 同時実行数に空きが無い場合は待ち合わせ、空きができた時点で{@link RequestPriority}の高いものから、<br>
+ * 同じ優先度の場合は期限の早いものから実行を許可します.<br>
+ * 期限が設定されているリクエストは、実行待ちの間に、接続先ホストのこれまでの平均応答時間から<br>
+ * 期限内に完了できないと判断した時点で{@link KtException}をthrowします（待ち合わせずに実行できる場合はthrowしません）.
+ * </p>
+ * <p>
+ * 優先度ごとに待ち時間の統計を取得できます.
+ * </p>
+ * <p>
+ * {@link #setConcurrencyLimit(AdaptiveConcurrencyLimit)}をセットすると、ホストごとの同時実行数の上限を<br>
+ * 応答時間とエラーから自動調整します.<br>
+ * {@link #setMaxQueuePerHost(int)}をセットすると、ホストごとの実行待ちが上限に達した時点で、<br>
+ * 待ち合わせずに{@link KtException}をthrowします.
+ * </p>
+ *
+ * @author tatsuya.kumon
+ */
+public class RequestScheduler {
+	/** 平均応答時間の計算で直近の値に与える重み */
+	private static final double SERVICE_TIME_WEIGHT = 0.2;
+
+	/** 平均応答時間を記録するホスト数の上限 */
+	private static final int MAX_HOSTS = 1024;
+
+	/** 最大同時実行数 */
+	private final int maxConcurrent;
+
+	/** ホストごとの最大同時実行数 */
+	private int maxPerHost;
+
+	/** ロック */
+	private final ReentrantLock lock = new ReentrantLock();
+
+	/** 実行許可の通知 */
+	private final Condition changed = lock.newCondition();
+
+	/** 実行待ちのリクエスト */
+	private final TreeSet<Waiter> queue = new TreeSet<Waiter>();
+
+	/** 実行中のリクエスト数 */
+	private int activeCount;
+
+	/** ホストごとの実行中のリクエスト数 */
+	private final Map<String, Integer> activePerHost = new HashMap<String, Integer>();
+
+	/** ホストごとの実行待ちのリクエスト数 */
+	private final Map<String, Integer> waitingPerHost = new HashMap<String, Integer>();
+
+	/** ホストごとの実行待ちの上限（0は無制限） */
+	private int maxQueuePerHost;
+
+	/** ホストごとの同時実行数の上限の自動調整（調整しない場合はnull） */
+	private AdaptiveConcurrencyLimit concurrencyLimit;
+
+	/** 待ち順の採番 */
+	private long sequence;
+
+	/** ホストごとの平均応答時間（ミリ秒、アクセス順） */
+	private final Map<String, Double> serviceMillisPerHost = new LinkedHashMap<String, Double>(
+			16, 0.75f, true) {
+		@Override
+		protected boolean removeEldestEntry(Map.Entry<String, Double> eldest) {
+			return size() > MAX_HOSTS;
+		}
+	};
+
+	/** 優先度ごとの統計 */
+	private final Stats[] stats;
+
+	/**
+	 * コンストラクタ.
+	 *
+	 * @param maxConcurrent
+	 *            最大同時実行数
+	 */
+	public RequestScheduler(int maxConcurrent) {
+		if (maxConcurrent <= 0) {
+			throw new KtException("B004", "最大同時実行数の設定が不正な値です。[maxConcurrent:"
+					+ maxConcurrent + "]");
+		}
+		this.maxConcurrent = maxConcurrent;
+		this.maxPerHost = maxConcurrent;
+		this.stats = new Stats[RequestPriority.values().length];
+		for (int i = 0; i < stats.length; i++) {
+			stats[i] = new Stats();
+		}
+	}
+
+	/**
+	 * ホストごとの最大同時実行数を設定する.
+	 * <p>
+	 * デフォルトは最大同時実行数と同じです.
+	 * </p>
+	 *
+	 * @param maxPerHost
+	 *            ホストごとの最大同時実行数
+	 */
+	public void setMaxPerHost(int maxPerHost) {
+		if (maxPerHost <= 0) {
+			throw new KtException("B004", "ホストごとの最大同時実行数の設定が不正な値です。[maxPerHost:"
+					+ maxPerHost + "]");
+		}
+		lock.lock();
+		try {
+			this.maxPerHost = maxPerHost;
+			dispatch();
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * ホストごとの同時実行数の上限を自動調整する設定.
+	 * <p>
+	 * 調整された上限は、{@link #setMaxPerHost(int)}の値を超えません.<br>
+	 * nullを指定すると調整しません.
+	 * </p>
+	 *
+	 * @param concurrencyLimit
+	 *            上限の自動調整
+	 */
+	public void setConcurrencyLimit(AdaptiveConcurrencyLimit concurrencyLimit) {
+		lock.lock();
+		try {
+			this.concurrencyLimit = concurrencyLimit;
+			dispatch();
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * ホストごとの実行待ちの上限を設定する.
+	 * <p>
+	 * デフォルトは0（無制限）.<br>
+	 * 上限に達しているホストへのリクエストは、待ち合わせずに{@link KtException}をthrowします.
+	 * </p>
+	 *
+	 * @param maxQueuePerHost
+	 *            ホストごとの実行待ちの上限（0は無制限）
+	 */
+	public void setMaxQueuePerHost(int maxQueuePerHost) {
+		if (maxQueuePerHost < 0) {
+			throw new KtException("B004", "ホストごとの実行待ちの上限の設定が不正な値です。[maxQueuePerHost:"
+					+ maxQueuePerHost + "]");
+		}
+		lock.lock();
+		try {
+			this.maxQueuePerHost = maxQueuePerHost;
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * ホストの現在の同時実行数の上限を取得する.
+	 *
+	 * @param host
+	 *            接続先ホスト
+	 * @return 同時実行数の上限
+	 */
+	public int getLimit(String host) {
+		lock.lock();
+		try {
+			return hostLimit(host);
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * ホストの同時実行数の上限を返す.
+	 * <p>
+	 * ロックを取得した状態で呼び出すこと.
+	 * </p>
+	 *
+	 * @param host
+	 *            接続先ホスト
+	 * @return 同時実行数の上限
+	 */
+	private int hostLimit(String host) {
+		if (concurrencyLimit == null) {
+			return maxPerHost;
+		}
+		return Math.min(maxPerHost, concurrencyLimit.getLimit(host));
+	}
+
+	/**
+	 * 実行許可を得る.
+	 * <p>
+	 * 許可が得られるまで待ち合わせます.
+	 * </p>
+	 *
+	 * @param host
+	 *            接続先ホスト
+	 * @param priority
+	 *            優先度
+	 * @param deadline
+	 *            期限（エポックミリ秒、期限無しの場合は0）
+	 * @return 実行許可
+	 * @throws KtException
+	 *             期限内に完了できないと判断した場合、もしくは実行待ちが上限に達している場合
+	 * @throws InterruptedException
+	 *             待ち合わせ中に割り込まれた場合
+	 */
+	Ticket acquire(String host, RequestPriority priority, long deadline)
+			throws InterruptedException {
+		long start = System.currentTimeMillis();
+		Stats stat = stats[priority.ordinal()];
+		Waiter waiter;
+		lock.lock();
+		try {
+			Integer waitingCount = waitingPerHost.get(host);
+			if (maxQueuePerHost > 0 && waitingCount != null
+					&& waitingCount >= maxQueuePerHost) {
+				// 実行待ちが上限に達しているので待ち合わせない
+				stat.rejectedCount.incrementAndGet();
+				throw new KtException("A061", "実行待ちが上限に達したためリクエストを中止しました [host]"
+						+ host + " [priority]" + priority + " [実行待ち]"
+						+ waitingCount);
+			}
+			waiter = new Waiter(host, priority, deadline, sequence++);
+			queue.add(waiter);
+			waitingPerHost.put(host, (waitingCount == null) ? 1
+					: waitingCount + 1);
+			dispatch();
+			while (!waiter.admitted) {
+				long remaining = remainingMillis(host, deadline);
+				if (waiter.expired || (deadline > 0 && remaining <= 0)) {
+					// 期限内に完了できない
+					removeWaiter(waiter);
+					stat.rejectedCount.incrementAndGet();
+					throw new KtException("A053", "期限内に完了できないためリクエストを中止しました [host]"
+							+ host + " [priority]" + priority + " [待ち時間]"
+							+ (System.currentTimeMillis() - start) + "ms");
+				}
+				try {
+					if (deadline > 0) {
+						changed.await(remaining, TimeUnit.MILLISECONDS);
+					} else {
+						changed.await();
+					}
+				} catch (InterruptedException e) {
+					if (waiter.admitted) {
+						// 許可済みの場合は返却する
+						releaseLocked(host);
+					} else {
+						removeWaiter(waiter);
+					}
+					throw e;
+				}
+			}
+		} finally {
+			lock.unlock();
+		}
+		long now = System.currentTimeMillis();
+		stat.record(now - start);
+		return new Ticket(host, priority, now - start, now);
+	}
+
+	/**
+	 * 実行許可を返却する.
+	 *
+	 * @param ticket
+	 *            {@link #acquire(String, RequestPriority, long)}で得た実行許可
+	 * @param dropped
+	 *            通信エラー、もしくは過負荷を示すレスポンス（429、5xx）の場合はtrue
+	 */
+	void release(Ticket ticket, boolean dropped) {
+		long now = System.currentTimeMillis();
+		long serviceMillis = now - ticket.startTime;
+		// 期限の判断にはレスポンス本体の受信時間を含めない
+		long respondedTime = (ticket.respondedTime > 0) ? ticket.respondedTime
+				: now;
+		long responseMillis = respondedTime - ticket.startTime;
+		lock.lock();
+		try {
+			Double average = serviceMillisPerHost.get(ticket.host);
+			serviceMillisPerHost.put(ticket.host,
+					(average == null) ? responseMillis : average
+							* (1 - SERVICE_TIME_WEIGHT) + responseMillis
+							* SERVICE_TIME_WEIGHT);
+			if (concurrencyLimit != null) {
+				// 上限を調整してから次のリクエストを許可する
+				concurrencyLimit.onSample(ticket.host, serviceMillis,
+						activePerHost.get(ticket.host), dropped);
+			}
+			releaseLocked(ticket.host);
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * 実行中のリクエスト数を減らして次のリクエストを許可する.
+	 * <p>
+	 * ロックを取得した状態で呼び出すこと.
+	 * </p>
+	 *
+	 * @param host
+	 *            接続先ホスト
+	 */
+	private void releaseLocked(String host) {
+		activeCount--;
+		int count = activePerHost.get(host) - 1;
+		if (count == 0) {
+			activePerHost.remove(host);
+		} else {
+			activePerHost.put(host, count);
+		}
+		dispatch();
+	}
+
+	/**
+	 * 実行待ちから取り除く.
+	 * <p>
+	 * ロックを取得した状態で呼び出すこと.
+	 * </p>
+	 *
+	 * @param waiter
+	 *            実行待ちのリクエスト
+	 */
+	private void removeWaiter(Waiter waiter) {
+		if (queue.remove(waiter)) {
+			decrementWaiting(waiter.host);
+		}
+	}
+
+	/**
+	 * ホストの実行待ちのリクエスト数を減らす.
+	 * <p>
+	 * ロックを取得した状態で呼び出すこと.
+	 * </p>
+	 *
+	 * @param host
+	 *            接続先ホスト
+	 */
+	private void decrementWaiting(String host) {
+		int count = waitingPerHost.get(host) - 1;
+		if (count == 0) {
+			waitingPerHost.remove(host);
+		} else {
+			waitingPerHost.put(host, count);
+		}
+	}
+
+	/**
+	 * 待ち合わせているリクエストに優先度順で実行を許可する.
+	 * <p>
+	 * ロックを取得した状態で呼び出すこと.
+	 * </p>
+	 */
+	private void dispatch() {
+		boolean signal = false;
+		Iterator<Waiter> it = queue.iterator();
+		while (it.hasNext()) {
+			Waiter waiter = it.next();
+			Integer hostCount = activePerHost.get(waiter.host);
+			if (activeCount >= maxConcurrent
+					|| (hostCount != null && hostCount >= hostLimit(waiter.host))) {
+				// 上限に達しているので待ち合わせる
+				if (waiter.deadline > 0
+						&& remainingMillis(waiter.host, waiter.deadline) <= 0) {
+					// 期限内に完了できないものは待ち合わせ側で中止させる
+					waiter.expired = true;
+					it.remove();
+					decrementWaiting(waiter.host);
+					signal = true;
+				}
+				continue;
+			}
+			waiter.admitted = true;
+			it.remove();
+			decrementWaiting(waiter.host);
+			activeCount++;
+			activePerHost.put(waiter.host, (hostCount == null) ? 1
+					: hostCount + 1);
+			signal = true;
+		}
+		if (signal) {
+			changed.signalAll();
+		}
+	}
+
+	/**
+	 * 期限までに実行を開始できる残り時間を返す.
+	 * <p>
+	 * 期限からホストの平均応答時間を差し引いて判断します.<br>
+	 * ロックを取得した状態で呼び出すこと.
+	 * </p>
+	 *
+	 * @param host
+	 *            接続先ホスト
+	 * @param deadline
+	 *            期限（エポックミリ秒）
+	 * @return 残り時間（ミリ秒）
+	 */
+	private long remainingMillis(String host, long deadline) {
+		Double average = serviceMillisPerHost.get(host);
+		return deadline - System.currentTimeMillis()
+				- ((average == null) ? 0 : average.longValue());
+	}
+
+	/**
+	 * 実行中のリクエスト数を取得する.
+	 *
+	 * @return 実行中のリクエスト数
+	 */
+	public int getActiveCount() {
+		lock.lock();
+		try {
+			return activeCount;
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * 実行待ちのリクエスト数を取得する.
+	 *
+	 * @return 実行待ちのリクエスト数
+	 */
+	public int getQueueLength() {
+		lock.lock();
+		try {
+			return queue.size();
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * ホストの平均応答時間を取得する.
+	 * <p>
+	 * 実行開始からレスポンスヘッダを受信するまでの時間の平均です.
+	 * </p>
+	 *
+	 * @param host
+	 *            接続先ホスト
+	 * @return 平均応答時間（ミリ秒、記録が無い場合は0）
+	 */
+	public long getAverageServiceMillis(String host) {
+		lock.lock();
+		try {
+			Double average = serviceMillisPerHost.get(host);
+			return (average == null) ? 0 : average.longValue();
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * 実行を許可したリクエスト数を取得する.
+	 *
+	 * @param priority
+	 *            優先度
+	 * @return 実行を許可したリクエスト数
+	 */
+	public long getAdmittedCount(RequestPriority priority) {
+		return stats[priority.ordinal()].admittedCount.get();
+	}
+
+	/**
+	 * 期限内に完了できないため中止したリクエスト数を取得する.
+	 *
+	 * @param priority
+	 *            優先度
+	 * @return 中止したリクエスト数
+	 */
+	public long getRejectedCount(RequestPriority priority) {
+		return stats[priority.ordinal()].rejectedCount.get();
+	}
+
+	/**
+	 * 実行許可までの平均待ち時間を取得する.
+	 *
+	 * @param priority
+	 *            優先度
+	 * @return 平均待ち時間（ミリ秒）
+	 */
+	public long getAverageWaitMillis(RequestPriority priority) {
+		Stats stat = stats[priority.ordinal()];
+		long count = stat.admittedCount.get();
+		return (count == 0) ? 0 : stat.totalWaitMillis.get() / count;
+	}
+
+	/**
+	 * 実行許可までの最大待ち時間を取得する.
+	 *
+	 * @param priority
+	 *            優先度
+	 * @return 最大待ち時間（ミリ秒）
+	 */
+	public long getMaxWaitMillis(RequestPriority priority) {
+		return stats[priority.ordinal()].maxWaitMillis.get();
+	}
+
+	/**
+	 * 実行許可.
+	 */
+	static class Ticket {
+		/** 接続先ホスト */
+		private final String host;
+
+		/** 優先度 */
+		private final RequestPriority priority;
+
+		/** 待ち時間（ミリ秒） */
+		private final long waitMillis;
+
+		/** 実行開始時刻 */
+		private final long startTime;
+
+		/** レスポンスヘッダの受信時刻（受信していない場合は0） */
+		private volatile long respondedTime;
+
+		/**
+		 * コンストラクタ.
+		 *
+		 * @param host
+		 *            接続先ホスト
+		 * @param priority
+		 *            優先度
+		 * @param waitMillis
+		 *            待ち時間（ミリ秒）
+		 * @param startTime
+		 *            実行開始時刻
+		 */
+		private Ticket(String host, RequestPriority priority, long waitMillis,
+				long startTime) {
+			this.host = host;
+			this.priority = priority;
+			this.waitMillis = waitMillis;
+			this.startTime = startTime;
+		}
+
+		/**
+		 * レスポンスヘッダを受信したことを記録する.
+		 */
+		void responded() {
+			respondedTime = System.currentTimeMillis();
+		}
+
+		/**
+		 * 待ち時間を返す.
+		 *
+		 * @return 待ち時間（ミリ秒）
+		 */
+		long getWaitMillis() {
+			return waitMillis;
+		}
+
+		/**
+		 * 優先度を返す.
+		 *
+		 * @return 優先度
+		 */
+		RequestPriority getPriority() {
+			return priority;
+		}
+	}
+
+	/**
+	 * 実行待ちのリクエスト.
+	 */
+	private static class Waiter implements Comparable<Waiter> {
+		/** 接続先ホスト */
+		private final String host;
+
+		/** 優先度 */
+		private final RequestPriority priority;
+
+		/** 期限（エポックミリ秒、期限無しの場合は0） */
+		private final long deadline;
+
+		/** 待ち順 */
+		private final long sequence;
+
+		/** 実行許可済みフラグ */
+		private boolean admitted;
+
+		/** 期限切れフラグ */
+		private boolean expired;
+
+		/**
+		 * コンストラクタ.
+		 *
+		 * @param host
+		 *            接続先ホスト
+		 * @param priority
+		 *            優先度
+		 * @param deadline
+		 *            期限
+		 * @param sequence
+		 *            待ち順
+		 */
+		private Waiter(String host, RequestPriority priority, long deadline,
+				long sequence) {
+			this.host = host;
+			this.priority = priority;
+			this.deadline = deadline;
+			this.sequence = sequence;
+		}
+
+		@Override
+		public int compareTo(Waiter other) {
+			if (priority != other.priority) {
+				return priority.compareTo(other.priority);
+			}
+			// 期限無しは最後
+			long d1 = (deadline > 0) ? deadline : Long.MAX_VALUE;
+			long d2 = (other.deadline > 0) ? other.deadline : Long.MAX_VALUE;
+			if (d1 != d2) {
+				return (d1 < d2) ? -1 : 1;
+			}
+			return (sequence < other.sequence) ? -1
+					: ((sequence == other.sequence) ? 0 : 1);
+		}
+	}
+
+	/**
+	 * 待ち時間の統計.
+	 */
+	private static class Stats {
+		/** 実行を許可したリクエスト数 */
+		private final AtomicLong admittedCount = new AtomicLong();
+
+		/** 中止したリクエスト数 */
+		private final AtomicLong rejectedCount = new AtomicLong();
+
+		/** 待ち時間の合計（ミリ秒） */
+		private final AtomicLong totalWaitMillis = new AtomicLong();
+
+		/** 最大待ち時間（ミリ秒） */
+		private final AtomicLong maxWaitMillis = new AtomicLong();
+
+		/**
+		 * 待ち時間を記録する.
+		 *
+		 * @param waitMillis
+		 *            待ち時間（ミリ秒）
+		 */
+		private void record(long waitMillis) {
+			admittedCount.incrementAndGet();
+			totalWaitMillis.addAndGet(waitMillis);
+			while (true) {
+				long max = maxWaitMillis.get();
+				if (waitMillis <= max
+						|| maxWaitMillis.compareAndSet(max, waitMillis)) {
+					return;
+				}
+			}
+		}
+	}
+}
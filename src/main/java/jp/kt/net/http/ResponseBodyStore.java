@@ -0,0 +1,425 @@
+package jp.kt.net.http;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.SequenceInputStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import jp.kt.exception.KtException;
+import jp.kt.net.io.BufferPool;
+
+/**
+ * レスポンス本体の格納領域.
+ * <p>
+ * 閾値以下のサイズであればメモリ上に保持し、閾値を超えた時点で一時ファイルへ退避します.<br>
+ * メモリ上に保持する分は{@link ResponseMemoryBudget}で確保し、確保できない場合も一時ファイルへ退避します.<br>
+ * メモリ上では{@link BufferPool}から取得したバッファを連結して保持するため、拡張時のコピーは発生しません.<br>
+ * どちらの状態であっても同じメソッドで内容を参照できます.<br>
+ * {@link HttpConnection}クラスからのみ呼び出される.
+ * </p>
+ *
+ * @author tatsuya.kumon
+ */
+class ResponseBodyStore extends OutputStream {
+	/** 一時ファイル名のプレフィックス */
+	private static final String TEMP_FILE_PREFIX = "kt_net_response_";
+
+	/** 一時ファイル名のサフィックス */
+	private static final String TEMP_FILE_SUFFIX = ".tmp";
+
+	/** バッファの最小サイズ */
+	private static final int MIN_CHUNK_SIZE = 8 * 1024;
+
+	/** メモリ上に保持する最大バイト数 */
+	private final int memoryThreshold;
+
+	/** 想定サイズ（不明な場合は負の値） */
+	private final long expectedLength;
+
+	/** メモリ上のバッファ群 */
+	private List<byte[]> chunks = new ArrayList<byte[]>();
+
+	/** 最後のバッファの使用済みバイト数 */
+	private int lastChunkUsed;
+
+	/** 書き込み済みバイト数 */
+	private long size;
+
+	/** 退避先の一時ファイル */
+	private File spillFile;
+
+	/** 一時ファイルへの出力ストリーム */
+	private OutputStream spillStream;
+
+	/** 書き込み完了フラグ */
+	private boolean closed;
+
+	/** メモリ上のバッファもしくは一時ファイルを手放した回数（取得済みストリームの無効化に使用する） */
+	private int generation;
+
+	/** バッファプール */
+	private final BufferPool pool;
+
+	/** メモリ使用量の管理 */
+	private final ResponseMemoryBudget budget;
+
+	/** メモリの確保情報 */
+	private final ResponseMemoryBudget.Reservation reservation;
+
+	/**
+	 * コンストラクタ.
+	 *
+	 * @param memoryThreshold
+	 *            メモリ上に保持する最大バイト数
+	 * @param expectedLength
+	 *            想定サイズ（不明な場合は負の値）
+	 */
+	ResponseBodyStore(int memoryThreshold, long expectedLength) {
+		this.memoryThreshold = memoryThreshold;
+		this.expectedLength = expectedLength;
+		this.pool = BufferPool.getInstance();
+		this.budget = ResponseMemoryBudget.getInstance();
+		this.reservation = budget.register(this);
+	}
+
+	@Override
+	public void write(int b) throws IOException {
+		write(new byte[] { (byte) b }, 0, 1);
+	}
+
+	@Override
+	public void write(byte[] b, int off, int len) throws IOException {
+		if (closed) {
+			throw new IOException("書き込み完了済みです");
+		}
+		if (spillStream == null
+				&& (expectedLength > memoryThreshold || size + len > memoryThreshold)) {
+			// 閾値を超えるので一時ファイルへ退避
+			spill();
+		}
+		int remaining = len;
+		while (remaining > 0 && spillStream == null) {
+			byte[] chunk = chunks.isEmpty() ? null : chunks
+					.get(chunks.size() - 1);
+			if (chunk == null || lastChunkUsed == chunk.length) {
+				// バッファ追加
+				chunk = allocateChunk();
+				if (chunk == null) {
+					// メモリ上限に達しているので一時ファイルへ退避
+					budget.countSpill();
+					spill();
+					break;
+				}
+			}
+			int copyLength = Math.min(remaining, chunk.length - lastChunkUsed);
+			System.arraycopy(b, off + len - remaining, chunk, lastChunkUsed,
+					copyLength);
+			lastChunkUsed += copyLength;
+			remaining -= copyLength;
+		}
+		if (remaining > 0) {
+			spillStream.write(b, off + len - remaining, remaining);
+		}
+		size += len;
+	}
+
+	/**
+	 * バッファを追加する.
+	 * <p>
+	 * 想定サイズが小さい場合はプールを使用せず想定サイズ分のみ生成します.
+	 * </p>
+	 *
+	 * @return 追加したバッファ（メモリ上限に達している場合はnull）
+	 */
+	private byte[] allocateChunk() {
+		int chunkSize;
+		boolean pooled;
+		if (chunks.isEmpty() && expectedLength > 0
+				&& expectedLength < MIN_CHUNK_SIZE) {
+			chunkSize = (int) expectedLength;
+			pooled = false;
+		} else {
+			// 書き込み済みサイズに応じて大きくする（プールのサイズ区分に合わせる）
+			chunkSize = Integer.highestOneBit((int) Math.min(
+					Math.max(size, MIN_CHUNK_SIZE),
+					BufferPool.TRANSFER_BUFFER_SIZE));
+			pooled = true;
+		}
+		if (!budget.tryReserve(reservation, chunkSize)) {
+			return null;
+		}
+		byte[] chunk = pooled ? pool.acquire(chunkSize) : new byte[chunkSize];
+		chunks.add(chunk);
+		lastChunkUsed = 0;
+		return chunk;
+	}
+
+	/**
+	 * メモリ上の内容を一時ファイルへ退避する.
+	 *
+	 * @throws IOException
+	 */
+	private void spill() throws IOException {
+		spillFile = File.createTempFile(TEMP_FILE_PREFIX, TEMP_FILE_SUFFIX);
+		// 解放されずにGCされた場合は、ResponseMemoryBudgetが削除する
+		reservation.setTempFile(spillFile);
+		spillStream = new BufferedOutputStream(new FileOutputStream(spillFile),
+				BufferPool.TRANSFER_BUFFER_SIZE);
+		for (int i = 0; i < chunks.size(); i++) {
+			spillStream.write(chunks.get(i), 0, chunkLength(i));
+		}
+		releaseChunks();
+	}
+
+	@Override
+	public void flush() throws IOException {
+		if (spillStream != null) {
+			spillStream.flush();
+		}
+	}
+
+	/**
+	 * 書き込みを完了する.
+	 * <p>
+	 * 一時ファイルへ退避している場合はファイルを閉じます.
+	 * </p>
+	 */
+	@Override
+	public void close() throws IOException {
+		if (closed) {
+			return;
+		}
+		closed = true;
+		if (spillStream != null) {
+			spillStream.close();
+			spillStream = null;
+		}
+	}
+
+	/**
+	 * 格納されているバイト数を返す.
+	 *
+	 * @return バイト数
+	 */
+	long size() {
+		return size;
+	}
+
+	/**
+	 * 一時ファイルへ退避しているかを返す.
+	 *
+	 * @return 退避していればtrue
+	 */
+	boolean isSpilled() {
+		return spillFile != null;
+	}
+
+	/**
+	 * 格納内容を読み込むストリームを返す.
+	 * <p>
+	 * {@link #release()}の後に読み込むと、IOExceptionがthrowされます.<br>
+	 * プールへ返却したバッファは他の処理で再利用されるため、解放後に内容を読み込むことはありません.
+	 * </p>
+	 *
+	 * @return InputStream
+	 * @throws IOException
+	 */
+	synchronized InputStream openStream() throws IOException {
+		checkReadable();
+		if (spillFile != null) {
+			return new StoreInputStream(new FileInputStream(spillFile));
+		}
+		List<InputStream> streams = new ArrayList<InputStream>(chunks.size());
+		for (int i = 0; i < chunks.size(); i++) {
+			streams.add(new ByteArrayInputStream(chunks.get(i), 0,
+					chunkLength(i)));
+		}
+		return new StoreInputStream(new SequenceInputStream(Collections
+				.enumeration(streams)));
+	}
+
+	/**
+	 * 格納内容をバイト配列で返す.
+	 * <p>
+	 * 一時ファイルへ退避している場合はファイルを読み込みます.
+	 * </p>
+	 *
+	 * @return バイト配列
+	 * @throws IOException
+	 */
+	byte[] toByteArray() throws IOException {
+		checkReadable();
+		if (size > Integer.MAX_VALUE) {
+			throw new KtException("A051", "レスポンスが大きすぎるため配列に格納できません [size="
+					+ size + "]");
+		}
+		byte[] data = new byte[(int) size];
+		if (spillFile == null) {
+			int offset = 0;
+			for (int i = 0; i < chunks.size(); i++) {
+				int length = chunkLength(i);
+				System.arraycopy(chunks.get(i), 0, data, offset, length);
+				offset += length;
+			}
+			return data;
+		}
+		InputStream is = new FileInputStream(spillFile);
+		try {
+			int offset = 0;
+			while (offset < data.length) {
+				int read = is.read(data, offset, data.length - offset);
+				if (read < 0) {
+					break;
+				}
+				offset += read;
+			}
+		} finally {
+			is.close();
+		}
+		return data;
+	}
+
+	/**
+	 * バッファの使用済みバイト数を返す.
+	 *
+	 * @param index
+	 *            バッファのインデックス
+	 * @return 使用済みバイト数
+	 */
+	private int chunkLength(int index) {
+		return (index == chunks.size() - 1) ? lastChunkUsed : chunks
+				.get(index).length;
+	}
+
+	/**
+	 * 参照可能な状態であるかチェックする.
+	 */
+	private void checkReadable() {
+		if (chunks == null) {
+			throw new KtException("A051", "レスポンス本体は解放済みです");
+		}
+	}
+
+	/**
+	 * メモリ上のバッファをプールへ返却する.
+	 * <p>
+	 * 返却前に取得したストリームは読み込めなくなります.
+	 * </p>
+	 */
+	private synchronized void releaseChunks() {
+		generation++;
+		for (byte[] chunk : chunks) {
+			if (chunk.length >= MIN_CHUNK_SIZE) {
+				pool.release(chunk);
+			}
+		}
+		chunks.clear();
+		lastChunkUsed = 0;
+		budget.release(reservation);
+	}
+
+	/**
+	 * 保持している領域を解放する.
+	 * <p>
+	 * メモリ上のバッファはプールへ返却し、一時ファイルへ退避している場合はファイルを削除します.<br>
+	 * {@link #openStream()}で取得したストリームも読み込めなくなります.
+	 * </p>
+	 */
+	synchronized void release() {
+		if (chunks == null) {
+			return;
+		}
+		releaseChunks();
+		chunks = null;
+		if (spillStream != null) {
+			try {
+				spillStream.close();
+			} catch (IOException e) {
+				// 削除するので無視
+			}
+			spillStream = null;
+		}
+		if (spillFile != null) {
+			spillFile.delete();
+			spillFile = null;
+		}
+		budget.unregister(reservation);
+		closed = true;
+	}
+
+	/**
+	 * 格納内容を読み込むストリーム.
+	 * <p>
+	 * 読み込みのたびに、取得後にバッファや一時ファイルが手放されていないかを確認します.<br>
+	 * 確認と読み込みの間に解放されないよう、格納領域のロックを取得して読み込みます.
+	 * </p>
+	 */
+	private class StoreInputStream extends FilterInputStream {
+		/** 取得時の世代 */
+		private final int openedGeneration;
+
+		/**
+		 * コンストラクタ.
+		 *
+		 * @param in
+		 *            格納内容のストリーム
+		 */
+		private StoreInputStream(InputStream in) {
+			super(in);
+			this.openedGeneration = generation;
+		}
+
+		/**
+		 * 読み込み可能であるかチェックする.
+		 *
+		 * @throws IOException
+		 *             解放済みの場合
+		 */
+		private void checkGeneration() throws IOException {
+			if (generation != openedGeneration) {
+				throw new IOException("レスポンス本体は解放済みです");
+			}
+		}
+
+		@Override
+		public int read() throws IOException {
+			synchronized (ResponseBodyStore.this) {
+				checkGeneration();
+				return super.read();
+			}
+		}
+
+		@Override
+		public int read(byte[] b, int off, int len) throws IOException {
+			synchronized (ResponseBodyStore.this) {
+				checkGeneration();
+				return super.read(b, off, len);
+			}
+		}
+
+		@Override
+		public long skip(long n) throws IOException {
+			synchronized (ResponseBodyStore.this) {
+				checkGeneration();
+				return super.skip(n);
+			}
+		}
+
+		@Override
+		public int available() throws IOException {
+			synchronized (ResponseBodyStore.this) {
+				checkGeneration();
+				return super.available();
+			}
+		}
+	}
+}
@@ -0,0 +1,285 @@
+package jp.kt.net.http;
+
+import java.io.File;
+import java.lang.ref.PhantomReference;
+import java.lang.ref.Reference;
+import java.lang.ref.ReferenceQueue;
+import java.util.Collections;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import jp.kt.exception.KtException;
+import jp.kt.prop.KtProperties;
+import jp.kt.tool.Validator;
+
+/**
+ * レスポンス本体のメモリ使用量をプロセス全体で管理するクラス.
+ * <p>
+ * {@link HttpConnection}がメモリ上に保持するレスポンス本体の合計バイト数に上限を設けます.<br>
+ * 上限に達している場合、以降のレスポンス本体は待ち合わせることなく一時ファイルへ退避されます.<br>
+ * 上限のデフォルトは、kt.propertiesの下記値を参照します.<br>
+ * 未設定の場合はJVMの最大ヒープサイズの1/4です.
+ * </p>
+ * <ul>
+ * <li>上限バイト数：kt.net.httpclient.response.memory.budget</li>
+ * </ul>
+ * <p>
+ * {@link HttpConnection.ResponseData#release()}されずに破棄されたレスポンス本体の分は、GCされた時点で解放されます.<br>
+ * 一時ファイルへ退避していた場合は、GCされた後の次の受信開始時などに一時ファイルを削除します.
+ * </p>
+ *
+ * @author tatsuya.kumon
+ */
+public class ResponseMemoryBudget {
+	/** 上限バイト数のプロパティファイルのキー */
+	private static final String MAX_BYTES_KEY = "kt.net.httpclient.response.memory.budget";
+
+	/** シングルトンインスタンス */
+	private static final ResponseMemoryBudget instance = new ResponseMemoryBudget();
+
+	/** 上限バイト数 */
+	private volatile long maxBytes;
+
+	/** 使用中のバイト数 */
+	private final AtomicLong usedBytes = new AtomicLong();
+
+	/** 使用中バイト数の最大値 */
+	private final AtomicLong peakBytes = new AtomicLong();
+
+	/** 上限到達により一時ファイルへ退避した回数 */
+	private final AtomicLong spillCount = new AtomicLong();
+
+	/** GCされた確保情報を受け取るキュー */
+	private final ReferenceQueue<Object> queue = new ReferenceQueue<Object>();
+
+	/** 有効な確保情報 */
+	private final Set<Reservation> reservations = Collections
+			.newSetFromMap(new ConcurrentHashMap<Reservation, Boolean>());
+
+	/**
+	 * コンストラクタ.
+	 */
+	private ResponseMemoryBudget() {
+		KtProperties prop = KtProperties.getInstance();
+		long max = Runtime.getRuntime().maxMemory() / 4;
+		if (prop.existKey(MAX_BYTES_KEY)) {
+			String maxStr = prop.getString(MAX_BYTES_KEY);
+			if (!Validator.isEmpty(maxStr)) {
+				max = Long.parseLong(maxStr);
+			}
+		}
+		this.maxBytes = max;
+	}
+
+	/**
+	 * インスタンスを取得する.
+	 *
+	 * @return {@link ResponseMemoryBudget}オブジェクト
+	 */
+	public static ResponseMemoryBudget getInstance() {
+		return instance;
+	}
+
+	/**
+	 * 上限バイト数を設定する.
+	 *
+	 * @param maxBytes
+	 *            上限バイト数
+	 */
+	public void setMaxBytes(long maxBytes) {
+		if (maxBytes < 0) {
+			throw new KtException("B004", "レスポンス本体のメモリ上限の設定が不正な値です。[maxBytes:"
+					+ maxBytes + "]");
+		}
+		this.maxBytes = maxBytes;
+	}
+
+	/**
+	 * 上限バイト数を取得する.
+	 *
+	 * @return 上限バイト数
+	 */
+	public long getMaxBytes() {
+		return maxBytes;
+	}
+
+	/**
+	 * 使用中のバイト数を取得する.
+	 *
+	 * @return 使用中のバイト数
+	 */
+	public long getUsedBytes() {
+		expunge();
+		return usedBytes.get();
+	}
+
+	/**
+	 * 使用中バイト数の最大値を取得する.
+	 *
+	 * @return 使用中バイト数の最大値
+	 */
+	public long getPeakBytes() {
+		return peakBytes.get();
+	}
+
+	/**
+	 * 上限到達により一時ファイルへ退避した回数を取得する.
+	 *
+	 * @return 退避回数
+	 */
+	public long getSpillCount() {
+		return spillCount.get();
+	}
+
+	/**
+	 * 確保情報を生成する.
+	 *
+	 * @param owner
+	 *            確保した領域を保持するオブジェクト
+	 * @return 確保情報
+	 */
+	Reservation register(Object owner) {
+		expunge();
+		Reservation reservation = new Reservation(owner, queue);
+		reservations.add(reservation);
+		return reservation;
+	}
+
+	/**
+	 * 指定バイト数の確保を試みる.
+	 *
+	 * @param reservation
+	 *            確保情報
+	 * @param bytes
+	 *            確保するバイト数
+	 * @return 確保できた場合はtrue、上限に達している場合はfalse
+	 */
+	boolean tryReserve(Reservation reservation, long bytes) {
+		expunge();
+		while (true) {
+			long current = usedBytes.get();
+			long next = current + bytes;
+			if (next > maxBytes) {
+				return false;
+			}
+			if (usedBytes.compareAndSet(current, next)) {
+				reservation.bytes.addAndGet(bytes);
+				updatePeak(next);
+				return true;
+			}
+		}
+	}
+
+	/**
+	 * 上限到達により一時ファイルへ退避したことを記録する.
+	 */
+	void countSpill() {
+		spillCount.incrementAndGet();
+	}
+
+	/**
+	 * 確保した領域を全て解放する.
+	 * <p>
+	 * 確保情報は引き続き有効です.
+	 * </p>
+	 *
+	 * @param reservation
+	 *            確保情報
+	 */
+	void release(Reservation reservation) {
+		usedBytes.addAndGet(-reservation.bytes.getAndSet(0));
+	}
+
+	/**
+	 * 確保した領域を全て解放し、確保情報を破棄する.
+	 * <p>
+	 * 保持オブジェクトが一時ファイルを削除した後に実行します.
+	 * </p>
+	 *
+	 * @param reservation
+	 *            確保情報
+	 */
+	void unregister(Reservation reservation) {
+		release(reservation);
+		reservations.remove(reservation);
+		reservation.clear();
+	}
+
+	/**
+	 * 使用中バイト数の最大値を更新する.
+	 *
+	 * @param used
+	 *            使用中のバイト数
+	 */
+	private void updatePeak(long used) {
+		while (true) {
+			long peak = peakBytes.get();
+			if (used <= peak || peakBytes.compareAndSet(peak, used)) {
+				return;
+			}
+		}
+	}
+
+	/**
+	 * GCされた保持オブジェクトの分を解放し、一時ファイルを削除する.
+	 */
+	private void expunge() {
+		Reference<?> ref;
+		while ((ref = queue.poll()) != null) {
+			Reservation reservation = (Reservation) ref;
+			unregister(reservation);
+			reservation.deleteTempFile();
+		}
+	}
+
+	/**
+	 * 確保情報.
+	 * <p>
+	 * 保持オブジェクトがGCされた場合にも解放できるよう、保持オブジェクトとは別に確保バイト数を管理します.
+	 * </p>
+	 */
+	static class Reservation extends PhantomReference<Object> {
+		/** 確保しているバイト数 */
+		private final AtomicLong bytes = new AtomicLong();
+
+		/** 保持オブジェクトが退避した一時ファイル */
+		private volatile File tempFile;
+
+		/**
+		 * コンストラクタ.
+		 *
+		 * @param owner
+		 *            保持オブジェクト
+		 * @param queue
+		 *            GC時に登録されるキュー
+		 */
+		private Reservation(Object owner, ReferenceQueue<Object> queue) {
+			super(owner, queue);
+		}
+
+		/**
+		 * 保持オブジェクトが退避した一時ファイルを設定する.
+		 * <p>
+		 * 保持オブジェクトが解放されずにGCされた場合に削除します.
+		 * </p>
+		 *
+		 * @param tempFile
+		 *            一時ファイル
+		 */
+		void setTempFile(File tempFile) {
+			this.tempFile = tempFile;
+		}
+
+		/**
+		 * 一時ファイルを削除する.
+		 */
+		private void deleteTempFile() {
+			File file = tempFile;
+			if (file != null) {
+				file.delete();
+				tempFile = null;
+			}
+		}
+	}
+}
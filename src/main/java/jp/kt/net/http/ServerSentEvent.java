@@ -0,0 +1,72 @@
+package jp.kt.net.http;
+
+/**
+ * {@link EventStreamClient}で受信したイベント.
+ *
+ * @author tatsuya.kumon
+ */
+public class ServerSentEvent {
+	/** イベントID */
+	private final String id;
+
+	/** イベント種別 */
+	private final String event;
+
+	/** データ */
+	private final String data;
+
+	/**
+	 * コンストラクタ.
+	 *
+	 * @param id
+	 *            イベントID
+	 * @param event
+	 *            イベント種別
+	 * @param data
+	 *            データ
+	 */
+	ServerSentEvent(String id, String event, String data) {
+		this.id = id;
+		this.event = event;
+		this.data = data;
+	}
+
+	/**
+	 * イベントIDを取得する.
+	 * <p>
+	 * サーバから指定されていない場合は、それ以前に受信した最後のイベントIDを返します.
+	 * </p>
+	 *
+	 * @return イベントID（一度も指定されていない場合はnull）
+	 */
+	public String getId() {
+		return id;
+	}
+
+	/**
+	 * イベント種別を取得する.
+	 *
+	 * @return イベント種別（サーバから指定されていない場合は"message"）
+	 */
+	public String getEvent() {
+		return event;
+	}
+
+	/**
+	 * データを取得する.
+	 * <p>
+	 * 複数行のデータは改行コード（LF）で連結されます.<br>
+	 * ロングポーリングの場合はレスポンス本体です.
+	 * </p>
+	 *
+	 * @return データ
+	 */
+	public String getData() {
+		return data;
+	}
+
+	@Override
+	public String toString() {
+		return "[id]" + id + " [event]" + event + " [data]" + data;
+	}
+}
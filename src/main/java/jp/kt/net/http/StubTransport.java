@@ -0,0 +1,144 @@
+package jp.kt.net.http;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 実際には通信せず、登録したレスポンスを返す{@link HttpTransport}.
+ * <p>
+ * テストや性能比較で、接続先サーバを用意せずに{@link HttpConnection}を実行するために使用します.<br>
+ * レスポンスはメソッドとURL（クエリ文字列を含む）ごとに登録し、登録した順に返します.<br>
+ * 最後に登録したレスポンスは、以降のリクエストに対して繰り返し返します.<br>
+ * レスポンスが登録されていないリクエストに対しては404を返します.
+ * </p>
+ * <p>
+ * 受け付けたリクエストは{@link #getRequests()}で取得できます.
+ * </p>
+ *
+ * @author tatsuya.kumon
+ */
+public class StubTransport implements HttpTransport {
+	/** メソッドとURLごとのレスポンス */
+	private final Map<String, LinkedList<ByteArrayTransportResponse>> responseMap = new HashMap<String, LinkedList<ByteArrayTransportResponse>>();
+
+	/** 受け付けたリクエスト */
+	private final List<TransportRequest> requestList = new ArrayList<TransportRequest>();
+
+	/**
+	 * レスポンスを登録する.
+	 *
+	 * @param method
+	 *            メソッド名
+	 * @param url
+	 *            URL（クエリ文字列を含む）
+	 * @param statusCode
+	 *            ステータスコード
+	 * @param contentType
+	 *            Content-Type（不要な場合はnull）
+	 * @param body
+	 *            レスポンス本体
+	 */
+	public void register(String method, String url, int statusCode,
+			String contentType, byte[] body) {
+		register(method, url, statusCode, contentType, body,
+				new ArrayList<TransportHeader>());
+	}
+
+	/**
+	 * レスポンスを登録する.
+	 *
+	 * @param method
+	 *            メソッド名
+	 * @param url
+	 *            URL（クエリ文字列を含む）
+	 * @param statusCode
+	 *            ステータスコード
+	 * @param contentType
+	 *            Content-Type（不要な場合はnull）
+	 * @param body
+	 *            レスポンス本体
+	 * @param headerList
+	 *            その他のレスポンスヘッダ
+	 */
+	public synchronized void register(String method, String url,
+			int statusCode, String contentType, byte[] body,
+			List<TransportHeader> headerList) {
+		List<TransportHeader> headers = new ArrayList<TransportHeader>();
+		if (contentType != null) {
+			headers.add(new TransportHeader("Content-Type", contentType));
+		}
+		if (body != null) {
+			headers.add(new TransportHeader("Content-Length", String
+					.valueOf(body.length)));
+		}
+		headers.addAll(headerList);
+		String key = method + " " + url;
+		LinkedList<ByteArrayTransportResponse> queue = responseMap.get(key);
+		if (queue == null) {
+			queue = new LinkedList<ByteArrayTransportResponse>();
+			responseMap.put(key, queue);
+		}
+		queue.add(new ByteArrayTransportResponse(statusCode,
+				reasonPhrase(statusCode), headers, body));
+	}
+
+	/**
+	 * 受け付けたリクエストを取得する.
+	 *
+	 * @return 受け付けた順のリクエスト
+	 */
+	public synchronized List<TransportRequest> getRequests() {
+		return new ArrayList<TransportRequest>(requestList);
+	}
+
+	/**
+	 * 登録したレスポンスと受け付けたリクエストを全て破棄する.
+	 */
+	public synchronized void clear() {
+		responseMap.clear();
+		requestList.clear();
+	}
+
+	@Override
+	public synchronized TransportResponse execute(TransportRequest request)
+			throws IOException {
+		if (request.isAborted()) {
+			throw new IOException("通信が中断されました");
+		}
+		requestList.add(request);
+		LinkedList<ByteArrayTransportResponse> queue = responseMap
+				.get(request.getMethod() + " " + request.getUri());
+		if (queue == null || queue.isEmpty()) {
+			return new ByteArrayTransportResponse(404, reasonPhrase(404),
+					new ArrayList<TransportHeader>(), null);
+		}
+		// 最後のレスポンスは繰り返し返す
+		ByteArrayTransportResponse response = (queue.size() > 1) ? queue
+				.removeFirst() : queue.getFirst();
+		return ("HEAD".equals(request.getMethod())) ? new ByteArrayTransportResponse(
+				response.getStatusCode(), response.getReasonPhrase(),
+				response.getHeaders(), null) : response;
+	}
+
+	/**
+	 * ステータスコードに対応するステータステキストを返す.
+	 *
+	 * @param statusCode
+	 *            ステータスコード
+	 * @return ステータステキスト
+	 */
+	private static String reasonPhrase(int statusCode) {
+		switch (statusCode) {
+		case 200:
+			return "OK";
+		case 404:
+			return "Not Found";
+		default:
+			return "";
+		}
+	}
+}
@@ -0,0 +1,50 @@
+package jp.kt.net.http;
+
+/**
+ * {@link HttpTransport}でやり取りするHTTPヘッダ.
+ *
+ * @author tatsuya.kumon
+ */
+public class TransportHeader {
+	/** ヘッダ名 */
+	private final String name;
+
+	/** ヘッダ値 */
+	private final String value;
+
+	/**
+	 * コンストラクタ.
+	 *
+	 * @param name
+	 *            ヘッダ名
+	 * @param value
+	 *            ヘッダ値
+	 */
+	public TransportHeader(String name, String value) {
+		this.name = name;
+		this.value = value;
+	}
+
+	/**
+	 * ヘッダ名を取得する.
+	 *
+	 * @return ヘッダ名
+	 */
+	public String getName() {
+		return name;
+	}
+
+	/**
+	 * ヘッダ値を取得する.
+	 *
+	 * @return ヘッダ値
+	 */
+	public String getValue() {
+		return value;
+	}
+
+	@Override
+	public String toString() {
+		return name + ": " + value;
+	}
+}
@@ -0,0 +1,503 @@
+package jp.kt.net.http;
+
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * {@link HttpTransport}へ渡すリクエスト.
+ * <p>
+ * {@link HttpConnection}の設定内容から1回の通信ごとに生成されます.<br>
+ * タイムアウトは、期限が設定されている場合は残り時間以内に短縮された値です.
+ * </p>
+ *
+ * @author tatsuya.kumon
+ */
+public class TransportRequest {
+	/** 別の接続先へのリダイレクトで引き継がない認証情報のヘッダ */
+	static final String[] CREDENTIAL_HEADERS = { "Authorization", "Cookie",
+			"Proxy-Authorization" };
+
+	/** メソッド名 */
+	private final String method;
+
+	/** リクエストURL */
+	private final URI uri;
+
+	/** リクエストヘッダ群 */
+	private final List<TransportHeader> headerList;
+
+	/** リクエスト本体（本体が無い場合はnull） */
+	private final byte[] body;
+
+	/** リクエスト本体のContent-Type */
+	private final String contentType;
+
+	/** 接続タイムアウト（ミリ秒） */
+	private int connectTimeoutMillis;
+
+	/** ソケットタイムアウト（ミリ秒） */
+	private int readTimeoutMillis;
+
+	/** 処理タイムアウト（ミリ秒） */
+	private int timeoutMillis;
+
+	/** プロキシアドレス */
+	private String proxyAddress;
+
+	/** プロキシポート番号 */
+	private int proxyPort;
+
+	/** BASIC認証用ID */
+	private String basicAuthId;
+
+	/** BASIC認証用パスワード */
+	private String basicAuthPassword;
+
+	/** ユーザエージェント */
+	private String userAgent;
+
+	/** SSL証明書チェック可否 */
+	private boolean isSslVerify = true;
+
+	/** 複数のIPアドレスへ接続する際の接続開始間隔（ミリ秒） */
+	private int connectionAttemptDelayMillis = HappyEyeballsConnectionOperator.DEFAULT_ATTEMPT_DELAY_MILLIS;
+
+	/** Expect: 100-Continue の付加有無 */
+	private boolean expectContinue;
+
+	/** 共有するセッション */
+	private HttpSession session;
+
+	/** 中断の状態（ヘッダを追加したリクエストと共有する） */
+	private final AbortState abortState;
+
+	/**
+	 * コンストラクタ.
+	 *
+	 * @param method
+	 *            メソッド名
+	 * @param uri
+	 *            リクエストURL
+	 * @param headerList
+	 *            リクエストヘッダ群
+	 * @param body
+	 *            リクエスト本体（本体が無い場合はnull）
+	 * @param contentType
+	 *            リクエスト本体のContent-Type
+	 */
+	TransportRequest(String method, URI uri, List<TransportHeader> headerList,
+			byte[] body, String contentType) {
+		this(method, uri, headerList, body, contentType, new AbortState());
+	}
+
+	/**
+	 * コンストラクタ.
+	 *
+	 * @param method
+	 *            メソッド名
+	 * @param uri
+	 *            リクエストURL
+	 * @param headerList
+	 *            リクエストヘッダ群
+	 * @param body
+	 *            リクエスト本体（本体が無い場合はnull）
+	 * @param contentType
+	 *            リクエスト本体のContent-Type
+	 * @param abortState
+	 *            中断の状態
+	 */
+	private TransportRequest(String method, URI uri,
+			List<TransportHeader> headerList, byte[] body, String contentType,
+			AbortState abortState) {
+		this.method = method;
+		this.uri = uri;
+		this.headerList = Collections
+				.unmodifiableList(new ArrayList<TransportHeader>(headerList));
+		this.body = body;
+		this.contentType = contentType;
+		this.abortState = abortState;
+	}
+
+	/**
+	 * ヘッダを追加したリクエストを生成する.
+	 * <p>
+	 * 同じ名前のヘッダがある場合は置き換えます（大文字小文字を区別しない）.<br>
+	 * 生成したリクエストは元のリクエストと各種設定、中断の状態を共有します.<br>
+	 * {@link HttpInterceptor}で認証トークンや署名を付加する場合に使用します.
+	 * </p>
+	 *
+	 * @param name
+	 *            ヘッダ名
+	 * @param value
+	 *            ヘッダ値
+	 * @return リクエスト
+	 */
+	public TransportRequest withHeader(String name, String value) {
+		List<TransportHeader> newHeaderList = new ArrayList<TransportHeader>(
+				headerList.size() + 1);
+		for (TransportHeader header : headerList) {
+			if (!header.getName().equalsIgnoreCase(name)) {
+				newHeaderList.add(header);
+			}
+		}
+		newHeaderList.add(new TransportHeader(name, value));
+		TransportRequest request = new TransportRequest(method, uri,
+				newHeaderList, body, contentType, abortState);
+		request.copySetting(this, expectContinue);
+		return request;
+	}
+
+	/**
+	 * 転送先へのリクエストを生成する.
+	 * <p>
+	 * ヘッダと各種設定を引き継ぎます.<br>
+	 * メソッドがGET、HEADの場合は本体を引き継ぎません.<br>
+	 * 転送先のスキーム、ホスト、ポート番号のいずれかが異なる場合は、<br>
+	 * 認証情報（{@link #CREDENTIAL_HEADERS}のヘッダとBASIC認証）を引き継ぎません.
+	 * </p>
+	 *
+	 * @param method
+	 *            メソッド名
+	 * @param uri
+	 *            転送先URL
+	 * @return リクエスト
+	 */
+	TransportRequest redirect(String method, URI uri) {
+		boolean hasBody = !"GET".equals(method) && !"HEAD".equals(method);
+		boolean isSameOrigin = isSameOrigin(this.uri, uri);
+		List<TransportHeader> newHeaderList = headerList;
+		if (!isSameOrigin) {
+			newHeaderList = new ArrayList<TransportHeader>(headerList.size());
+			for (TransportHeader header : headerList) {
+				if (!isCredentialHeader(header.getName())) {
+					newHeaderList.add(header);
+				}
+			}
+		}
+		TransportRequest request = new TransportRequest(method, uri,
+				newHeaderList, hasBody ? body : null, hasBody ? contentType
+						: null);
+		request.copySetting(this, expectContinue && hasBody);
+		if (!isSameOrigin) {
+			request.setBasicAuth(null, null);
+		}
+		return request;
+	}
+
+	/**
+	 * スキーム、ホスト、ポート番号が同じであるかを判定する.
+	 *
+	 * @param uri1
+	 *            URL
+	 * @param uri2
+	 *            URL
+	 * @return 同じ場合はtrue
+	 */
+	private static boolean isSameOrigin(URI uri1, URI uri2) {
+		String scheme1 = uri1.getScheme();
+		String scheme2 = uri2.getScheme();
+		String host1 = uri1.getHost();
+		String host2 = uri2.getHost();
+		return scheme1 != null && scheme1.equalsIgnoreCase(scheme2)
+				&& host1 != null && host1.equalsIgnoreCase(host2)
+				&& getPort(uri1) == getPort(uri2);
+	}
+
+	/**
+	 * ポート番号を取得する.
+	 *
+	 * @param uri
+	 *            URL
+	 * @return ポート番号（省略されている場合はスキームのデフォルト）
+	 */
+	private static int getPort(URI uri) {
+		if (uri.getPort() >= 0) {
+			return uri.getPort();
+		}
+		return "https".equalsIgnoreCase(uri.getScheme()) ? 443 : 80;
+	}
+
+	/**
+	 * 別の接続先へ引き継がない認証情報のヘッダであるかを判定する.
+	 *
+	 * @param name
+	 *            ヘッダ名
+	 * @return 認証情報のヘッダの場合はtrue
+	 */
+	private static boolean isCredentialHeader(String name) {
+		for (String credentialHeader : CREDENTIAL_HEADERS) {
+			if (credentialHeader.equalsIgnoreCase(name)) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * 各種設定を引き継ぐ.
+	 *
+	 * @param source
+	 *            引き継ぎ元のリクエスト
+	 * @param expectContinue
+	 *            Expect: 100-Continue を付加する場合はtrue
+	 */
+	private void copySetting(TransportRequest source, boolean expectContinue) {
+		setTimeout(source.connectTimeoutMillis, source.readTimeoutMillis,
+				source.timeoutMillis);
+		setProxy(source.proxyAddress, source.proxyPort);
+		setBasicAuth(source.basicAuthId, source.basicAuthPassword);
+		setUserAgent(source.userAgent);
+		setSslVerify(source.isSslVerify);
+		setConnectionAttemptDelay(source.connectionAttemptDelayMillis);
+		setExpectContinue(expectContinue);
+		setSession(source.session);
+	}
+
+	void setTimeout(int connectTimeoutMillis, int readTimeoutMillis,
+			int timeoutMillis) {
+		this.connectTimeoutMillis = connectTimeoutMillis;
+		this.readTimeoutMillis = readTimeoutMillis;
+		this.timeoutMillis = timeoutMillis;
+	}
+
+	void setProxy(String proxyAddress, int proxyPort) {
+		this.proxyAddress = proxyAddress;
+		this.proxyPort = proxyPort;
+	}
+
+	void setBasicAuth(String basicAuthId, String basicAuthPassword) {
+		this.basicAuthId = basicAuthId;
+		this.basicAuthPassword = basicAuthPassword;
+	}
+
+	void setUserAgent(String userAgent) {
+		this.userAgent = userAgent;
+	}
+
+	void setSslVerify(boolean isSslVerify) {
+		this.isSslVerify = isSslVerify;
+	}
+
+	void setConnectionAttemptDelay(int connectionAttemptDelayMillis) {
+		this.connectionAttemptDelayMillis = connectionAttemptDelayMillis;
+	}
+
+	void setExpectContinue(boolean expectContinue) {
+		this.expectContinue = expectContinue;
+	}
+
+	void setSession(HttpSession session) {
+		this.session = session;
+	}
+
+	/**
+	 * 通信を中断する.
+	 * <p>
+	 * 中断時の処理が登録されていれば実行します.
+	 * </p>
+	 */
+	void abort() {
+		abortState.aborted = true;
+		Runnable handler = abortState.handler;
+		if (handler != null) {
+			handler.run();
+		}
+	}
+
+	/**
+	 * 中断時の処理を登録する.
+	 * <p>
+	 * 通信方式の実装が、通信開始前に実行中の接続を中断する処理を登録します.<br>
+	 * 既に中断されている場合は、登録した処理をすぐに実行します.
+	 * </p>
+	 *
+	 * @param abortHandler
+	 *            中断時の処理
+	 */
+	public void setAbortHandler(Runnable abortHandler) {
+		abortState.handler = abortHandler;
+		if (abortState.aborted) {
+			abortHandler.run();
+		}
+	}
+
+	/**
+	 * 中断されたかを返す.
+	 *
+	 * @return 中断された場合はtrue
+	 */
+	public boolean isAborted() {
+		return abortState.aborted;
+	}
+
+	/**
+	 * メソッド名を取得する.
+	 *
+	 * @return メソッド名（GET、HEAD、POSTなど）
+	 */
+	public String getMethod() {
+		return method;
+	}
+
+	/**
+	 * リクエストURLを取得する.
+	 *
+	 * @return リクエストURL
+	 */
+	public URI getUri() {
+		return uri;
+	}
+
+	/**
+	 * リクエストヘッダ群を取得する.
+	 *
+	 * @return リクエストヘッダ群（変更不可）
+	 */
+	public List<TransportHeader> getHeaders() {
+		return headerList;
+	}
+
+	/**
+	 * リクエスト本体を取得する.
+	 *
+	 * @return リクエスト本体（本体が無い場合はnull）
+	 */
+	public byte[] getBody() {
+		return body;
+	}
+
+	/**
+	 * リクエスト本体のContent-Typeを取得する.
+	 *
+	 * @return Content-Type（本体が無い場合はnull）
+	 */
+	public String getContentType() {
+		return contentType;
+	}
+
+	/**
+	 * 接続タイムアウトを取得する.
+	 *
+	 * @return 接続タイムアウト（ミリ秒、0は無制限）
+	 */
+	public int getConnectTimeoutMillis() {
+		return connectTimeoutMillis;
+	}
+
+	/**
+	 * ソケットタイムアウト（無通信状態の許容時間）を取得する.
+	 *
+	 * @return ソケットタイムアウト（ミリ秒、0は無制限）
+	 */
+	public int getReadTimeoutMillis() {
+		return readTimeoutMillis;
+	}
+
+	/**
+	 * 複数のIPアドレスへ接続する際の、次のアドレスへ接続を開始するまでの間隔を取得する.
+	 *
+	 * @return 間隔（ミリ秒）
+	 */
+	public int getConnectionAttemptDelayMillis() {
+		return connectionAttemptDelayMillis;
+	}
+
+	/**
+	 * 処理タイムアウト（接続の取得待ち時間）を取得する.
+	 *
+	 * @return 処理タイムアウト（ミリ秒、0は無制限）
+	 */
+	public int getTimeoutMillis() {
+		return timeoutMillis;
+	}
+
+	/**
+	 * プロキシアドレスを取得する.
+	 *
+	 * @return プロキシアドレス（プロキシ無しの場合はnull）
+	 */
+	public String getProxyAddress() {
+		return proxyAddress;
+	}
+
+	/**
+	 * プロキシポート番号を取得する.
+	 *
+	 * @return プロキシポート番号
+	 */
+	public int getProxyPort() {
+		return proxyPort;
+	}
+
+	/**
+	 * BASIC認証用IDを取得する.
+	 *
+	 * @return ID（BASIC認証無しの場合はnull）
+	 */
+	public String getBasicAuthId() {
+		return basicAuthId;
+	}
+
+	/**
+	 * BASIC認証用パスワードを取得する.
+	 *
+	 * @return パスワード
+	 */
+	public String getBasicAuthPassword() {
+		return basicAuthPassword;
+	}
+
+	/**
+	 * ユーザエージェントを取得する.
+	 *
+	 * @return ユーザエージェント（通信方式のデフォルトを使用する場合はnull）
+	 */
+	public String getUserAgent() {
+		return userAgent;
+	}
+
+	/**
+	 * SSL証明書チェックを行うかを返す.
+	 *
+	 * @return チェックを行う場合はtrue
+	 */
+	public boolean isSslVerify() {
+		return isSslVerify;
+	}
+
+	/**
+	 * Expect: 100-Continue を付加するかを返す.
+	 *
+	 * @return 付加する場合はtrue
+	 */
+	public boolean isExpectContinue() {
+		return expectContinue;
+	}
+
+	/**
+	 * 共有するセッションを取得する.
+	 *
+	 * @return セッション（共有しない場合はnull）
+	 */
+	public HttpSession getSession() {
+		return session;
+	}
+
+	@Override
+	public String toString() {
+		return method + " " + uri;
+	}
+
+	/**
+	 * 中断の状態.
+	 */
+	private static class AbortState {
+		/** 中断された場合はtrue */
+		private volatile boolean aborted;
+
+		/** 中断時の処理 */
+		private volatile Runnable handler;
+	}
+}
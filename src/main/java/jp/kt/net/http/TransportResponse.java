@@ -0,0 +1,147 @@
+package jp.kt.net.http;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * {@link HttpTransport}から返されるレスポンス.
+ * <p>
+ * レスポンス本体は{@link #getContent()}で受信しながら読み込みます.<br>
+ * 使用後は必ず{@link #close()}もしくは{@link #abort()}を実行して接続を解放してください.
+ * </p>
+ *
+ * @author tatsuya.kumon
+ */
+public abstract class TransportResponse {
+	/**
+	 * ステータスコードを取得する.
+	 *
+	 * @return ステータスコード
+	 */
+	public abstract int getStatusCode();
+
+	/**
+	 * ステータステキストを取得する.
+	 *
+	 * @return ステータステキスト
+	 */
+	public abstract String getReasonPhrase();
+
+	/**
+	 * レスポンスヘッダ群を取得する.
+	 *
+	 * @return レスポンスヘッダ群（受信した順）
+	 */
+	public abstract List<TransportHeader> getHeaders();
+
+	/**
+	 * レスポンス本体を読み込むストリームを取得する.
+	 *
+	 * @return InputStream（本体が無い場合はnull）
+	 * @throws IOException
+	 *             入出力エラーが発生した場合
+	 */
+	public abstract InputStream getContent() throws IOException;
+
+	/**
+	 * レスポンス本体のバイト数を取得する.
+	 *
+	 * @return バイト数（不明な場合は-1）
+	 */
+	public abstract long getContentLength();
+
+	/**
+	 * 接続を解放する.
+	 * <p>
+	 * 本体を読み終えていない場合は読み捨て、再利用できる接続は再利用します.
+	 * </p>
+	 */
+	public abstract void close();
+
+	/**
+	 * 接続を破棄する.
+	 * <p>
+	 * 本体の残りは読み込まずに接続を閉じます.
+	 * </p>
+	 */
+	public abstract void abort();
+
+	/**
+	 * Expect: 100-Continue の判定結果を取得する.
+	 * <p>
+	 * 判定しない通信方式ではnullを返します.
+	 * </p>
+	 *
+	 * @return 対応していればTRUE、未対応であればFALSE、判定していない場合はnull
+	 */
+	public Boolean getExpectContinueSupported() {
+		return null;
+	}
+
+	/**
+	 * 指定した名前の最初のヘッダ値を取得する.
+	 * <p>
+	 * ヘッダ名は大文字小文字を区別せずマッチングを行います.
+	 * </p>
+	 *
+	 * @param name
+	 *            ヘッダ名
+	 * @return ヘッダ値（存在しない場合はnull）
+	 */
+	public String getFirstHeader(String name) {
+		for (TransportHeader header : getHeaders()) {
+			if (header.getName().equalsIgnoreCase(name)) {
+				return header.getValue();
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * 指定した名前のヘッダ値を全て取得する.
+	 * <p>
+	 * ヘッダ名は大文字小文字を区別せずマッチングを行います.
+	 * </p>
+	 *
+	 * @param name
+	 *            ヘッダ名
+	 * @return ヘッダ値のリスト
+	 */
+	public List<String> getHeaderValues(String name) {
+		List<String> valueList = new ArrayList<String>();
+		for (TransportHeader header : getHeaders()) {
+			if (header.getName().equalsIgnoreCase(name)) {
+				valueList.add(header.getValue());
+			}
+		}
+		return valueList;
+	}
+
+	/**
+	 * Content-Typeヘッダで指定されている文字コードを取得する.
+	 *
+	 * @return 文字コード（指定されていない場合はnull）
+	 */
+	public String getContentCharset() {
+		String contentType = getFirstHeader("Content-Type");
+		if (contentType == null) {
+			return null;
+		}
+		for (String param : contentType.split(";")) {
+			int index = param.indexOf('=');
+			if (index > 0
+					&& param.substring(0, index).trim()
+							.equalsIgnoreCase("charset")) {
+				String charset = param.substring(index + 1).trim();
+				if (charset.length() >= 2 && charset.startsWith("\"")
+						&& charset.endsWith("\"")) {
+					charset = charset.substring(1, charset.length() - 1);
+				}
+				return (charset.length() == 0) ? null : charset;
+			}
+		}
+		return null;
+	}
+}
@@ -0,0 +1,350 @@
+package jp.kt.net.http;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.InetSocketAddress;
+import java.net.Proxy;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.cert.CertificateException;
+import java.security.cert.X509Certificate;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.List;
+
+import javax.net.ssl.HostnameVerifier;
+import javax.net.ssl.HttpsURLConnection;
+import javax.net.ssl.SSLContext;
+import javax.net.ssl.SSLSession;
+import javax.net.ssl.SSLSocketFactory;
+import javax.net.ssl.TrustManager;
+import javax.net.ssl.X509TrustManager;
+
+import jp.kt.net.io.BufferPool;
+import jp.kt.tool.Validator;
+
+/**
+ * JDK標準のHttpURLConnectionで通信を行う{@link HttpTransport}.
+ * <p>
+ * 接続はJDKのKeep-Aliveにより再利用されます.<br>
+ * 下記の点が{@link HttpClientTransport}と異なります.
+ * </p>
+ * <ul>
+ * <li>{@link HttpSession}は使用しません（Cookieは共有されません）</li>
+ * <li>Expect: 100-Continue は付加しません</li>
+ * <li>BASIC認証は最初のリクエストから認証情報を送信します</li>
+ * <li>処理タイムアウト（接続の取得待ち時間）は使用しません</li>
+ * </ul>
+ *
+ * @author tatsuya.kumon
+ */
+public class UrlConnectionTransport implements HttpTransport {
+	/** シングルトンインスタンス */
+	private static final UrlConnectionTransport instance = new UrlConnectionTransport();
+
+	/** 接続を再利用するために読み捨てるレスポンス本体の上限バイト数 */
+	private static final int MAX_DRAIN_BYTES = 64 * 1024;
+
+	/** SSL証明書チェックを行わない場合のSSLSocketFactory */
+	private volatile SSLSocketFactory noneVerifySocketFactory;
+
+	/**
+	 * コンストラクタ.
+	 */
+	private UrlConnectionTransport() {
+	}
+
+	/**
+	 * インスタンスを取得する.
+	 *
+	 * @return {@link UrlConnectionTransport}オブジェクト
+	 */
+	public static UrlConnectionTransport getInstance() {
+		return instance;
+	}
+
+	@Override
+	public TransportResponse execute(TransportRequest request)
+			throws IOException {
+		// 接続生成
+		Proxy proxy = Proxy.NO_PROXY;
+		if (!Validator.isEmpty(request.getProxyAddress())
+				&& request.getProxyPort() > 0) {
+			proxy = new Proxy(Proxy.Type.HTTP, new InetSocketAddress(
+					request.getProxyAddress(), request.getProxyPort()));
+		}
+		final HttpURLConnection conn = (HttpURLConnection) request.getUri()
+				.toURL().openConnection(proxy);
+		if (!request.isSslVerify() && conn instanceof HttpsURLConnection) {
+			// SSL証明書チェックを行わない場合
+			HttpsURLConnection https = (HttpsURLConnection) conn;
+			https.setSSLSocketFactory(getNoneVerifySocketFactory());
+			https.setHostnameVerifier(new HostnameVerifier() {
+				@Override
+				public boolean verify(String hostname, SSLSession session) {
+					return true;
+				}
+			});
+		}
+		conn.setRequestMethod(request.getMethod());
+		conn.setInstanceFollowRedirects(false);
+		conn.setUseCaches(false);
+		// タイムアウト設定
+		conn.setConnectTimeout(request.getConnectTimeoutMillis());
+		conn.setReadTimeout(request.getReadTimeoutMillis());
+		// リクエストヘッダ設定
+		if (!Validator.isEmpty(request.getUserAgent())) {
+			conn.setRequestProperty("User-Agent", request.getUserAgent());
+		}
+		if (!Validator.isEmpty(request.getBasicAuthId())
+				&& !Validator.isEmpty(request.getBasicAuthPassword())) {
+			String credentials = request.getBasicAuthId() + ":"
+					+ request.getBasicAuthPassword();
+			conn.setRequestProperty("Authorization", "Basic "
+					+ Base64.getEncoder().encodeToString(
+							credentials.getBytes(StandardCharsets.UTF_8)));
+		}
+		for (TransportHeader header : request.getHeaders()) {
+			conn.setRequestProperty(header.getName(), header.getValue());
+		}
+		request.setAbortHandler(new Runnable() {
+			@Override
+			public void run() {
+				conn.disconnect();
+			}
+		});
+		boolean success = false;
+		try {
+			// リクエスト本体送信
+			byte[] body = request.getBody();
+			if (body != null) {
+				conn.setDoOutput(true);
+				conn.setFixedLengthStreamingMode(body.length);
+				if (request.getContentType() != null) {
+					conn.setRequestProperty("Content-Type",
+							request.getContentType());
+				}
+				OutputStream os = conn.getOutputStream();
+				try {
+					os.write(body);
+				} finally {
+					os.close();
+				}
+			}
+			// レスポンス受信
+			int statusCode = conn.getResponseCode();
+			if (statusCode < 0) {
+				throw new IOException("HTTPレスポンスが不正です");
+			}
+			success = true;
+			return new UrlConnectionResponse(conn, statusCode,
+					"HEAD".equals(request.getMethod()));
+		} finally {
+			if (!success) {
+				conn.disconnect();
+			}
+		}
+	}
+
+	/**
+	 * SSL証明書チェックを行わないSSLSocketFactoryを取得する.
+	 *
+	 * @return SSLSocketFactory
+	 * @throws IOException
+	 *             SSLContextを初期化できない場合
+	 */
+	private SSLSocketFactory getNoneVerifySocketFactory() throws IOException {
+		SSLSocketFactory factory = noneVerifySocketFactory;
+		if (factory != null) {
+			return factory;
+		}
+		try {
+			SSLContext sslContext = SSLContext.getInstance("TLS");
+			sslContext.init(null, new TrustManager[] { new X509TrustManager() {
+				public void checkClientTrusted(X509Certificate[] chain,
+						String authType) throws CertificateException {
+				}
+
+				public void checkServerTrusted(X509Certificate[] chain,
+						String authType) throws CertificateException {
+				}
+
+				public X509Certificate[] getAcceptedIssuers() {
+					return new X509Certificate[0];
+				}
+			} }, null);
+			factory = sslContext.getSocketFactory();
+		} catch (GeneralSecurityException e) {
+			throw new IOException("SSLContextを初期化できません", e);
+		}
+		noneVerifySocketFactory = factory;
+		return factory;
+	}
+
+	/**
+	 * HttpURLConnectionのレスポンス.
+	 */
+	private static class UrlConnectionResponse extends TransportResponse {
+		/** 接続 */
+		private final HttpURLConnection conn;
+
+		/** ステータスコード */
+		private final int statusCode;
+
+		/** 本体が無い場合はtrue */
+		private final boolean noContent;
+
+		/** レスポンスヘッダ群 */
+		private final List<TransportHeader> headerList;
+
+		/** 読み込み中のストリーム */
+		private ContentStream content;
+
+		/**
+		 * コンストラクタ.
+		 *
+		 * @param conn
+		 *            接続
+		 * @param statusCode
+		 *            ステータスコード
+		 * @param noContent
+		 *            本体が無い場合はtrue
+		 */
+		private UrlConnectionResponse(HttpURLConnection conn, int statusCode,
+				boolean noContent) {
+			this.conn = conn;
+			this.statusCode = statusCode;
+			this.noContent = noContent;
+			// 0番目はステータス行なので1番目から取得する
+			headerList = new ArrayList<TransportHeader>();
+			for (int i = 1;; i++) {
+				String name = conn.getHeaderFieldKey(i);
+				String value = conn.getHeaderField(i);
+				if (name == null && value == null) {
+					break;
+				}
+				if (name != null) {
+					headerList.add(new TransportHeader(name, value));
+				}
+			}
+		}
+
+		@Override
+		public int getStatusCode() {
+			return statusCode;
+		}
+
+		@Override
+		public String getReasonPhrase() {
+			try {
+				return conn.getResponseMessage();
+			} catch (IOException e) {
+				return null;
+			}
+		}
+
+		@Override
+		public List<TransportHeader> getHeaders() {
+			return headerList;
+		}
+
+		@Override
+		public InputStream getContent() throws IOException {
+			if (content == null && !noContent) {
+				// エラーレスポンスの本体はエラーストリームから読み込む
+				InputStream is = (statusCode >= HttpURLConnection.HTTP_BAD_REQUEST) ? conn
+						.getErrorStream() : conn.getInputStream();
+				if (is == null) {
+					return null;
+				}
+				content = new ContentStream(is);
+			}
+			return content;
+		}
+
+		@Override
+		public long getContentLength() {
+			return conn.getContentLengthLong();
+		}
+
+		/**
+		 * 接続を解放する.
+		 * <p>
+		 * 本体の残りが{@link UrlConnectionTransport#MAX_DRAIN_BYTES}以下であれば読み捨てて、接続をKeep-Aliveで再利用します.<br>
+		 * 残りがそれより多い場合は、最後まで読み込まずに接続を切断します.
+		 * </p>
+		 */
+		@Override
+		public void close() {
+			try {
+				getContent();
+				if (content != null && !content.closed) {
+					if (drain()) {
+						// 読み捨てることで接続がKeep-Aliveで再利用される
+						content.close();
+					} else {
+						conn.disconnect();
+					}
+				}
+			} catch (IOException e) {
+				conn.disconnect();
+			}
+		}
+
+		/**
+		 * 本体の残りを上限バイト数まで読み捨てる.
+		 *
+		 * @return 最後まで読み捨てた場合はtrue
+		 * @throws IOException
+		 */
+		private boolean drain() throws IOException {
+			BufferPool pool = BufferPool.getInstance();
+			byte[] buffer = pool.acquire(BufferPool.TRANSFER_BUFFER_SIZE);
+			try {
+				long drained = 0;
+				while (drained <= MAX_DRAIN_BYTES) {
+					int read = content.read(buffer);
+					if (read < 0) {
+						return true;
+					}
+					drained += read;
+				}
+				return false;
+			} finally {
+				pool.release(buffer);
+			}
+		}
+
+		@Override
+		public void abort() {
+			conn.disconnect();
+		}
+	}
+
+	/**
+	 * close済みかを判定できるレスポンス本体のストリーム.
+	 */
+	private static class ContentStream extends FilterInputStream {
+		/** close済みフラグ */
+		private boolean closed;
+
+		/**
+		 * コンストラクタ.
+		 *
+		 * @param in
+		 *            レスポンス本体のストリーム
+		 */
+		private ContentStream(InputStream in) {
+			super(in);
+		}
+
+		@Override
+		public void close() throws IOException {
+			closed = true;
+			super.close();
+		}
+	}
+}
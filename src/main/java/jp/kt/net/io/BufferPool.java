@@ -0,0 +1,406 @@
+package jp.kt.net.io;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import jp.kt.exception.KtException;
+
+/**
+ * 入出力用バッファのプール.
+ * <p>
+ * 4KBから256KBまでの2のべき乗サイズごとにバッファを再利用し、転送処理ごとのバッファ生成を抑えます.<br>
+ * ヒープ上のバッファ（byte[]）とダイレクトバッファ（{@link ByteBuffer}）の2種類を扱います.<br>
+ * 最大サイズを超えるバッファはプールせず、都度生成します.
+ * </p>
+ * <p>
+ * 取得したバッファは使用後に必ず返却してください.<br>
+ * 返却後のバッファを参照してはいけません.
+ * </p>
+ *
+ * @author tatsuya.kumon
+ */
+public class BufferPool {
+	/** 転送処理で使用するバッファサイズ */
+	public static final int TRANSFER_BUFFER_SIZE = 64 * 1024;
+
+	/** 最小サイズ */
+	private static final int MIN_SIZE = 4 * 1024;
+
+	/** 最大サイズ */
+	private static final int MAX_SIZE = 256 * 1024;
+
+	/** サイズ区分の数 */
+	private static final int CLASS_COUNT = Integer.numberOfTrailingZeros(MAX_SIZE)
+			- Integer.numberOfTrailingZeros(MIN_SIZE) + 1;
+
+	/** デフォルトのサイズ区分ごとの保持上限バイト数 */
+	private static final int DEFAULT_RETAIN_BYTES_PER_CLASS = 4 * 1024 * 1024;
+
+	/** 共有インスタンス */
+	private static final BufferPool instance = new BufferPool(
+			DEFAULT_RETAIN_BYTES_PER_CLASS);
+
+	/** ヒープバッファ */
+	private final SizeClass<byte[]>[] heapClasses;
+
+	/** ダイレクトバッファ */
+	private final SizeClass<ByteBuffer>[] directClasses;
+
+	/** 取得回数 */
+	private final AtomicLong acquireCount = new AtomicLong();
+
+	/** プールから取得できた回数 */
+	private final AtomicLong hitCount = new AtomicLong();
+
+	/** 新規生成した回数 */
+	private final AtomicLong allocateCount = new AtomicLong();
+
+	/** 新規生成したバイト数 */
+	private final AtomicLong allocateBytes = new AtomicLong();
+
+	/** 保持上限を超えたため破棄した回数 */
+	private final AtomicLong discardCount = new AtomicLong();
+
+	/**
+	 * コンストラクタ.
+	 *
+	 * @param retainBytesPerClass
+	 *            サイズ区分ごとの保持上限バイト数
+	 */
+	@SuppressWarnings({ "unchecked", "rawtypes" })
+	public BufferPool(int retainBytesPerClass) {
+		if (retainBytesPerClass < 0) {
+			throw new KtException("B004", "バッファプールの保持上限の設定が不正な値です。[retainBytesPerClass:"
+					+ retainBytesPerClass + "]");
+		}
+		heapClasses = new SizeClass[CLASS_COUNT];
+		directClasses = new SizeClass[CLASS_COUNT];
+		for (int i = 0; i < CLASS_COUNT; i++) {
+			int size = MIN_SIZE << i;
+			int maxRetain = retainBytesPerClass / size;
+			heapClasses[i] = new SizeClass<byte[]>(size, maxRetain);
+			directClasses[i] = new SizeClass<ByteBuffer>(size, maxRetain);
+		}
+	}
+
+	/**
+	 * 共有インスタンスを取得する.
+	 *
+	 * @return {@link BufferPool}オブジェクト
+	 */
+	public static BufferPool getInstance() {
+		return instance;
+	}
+
+	/**
+	 * ヒープバッファを取得する.
+	 * <p>
+	 * 指定サイズ以上のバッファを返します.
+	 * </p>
+	 *
+	 * @param minSize
+	 *            最低限必要なサイズ
+	 * @return バッファ
+	 */
+	public byte[] acquire(int minSize) {
+		acquireCount.incrementAndGet();
+		int index = classIndex(minSize);
+		if (index < 0) {
+			return allocateArray(minSize);
+		}
+		byte[] buffer = heapClasses[index].poll();
+		if (buffer != null) {
+			hitCount.incrementAndGet();
+			return buffer;
+		}
+		return allocateArray(heapClasses[index].size);
+	}
+
+	/**
+	 * ヒープバッファを返却する.
+	 *
+	 * @param buffer
+	 *            {@link #acquire(int)}で取得したバッファ
+	 */
+	public void release(byte[] buffer) {
+		if (buffer == null) {
+			return;
+		}
+		int index = exactClassIndex(buffer.length);
+		if (index < 0 || !heapClasses[index].offer(buffer)) {
+			discardCount.incrementAndGet();
+		}
+	}
+
+	/**
+	 * ダイレクトバッファを取得する.
+	 * <p>
+	 * 指定サイズ以上の容量を持ち、position=0、limit=容量の状態のバッファを返します.
+	 * </p>
+	 *
+	 * @param minSize
+	 *            最低限必要なサイズ
+	 * @return バッファ
+	 */
+	public ByteBuffer acquireDirect(int minSize) {
+		acquireCount.incrementAndGet();
+		int index = classIndex(minSize);
+		if (index < 0) {
+			return allocateDirect(minSize);
+		}
+		ByteBuffer buffer = directClasses[index].poll();
+		if (buffer != null) {
+			hitCount.incrementAndGet();
+			buffer.clear();
+			return buffer;
+		}
+		return allocateDirect(directClasses[index].size);
+	}
+
+	/**
+	 * ダイレクトバッファを返却する.
+	 *
+	 * @param buffer
+	 *            {@link #acquireDirect(int)}で取得したバッファ
+	 */
+	public void releaseDirect(ByteBuffer buffer) {
+		if (buffer == null) {
+			return;
+		}
+		int index = buffer.isDirect() ? exactClassIndex(buffer.capacity())
+				: -1;
+		if (index < 0 || !directClasses[index].offer(buffer)) {
+			discardCount.incrementAndGet();
+		}
+	}
+
+	/**
+	 * プールのバッファを使用してストリーム間のコピーを行う.
+	 * <p>
+	 * ストリームのcloseは行いません.
+	 * </p>
+	 *
+	 * @param in
+	 *            入力ストリーム
+	 * @param out
+	 *            出力ストリーム
+	 * @return コピーしたバイト数
+	 * @throws IOException
+	 *             入出力エラーが発生した場合
+	 */
+	public long copy(InputStream in, OutputStream out) throws IOException {
+		byte[] buffer = acquire(TRANSFER_BUFFER_SIZE);
+		try {
+			long total = 0;
+			int read;
+			while ((read = in.read(buffer)) != -1) {
+				out.write(buffer, 0, read);
+				total += read;
+			}
+			return total;
+		} finally {
+			release(buffer);
+		}
+	}
+
+	/**
+	 * 取得回数を返す.
+	 *
+	 * @return 取得回数
+	 */
+	public long getAcquireCount() {
+		return acquireCount.get();
+	}
+
+	/**
+	 * プールから取得できた回数を返す.
+	 *
+	 * @return プールから取得できた回数
+	 */
+	public long getHitCount() {
+		return hitCount.get();
+	}
+
+	/**
+	 * プールから取得できた割合を返す.
+	 *
+	 * @return 0.0～1.0の値（取得が一度も無い場合は0.0）
+	 */
+	public double getHitRate() {
+		long acquire = acquireCount.get();
+		if (acquire == 0) {
+			return 0.0;
+		}
+		return (double) hitCount.get() / acquire;
+	}
+
+	/**
+	 * 新規生成した回数を返す.
+	 *
+	 * @return 新規生成した回数
+	 */
+	public long getAllocateCount() {
+		return allocateCount.get();
+	}
+
+	/**
+	 * 新規生成したバイト数の合計を返す.
+	 *
+	 * @return 新規生成したバイト数
+	 */
+	public long getAllocateBytes() {
+		return allocateBytes.get();
+	}
+
+	/**
+	 * 返却時にプールせず破棄した回数を返す.
+	 *
+	 * @return 破棄した回数
+	 */
+	public long getDiscardCount() {
+		return discardCount.get();
+	}
+
+	/**
+	 * プールに保持しているバイト数を返す.
+	 *
+	 * @return 保持しているバイト数
+	 */
+	public long getRetainedBytes() {
+		long total = 0;
+		for (int i = 0; i < CLASS_COUNT; i++) {
+			total += (long) heapClasses[i].size
+					* (heapClasses[i].count.get() + directClasses[i].count
+							.get());
+		}
+		return total;
+	}
+
+	/**
+	 * ヒープバッファを新規生成する.
+	 *
+	 * @param size
+	 *            サイズ
+	 * @return バッファ
+	 */
+	private byte[] allocateArray(int size) {
+		allocateCount.incrementAndGet();
+		allocateBytes.addAndGet(size);
+		return new byte[size];
+	}
+
+	/**
+	 * ダイレクトバッファを新規生成する.
+	 *
+	 * @param size
+	 *            サイズ
+	 * @return バッファ
+	 */
+	private ByteBuffer allocateDirect(int size) {
+		allocateCount.incrementAndGet();
+		allocateBytes.addAndGet(size);
+		return ByteBuffer.allocateDirect(size);
+	}
+
+	/**
+	 * 指定サイズ以上を満たすサイズ区分を返す.
+	 *
+	 * @param minSize
+	 *            最低限必要なサイズ
+	 * @return サイズ区分（最大サイズを超える場合は-1）
+	 */
+	private static int classIndex(int minSize) {
+		if (minSize > MAX_SIZE) {
+			return -1;
+		}
+		if (minSize <= MIN_SIZE) {
+			return 0;
+		}
+		int size = Integer.highestOneBit(minSize - 1) << 1;
+		return Integer.numberOfTrailingZeros(size)
+				- Integer.numberOfTrailingZeros(MIN_SIZE);
+	}
+
+	/**
+	 * 指定サイズと一致するサイズ区分を返す.
+	 *
+	 * @param size
+	 *            サイズ
+	 * @return サイズ区分（一致するものが無い場合は-1）
+	 */
+	private static int exactClassIndex(int size) {
+		if (size < MIN_SIZE || size > MAX_SIZE || Integer.bitCount(size) != 1) {
+			return -1;
+		}
+		return Integer.numberOfTrailingZeros(size)
+				- Integer.numberOfTrailingZeros(MIN_SIZE);
+	}
+
+	/**
+	 * サイズ区分ごとのバッファ保持領域.
+	 *
+	 * @param <T>
+	 *            バッファの型
+	 */
+	private static class SizeClass<T> {
+		/** バッファサイズ */
+		private final int size;
+
+		/** 保持上限数 */
+		private final int maxRetain;
+
+		/** 保持しているバッファ */
+		private final Queue<T> queue = new ConcurrentLinkedQueue<T>();
+
+		/** 保持しているバッファ数 */
+		private final AtomicInteger count = new AtomicInteger();
+
+		/**
+		 * コンストラクタ.
+		 *
+		 * @param size
+		 *            バッファサイズ
+		 * @param maxRetain
+		 *            保持上限数
+		 */
+		private SizeClass(int size, int maxRetain) {
+			this.size = size;
+			this.maxRetain = maxRetain;
+		}
+
+		/**
+		 * バッファを取り出す.
+		 *
+		 * @return バッファ（保持していない場合はnull）
+		 */
+		private T poll() {
+			T buffer = queue.poll();
+			if (buffer != null) {
+				count.decrementAndGet();
+			}
+			return buffer;
+		}
+
+		/**
+		 * バッファを保持する.
+		 *
+		 * @param buffer
+		 *            バッファ
+		 * @return 保持した場合はtrue、保持上限に達している場合はfalse
+		 */
+		private boolean offer(T buffer) {
+			if (count.incrementAndGet() > maxRetain) {
+				count.decrementAndGet();
+				return false;
+			}
+			queue.offer(buffer);
+			return true;
+		}
+	}
+}
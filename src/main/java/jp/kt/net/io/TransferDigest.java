@@ -0,0 +1,257 @@
+package jp.kt.net.io;
+
+import java.io.FilterInputStream;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.zip.CRC32;
+
+import jp.kt.exception.KtException;
+
+/**
+ * 転送データのハッシュ値計算.
+ * <p>
+ * 転送中のデータを通過させながら、指定された複数のアルゴリズムでハッシュ値を計算します.<br>
+ * 転送後にファイルを読み直す必要はありません.<br>
+ * アルゴリズム名は{@link MessageDigest}で使用可能な名称（MD5、SHA-256など）と、CRC32が指定可能です.
+ * </p>
+ *
+ * @author tatsuya.kumon
+ */
+public class TransferDigest {
+	/** CRC32のアルゴリズム名 */
+	public static final String CRC32 = "CRC32";
+
+	/** 16進数変換用文字 */
+	private static final char[] HEX = "0123456789abcdef".toCharArray();
+
+	/** MessageDigest群（キーは大文字のアルゴリズム名） */
+	private final Map<String, MessageDigest> digestMap = new LinkedHashMap<String, MessageDigest>();
+
+	/** CRC32 */
+	private CRC32 crc32;
+
+	/** 計算結果（キーは大文字のアルゴリズム名） */
+	private Map<String, byte[]> resultMap;
+
+	/**
+	 * コンストラクタ.
+	 *
+	 * @param algorithms
+	 *            アルゴリズム名
+	 */
+	public TransferDigest(Iterable<String> algorithms) {
+		for (String algorithm : algorithms) {
+			String key = algorithm.toUpperCase();
+			if (CRC32.equals(key)) {
+				crc32 = new CRC32();
+			} else if (!digestMap.containsKey(key)) {
+				try {
+					digestMap.put(key, MessageDigest.getInstance(algorithm));
+				} catch (NoSuchAlgorithmException e) {
+					throw new KtException("B004", "ハッシュアルゴリズムの設定が不正な値です。[algorithm:"
+							+ algorithm + "]");
+				}
+			}
+		}
+	}
+
+	/**
+	 * 計算対象のアルゴリズムが含まれているかを返す.
+	 *
+	 * @param algorithm
+	 *            アルゴリズム名
+	 * @return 含まれていればtrue
+	 */
+	public boolean contains(String algorithm) {
+		String key = algorithm.toUpperCase();
+		return CRC32.equals(key) ? crc32 != null : digestMap.containsKey(key);
+	}
+
+	/**
+	 * データを追加する.
+	 *
+	 * @param b
+	 *            データ
+	 * @param off
+	 *            開始位置
+	 * @param len
+	 *            長さ
+	 */
+	public void update(byte[] b, int off, int len) {
+		for (MessageDigest digest : digestMap.values()) {
+			digest.update(b, off, len);
+		}
+		if (crc32 != null) {
+			crc32.update(b, off, len);
+		}
+	}
+
+	/**
+	 * データを追加する.
+	 * <p>
+	 * バッファのpositionからlimitまでを追加し、positionは変更しません.
+	 * </p>
+	 *
+	 * @param buffer
+	 *            データ
+	 */
+	public void update(ByteBuffer buffer) {
+		for (MessageDigest digest : digestMap.values()) {
+			digest.update(buffer.duplicate());
+		}
+		if (crc32 != null) {
+			crc32.update(buffer.duplicate());
+		}
+	}
+
+	/**
+	 * 計算を終了する.
+	 * <p>
+	 * 終了後はデータを追加できません.
+	 * </p>
+	 */
+	private void finish() {
+		if (resultMap != null) {
+			return;
+		}
+		resultMap = new LinkedHashMap<String, byte[]>();
+		for (Map.Entry<String, MessageDigest> entry : digestMap.entrySet()) {
+			resultMap.put(entry.getKey(), entry.getValue().digest());
+		}
+		if (crc32 != null) {
+			long value = crc32.getValue();
+			resultMap.put(CRC32, new byte[] { (byte) (value >>> 24),
+					(byte) (value >>> 16), (byte) (value >>> 8), (byte) value });
+		}
+	}
+
+	/**
+	 * ハッシュ値を取得する.
+	 *
+	 * @param algorithm
+	 *            アルゴリズム名
+	 * @return ハッシュ値（計算対象でない場合はnull）
+	 */
+	public byte[] getDigest(String algorithm) {
+		finish();
+		byte[] value = resultMap.get(algorithm.toUpperCase());
+		return (value == null) ? null : value.clone();
+	}
+
+	/**
+	 * ハッシュ値を16進数文字列（小文字）で取得する.
+	 *
+	 * @param algorithm
+	 *            アルゴリズム名
+	 * @return ハッシュ値（計算対象でない場合はnull）
+	 */
+	public String getHexDigest(String algorithm) {
+		byte[] value = getDigest(algorithm);
+		return (value == null) ? null : toHex(value);
+	}
+
+	/**
+	 * 全てのハッシュ値を16進数文字列（小文字）で取得する.
+	 *
+	 * @return キーがアルゴリズム名（大文字）のハッシュ値群
+	 */
+	public Map<String, String> getHexDigests() {
+		finish();
+		Map<String, String> map = new LinkedHashMap<String, String>();
+		for (Map.Entry<String, byte[]> entry : resultMap.entrySet()) {
+			map.put(entry.getKey(), toHex(entry.getValue()));
+		}
+		return map;
+	}
+
+	/**
+	 * 出力データのハッシュ値を計算するストリームを返す.
+	 *
+	 * @param out
+	 *            出力先
+	 * @return 出力先をラップしたストリーム
+	 */
+	public OutputStream wrap(OutputStream out) {
+		return new FilterOutputStream(out) {
+			@Override
+			public void write(int b) throws IOException {
+				write(new byte[] { (byte) b }, 0, 1);
+			}
+
+			@Override
+			public void write(byte[] b, int off, int len) throws IOException {
+				out.write(b, off, len);
+				update(b, off, len);
+			}
+		};
+	}
+
+	/**
+	 * 入力データのハッシュ値を計算するストリームを返す.
+	 *
+	 * @param in
+	 *            入力元
+	 * @return 入力元をラップしたストリーム
+	 */
+	public InputStream wrap(InputStream in) {
+		return new FilterInputStream(in) {
+			@Override
+			public int read() throws IOException {
+				byte[] b = new byte[1];
+				return (read(b, 0, 1) < 0) ? -1 : (b[0] & 0xff);
+			}
+
+			@Override
+			public int read(byte[] b, int off, int len) throws IOException {
+				int read = in.read(b, off, len);
+				if (read > 0) {
+					update(b, off, read);
+				}
+				return read;
+			}
+
+			@Override
+			public long skip(long n) throws IOException {
+				// 読み飛ばすとハッシュ値が計算できないため、読み込んで破棄する
+				byte[] b = new byte[(int) Math.min(n, 8192)];
+				long skipped = 0;
+				while (skipped < n) {
+					int read = read(b, 0, (int) Math.min(b.length, n - skipped));
+					if (read < 0) {
+						break;
+					}
+					skipped += read;
+				}
+				return skipped;
+			}
+
+			@Override
+			public boolean markSupported() {
+				return false;
+			}
+		};
+	}
+
+	/**
+	 * バイト配列を16進数文字列（小文字）に変換する.
+	 *
+	 * @param value
+	 *            バイト配列
+	 * @return 16進数文字列
+	 */
+	public static String toHex(byte[] value) {
+		char[] chars = new char[value.length * 2];
+		for (int i = 0; i < value.length; i++) {
+			chars[i * 2] = HEX[(value[i] >> 4) & 0x0f];
+			chars[i * 2 + 1] = HEX[value[i] & 0x0f];
+		}
+		return new String(chars);
+	}
+}
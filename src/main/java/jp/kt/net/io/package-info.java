@@ -0,0 +1,6 @@
+/**
+ * FTP通信ならびにHTTP通信で共通して使用する入出力関連クラス群.
+ *
+ * @author tatsuya.kumon
+ */
+package jp.kt.net.io;
@@ -0,0 +1,449 @@
+package jp.kt.net.ftp;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+
+import org.apache.commons.net.ftp.FTPListParseEngine;
+import org.apache.commons.net.ftp.parser.MLSxEntryParser;
+
+/**
+ * テスト用のメモリ上のFTPサーバ.
+ * <p>
+ * {@link #addSessions(FtpSessionKey, int)}で、このサーバに接続済みのセッションを{@link FtpSessionPool}
+ * に登録します.<br>
+ * FtpActionはプールの接続を使用するため、実際には接続しません.
+ * </p>
+ *
+ * @author tatsuya.kumon
+ */
+class FakeFtpServer {
+	/** ファイル（絶対パスと内容） */
+	private final Map<String, byte[]> fileMap = new TreeMap<String, byte[]>();
+
+	/** ディレクトリの絶対パス */
+	private final Set<String> dirSet = new HashSet<String>();
+
+	/** 削除した順の絶対パス */
+	private final List<String> deletedList = new ArrayList<String>();
+
+	/** PUTされた順の絶対パス */
+	private final List<String> storedList = new ArrayList<String>();
+
+	/** RESTに対応している場合はtrue */
+	private volatile boolean isRestSupported = true;
+
+	/** 転送完了の応答を失敗とするファイルの絶対パス */
+	private final Set<String> failSet = new HashSet<String>();
+
+	/**
+	 * コンストラクタ.
+	 */
+	FakeFtpServer() {
+		dirSet.add("/");
+	}
+
+	/**
+	 * ディレクトリを追加する.
+	 *
+	 * @param path
+	 *            絶対パス
+	 */
+	synchronized void addDirectory(String path) {
+		dirSet.add(path);
+	}
+
+	/**
+	 * ファイルを追加する.
+	 *
+	 * @param path
+	 *            絶対パス
+	 * @param data
+	 *            内容
+	 */
+	synchronized void addFile(String path, byte[] data) {
+		fileMap.put(path, data);
+	}
+
+	/**
+	 * ファイルの内容を返す.
+	 *
+	 * @param path
+	 *            絶対パス
+	 * @return 内容（存在しない場合はnull）
+	 */
+	synchronized byte[] getFile(String path) {
+		return fileMap.get(path);
+	}
+
+	/**
+	 * ファイルもしくはディレクトリが存在するかを返す.
+	 *
+	 * @param path
+	 *            絶対パス
+	 * @return 存在する場合はtrue
+	 */
+	synchronized boolean exists(String path) {
+		return fileMap.containsKey(path) || dirSet.contains(path);
+	}
+
+	/**
+	 * 削除した順の絶対パスを返す.
+	 *
+	 * @return 絶対パスのリスト
+	 */
+	synchronized List<String> getDeletedList() {
+		return new ArrayList<String>(deletedList);
+	}
+
+	/**
+	 * PUTされた順の絶対パスを返す.
+	 *
+	 * @return 絶対パスのリスト
+	 */
+	synchronized List<String> getStoredList() {
+		return new ArrayList<String>(storedList);
+	}
+
+	/**
+	 * RESTに対応するかを設定する.
+	 *
+	 * @param isRestSupported
+	 *            対応する場合はtrue
+	 */
+	void setRestSupported(boolean isRestSupported) {
+		this.isRestSupported = isRestSupported;
+	}
+
+	/**
+	 * 転送完了の応答を失敗とするファイルを追加する.
+	 *
+	 * @param path
+	 *            絶対パス
+	 */
+	synchronized void addFailure(String path) {
+		failSet.add(path);
+	}
+
+	/**
+	 * このサーバに接続済みのセッションをプールに登録する.
+	 * <p>
+	 * プールの最大接続数は、あらかじめ登録する数以上にしておきます.
+	 * </p>
+	 *
+	 * @param key
+	 *            接続先
+	 * @param count
+	 *            登録する数
+	 * @throws IOException
+	 *             入出力エラー
+	 */
+	void addSessions(FtpSessionKey key, int count) throws IOException {
+		FtpSessionPool pool = FtpSessionPool.getInstance();
+		for (int i = 0; i < count; i++) {
+			if (pool.borrow(key) != null) {
+				throw new IllegalStateException("未使用の接続が残っています");
+			}
+		}
+		for (int i = 0; i < count; i++) {
+			pool.giveBack(new FtpSession(key, new Client(), pool
+					.createDirectoryCache(key)));
+		}
+	}
+
+	/**
+	 * 子の名前を返す.
+	 *
+	 * @param parent
+	 *            親ディレクトリの絶対パス
+	 * @param path
+	 *            絶対パス
+	 * @return 子であれば名前、子でなければnull
+	 */
+	private static String childName(String parent, String path) {
+		String prefix = parent.endsWith("/") ? parent : parent + "/";
+		if (!path.startsWith(prefix) || path.equals(prefix)) {
+			return null;
+		}
+		String name = path.substring(prefix.length());
+		return (name.indexOf('/') >= 0) ? null : name;
+	}
+
+	/**
+	 * このサーバに接続済みのFTPクライアント.
+	 * <p>
+	 * 応答コードは最後のコマンドのものを返します.
+	 * </p>
+	 */
+	private class Client extends KtFtpClient {
+		/** workディレクトリ */
+		private String workingDirectory = "/";
+
+		/** 転送中のファイルの絶対パス */
+		private String transferPath;
+
+		/** 最後の応答コード */
+		private int replyCode = 220;
+
+		/** 最後の応答文字列 */
+		private String replyString = "220 ready";
+
+		/** 接続中であればtrue */
+		private boolean isConnected = true;
+
+		/**
+		 * 応答を記録する.
+		 *
+		 * @param code
+		 *            応答コード
+		 * @param text
+		 *            応答文字列
+		 * @return 2xx応答であればtrue
+		 */
+		private boolean reply(int code, String text) {
+			replyCode = code;
+			replyString = code + " " + text + "\r\n";
+			return code >= 200 && code < 300;
+		}
+
+		/**
+		 * workディレクトリからの絶対パスを返す.
+		 *
+		 * @param name
+		 *            ファイル名
+		 * @return 絶対パス
+		 */
+		private String resolve(String name) {
+			if (name.startsWith("/")) {
+				return name;
+			}
+			return workingDirectory.endsWith("/") ? workingDirectory + name
+					: workingDirectory + "/" + name;
+		}
+
+		@Override
+		public boolean isConnected() {
+			return isConnected;
+		}
+
+		@Override
+		public void disconnect() {
+			isConnected = false;
+		}
+
+		@Override
+		public boolean logout() {
+			return reply(221, "bye");
+		}
+
+		@Override
+		public boolean sendNoOp() {
+			return reply(200, "ok");
+		}
+
+		@Override
+		public int getReplyCode() {
+			return replyCode;
+		}
+
+		@Override
+		public String getReplyString() {
+			return replyString;
+		}
+
+		@Override
+		public boolean hasFeature(String feature) {
+			return feature.equals("MLST");
+		}
+
+		@Override
+		public boolean hasFeature(String feature, String value) {
+			return feature.equals("REST") && isRestSupported;
+		}
+
+		@Override
+		public String printWorkingDirectory() {
+			reply(257, "\"" + workingDirectory + "\"");
+			return workingDirectory;
+		}
+
+		@Override
+		public boolean changeWorkingDirectory(String path) {
+			synchronized (FakeFtpServer.this) {
+				String dir = resolve(path);
+				if (!dirSet.contains(dir)) {
+					return reply(550, "not found");
+				}
+				workingDirectory = dir;
+				return reply(250, "ok");
+			}
+		}
+
+		@Override
+		public boolean makeDirectory(String path) {
+			synchronized (FakeFtpServer.this) {
+				String dir = resolve(path);
+				String parent = dir.substring(0, Math.max(1, dir
+						.lastIndexOf('/')));
+				if (exists(dir) || !dirSet.contains(parent)) {
+					return reply(550, "failed");
+				}
+				dirSet.add(dir);
+				return reply(257, "created");
+			}
+		}
+
+		@Override
+		public boolean deleteFile(String path) {
+			synchronized (FakeFtpServer.this) {
+				String file = resolve(path);
+				if (fileMap.remove(file) == null) {
+					return reply(550, "not found");
+				}
+				deletedList.add(file);
+				return reply(250, "deleted");
+			}
+		}
+
+		@Override
+		public boolean removeDirectory(String path) {
+			synchronized (FakeFtpServer.this) {
+				String dir = resolve(path);
+				if (!dirSet.contains(dir)) {
+					return reply(550, "not found");
+				}
+				for (String other : fileMap.keySet()) {
+					if (childName(dir, other) != null) {
+						return reply(550, "not empty");
+					}
+				}
+				for (String other : dirSet) {
+					if (childName(dir, other) != null) {
+						return reply(550, "not empty");
+					}
+				}
+				dirSet.remove(dir);
+				deletedList.add(dir);
+				return reply(250, "removed");
+			}
+		}
+
+		@Override
+		public int sendCommand(String command, String args) {
+			synchronized (FakeFtpServer.this) {
+				byte[] data = fileMap.get(resolve(args));
+				if (command.equals("SIZE") && data != null) {
+					reply(213, String.valueOf(data.length));
+				} else {
+					reply(550, "failed");
+				}
+				return replyCode;
+			}
+		}
+
+		@Override
+		public InputStream retrieveFileStream(String path) {
+			long offset = getRestartOffset();
+			setRestartOffset(0);
+			byte[] data;
+			synchronized (FakeFtpServer.this) {
+				data = fileMap.get(resolve(path));
+			}
+			if (data == null) {
+				reply(550, "not found");
+				return null;
+			}
+			if (offset > 0 && !isRestSupported) {
+				reply(502, "not implemented");
+				return null;
+			}
+			transferPath = resolve(path);
+			reply(150, "opening");
+			return new ByteArrayInputStream(data, (int) offset, data.length
+					- (int) offset);
+		}
+
+		@Override
+		public OutputStream storeFileStream(String name) {
+			final long offset = getRestartOffset();
+			setRestartOffset(0);
+			final String path = resolve(name);
+			transferPath = path;
+			reply(150, "opening");
+			return new ByteArrayOutputStream() {
+				@Override
+				public void close() throws IOException {
+					super.close();
+					synchronized (FakeFtpServer.this) {
+						byte[] data = toByteArray();
+						byte[] old = fileMap.get(path);
+						if (offset > 0 && old != null) {
+							byte[] merged = new byte[(int) offset + data.length];
+							System.arraycopy(old, 0, merged, 0, (int) offset);
+							System.arraycopy(data, 0, merged, (int) offset,
+									data.length);
+							data = merged;
+						}
+						fileMap.put(path, data);
+						storedList.add(path);
+					}
+				}
+			};
+		}
+
+		@Override
+		public boolean completePendingCommand() {
+			synchronized (FakeFtpServer.this) {
+				String path = transferPath;
+				transferPath = null;
+				if (path != null && failSet.contains(path)) {
+					return reply(451, "failed");
+				}
+				return reply(226, "complete");
+			}
+		}
+
+		@Override
+		FTPListParseEngine initiateMListParsing(String path) throws IOException {
+			StringBuilder sb = new StringBuilder();
+			synchronized (FakeFtpServer.this) {
+				String dir = resolve(path);
+				if (!dirSet.contains(dir)) {
+					reply(550, "not found");
+					return new FTPListParseEngine(MLSxEntryParser.getInstance());
+				}
+				List<String> dirList = new ArrayList<String>(dirSet);
+				Collections.sort(dirList);
+				for (String other : dirList) {
+					String name = childName(dir, other);
+					if (name != null) {
+						sb.append("type=dir; ").append(name).append("\r\n");
+					}
+				}
+				for (Map.Entry<String, byte[]> entry : fileMap.entrySet()) {
+					String name = childName(dir, entry.getKey());
+					if (name != null) {
+						sb.append("type=file;size=").append(
+								entry.getValue().length).append("; ").append(
+								name).append("\r\n");
+					}
+				}
+			}
+			FTPListParseEngine engine = new FTPListParseEngine(MLSxEntryParser
+					.getInstance());
+			engine.readServerList(new ByteArrayInputStream(sb.toString()
+					.getBytes("UTF-8")), "UTF-8");
+			reply(226, "complete");
+			return engine;
+		}
+	}
+}
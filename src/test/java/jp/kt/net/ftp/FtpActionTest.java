@@ -0,0 +1,344 @@
+package jp.kt.net.ftp;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.mock;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import jp.kt.exception.KtException;
+import jp.kt.logger.ApplicationLogger;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * {@link FtpAction}の並列転送のテスト.
+ * <p>
+ * {@link FakeFtpServer}の接続をプールに登録して使用します.
+ * </p>
+ *
+ * @author tatsuya.kumon
+ */
+public class FtpActionTest {
+	/** 登録する接続数 */
+	private static final int SESSION_COUNT = 8;
+
+	/** 接続先の連番（テストごとに別の接続先とする） */
+	private static int hostSequence;
+
+	/** ローカルファイルの作成先 */
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	/** FTPサーバ */
+	private FakeFtpServer server;
+
+	/** FTP処理 */
+	private FtpAction ftp;
+
+	@Before
+	public void setUp() throws Exception {
+		FtpSessionPool pool = FtpSessionPool.getInstance();
+		pool.clear();
+		pool.setSize(0, SESSION_COUNT);
+		String host = "fake" + (hostSequence++) + ".example";
+		server = new FakeFtpServer();
+		server.addSessions(new FtpSessionKey(host, 21, "user", "pass"),
+				SESSION_COUNT);
+		ftp = new FtpAction(host, "user", "pass",
+				mock(ApplicationLogger.class));
+	}
+
+	@After
+	public void tearDown() {
+		FtpSessionPool pool = FtpSessionPool.getInstance();
+		pool.clear();
+		pool.setSize(0, 4);
+	}
+
+	@Test
+	public void testPut() throws Exception {
+		server.addDirectory("/a");
+		server.addDirectory("/b");
+		List<PutData> putList = new ArrayList<PutData>();
+		putList.add(new PutData(createFile("1.txt", 10), "/a"));
+		putList.add(new PutData(createFile("2.txt", 300), "/b"));
+		putList.add(new PutData(createFile("3.txt", 20), "/a"));
+		putList.add(new PutData(createFile("4.txt", 40), "/missing"));
+		final AtomicInteger progressCount = new AtomicInteger();
+		ftp.setTransferListener(new TransferListener() {
+			@Override
+			public void onProgress(TransferReport report) {
+				progressCount.incrementAndGet();
+			}
+		});
+		TransferReport report = ftp.put(putList, 3);
+		assertTrue(report.isFinished());
+		assertEquals(4, report.getCompletedCount());
+		assertEquals(3, report.getSuccessCount());
+		assertEquals(1, report.getFailureCount());
+		assertEquals(370, report.getTotalBytes());
+		assertEquals(330, report.getTransferredBytes());
+		assertEquals(4, progressCount.get());
+		assertTrue(putList.get(0).isSuccess());
+		// リモートディレクトリが存在しないものは失敗
+		assertFalse(putList.get(3).isSuccess());
+		assertArrayEquals(createData(300), server.getFile("/b/2.txt"));
+		assertArrayEquals(createData(20), server.getFile("/a/3.txt"));
+	}
+
+	@Test
+	public void testPutGroupByDirectory() throws Exception {
+		server.addDirectory("/a");
+		server.addDirectory("/b");
+		List<PutData> putList = new ArrayList<PutData>();
+		putList.add(new PutData(createFile("1.txt", 10), "/a"));
+		putList.add(new PutData(createFile("2.txt", 10), "/b"));
+		putList.add(new PutData(createFile("3.txt", 10), "/a"));
+		putList.add(new PutData(createFile("4.txt", 10), "/b"));
+		// 1接続の場合はリモートディレクトリごとにまとめて転送する
+		TransferReport report = ftp.put(putList, 1);
+		assertEquals(4, report.getSuccessCount());
+		assertEquals(Arrays.asList("/a/1.txt", "/a/3.txt", "/b/2.txt",
+				"/b/4.txt"), server.getStoredList());
+	}
+
+	@Test
+	public void testPutMissingLocalFile() throws Exception {
+		server.addDirectory("/a");
+		File file = new File(createFile("1.txt", 10));
+		PutData putData = new PutData(file.getPath(), "/a");
+		file.delete();
+		List<PutData> putList = new ArrayList<PutData>();
+		putList.add(putData);
+		putList.add(new PutData(createFile("2.txt", 10), "/a"));
+		// ローカルファイルのエラーはそのファイルのみ失敗とする
+		TransferReport report = ftp.put(putList, 1);
+		assertFalse(putData.isSuccess());
+		assertEquals(1, report.getSuccessCount());
+		assertEquals(Arrays.asList("/a/2.txt"), server.getStoredList());
+	}
+
+	@Test
+	public void testGet() throws Exception {
+		List<GetData> getList = new ArrayList<GetData>();
+		for (int i = 0; i < 6; i++) {
+			server.addFile("/dir/" + i + ".txt", createData(100 + i));
+			getList.add(new GetData("/dir/" + i + ".txt", new File(folder
+					.getRoot(), i + ".txt").getPath()));
+		}
+		server.addFailure("/dir/2.txt");
+		getList.add(new GetData("/dir/missing.txt", new File(folder
+				.getRoot(), "missing.txt").getPath()));
+		TransferReport report = ftp.get(getList, 3);
+		assertTrue(report.isFinished());
+		// 転送前にはサイズを問い合わせない
+		assertEquals(-1, report.getTotalBytes());
+		assertEquals(7, report.getCompletedCount());
+		assertEquals(5, report.getSuccessCount());
+		assertEquals(2, report.getFailureCount());
+		for (int i = 0; i < 6; i++) {
+			GetData getData = getList.get(i);
+			File file = new File(getData.getLocalFilePath());
+			if (i == 2) {
+				// 転送完了の応答が失敗したものはローカルファイルを残さない
+				assertFalse(getData.isSuccess());
+				assertFalse(file.exists());
+			} else {
+				assertTrue(getData.isSuccess());
+				assertEquals(100 + i, getData.getSize());
+				assertArrayEquals(createData(100 + i), readFile(file));
+			}
+		}
+		assertFalse(getList.get(6).isSuccess());
+		assertEquals(100 + 101 + 103 + 104 + 105, report.getTransferredBytes());
+	}
+
+	@Test(expected = KtException.class)
+	public void testGetDataBeforeGet() {
+		new GetData("/1.txt", new File(folder.getRoot(), "1.txt").getPath())
+				.isSuccess();
+	}
+
+	@Test(expected = KtException.class)
+	public void testGetDataMissingDirectory() {
+		new GetData("/1.txt", new File(folder.getRoot(), "missing/1.txt")
+				.getPath());
+	}
+
+	@Test
+	public void testGetSegmented() throws Exception {
+		byte[] data = createData(3 * 1024 * 1024 + 123);
+		server.addFile("/large.bin", data);
+		File file = new File(folder.getRoot(), "large.bin");
+		GetData getData = new GetData("/large.bin", file.getPath());
+		TransferReport report = ftp.getSegmented(getData, 3);
+		assertTrue(getData.isSuccess());
+		assertEquals(data.length, getData.getSize());
+		assertEquals(data.length, report.getTransferredBytes());
+		assertArrayEquals(data, readFile(file));
+		// 範囲の終端で中断した接続は再利用しない
+		assertEquals(SESSION_COUNT - 2, FtpSessionPool.getInstance()
+				.getIdleCount());
+	}
+
+	@Test
+	public void testGetSegmentedWithoutRest() throws Exception {
+		byte[] data = createData(3 * 1024 * 1024);
+		server.addFile("/large.bin", data);
+		server.setRestSupported(false);
+		File file = new File(folder.getRoot(), "large.bin");
+		GetData getData = new GetData("/large.bin", file.getPath());
+		// 範囲を指定して受信を開始できない場合は1回の接続でGETする
+		TransferReport report = ftp.getSegmented(getData, 3);
+		assertTrue(getData.isSuccess());
+		assertEquals(1, report.getSuccessCount());
+		assertArrayEquals(data, readFile(file));
+	}
+
+	@Test
+	public void testGetSegmentedSmallFile() throws Exception {
+		byte[] data = createData(1024 * 1024);
+		server.addFile("/small.bin", data);
+		File file = new File(folder.getRoot(), "small.bin");
+		GetData getData = new GetData("/small.bin", file.getPath());
+		// 1MB未満の範囲には分割しない
+		ftp.getSegmented(getData, 3);
+		assertTrue(getData.isSuccess());
+		assertArrayEquals(data, readFile(file));
+		assertEquals(SESSION_COUNT, FtpSessionPool.getInstance()
+				.getIdleCount());
+	}
+
+	@Test
+	public void testDeleteDirectory() throws Exception {
+		server.addDirectory("/root");
+		server.addDirectory("/root/sub1");
+		server.addDirectory("/root/sub1/deep");
+		server.addDirectory("/root/sub2");
+		server.addFile("/root/a.txt", createData(10));
+		server.addFile("/root/b.txt", createData(20));
+		server.addFile("/root/sub1/c.txt", createData(30));
+		server.addFile("/root/sub1/deep/d.txt", createData(40));
+		server.addDirectory("/other");
+		TransferReport report = ftp.deleteDirectory("/root", 3);
+		// 件数はファイルとディレクトリの合計
+		assertEquals(8, report.getSuccessCount());
+		assertEquals(0, report.getFailureCount());
+		assertEquals(100, report.getTotalBytes());
+		assertFalse(server.exists("/root"));
+		assertTrue(server.exists("/other"));
+		// ファイルを削除してから、深い階層から順にディレクトリを削除する
+		List<String> deletedList = server.getDeletedList();
+		assertEquals(8, deletedList.size());
+		for (int i = 0; i < 4; i++) {
+			assertTrue(deletedList.get(i).endsWith(".txt"));
+		}
+		assertEquals("/root/sub1/deep", deletedList.get(4));
+		assertEquals("/root", deletedList.get(7));
+	}
+
+	@Test(expected = KtException.class)
+	public void testDeleteMissingDirectory() throws Exception {
+		ftp.deleteDirectory("/missing", 3);
+	}
+
+	@Test
+	public void testGetLocalFileError() throws Exception {
+		server.addFile("/1.txt", createData(10));
+		server.addFile("/2.txt", createData(20));
+		File dir = folder.newFolder("removed");
+		GetData getData = new GetData("/1.txt", new File(dir, "1.txt")
+				.getPath());
+		dir.delete();
+		List<GetData> getList = new ArrayList<GetData>();
+		getList.add(getData);
+		getList.add(new GetData("/2.txt", new File(folder.getRoot(), "2.txt")
+				.getPath()));
+		// ローカルファイルのエラーは接続し直さずにそのファイルのみ失敗とする
+		ftp.setRetrySetting(3, 0);
+		TransferReport report = ftp.get(getList, 1);
+		assertFalse(getData.isSuccess());
+		assertTrue(getList.get(1).isSuccess());
+		assertEquals(1, report.getSuccessCount());
+		assertEquals(SESSION_COUNT, FtpSessionPool.getInstance()
+				.getIdleCount());
+	}
+
+	/**
+	 * テスト用のデータを生成する.
+	 *
+	 * @param size
+	 *            サイズ
+	 * @return データ
+	 */
+	static byte[] createData(int size) {
+		byte[] data = new byte[size];
+		for (int i = 0; i < size; i++) {
+			data[i] = (byte) (i * 31 + size);
+		}
+		return data;
+	}
+
+	/**
+	 * ローカルファイルを読み込む.
+	 *
+	 * @param file
+	 *            ファイル
+	 * @return 内容
+	 * @throws IOException
+	 *             入出力エラー
+	 */
+	private static byte[] readFile(File file) throws IOException {
+		byte[] data = new byte[(int) file.length()];
+		FileInputStream in = new FileInputStream(file);
+		try {
+			int offset = 0;
+			while (offset < data.length) {
+				int read = in.read(data, offset, data.length - offset);
+				if (read < 0) {
+					break;
+				}
+				offset += read;
+			}
+		} finally {
+			in.close();
+		}
+		return data;
+	}
+
+	/**
+	 * ローカルファイルを作成する.
+	 *
+	 * @param name
+	 *            ファイル名
+	 * @param size
+	 *            サイズ
+	 * @return ファイルパス
+	 * @throws IOException
+	 *             入出力エラー
+	 */
+	private String createFile(String name, int size) throws IOException {
+		File file = folder.newFile(name);
+		FileOutputStream out = new FileOutputStream(file);
+		try {
+			out.write(createData(size));
+		} finally {
+			out.close();
+		}
+		return file.getPath();
+	}
+}
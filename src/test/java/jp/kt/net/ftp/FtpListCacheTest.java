@@ -0,0 +1,116 @@
+package jp.kt.net.ftp;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+
+import jp.kt.exception.KtException;
+
+import org.apache.commons.net.ftp.FTPFile;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * {@link FtpListCache}のテスト.
+ *
+ * @author tatsuya.kumon
+ */
+public class FtpListCacheTest {
+	/** FTPサーバ */
+	private static final String SERVER = "user@localhost:21";
+
+	/** キャッシュ */
+	private FtpListCache cache;
+
+	@Before
+	public void setUp() {
+		cache = FtpListCache.getInstance();
+		cache.clear();
+	}
+
+	@After
+	public void tearDown() {
+		cache.clear();
+	}
+
+	@Test
+	public void testGetFileFromList() {
+		cache.putList(SERVER, "/dir", new FTPFile[] { file("a.txt") });
+		assertEquals(1, cache.getList(SERVER, "/dir").length);
+		assertEquals("a.txt", cache.getFile(SERVER, "/dir/a.txt")[0].getName());
+		// 親ディレクトリのファイルリストに無い場合は存在しない
+		assertEquals(0, cache.getFile(SERVER, "/dir/b.txt").length);
+		// 記録が無い場合はnull
+		assertNull(cache.getFile(SERVER, "/other/a.txt"));
+		assertNull(cache.getList("other@localhost:21", "/dir"));
+	}
+
+	@Test
+	public void testPutFile() {
+		cache.putFile(SERVER, "/dir/a.txt", file("a.txt"));
+		cache.putFile(SERVER, "/dir/b.txt", null);
+		assertEquals(1, cache.getFile(SERVER, "/dir/a.txt").length);
+		assertEquals(0, cache.getFile(SERVER, "/dir/b.txt").length);
+	}
+
+	@Test
+	public void testInvalidate() {
+		cache.putList(SERVER, "/dir", new FTPFile[] { file("a.txt") });
+		cache.putFile(SERVER, "/dir/a.txt", file("a.txt"));
+		cache.putList(SERVER, "/other", new FTPFile[0]);
+		cache.invalidate(SERVER, "/dir/a.txt");
+		// 親ディレクトリのファイルリストも破棄される
+		assertNull(cache.getFile(SERVER, "/dir/a.txt"));
+		assertNull(cache.getList(SERVER, "/dir"));
+		assertNotNull(cache.getList(SERVER, "/other"));
+	}
+
+	@Test
+	public void testInvalidateTree() {
+		cache.putList(SERVER, "/", new FTPFile[] { file("dir") });
+		cache.putList(SERVER, "/dir", new FTPFile[] { file("sub") });
+		cache.putList(SERVER, "/dir/sub", new FTPFile[0]);
+		cache.putFile(SERVER, "/dir/sub/a.txt", file("a.txt"));
+		cache.putList(SERVER, "/dir2", new FTPFile[0]);
+		cache.invalidateTree(SERVER, "/dir");
+		assertNull(cache.getList(SERVER, "/"));
+		assertNull(cache.getList(SERVER, "/dir"));
+		assertNull(cache.getList(SERVER, "/dir/sub"));
+		assertNull(cache.getFile(SERVER, "/dir/sub/a.txt"));
+		// 名前の前方一致のみのディレクトリは破棄されない
+		assertNotNull(cache.getList(SERVER, "/dir2"));
+	}
+
+	@Test
+	public void testMaxFiles() {
+		cache.setMaxFiles(2);
+		try {
+			cache.putList(SERVER, "/a", new FTPFile[] { file("1") });
+			cache.putList(SERVER, "/b", new FTPFile[] { file("2") });
+			cache.putList(SERVER, "/c", new FTPFile[] { file("3") });
+			assertNull(cache.getList(SERVER, "/a"));
+			assertNotNull(cache.getList(SERVER, "/c"));
+		} finally {
+			cache.setMaxFiles(100000);
+		}
+	}
+
+	@Test(expected = KtException.class)
+	public void testInvalidTtl() {
+		cache.setTtlMillis(0);
+	}
+
+	/**
+	 * ファイル情報を生成する.
+	 *
+	 * @param name
+	 *            ファイル名
+	 * @return ファイル情報
+	 */
+	private static FTPFile file(String name) {
+		FTPFile file = new FTPFile();
+		file.setName(name);
+		return file;
+	}
+}
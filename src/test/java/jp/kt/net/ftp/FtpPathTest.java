@@ -0,0 +1,52 @@
+package jp.kt.net.ftp;
+
+import static org.junit.Assert.assertEquals;
+
+import jp.kt.exception.KtException;
+
+import org.junit.Test;
+
+/**
+ * {@link FtpPath}のテスト.
+ *
+ * @author tatsuya.kumon
+ */
+public class FtpPathTest {
+	@Test
+	public void testMove() {
+		FtpPath path = new FtpPath("/a/b/c");
+		assertEquals(3, path.getCount());
+		assertEquals(3, path.getCurrentCount());
+		assertEquals("/a/b/c", path.getCurrentPath());
+		path.moveParent();
+		assertEquals("/a/b", path.getCurrentPath());
+		path.moveTo(0);
+		assertEquals("/", path.getCurrentPath());
+		path.moveParent();
+		assertEquals(0, path.getCurrentCount());
+		path.moveChild();
+		assertEquals("/a", path.getCurrentPath());
+		path.moveTo(10);
+		assertEquals(3, path.getCurrentCount());
+		path.moveChild();
+		assertEquals("/a/b/c", path.getCurrentPath());
+		assertEquals("b", path.getName(1));
+	}
+
+	@Test
+	public void testRoot() {
+		FtpPath path = new FtpPath("/");
+		assertEquals(0, path.getCount());
+		assertEquals("/", path.getCurrentPath());
+	}
+
+	@Test(expected = KtException.class)
+	public void testRelativePath() {
+		new FtpPath("a/b");
+	}
+
+	@Test(expected = KtException.class)
+	public void testEmptyPath() {
+		new FtpPath("");
+	}
+}
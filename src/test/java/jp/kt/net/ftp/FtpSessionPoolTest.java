@@ -0,0 +1,223 @@
+package jp.kt.net.ftp;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.util.concurrent.atomic.AtomicReference;
+
+import jp.kt.exception.KtException;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * {@link FtpSessionPool}のテスト.
+ *
+ * @author tatsuya.kumon
+ */
+public class FtpSessionPoolTest {
+	/** 接続先の連番（テストごとに別の接続先とする） */
+	private static int hostSequence;
+
+	/** プール */
+	private FtpSessionPool pool;
+
+	/** 接続先 */
+	private FtpSessionKey key;
+
+	@Before
+	public void setUp() {
+		pool = FtpSessionPool.getInstance();
+		pool.clear();
+		key = new FtpSessionKey("host" + (hostSequence++), 21, "user", "pass");
+	}
+
+	@After
+	public void tearDown() {
+		pool.setSize(0, 4);
+		pool.setIdleTimeoutMillis(60 * 1000L);
+		pool.setValidationIntervalMillis(1000L);
+		pool.setMaxWaitMillis(10 * 1000L);
+		pool.clear();
+	}
+
+	@Test
+	public void testBorrowAndGiveBack() throws Exception {
+		// 空きが無ければ新しく接続する枠を確保する
+		assertNull(pool.borrow(key));
+		FtpSession session = createSession();
+		pool.giveBack(session);
+		assertEquals(1, pool.getIdleCount());
+		assertSame(session, pool.borrow(key));
+		assertEquals(0, pool.getIdleCount());
+		pool.giveBack(session);
+		pool.clear();
+		assertEquals(0, pool.getIdleCount());
+		verify(session.getFtpClient()).disconnect();
+	}
+
+	@Test
+	public void testMaxSize() throws Exception {
+		pool.setSize(0, 1);
+		pool.setMaxWaitMillis(50);
+		assertNull(pool.borrow(key));
+		try {
+			pool.borrow(key);
+			fail();
+		} catch (KtException e) {
+			// 正常
+		}
+		// 他の接続先は別に数える
+		assertNull(pool.borrow(new FtpSessionKey("other" + (hostSequence++),
+				21, "user", "pass")));
+	}
+
+	@Test
+	public void testCancelWakesWaiter() throws Exception {
+		pool.setSize(0, 1);
+		assertNull(pool.borrow(key));
+		BorrowThread thread = startBorrow();
+		Thread.sleep(100);
+		assertTrue(thread.isAlive());
+		// 接続に失敗して枠を返却すると、待機しているスレッドが枠を確保する
+		pool.cancel(key);
+		thread.join(5000);
+		assertTrue(thread.done);
+		assertNull(thread.session.get());
+	}
+
+	@Test
+	public void testGiveBackWakesWaiter() throws Exception {
+		pool.setSize(0, 1);
+		assertNull(pool.borrow(key));
+		BorrowThread thread = startBorrow();
+		Thread.sleep(100);
+		FtpSession session = createSession();
+		pool.giveBack(session);
+		thread.join(5000);
+		assertTrue(thread.done);
+		assertSame(session, thread.session.get());
+	}
+
+	@Test
+	public void testValidate() throws Exception {
+		pool.setValidationIntervalMillis(0);
+		assertNull(pool.borrow(key));
+		FtpSession session = createSession();
+		when(session.getFtpClient().sendNoOp()).thenReturn(false);
+		pool.giveBack(session);
+		// 使用できない接続は切断して新しく接続する枠を確保する
+		assertNull(pool.borrow(key));
+		assertEquals(0, pool.getIdleCount());
+		verify(session.getFtpClient()).disconnect();
+	}
+
+	@Test
+	public void testResetFailure() throws Exception {
+		assertNull(pool.borrow(key));
+		FtpSession session = createSession();
+		when(session.getFtpClient().isConnected()).thenReturn(false);
+		pool.giveBack(session);
+		assertEquals(0, pool.getIdleCount());
+	}
+
+	@Test
+	public void testEvictIdleSessions() throws Exception {
+		pool.setIdleTimeoutMillis(100);
+		assertNull(pool.borrow(key));
+		assertNull(pool.borrow(key));
+		FtpSession session1 = createSession();
+		FtpSession session2 = createSession();
+		pool.giveBack(session1);
+		Thread.sleep(150);
+		pool.giveBack(session2);
+		// 返却時に期限切れの接続を切断する
+		assertEquals(1, pool.getIdleCount());
+		verify(session1.getFtpClient()).disconnect();
+		Thread.sleep(150);
+		pool.evictIdleSessions();
+		assertEquals(0, pool.getIdleCount());
+		verify(session2.getFtpClient()).disconnect();
+	}
+
+	@Test
+	public void testMinSize() throws Exception {
+		pool.setSize(1, 4);
+		pool.setIdleTimeoutMillis(50);
+		assertNull(pool.borrow(key));
+		pool.giveBack(createSession());
+		Thread.sleep(100);
+		pool.evictIdleSessions();
+		// 最小接続数は維持する
+		assertEquals(1, pool.getIdleCount());
+	}
+
+	@Test
+	public void testEvictionTimer() throws Exception {
+		pool.setIdleTimeoutMillis(200);
+		assertNull(pool.borrow(key));
+		FtpSession session = createSession();
+		pool.giveBack(session);
+		// 返却後に使用されなければ、タイマーで切断する
+		for (int i = 0; i < 100 && pool.getIdleCount() > 0; i++) {
+			Thread.sleep(20);
+		}
+		assertEquals(0, pool.getIdleCount());
+		verify(session.getFtpClient()).disconnect();
+	}
+
+	@Test(expected = KtException.class)
+	public void testInvalidSize() {
+		pool.setSize(2, 1);
+	}
+
+	/**
+	 * 接続済みのFTPクライアントのモックを使用したセッションを生成する.
+	 *
+	 * @return セッション
+	 * @throws Exception
+	 *             例外
+	 */
+	private FtpSession createSession() throws Exception {
+		KtFtpClient ftpClient = mock(KtFtpClient.class);
+		when(ftpClient.isConnected()).thenReturn(true);
+		when(ftpClient.sendNoOp()).thenReturn(true);
+		when(ftpClient.printWorkingDirectory()).thenReturn("/");
+		return new FtpSession(key, ftpClient, null);
+	}
+
+	/**
+	 * 別スレッドで接続を借りる.
+	 *
+	 * @return スレッド
+	 */
+	private BorrowThread startBorrow() {
+		BorrowThread thread = new BorrowThread();
+		thread.start();
+		return thread;
+	}
+
+	/**
+	 * 接続を借りるスレッド.
+	 */
+	private class BorrowThread extends Thread {
+		/** 借りた接続 */
+		private final AtomicReference<FtpSession> session = new AtomicReference<FtpSession>();
+
+		/** 完了していればtrue */
+		private volatile boolean done;
+
+		@Override
+		public void run() {
+			session.set(pool.borrow(key));
+			done = true;
+		}
+	}
+}
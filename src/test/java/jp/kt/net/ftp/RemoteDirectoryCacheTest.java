@@ -0,0 +1,55 @@
+package jp.kt.net.ftp;
+
+import static org.junit.Assert.assertEquals;
+
+import org.junit.Test;
+
+/**
+ * {@link RemoteDirectoryCache}のテスト.
+ *
+ * @author tatsuya.kumon
+ */
+public class RemoteDirectoryCacheTest {
+	@Test
+	public void testAdd() {
+		RemoteDirectoryCache cache = new RemoteDirectoryCache(60000);
+		assertEquals(0, cache.getKnownCount(new FtpPath("/a/b/c")));
+		cache.add(new FtpPath("/a/b"));
+		// 親ディレクトリも記録される
+		assertEquals(1, cache.getKnownCount(new FtpPath("/a")));
+		assertEquals(2, cache.getKnownCount(new FtpPath("/a/b/c")));
+		assertEquals(1, cache.getKnownCount(new FtpPath("/a/x")));
+		assertEquals(0, cache.getKnownCount(new FtpPath("/")));
+	}
+
+	@Test
+	public void testRemove() {
+		RemoteDirectoryCache cache = new RemoteDirectoryCache(60000);
+		cache.add(new FtpPath("/a/b/c"));
+		cache.add(new FtpPath("/a/d"));
+		// 配下のディレクトリも破棄される
+		cache.remove(new FtpPath("/a/b"));
+		assertEquals(1, cache.getKnownCount(new FtpPath("/a/b/c")));
+		assertEquals(2, cache.getKnownCount(new FtpPath("/a/d")));
+		cache.remove(new FtpPath("/x/y"));
+		assertEquals(2, cache.getKnownCount(new FtpPath("/a/d")));
+		cache.remove(new FtpPath("/"));
+		assertEquals(0, cache.getKnownCount(new FtpPath("/a/d")));
+	}
+
+	@Test
+	public void testClear() {
+		RemoteDirectoryCache cache = new RemoteDirectoryCache(60000);
+		cache.add(new FtpPath("/a/b"));
+		cache.clear();
+		assertEquals(0, cache.getKnownCount(new FtpPath("/a/b")));
+	}
+
+	@Test
+	public void testExpire() throws Exception {
+		RemoteDirectoryCache cache = new RemoteDirectoryCache(1);
+		cache.add(new FtpPath("/a/b"));
+		Thread.sleep(10);
+		assertEquals(0, cache.getKnownCount(new FtpPath("/a/b")));
+	}
+}
@@ -0,0 +1,46 @@
+package jp.kt.net.ftp;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+/**
+ * {@link TransferReport}のテスト.
+ *
+ * @author tatsuya.kumon
+ */
+public class TransferReportTest {
+	@Test
+	public void testAdd() {
+		TransferReport report = new TransferReport(3, 300);
+		report.add(100, true);
+		report.add(50, false);
+		assertEquals(3, report.getTotalCount());
+		assertEquals(300, report.getTotalBytes());
+		assertEquals(2, report.getCompletedCount());
+		assertEquals(1, report.getSuccessCount());
+		assertEquals(1, report.getFailureCount());
+		// 失敗したファイルのサイズは転送済みに含めない
+		assertEquals(100, report.getTransferredBytes());
+		assertFalse(report.isFinished());
+	}
+
+	@Test
+	public void testFinish() throws Exception {
+		TransferReport report = new TransferReport(1, 1000);
+		report.add(1000, true);
+		Thread.sleep(20);
+		report.finish();
+		assertTrue(report.isFinished());
+		long elapsed = report.getElapsedMillis();
+		assertTrue(elapsed >= 20);
+		Thread.sleep(20);
+		// 終了後は経過時間が変わらない
+		assertEquals(elapsed, report.getElapsedMillis());
+		assertEquals(1000 * 1000 / elapsed, report.getBytesPerSecond());
+		assertTrue(report.toString().startsWith(
+				"[files=1/1][success=1][failure=0][bytes=1000/1000]"));
+	}
+}
@@ -0,0 +1,127 @@
+package jp.kt.net.http;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import jp.kt.exception.KtException;
+
+import org.junit.Test;
+
+/**
+ * {@link AdaptiveConcurrencyLimit}のテスト.
+ *
+ * @author tatsuya.kumon
+ */
+public class AdaptiveConcurrencyLimitTest {
+	@Test
+	public void testAimdIncrease() {
+		AdaptiveConcurrencyLimit limit = new AdaptiveConcurrencyLimit(
+				AdaptiveConcurrencyLimit.Algorithm.AIMD);
+		assertEquals(4, limit.getLimit("a"));
+		// 上限を使い切っていなければ引き上げない
+		limit.onSample("a", 10, 1, false);
+		assertEquals(4, limit.getLimit("a"));
+		// 上限に達していれば1/上限ずつ引き上げる
+		for (int i = 0; i < 5; i++) {
+			limit.onSample("a", 10, 4, false);
+		}
+		assertEquals(5, limit.getLimit("a"));
+		// ホストごとに管理する
+		assertEquals(4, limit.getLimit("b"));
+	}
+
+	@Test
+	public void testAimdDecrease() throws Exception {
+		AdaptiveConcurrencyLimit limit = new AdaptiveConcurrencyLimit(
+				AdaptiveConcurrencyLimit.Algorithm.AIMD);
+		limit.setLimitRange(10, 1, 20);
+		limit.onSample("a", 10, 10, true);
+		assertEquals(9, limit.getLimit("a"));
+		// 引き下げた時点で実行中だったリクエストでは連続して引き下げない
+		limit.onSample("a", 10, 10, true);
+		assertEquals(9, limit.getLimit("a"));
+		Thread.sleep(50);
+		limit.onSample("a", 10, 10, true);
+		assertEquals(8, limit.getLimit("a"));
+	}
+
+	@Test
+	public void testAimdLatencyThreshold() {
+		AdaptiveConcurrencyLimit limit = new AdaptiveConcurrencyLimit(
+				AdaptiveConcurrencyLimit.Algorithm.AIMD);
+		limit.setLimitRange(10, 1, 20);
+		limit.setLatencyThresholdMillis(100);
+		limit.onSample("a", 100, 10, false);
+		assertEquals(10, limit.getLimit("a"));
+		// 閾値を超えた応答時間は破棄されたものとして扱う
+		limit.onSample("a", 200, 10, false);
+		assertEquals(9, limit.getLimit("a"));
+	}
+
+	@Test
+	public void testMinLimit() throws Exception {
+		AdaptiveConcurrencyLimit limit = new AdaptiveConcurrencyLimit(
+				AdaptiveConcurrencyLimit.Algorithm.AIMD);
+		limit.setLimitRange(2, 2, 4);
+		limit.setBackoffRatio(0.5);
+		limit.onSample("a", 1, 2, true);
+		assertEquals(2, limit.getLimit("a"));
+	}
+
+	@Test
+	public void testGradient() {
+		AdaptiveConcurrencyLimit limit = new AdaptiveConcurrencyLimit(
+				AdaptiveConcurrencyLimit.Algorithm.GRADIENT);
+		limit.setLimitRange(10, 1, 100);
+		// 応答時間が負荷の無い状態と変わらなければ引き上げる
+		for (int i = 0; i < 10; i++) {
+			limit.onSample("a", 10, 100, false);
+		}
+		int raised = limit.getLimit("a");
+		assertTrue(raised > 10);
+		// 応答時間が許容範囲を超えて遅くなれば引き下げる
+		for (int i = 0; i < 10; i++) {
+			limit.onSample("a", 100, 100, false);
+		}
+		assertTrue(limit.getLimit("a") < raised);
+		limit.clear();
+		assertEquals(10, limit.getLimit("a"));
+	}
+
+	@Test
+	public void testGradientTolerance() {
+		AdaptiveConcurrencyLimit limit = new AdaptiveConcurrencyLimit(
+				AdaptiveConcurrencyLimit.Algorithm.GRADIENT);
+		limit.setLimitRange(10, 1, 100);
+		limit.onSample("a", 10, 100, false);
+		int first = limit.getLimit("a");
+		// 許容範囲内の遅延であれば引き下げない
+		for (int i = 0; i < 10; i++) {
+			limit.onSample("a", 15, 100, false);
+		}
+		assertTrue(limit.getLimit("a") >= first);
+	}
+
+	@Test(expected = KtException.class)
+	public void testInvalidAlgorithm() {
+		new AdaptiveConcurrencyLimit(null);
+	}
+
+	@Test(expected = KtException.class)
+	public void testInvalidLimitRange() {
+		new AdaptiveConcurrencyLimit(AdaptiveConcurrencyLimit.Algorithm.AIMD)
+				.setLimitRange(1, 2, 4);
+	}
+
+	@Test(expected = KtException.class)
+	public void testInvalidBackoffRatio() {
+		new AdaptiveConcurrencyLimit(AdaptiveConcurrencyLimit.Algorithm.AIMD)
+				.setBackoffRatio(1);
+	}
+
+	@Test(expected = KtException.class)
+	public void testInvalidTolerance() {
+		new AdaptiveConcurrencyLimit(
+				AdaptiveConcurrencyLimit.Algorithm.GRADIENT).setTolerance(0.5);
+	}
+}
@@ -0,0 +1,94 @@
+package jp.kt.net.http;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.net.InetAddress;
+import java.util.Arrays;
+
+import jp.kt.exception.KtException;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * {@link AddressPenaltyCache}のテスト.
+ *
+ * @author tatsuya.kumon
+ */
+public class AddressPenaltyCacheTest {
+	/** キャッシュ */
+	private AddressPenaltyCache cache;
+
+	/** IPv4アドレス */
+	private InetAddress v4a;
+
+	/** IPv4アドレス */
+	private InetAddress v4b;
+
+	/** IPv6アドレス */
+	private InetAddress v6a;
+
+	/** IPv6アドレス */
+	private InetAddress v6b;
+
+	@Before
+	public void setUp() throws Exception {
+		cache = AddressPenaltyCache.getInstance();
+		cache.clear();
+		v4a = InetAddress.getByName("192.0.2.1");
+		v4b = InetAddress.getByName("192.0.2.2");
+		v6a = InetAddress.getByName("2001:db8::1");
+		v6b = InetAddress.getByName("2001:db8::2");
+	}
+
+	@After
+	public void tearDown() {
+		cache.setTtlMillis(60 * 1000L);
+		cache.clear();
+	}
+
+	@Test
+	public void testPenalize() {
+		assertFalse(cache.isPenalized(v4a));
+		cache.penalize(v4a);
+		assertTrue(cache.isPenalized(v4a));
+		assertFalse(cache.isPenalized(v4b));
+		// 接続できたアドレスは記録から外す
+		cache.forgive(v4a);
+		assertFalse(cache.isPenalized(v4a));
+	}
+
+	@Test
+	public void testExpire() throws Exception {
+		cache.setTtlMillis(50);
+		cache.penalize(v4a);
+		assertTrue(cache.isPenalized(v4a));
+		Thread.sleep(100);
+		assertFalse(cache.isPenalized(v4a));
+	}
+
+	@Test
+	public void testSortAddresses() {
+		// IPv6とIPv4を交互に並べる
+		assertEquals(Arrays.asList(v6a, v4a, v6b, v4b),
+				HappyEyeballsConnectionOperator
+						.sortAddresses(new InetAddress[] { v6a, v6b, v4a, v4b }));
+		assertEquals(Arrays.asList(v4a, v6a, v4b, v6b),
+				HappyEyeballsConnectionOperator
+						.sortAddresses(new InetAddress[] { v4a, v4b, v6a, v6b }));
+		// 記録されているアドレスは順番を保ったまま最後に移動する
+		cache.penalize(v6a);
+		cache.penalize(v6b);
+		assertEquals(Arrays.asList(v4a, v4b, v6a, v6b),
+				HappyEyeballsConnectionOperator
+						.sortAddresses(new InetAddress[] { v6a, v6b, v4a, v4b }));
+	}
+
+	@Test(expected = KtException.class)
+	public void testInvalidTtlMillis() {
+		cache.setTtlMillis(0);
+	}
+}
@@ -0,0 +1,85 @@
+package jp.kt.net.http;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * {@link CsvLineProcessor}のテスト.
+ *
+ * @author tatsuya.kumon
+ */
+public class CsvLineProcessorTest {
+	/** 受け取ったレコード */
+	private List<List<String>> records;
+
+	/** レコードの処理 */
+	private RecordProcessor recorder;
+
+	@Before
+	public void setUp() {
+		records = new ArrayList<List<String>>();
+		recorder = new RecordProcessor() {
+			@Override
+			public boolean processRecord(List<String> fields) {
+				records.add(new ArrayList<String>(fields));
+				return true;
+			}
+		};
+	}
+
+	@Test
+	public void testSimple() throws Exception {
+		CsvLineProcessor processor = new CsvLineProcessor(recorder);
+		assertTrue(processor.processLine("a,b,,c"));
+		assertEquals(1, records.size());
+		assertEquals(Arrays.asList("a", "b", "", "c"), records.get(0));
+		assertFalse(processor.hasPendingRecord());
+	}
+
+	@Test
+	public void testQuoted() throws Exception {
+		CsvLineProcessor processor = new CsvLineProcessor(recorder);
+		processor.processLine("\"a,b\",\"say \"\"hi\"\"\",c");
+		assertEquals(Arrays.asList("a,b", "say \"hi\"", "c"), records.get(0));
+	}
+
+	@Test
+	public void testMultiLine() throws Exception {
+		CsvLineProcessor processor = new CsvLineProcessor(recorder);
+		processor.processLine("1,\"first");
+		assertTrue(processor.hasPendingRecord());
+		assertTrue(records.isEmpty());
+		processor.processLine("");
+		processor.processLine("third\",x");
+		assertFalse(processor.hasPendingRecord());
+		assertEquals(1, records.size());
+		assertEquals(Arrays.asList("1", "first\n\nthird", "x"), records.get(0));
+	}
+
+	@Test
+	public void testDelimiter() throws Exception {
+		CsvLineProcessor processor = new CsvLineProcessor(recorder, '\t');
+		processor.processLine("a,b\t\"c\td\"");
+		assertEquals(Arrays.asList("a,b", "c\td"), records.get(0));
+	}
+
+	@Test
+	public void testStop() throws Exception {
+		CsvLineProcessor processor = new CsvLineProcessor(
+				new RecordProcessor() {
+					@Override
+					public boolean processRecord(List<String> fields) {
+						return false;
+					}
+				});
+		assertFalse(processor.processLine("a,b"));
+	}
+}
@@ -0,0 +1,151 @@
+package jp.kt.net.http;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * {@link EventStreamParser}のテスト.
+ *
+ * @author tatsuya.kumon
+ */
+public class EventStreamParserTest {
+	/** 受け取ったイベント */
+	private List<ServerSentEvent> events;
+
+	/** 解析処理 */
+	private EventStreamParser parser;
+
+	@Before
+	public void setUp() {
+		events = new ArrayList<ServerSentEvent>();
+		parser = new EventStreamParser(new EventHandler() {
+			@Override
+			public boolean handleEvent(ServerSentEvent event) {
+				events.add(event);
+				return true;
+			}
+		}, null);
+	}
+
+	@Test
+	public void testDispatch() throws Exception {
+		parser.processLine("data: first");
+		parser.processLine("data:second");
+		assertTrue(events.isEmpty());
+		assertTrue(parser.processLine(""));
+		assertEquals(1, events.size());
+		ServerSentEvent event = events.get(0);
+		assertEquals("message", event.getEvent());
+		assertEquals("first\nsecond", event.getData());
+		assertNull(event.getId());
+	}
+
+	@Test
+	public void testEventAndId() throws Exception {
+		parser.processLine("event: update");
+		parser.processLine("id: 10");
+		parser.processLine("data: x");
+		parser.processLine("");
+		parser.processLine("data: y");
+		parser.processLine("");
+		assertEquals(2, events.size());
+		assertEquals("update", events.get(0).getEvent());
+		assertEquals("10", events.get(0).getId());
+		// イベント種別は次のイベントに引き継がず、IDは引き継ぐ
+		assertEquals("message", events.get(1).getEvent());
+		assertEquals("10", events.get(1).getId());
+		assertEquals("10", parser.getLastEventId());
+	}
+
+	@Test
+	public void testIdWithNull() throws Exception {
+		parser = new EventStreamParser(new EventHandler() {
+			@Override
+			public boolean handleEvent(ServerSentEvent event) {
+				return true;
+			}
+		}, "5");
+		parser.processLine("id: 6\0");
+		assertEquals("5", parser.getLastEventId());
+	}
+
+	@Test
+	public void testCommentAndEmptyEvent() throws Exception {
+		parser.processLine(": heartbeat");
+		parser.processLine("");
+		parser.processLine("event: ping");
+		parser.processLine("");
+		assertTrue(events.isEmpty());
+		// データの無いイベントの種別は破棄される
+		parser.processLine("data");
+		parser.processLine("");
+		assertEquals(1, events.size());
+		assertEquals("message", events.get(0).getEvent());
+		assertEquals("", events.get(0).getData());
+	}
+
+	@Test
+	public void testRetry() throws Exception {
+		assertEquals(-1, parser.getRetryMillis());
+		parser.processLine("retry: 3000");
+		assertEquals(3000, parser.getRetryMillis());
+		parser.processLine("retry: 1.5");
+		parser.processLine("retry:");
+		assertEquals(3000, parser.getRetryMillis());
+	}
+
+	@Test
+	public void testStop() throws Exception {
+		parser = new EventStreamParser(new EventHandler() {
+			@Override
+			public boolean handleEvent(ServerSentEvent event) {
+				events.add(event);
+				return false;
+			}
+		}, null);
+		parser.processLine("data: a");
+		assertFalse(parser.processLine(""));
+		assertTrue(parser.isStopped());
+		assertFalse(parser.processLine("data: b"));
+		assertEquals(1, events.size());
+	}
+
+	@Test
+	public void testHandlerException() throws Exception {
+		final Exception exception = new Exception("error");
+		parser = new EventStreamParser(new EventHandler() {
+			@Override
+			public boolean handleEvent(ServerSentEvent event) throws Exception {
+				throw exception;
+			}
+		}, null);
+		parser.processLine("data: a");
+		try {
+			parser.processLine("");
+			fail();
+		} catch (Exception e) {
+			assertSame(exception, e);
+		}
+		assertTrue(parser.isStopped());
+		assertSame(exception, parser.getHandlerException());
+	}
+
+	@Test
+	public void testDispatchBody() throws Exception {
+		assertTrue(parser.dispatchBody(""));
+		assertTrue(events.isEmpty());
+		assertTrue(parser.dispatchBody("{\"a\":1}"));
+		assertEquals("message", events.get(0).getEvent());
+		assertEquals("{\"a\":1}", events.get(0).getData());
+	}
+}
@@ -0,0 +1,209 @@
+package jp.kt.net.http;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import static org.mockito.Mockito.mock;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import jp.kt.exception.KtException;
+import jp.kt.logger.ApplicationLogger;
+
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * {@link HttpConnection}のリダイレクトと Expect: 100-Continue の再送信のテスト.
+ *
+ * @author tatsuya.kumon
+ */
+public class HttpConnectionTest {
+	/** 通信処理 */
+	private StubTransport transport;
+
+	/** ログ */
+	private ApplicationLogger logger;
+
+	@Before
+	public void setUp() {
+		transport = new StubTransport();
+		logger = mock(ApplicationLogger.class);
+	}
+
+	@Test
+	public void testRedirect() throws Exception {
+		redirect("http://a.example/start", "/next");
+		transport.register("GET", "http://a.example/next", 200, "text/plain",
+				"ok".getBytes("UTF-8"));
+		HttpConnection http = createConnection("http://a.example/start");
+		http.setFollowRedirects(5);
+		HttpConnection.ResponseData resData = http.executeGetMethod();
+		assertEquals(200, resData.getStatusCode());
+		assertEquals("http://a.example/next", resData.getFinalUrl());
+		assertEquals("ok", resData.getResponseText());
+		assertEquals(2, transport.getRequests().size());
+	}
+
+	@Test
+	public void testRedirectKeepsCredentialsOnSameOrigin() throws Exception {
+		redirect("https://a.example/start", "https://a.example:443/next");
+		transport.register("GET", "https://a.example:443/next", 200,
+				"text/plain", new byte[0]);
+		HttpConnection http = createConnection("https://a.example/start");
+		http.setFollowRedirects(5);
+		http.setBasicAuth("user", "pass");
+		http.setRequestHeader("Cookie", "sid=1");
+		http.executeGetMethod();
+		TransportRequest request = transport.getRequests().get(1);
+		assertEquals("user", request.getBasicAuthId());
+		assertTrue(hasHeader(request, "Cookie"));
+	}
+
+	@Test
+	public void testRedirectStripsCredentialsOnCrossOrigin() throws Exception {
+		redirect("http://a.example/start", "http://b.example/next");
+		transport.register("GET", "http://b.example/next", 200, "text/plain",
+				new byte[0]);
+		HttpConnection http = createConnection("http://a.example/start");
+		http.setFollowRedirects(5);
+		http.setBasicAuth("user", "pass");
+		http.setRequestHeader("Cookie", "sid=1");
+		http.setRequestHeader("Authorization", "Bearer token");
+		http.setRequestHeader("X-Trace", "1");
+		http.executeGetMethod();
+		TransportRequest request = transport.getRequests().get(1);
+		assertNull(request.getBasicAuthId());
+		assertNull(request.getBasicAuthPassword());
+		assertFalse(hasHeader(request, "Cookie"));
+		assertFalse(hasHeader(request, "Authorization"));
+		assertTrue(hasHeader(request, "X-Trace"));
+	}
+
+	@Test
+	public void testRedirectLoop() throws Exception {
+		redirect("http://a.example/page", "http://a.example/login");
+		redirect("http://a.example/login", "http://a.example/page");
+		HttpConnection http = createConnection("http://a.example/page");
+		http.setFollowRedirects(10);
+		try {
+			http.executeGetMethod();
+			fail();
+		} catch (KtException e) {
+			// 上限回数を待たずに打ち切る
+			assertEquals(2, transport.getRequests().size());
+		}
+	}
+
+	@Test
+	public void testRedirectBackAfterSetCookie() throws Exception {
+		// ログイン後に元のURLへ戻るような A→B→A のリダイレクトは許可する
+		redirect("http://a.example/page", "http://a.example/login");
+		transport.register("GET", "http://a.example/page", 200, "text/plain",
+				"page".getBytes("UTF-8"));
+		List<TransportHeader> headerList = new ArrayList<TransportHeader>();
+		headerList.add(new TransportHeader("Location", "http://a.example/page"));
+		headerList.add(new TransportHeader("Set-Cookie", "sid=1"));
+		transport.register("GET", "http://a.example/login", 302, null, null,
+				headerList);
+		HttpSession session = new HttpSession();
+		try {
+			HttpConnection http = createConnection("http://a.example/page");
+			http.setFollowRedirects(5);
+			http.setSession(session);
+			HttpConnection.ResponseData resData = http.executeGetMethod();
+			assertEquals(200, resData.getStatusCode());
+			assertEquals("page", resData.getResponseText());
+			assertEquals(3, transport.getRequests().size());
+		} finally {
+			session.close();
+		}
+	}
+
+	@Test
+	public void testRedirectLimit() throws Exception {
+		for (int i = 0; i < 5; i++) {
+			redirect("http://a.example/" + i, "http://a.example/" + (i + 1));
+		}
+		HttpConnection http = createConnection("http://a.example/0");
+		http.setFollowRedirects(3);
+		try {
+			http.executeGetMethod();
+			fail();
+		} catch (KtException e) {
+			// 最初のリクエストと上限回数分のリダイレクト
+			assertEquals(4, transport.getRequests().size());
+		}
+	}
+
+	@Test(expected = KtException.class)
+	public void testInvalidFollowRedirects() {
+		createConnection("http://a.example/").setFollowRedirects(-1);
+	}
+
+	@Test
+	public void testExpectationFailed() throws Exception {
+		String url = "http://expect.example/upload";
+		transport.register("POST", url, 417, "text/plain", new byte[0]);
+		transport.register("POST", url, 200, "text/plain",
+				"done".getBytes("UTF-8"));
+		HttpConnection http = createConnection(url);
+		http.setExpectContinueThreshold(0);
+		http.addParameter("name", "value");
+		HttpConnection.ResponseData resData = http.executePostMethod();
+		assertEquals(200, resData.getStatusCode());
+		assertEquals("done", resData.getResponseText());
+		List<TransportRequest> requests = transport.getRequests();
+		assertEquals(2, requests.size());
+		assertTrue(requests.get(0).isExpectContinue());
+		assertFalse(requests.get(1).isExpectContinue());
+	}
+
+	/**
+	 * 302レスポンスを登録する.
+	 *
+	 * @param url
+	 *            URL
+	 * @param location
+	 *            リダイレクト先
+	 */
+	private void redirect(String url, String location) {
+		List<TransportHeader> headerList = new ArrayList<TransportHeader>();
+		headerList.add(new TransportHeader("Location", location));
+		transport.register("GET", url, 302, null, null, headerList);
+	}
+
+	/**
+	 * テスト用の通信処理を設定した{@link HttpConnection}を生成する.
+	 *
+	 * @param url
+	 *            URL
+	 * @return {@link HttpConnection}
+	 */
+	private HttpConnection createConnection(String url) {
+		HttpConnection http = new HttpConnection(url, logger);
+		http.setTransport(transport);
+		return http;
+	}
+
+	/**
+	 * リクエストヘッダの有無を判定する.
+	 *
+	 * @param request
+	 *            リクエスト
+	 * @param name
+	 *            ヘッダ名
+	 * @return ヘッダがある場合はtrue
+	 */
+	private static boolean hasHeader(TransportRequest request, String name) {
+		for (TransportHeader header : request.getHeaders()) {
+			if (header.getName().equalsIgnoreCase(name)) {
+				return true;
+			}
+		}
+		return false;
+	}
+}
@@ -0,0 +1,154 @@
+package jp.kt.net.http;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import static org.mockito.Mockito.mock;
+
+import java.io.IOException;
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import jp.kt.logger.ApplicationLogger;
+
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * {@link InterceptorChain}のテスト.
+ *
+ * @author tatsuya.kumon
+ */
+public class InterceptorChainTest {
+	/** URL */
+	private static final String URL = "http://a.example/path";
+
+	/** 通信処理 */
+	private StubTransport transport;
+
+	/** リクエスト */
+	private TransportRequest request;
+
+	/** 実行されたインターセプタの名前 */
+	private List<String> calls;
+
+	@Before
+	public void setUp() throws Exception {
+		transport = new StubTransport();
+		transport.register("GET", URL, 200, "text/plain",
+				"transport".getBytes("UTF-8"));
+		request = new TransportRequest("GET", new URI(URL),
+				new ArrayList<TransportHeader>(), null, null);
+		calls = new ArrayList<String>();
+	}
+
+	@Test
+	public void testProceed() throws Exception {
+		HttpInterceptor[] interceptors = new HttpInterceptor[] {
+				headerInterceptor("first"), headerInterceptor("second") };
+		TransportResponse response = new InterceptorChain(interceptors, 0,
+				transport, request).proceed(request);
+		assertEquals(200, response.getStatusCode());
+		// 登録順に実行し、変更したリクエストを次へ渡す
+		assertEquals(Arrays.asList("first", "second"), calls);
+		List<TransportRequest> requests = transport.getRequests();
+		assertEquals(1, requests.size());
+		assertEquals("second", getHeader(requests.get(0), "X-Step"));
+	}
+
+	@Test
+	public void testShortCircuit() throws Exception {
+		final ByteArrayTransportResponse cached = new ByteArrayTransportResponse(
+				200, "OK", Collections.<TransportHeader> emptyList(),
+				"cached".getBytes("UTF-8"));
+		HttpInterceptor[] interceptors = new HttpInterceptor[] {
+				new HttpInterceptor() {
+					@Override
+					public TransportResponse intercept(Chain chain) {
+						calls.add("cache");
+						return cached;
+					}
+				}, headerInterceptor("after") };
+		TransportResponse response = new InterceptorChain(interceptors, 0,
+				transport, request).proceed(request);
+		// 後続のインターセプタと通信処理は実行しない
+		assertSame(cached, response);
+		assertEquals(Collections.singletonList("cache"), calls);
+		assertTrue(transport.getRequests().isEmpty());
+	}
+
+	@Test
+	public void testNullResponse() throws Exception {
+		HttpInterceptor[] interceptors = new HttpInterceptor[] { new HttpInterceptor() {
+			@Override
+			public TransportResponse intercept(Chain chain) {
+				return null;
+			}
+		} };
+		try {
+			new InterceptorChain(interceptors, 0, transport, request)
+					.proceed(request);
+			fail();
+		} catch (IOException e) {
+			assertTrue(transport.getRequests().isEmpty());
+		}
+	}
+
+	@Test
+	public void testHttpConnection() throws Exception {
+		HttpInterceptor global = headerInterceptor("global");
+		HttpConnection.addGlobalInterceptor(global);
+		try {
+			HttpConnection http = new HttpConnection(URL,
+					mock(ApplicationLogger.class));
+			http.setTransport(transport);
+			http.addInterceptor(headerInterceptor("local"));
+			HttpConnection.ResponseData resData = http.executeGetMethod();
+			assertEquals("transport", resData.getResponseText());
+			// 全体のインターセプタを先に実行する
+			assertEquals(Arrays.asList("global", "local"), calls);
+		} finally {
+			HttpConnection.removeGlobalInterceptor(global);
+		}
+	}
+
+	/**
+	 * リクエストヘッダを付与して次へ進めるインターセプタを生成する.
+	 *
+	 * @param name
+	 *            インターセプタの名前
+	 * @return インターセプタ
+	 */
+	private HttpInterceptor headerInterceptor(final String name) {
+		return new HttpInterceptor() {
+			@Override
+			public TransportResponse intercept(Chain chain) throws IOException {
+				calls.add(name);
+				return chain.proceed(chain.getRequest().withHeader("X-Step",
+						name));
+			}
+		};
+	}
+
+	/**
+	 * リクエストヘッダの値を取得する.
+	 *
+	 * @param request
+	 *            リクエスト
+	 * @param name
+	 *            ヘッダ名
+	 * @return 値（無い場合はnull）
+	 */
+	private static String getHeader(TransportRequest request, String name) {
+		for (TransportHeader header : request.getHeaders()) {
+			if (header.getName().equalsIgnoreCase(name)) {
+				return header.getValue();
+			}
+		}
+		return null;
+	}
+}
@@ -0,0 +1,188 @@
+package jp.kt.net.http;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import jp.kt.exception.KtException;
+
+import org.junit.Test;
+
+/**
+ * {@link RequestScheduler}のテスト.
+ *
+ * @author tatsuya.kumon
+ */
+public class RequestSchedulerTest {
+	@Test
+	public void testPriority() throws Exception {
+		RequestScheduler scheduler = new RequestScheduler(1);
+		RequestScheduler.Ticket ticket = scheduler.acquire("a",
+				RequestPriority.NORMAL, 0);
+		List<RequestPriority> order = Collections
+				.synchronizedList(new ArrayList<RequestPriority>());
+		Thread low = startAcquire(scheduler, "a", RequestPriority.LOW, order);
+		waitQueueLength(scheduler, 1);
+		Thread high = startAcquire(scheduler, "a", RequestPriority.HIGH, order);
+		waitQueueLength(scheduler, 2);
+		assertEquals(1, scheduler.getActiveCount());
+		// 優先度の高いものから許可する
+		scheduler.release(ticket, false);
+		low.join(5000);
+		high.join(5000);
+		assertEquals(2, order.size());
+		assertEquals(RequestPriority.HIGH, order.get(0));
+		assertEquals(RequestPriority.LOW, order.get(1));
+		assertEquals(0, scheduler.getActiveCount());
+		assertEquals(1, scheduler.getAdmittedCount(RequestPriority.HIGH));
+	}
+
+	@Test
+	public void testMaxPerHost() throws Exception {
+		RequestScheduler scheduler = new RequestScheduler(3);
+		scheduler.setMaxPerHost(1);
+		RequestScheduler.Ticket ticket = scheduler.acquire("a",
+				RequestPriority.NORMAL, 0);
+		// 他のホストは待ち合わせない
+		RequestScheduler.Ticket other = scheduler.acquire("b",
+				RequestPriority.NORMAL, 0);
+		assertEquals(2, scheduler.getActiveCount());
+		List<RequestPriority> order = Collections
+				.synchronizedList(new ArrayList<RequestPriority>());
+		Thread thread = startAcquire(scheduler, "a", RequestPriority.NORMAL,
+				order);
+		waitQueueLength(scheduler, 1);
+		scheduler.release(ticket, false);
+		thread.join(5000);
+		assertEquals(1, order.size());
+		scheduler.release(other, false);
+		assertEquals(0, scheduler.getActiveCount());
+	}
+
+	@Test
+	public void testMaxQueuePerHost() throws Exception {
+		RequestScheduler scheduler = new RequestScheduler(1);
+		scheduler.setMaxQueuePerHost(1);
+		RequestScheduler.Ticket ticket = scheduler.acquire("a",
+				RequestPriority.NORMAL, 0);
+		List<RequestPriority> order = Collections
+				.synchronizedList(new ArrayList<RequestPriority>());
+		Thread thread = startAcquire(scheduler, "a", RequestPriority.NORMAL,
+				order);
+		waitQueueLength(scheduler, 1);
+		try {
+			// 実行待ちが上限に達しているので待ち合わせずに中止する
+			scheduler.acquire("a", RequestPriority.LOW, 0);
+			fail();
+		} catch (KtException e) {
+			assertEquals(1, scheduler.getRejectedCount(RequestPriority.LOW));
+		}
+		scheduler.release(ticket, false);
+		thread.join(5000);
+		assertEquals(1, order.size());
+	}
+
+	@Test
+	public void testDeadline() throws Exception {
+		RequestScheduler scheduler = new RequestScheduler(1);
+		RequestScheduler.Ticket ticket = scheduler.acquire("a",
+				RequestPriority.NORMAL, 0);
+		long start = System.currentTimeMillis();
+		try {
+			scheduler.acquire("a", RequestPriority.NORMAL, start + 100);
+			fail();
+		} catch (KtException e) {
+			assertTrue(System.currentTimeMillis() - start >= 90);
+			assertEquals(0, scheduler.getQueueLength());
+			assertEquals(1, scheduler.getRejectedCount(RequestPriority.NORMAL));
+		}
+		scheduler.release(ticket, false);
+	}
+
+	@Test
+	public void testServiceTime() throws Exception {
+		RequestScheduler scheduler = new RequestScheduler(1);
+		RequestScheduler.Ticket ticket = scheduler.acquire("a",
+				RequestPriority.NORMAL, 0);
+		Thread.sleep(200);
+		ticket.responded();
+		// レスポンス本体の受信時間は含めない
+		Thread.sleep(200);
+		scheduler.release(ticket, false);
+		long average = scheduler.getAverageServiceMillis("a");
+		assertTrue(average >= 190 && average < 390);
+		assertEquals(0, scheduler.getAverageServiceMillis("b"));
+		ticket = scheduler.acquire("a", RequestPriority.NORMAL, 0);
+		long start = System.currentTimeMillis();
+		try {
+			// 平均応答時間内に期限を迎えるので待ち合わせずに中止する
+			scheduler.acquire("a", RequestPriority.NORMAL, start + 100);
+			fail();
+		} catch (KtException e) {
+			assertTrue(System.currentTimeMillis() - start < 90);
+		}
+		scheduler.release(ticket, false);
+		// 指数移動平均で更新する
+		assertTrue(scheduler.getAverageServiceMillis("a") < average);
+	}
+
+	@Test(expected = KtException.class)
+	public void testInvalidMaxConcurrent() {
+		new RequestScheduler(0);
+	}
+
+	/**
+	 * 別スレッドで実行許可を待ち合わせ、許可されたら優先度を記録して返却する.
+	 *
+	 * @param scheduler
+	 *            スケジューラ
+	 * @param host
+	 *            ホスト
+	 * @param priority
+	 *            優先度
+	 * @param order
+	 *            許可された順の優先度
+	 * @return スレッド
+	 */
+	private static Thread startAcquire(final RequestScheduler scheduler,
+			final String host, final RequestPriority priority,
+			final List<RequestPriority> order) {
+		Thread thread = new Thread() {
+			@Override
+			public void run() {
+				try {
+					RequestScheduler.Ticket ticket = scheduler.acquire(host,
+							priority, 0);
+					order.add(priority);
+					scheduler.release(ticket, false);
+				} catch (InterruptedException e) {
+					// 終了
+				}
+			}
+		};
+		thread.start();
+		return thread;
+	}
+
+	/**
+	 * 実行待ちの数が指定数になるまで待つ.
+	 *
+	 * @param scheduler
+	 *            スケジューラ
+	 * @param length
+	 *            実行待ちの数
+	 * @throws InterruptedException
+	 *             割り込み
+	 */
+	private static void waitQueueLength(RequestScheduler scheduler, int length)
+			throws InterruptedException {
+		for (int i = 0; i < 500 && scheduler.getQueueLength() < length; i++) {
+			Thread.sleep(10);
+		}
+		assertEquals(length, scheduler.getQueueLength());
+	}
+}
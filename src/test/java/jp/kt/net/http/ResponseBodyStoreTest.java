@@ -0,0 +1,194 @@
+package jp.kt.net.http;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+import jp.kt.exception.KtException;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * {@link ResponseBodyStore}のテスト.
+ *
+ * @author tatsuya.kumon
+ */
+public class ResponseBodyStoreTest {
+	/** メモリ上限の元の設定値 */
+	private long maxBytes;
+
+	@Before
+	public void setUp() {
+		maxBytes = ResponseMemoryBudget.getInstance().getMaxBytes();
+	}
+
+	@After
+	public void tearDown() {
+		ResponseMemoryBudget.getInstance().setMaxBytes(maxBytes);
+	}
+
+	@Test
+	public void testMemory() throws Exception {
+		ResponseBodyStore store = new ResponseBodyStore(1024 * 1024, -1);
+		try {
+			byte[] data = createData(100 * 1024);
+			store.write(data, 0, 10);
+			store.write(data, 10, data.length - 10);
+			store.close();
+			assertFalse(store.isSpilled());
+			assertEquals(data.length, store.size());
+			assertArrayEquals(data, store.toByteArray());
+			assertArrayEquals(data, readAll(store.openStream()));
+		} finally {
+			store.release();
+		}
+	}
+
+	@Test
+	public void testSpillByThreshold() throws Exception {
+		ResponseBodyStore store = new ResponseBodyStore(16 * 1024, -1);
+		try {
+			byte[] data = createData(40 * 1024);
+			store.write(data, 0, 10 * 1024);
+			assertFalse(store.isSpilled());
+			// 閾値を超えた時点で書き込み済みの分も一時ファイルへ退避する
+			store.write(data, 10 * 1024, data.length - 10 * 1024);
+			store.close();
+			assertTrue(store.isSpilled());
+			assertArrayEquals(data, store.toByteArray());
+			assertArrayEquals(data, readAll(store.openStream()));
+		} finally {
+			store.release();
+		}
+	}
+
+	@Test
+	public void testSpillByExpectedLength() throws Exception {
+		ResponseBodyStore store = new ResponseBodyStore(1024, 2048);
+		try {
+			store.write(1);
+			assertTrue(store.isSpilled());
+		} finally {
+			store.release();
+		}
+	}
+
+	@Test
+	public void testSpillByBudget() throws Exception {
+		ResponseMemoryBudget budget = ResponseMemoryBudget.getInstance();
+		budget.setMaxBytes(0);
+		long spillCount = budget.getSpillCount();
+		ResponseBodyStore store = new ResponseBodyStore(1024 * 1024, -1);
+		try {
+			byte[] data = createData(1000);
+			store.write(data, 0, data.length);
+			store.close();
+			// 閾値以下でもメモリ上限に達していれば一時ファイルへ退避する
+			assertTrue(store.isSpilled());
+			assertEquals(spillCount + 1, budget.getSpillCount());
+			assertArrayEquals(data, store.toByteArray());
+		} finally {
+			store.release();
+		}
+	}
+
+	@Test
+	public void testReadAfterRelease() throws Exception {
+		ResponseBodyStore store = new ResponseBodyStore(1024 * 1024, -1);
+		store.write(createData(1000), 0, 1000);
+		store.close();
+		InputStream is = store.openStream();
+		assertEquals(0, is.read());
+		store.release();
+		// 解放後に読み込むとプールへ返却したバッファを読まないように例外とする
+		try {
+			is.read();
+			fail();
+		} catch (IOException e) {
+			// 正常
+		}
+		try {
+			store.openStream();
+			fail();
+		} catch (KtException e) {
+			// 正常
+		}
+	}
+
+	@Test
+	public void testReadAfterSpill() throws Exception {
+		ResponseBodyStore store = new ResponseBodyStore(16 * 1024, -1);
+		try {
+			byte[] data = createData(32 * 1024);
+			store.write(data, 0, 1024);
+			InputStream is = store.openStream();
+			// 一時ファイルへ退避するとメモリ上のバッファは返却される
+			store.write(data, 1024, data.length - 1024);
+			try {
+				is.read(new byte[10], 0, 10);
+				fail();
+			} catch (IOException e) {
+				// 正常
+			}
+		} finally {
+			store.release();
+		}
+	}
+
+	@Test(expected = IOException.class)
+	public void testWriteAfterClose() throws Exception {
+		ResponseBodyStore store = new ResponseBodyStore(1024, -1);
+		try {
+			store.close();
+			store.write(1);
+		} finally {
+			store.release();
+		}
+	}
+
+	/**
+	 * テスト用のデータを生成する.
+	 *
+	 * @param size
+	 *            サイズ
+	 * @return データ
+	 */
+	private static byte[] createData(int size) {
+		byte[] data = new byte[size];
+		for (int i = 0; i < size; i++) {
+			data[i] = (byte) (i * 31);
+		}
+		return data;
+	}
+
+	/**
+	 * 全て読み込む.
+	 *
+	 * @param is
+	 *            入力ストリーム
+	 * @return 読み込んだデータ
+	 * @throws IOException
+	 *             入出力エラー
+	 */
+	private static byte[] readAll(InputStream is) throws IOException {
+		try {
+			ByteArrayOutputStream out = new ByteArrayOutputStream();
+			byte[] buffer = new byte[1000];
+			int read;
+			while ((read = is.read(buffer)) >= 0) {
+				out.write(buffer, 0, read);
+			}
+			return out.toByteArray();
+		} finally {
+			is.close();
+		}
+	}
+}
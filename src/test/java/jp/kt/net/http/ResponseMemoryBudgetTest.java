@@ -0,0 +1,101 @@
+package jp.kt.net.http;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+
+import jp.kt.exception.KtException;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * {@link ResponseMemoryBudget}のテスト.
+ *
+ * @author tatsuya.kumon
+ */
+public class ResponseMemoryBudgetTest {
+	/** メモリ上限 */
+	private ResponseMemoryBudget budget;
+
+	/** メモリ上限の元の設定値 */
+	private long maxBytes;
+
+	@Before
+	public void setUp() {
+		budget = ResponseMemoryBudget.getInstance();
+		maxBytes = budget.getMaxBytes();
+	}
+
+	@After
+	public void tearDown() {
+		budget.setMaxBytes(maxBytes);
+	}
+
+	@Test
+	public void testReserve() {
+		long used = budget.getUsedBytes();
+		budget.setMaxBytes(used + 1000);
+		Object owner = new Object();
+		ResponseMemoryBudget.Reservation reservation = budget.register(owner);
+		try {
+			assertTrue(budget.tryReserve(reservation, 600));
+			assertTrue(budget.tryReserve(reservation, 400));
+			// 上限を超える分は確保しない
+			assertFalse(budget.tryReserve(reservation, 1));
+			assertEquals(used + 1000, budget.getUsedBytes());
+			assertTrue(budget.getPeakBytes() >= used + 1000);
+			budget.release(reservation);
+			assertEquals(used, budget.getUsedBytes());
+			assertTrue(budget.tryReserve(reservation, 1000));
+		} finally {
+			budget.unregister(reservation);
+		}
+		assertEquals(used, budget.getUsedBytes());
+	}
+
+	@Test
+	public void testExpunge() throws Exception {
+		long used = budget.getUsedBytes();
+		File tempFile = File.createTempFile("kt_net_budget_", ".tmp");
+		tempFile.deleteOnExit();
+		reserveForGarbage(tempFile);
+		assertEquals(used + 1000, budget.getUsedBytes());
+		// 解放されずにGCされた分は回収され、一時ファイルも削除される
+		for (int i = 0; i < 50 && budget.getUsedBytes() != used; i++) {
+			System.gc();
+			Thread.sleep(20);
+		}
+		assertEquals(used, budget.getUsedBytes());
+		assertFalse(tempFile.exists());
+	}
+
+	@Test
+	public void testSpillCount() {
+		long count = budget.getSpillCount();
+		budget.countSpill();
+		assertEquals(count + 1, budget.getSpillCount());
+	}
+
+	@Test(expected = KtException.class)
+	public void testInvalidMaxBytes() {
+		budget.setMaxBytes(-1);
+	}
+
+	/**
+	 * 参照が残らないように確保する.
+	 *
+	 * @param tempFile
+	 *            一時ファイル
+	 */
+	private void reserveForGarbage(File tempFile) {
+		ResponseMemoryBudget.Reservation reservation = budget
+				.register(new Object());
+		budget.setMaxBytes(budget.getUsedBytes() + 1000);
+		assertTrue(budget.tryReserve(reservation, 1000));
+		reservation.setTempFile(tempFile);
+	}
+}
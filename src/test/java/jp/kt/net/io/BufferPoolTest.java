@@ -0,0 +1,101 @@
+package jp.kt.net.io;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
+
+import jp.kt.exception.KtException;
+
+import org.junit.Test;
+
+/**
+ * {@link BufferPool}のテスト.
+ *
+ * @author tatsuya.kumon
+ */
+public class BufferPoolTest {
+	@Test
+	public void testSizeClass() {
+		BufferPool pool = new BufferPool(1024 * 1024);
+		// 2のべき乗に切り上げる（最小4KB）
+		assertEquals(4 * 1024, pool.acquire(1).length);
+		assertEquals(4 * 1024, pool.acquire(4 * 1024).length);
+		assertEquals(8 * 1024, pool.acquire(4 * 1024 + 1).length);
+		assertEquals(256 * 1024, pool.acquire(256 * 1024).length);
+		// 最大サイズを超える場合はそのサイズで確保する
+		assertEquals(256 * 1024 + 1, pool.acquire(256 * 1024 + 1).length);
+	}
+
+	@Test
+	public void testReuse() {
+		BufferPool pool = new BufferPool(1024 * 1024);
+		byte[] buffer = pool.acquire(5000);
+		pool.release(buffer);
+		assertEquals(8 * 1024, pool.getRetainedBytes());
+		// 同じサイズクラスであれば再利用する
+		assertSame(buffer, pool.acquire(8 * 1024));
+		assertNotSame(buffer, pool.acquire(8 * 1024));
+		assertEquals(3, pool.getAcquireCount());
+		assertEquals(1, pool.getHitCount());
+		assertEquals(2, pool.getAllocateCount());
+	}
+
+	@Test
+	public void testDiscard() {
+		BufferPool pool = new BufferPool(8 * 1024);
+		// サイズクラスに合わないバッファは保持しない
+		pool.release(new byte[5000]);
+		pool.release(new byte[512 * 1024]);
+		assertEquals(2, pool.getDiscardCount());
+		// 保持上限を超えた分は保持しない
+		pool.release(new byte[4 * 1024]);
+		pool.release(new byte[4 * 1024]);
+		pool.release(new byte[4 * 1024]);
+		assertEquals(3, pool.getDiscardCount());
+		assertEquals(8 * 1024, pool.getRetainedBytes());
+		pool.release(null);
+		assertEquals(3, pool.getDiscardCount());
+	}
+
+	@Test
+	public void testDirect() {
+		BufferPool pool = new BufferPool(1024 * 1024);
+		ByteBuffer buffer = pool.acquireDirect(10000);
+		assertTrue(buffer.isDirect());
+		assertEquals(16 * 1024, buffer.capacity());
+		buffer.put((byte) 1);
+		pool.releaseDirect(buffer);
+		ByteBuffer reused = pool.acquireDirect(16 * 1024);
+		assertSame(buffer, reused);
+		// 再利用する場合は位置を戻す
+		assertEquals(0, reused.position());
+		// ヒープのバッファは保持しない
+		pool.releaseDirect(ByteBuffer.allocate(16 * 1024));
+		assertEquals(1, pool.getDiscardCount());
+	}
+
+	@Test
+	public void testCopy() throws Exception {
+		BufferPool pool = new BufferPool(1024 * 1024);
+		byte[] data = new byte[200 * 1024];
+		for (int i = 0; i < data.length; i++) {
+			data[i] = (byte) i;
+		}
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		assertEquals(data.length, pool.copy(new ByteArrayInputStream(data), out));
+		assertArrayEquals(data, out.toByteArray());
+		// 使用したバッファは返却される
+		assertEquals(BufferPool.TRANSFER_BUFFER_SIZE, pool.getRetainedBytes());
+	}
+
+	@Test(expected = KtException.class)
+	public void testInvalidRetainBytes() {
+		new BufferPool(-1);
+	}
+}
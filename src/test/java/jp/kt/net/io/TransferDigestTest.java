@@ -0,0 +1,92 @@
+package jp.kt.net.io;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.Map;
+
+import jp.kt.exception.KtException;
+
+import org.junit.Test;
+
+/**
+ * {@link TransferDigest}のテスト.
+ *
+ * @author tatsuya.kumon
+ */
+public class TransferDigestTest {
+	/** 「abc」のMD5 */
+	private static final String MD5_ABC = "900150983cd24fb0d6963f7d28e17f72";
+
+	/** 「abc」のSHA-256 */
+	private static final String SHA256_ABC = "ba7816bf8f01cfea414140de5dae2223b00361a396177a9cb410ff61f20015ad";
+
+	/** 「abc」のCRC32 */
+	private static final String CRC32_ABC = "352441c2";
+
+	@Test
+	public void testUpdate() throws Exception {
+		TransferDigest digest = new TransferDigest(Arrays.asList("md5",
+				"SHA-256", "crc32"));
+		assertTrue(digest.contains("MD5"));
+		assertTrue(digest.contains("CRC32"));
+		assertFalse(digest.contains("SHA-1"));
+		byte[] data = "xabcx".getBytes("US-ASCII");
+		digest.update(data, 1, 1);
+		ByteBuffer buffer = ByteBuffer.wrap(data, 2, 2);
+		digest.update(buffer);
+		// ByteBufferの位置は変わらない
+		assertEquals(2, buffer.position());
+		assertEquals(MD5_ABC, digest.getHexDigest("md5"));
+		assertEquals(SHA256_ABC, digest.getHexDigest("SHA-256"));
+		assertEquals(CRC32_ABC, digest.getHexDigest("CRC32"));
+		assertNull(digest.getHexDigest("SHA-1"));
+		Map<String, String> map = digest.getHexDigests();
+		assertEquals(Arrays.asList("MD5", "SHA-256", "CRC32"),
+				Arrays.asList(map.keySet().toArray()));
+	}
+
+	@Test
+	public void testWrapInputStream() throws Exception {
+		TransferDigest digest = new TransferDigest(Arrays.asList("MD5"));
+		InputStream in = digest.wrap(new ByteArrayInputStream("abc"
+				.getBytes("US-ASCII")));
+		assertEquals('a', in.read());
+		// 読み飛ばした部分もハッシュ値の計算対象にする
+		assertEquals(1, in.skip(1));
+		assertEquals('c', in.read());
+		assertEquals(-1, in.read());
+		assertFalse(in.markSupported());
+		assertEquals(MD5_ABC, digest.getHexDigest("MD5"));
+	}
+
+	@Test
+	public void testWrapOutputStream() throws Exception {
+		TransferDigest digest = new TransferDigest(Arrays.asList("MD5"));
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		OutputStream out = digest.wrap(bytes);
+		out.write('a');
+		out.write("bc".getBytes("US-ASCII"));
+		assertEquals("abc", bytes.toString("US-ASCII"));
+		assertEquals(MD5_ABC, digest.getHexDigest("MD5"));
+	}
+
+	@Test
+	public void testToHex() {
+		assertEquals("00ff10", TransferDigest.toHex(new byte[] { 0, (byte) 0xff,
+				0x10 }));
+	}
+
+	@Test(expected = KtException.class)
+	public void testInvalidAlgorithm() {
+		new TransferDigest(Arrays.asList("NONE"));
+	}
+}